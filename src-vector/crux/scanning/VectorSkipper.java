@@ -0,0 +1,50 @@
+package crux.scanning;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// Skips blanks and comment bodies a whole vector of chars at a time.
+// Vectors wider than 256 bits overshoot most runs of blanks and most
+// comments, so the species is capped at that width. Whatever is left at
+// the end of the input, too short to fill a vector, is skipped by the
+// scalar loops.
+public class VectorSkipper extends Skipper
+{
+	private static final VectorSpecies<Short> SPECIES =
+		ShortVector.SPECIES_PREFERRED.vectorBitSize() > 256 ? ShortVector.SPECIES_256 : ShortVector.SPECIES_PREFERRED;
+
+	@Override
+	public int skipBlanks(char[] input, int position, int end)
+	{
+		// Most tokens are separated by a single space or none at all,
+		// which is not worth loading a vector for.
+		if(position + 1 >= end || !isBlank(input[position]) || !isBlank(input[position + 1]))
+			return super.skipBlanks(input, position, end);
+		int bound = end - SPECIES.length();
+		for(; position <= bound; position += SPECIES.length())
+		{
+			ShortVector chars = ShortVector.fromCharArray(SPECIES, input, position);
+			VectorMask<Short> blank = chars.eq((short)' ')
+				.or(chars.eq((short)'\t'))
+				.or(chars.eq((short)'\r'));
+			if(!blank.allTrue())
+				return position + blank.not().firstTrue();
+		}
+		return super.skipBlanks(input, position, end);
+	}
+
+	@Override
+	public int skipToLineEnd(char[] input, int position, int end)
+	{
+		int bound = end - SPECIES.length();
+		for(; position <= bound; position += SPECIES.length())
+		{
+			ShortVector chars = ShortVector.fromCharArray(SPECIES, input, position);
+			VectorMask<Short> lineEnd = chars.eq((short)'\n').or(chars.eq((short)'\r'));
+			if(lineEnd.anyTrue())
+				return position + lineEnd.firstTrue();
+		}
+		return super.skipToLineEnd(input, position, end);
+	}
+}
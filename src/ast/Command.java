@@ -1,9 +1,16 @@
 package ast;
 
 import crux.Token;
+import crux.TokenBuffer;
 
 public abstract class Command implements Visitable {
 	
+	// Every command is numbered by the FlatAst it is built from, in
+	// preorder from 0 within its tree, so that passes can keep what they
+	// learn about nodes in NodeTables. Building a node again gives it the
+	// same id. A node built by hand keeps NONE, which NodeTables key by the
+	// object instead.
+	int id = FlatAst.NONE;
 	private int lineNum;
 	private int charPos;
 	
@@ -13,6 +20,11 @@ public abstract class Command implements Visitable {
 		this.charPos = charPos;
 	}
 	
+	public int id()
+	{
+		return id;
+	}
+	
 	public int lineNumber()
 	{
 		return lineNum;
@@ -31,10 +43,12 @@ public abstract class Command implements Visitable {
 
 	public static Expression newExpression(Expression leftSide, Token op, Expression rightSide)
 	{
-		int lineNum = op.getLineNumber();
-		int charPos = op.getCharPos();
-		
-		switch(op.getKind())
+		return newExpression(leftSide, op.getKind(), op.getLineNumber(), op.getCharPos(), rightSide);
+	}
+	
+	public static Expression newExpression(Expression leftSide, Token.Kind op, int lineNum, int charPos, Expression rightSide)
+	{
+		switch(op)
 		{
 		case ADD: return new Addition(lineNum, charPos, leftSide, rightSide);
 		case SUB: return new Subtraction(lineNum, charPos, leftSide, rightSide);
@@ -67,4 +81,19 @@ public abstract class Command implements Visitable {
 		default: return new Error(tok.getLineNumber(), tok.getCharPos(), "Unknown Operation: " + tok);
 		}
 	}
+	
+	public static Expression newLiteral(TokenBuffer tokens, int index)
+	{
+		int lineNum = tokens.lineNumber(index);
+		int charPos = tokens.charPos(index);
+		
+		switch(tokens.kind(index))
+		{
+		case TRUE: return new LiteralBool(lineNum, charPos, LiteralBool.Value.TRUE);
+		case FALSE: return new LiteralBool(lineNum, charPos, LiteralBool.Value.FALSE);
+		case INTEGER: return new LiteralInt(lineNum, charPos, tokens.intValue(index));
+		case FLOAT: return new LiteralFloat(lineNum, charPos, tokens.floatValue(index));
+		default: return new Error(lineNum, charPos, "Unknown Operation: " + tokens.token(index));
+		}
+	}
 }
@@ -0,0 +1,553 @@
+package ast;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import crux.Symbol;
+import crux.Token;
+import crux.TokenBuffer;
+
+// An abstract syntax tree stored as parallel int arrays rather than as one
+// object per node. A node is an index into the arrays, holding its kind,
+// position, first child and next sibling, and a payload: the value of a
+// literal, the operation of a comparison, or an index into the tables of
+// symbols and error messages. The parser adds each node after all of its
+// children, and the children in order, so every node's subtree lies in a
+// contiguous range of indices starting at its leftmost leaf and ending at
+// the node itself, and the last node added is the root.
+public class FlatAst
+{
+	public static final int NONE = -1;
+
+	// Node kinds. Each corresponds to a Command class, except PARAMETER,
+	// which holds one of a function definition's argument symbols.
+	public static final int DECLARATION_LIST = 0,
+		STATEMENT_LIST = 1,
+		EXPRESSION_LIST = 2,
+		ADDRESS_OF = 3,
+		LITERAL_BOOL = 4,
+		LITERAL_FLOAT = 5,
+		LITERAL_INT = 6,
+		VARIABLE_DECLARATION = 7,
+		ARRAY_DECLARATION = 8,
+		FUNCTION_DEFINITION = 9,
+		PARAMETER = 10,
+		ADDITION = 11,
+		SUBTRACTION = 12,
+		MULTIPLICATION = 13,
+		DIVISION = 14,
+		LOGICAL_AND = 15,
+		LOGICAL_OR = 16,
+		LOGICAL_NOT = 17,
+		COMPARISON = 18,
+		DEREFERENCE = 19,
+		INDEX = 20,
+		ASSIGNMENT = 21,
+		CALL = 22,
+		IF_ELSE_BRANCH = 23,
+		WHILE_LOOP = 24,
+		RETURN = 25,
+		ERROR = 26;
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final Comparison.Operation[] OPERATIONS = Comparison.Operation.values();
+	// The Command class of each kind, for describe.
+	private static final Class<?>[] COMMAND_CLASSES = {
+		DeclarationList.class, StatementList.class, ExpressionList.class, AddressOf.class,
+		LiteralBool.class, LiteralFloat.class, LiteralInt.class, VariableDeclaration.class,
+		ArrayDeclaration.class, FunctionDefinition.class, null, Addition.class,
+		Subtraction.class, Multiplication.class, Division.class, LogicalAnd.class,
+		LogicalOr.class, LogicalNot.class, Comparison.class, Dereference.class,
+		Index.class, Assignment.class, Call.class, IfElseBranch.class,
+		WhileLoop.class, Return.class, Error.class };
+
+	private byte[] kinds;
+	private int[] lineNumbers, charPositions, firstChildren, nextSiblings, payloads;
+	private int size;
+	private final ArrayList<Symbol> symbols;
+	private final ArrayList<String> messages;
+	// The id of each node's Command, handed out the first time one is
+	// built, and the first id not yet handed out.
+	private int[] ids;
+	private int nextId;
+
+	public FlatAst()
+	{
+		this(INITIAL_CAPACITY);
+	}
+
+	public FlatAst(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		kinds = new byte[capacity];
+		lineNumbers = new int[capacity];
+		charPositions = new int[capacity];
+		firstChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		payloads = new int[capacity];
+		symbols = new ArrayList<Symbol>();
+		messages = new ArrayList<String>();
+	}
+
+	public int size() { return size; }
+
+	public int root() { return size - 1; }
+
+	public int kind(int node) { return kinds[node]; }
+
+	public int lineNumber(int node) { return lineNumbers[node]; }
+
+	public int charPosition(int node) { return charPositions[node]; }
+
+	public int firstChild(int node) { return firstChildren[node]; }
+
+	public int nextSibling(int node) { return nextSiblings[node]; }
+
+	public int payload(int node) { return payloads[node]; }
+
+	public Symbol symbol(int node) { return symbols.get(payloads[node]); }
+
+	public String message(int node) { return messages.get(payloads[node]); }
+
+	// The same position Expression.getLeftmostCharPos gives: that of the
+	// leftmost operand of an operator, index or dereference.
+	public int leftmostCharPos(int node)
+	{
+		while(true)
+		{
+			switch(kinds[node])
+			{
+			case ADDITION:
+			case SUBTRACTION:
+			case MULTIPLICATION:
+			case DIVISION:
+			case LOGICAL_AND:
+			case LOGICAL_OR:
+			case COMPARISON:
+			case DEREFERENCE:
+			case INDEX:
+				node = firstChildren[node];
+				break;
+			default:
+				return charPositions[node];
+			}
+		}
+	}
+
+	// The node of a function definition's body, after its parameters.
+	public int functionBody(int definition)
+	{
+		int child = firstChildren[definition];
+		while(kinds[child] == PARAMETER)
+			child = nextSiblings[child];
+		return child;
+	}
+
+	// The first index of the node's subtree.
+	public int subtreeStart(int node)
+	{
+		while(firstChildren[node] != NONE)
+			node = firstChildren[node];
+		return node;
+	}
+
+	// Makes next the sibling that follows node. Children are chained this
+	// way before their parent is added with the first of them.
+	public void link(int node, int next)
+	{
+		nextSiblings[node] = next;
+	}
+
+	public int add(int kind, int lineNumber, int charPos, int payload, int firstChild)
+	{
+		if(size == kinds.length)
+			grow();
+		int node = size++;
+		kinds[node] = (byte)kind;
+		lineNumbers[node] = lineNumber;
+		charPositions[node] = charPos;
+		firstChildren[node] = firstChild;
+		nextSiblings[node] = NONE;
+		payloads[node] = payload;
+		return node;
+	}
+
+	public int addLeaf(int kind, int lineNumber, int charPos, int payload)
+	{
+		return add(kind, lineNumber, charPos, payload, NONE);
+	}
+
+	public int addUnary(int kind, int lineNumber, int charPos, int child)
+	{
+		return add(kind, lineNumber, charPos, 0, child);
+	}
+
+	public int addBinary(int kind, int lineNumber, int charPos, int payload, int left, int right)
+	{
+		link(left, right);
+		return add(kind, lineNumber, charPos, payload, left);
+	}
+
+	public int addSymbol(int kind, int lineNumber, int charPos, Symbol symbol, int firstChild)
+	{
+		symbols.add(symbol);
+		return add(kind, lineNumber, charPos, symbols.size() - 1, firstChild);
+	}
+
+	public int addError(int lineNumber, int charPos, String message)
+	{
+		messages.add(message);
+		return addLeaf(ERROR, lineNumber, charPos, messages.size() - 1);
+	}
+
+	// Mirrors Command.newExpression.
+	public int addExpression(Token.Kind op, int lineNumber, int charPos, int left, int right)
+	{
+		switch(op)
+		{
+		case ADD: return addBinary(ADDITION, lineNumber, charPos, 0, left, right);
+		case SUB: return addBinary(SUBTRACTION, lineNumber, charPos, 0, left, right);
+		case MUL: return addBinary(MULTIPLICATION, lineNumber, charPos, 0, left, right);
+		case DIV: return addBinary(DIVISION, lineNumber, charPos, 0, left, right);
+
+		case AND: return addBinary(LOGICAL_AND, lineNumber, charPos, 0, left, right);
+		case OR:  return addBinary(LOGICAL_OR, lineNumber, charPos, 0, left, right);
+		case NOT: return addUnary(LOGICAL_NOT, lineNumber, charPos, left);
+
+		case LESS_THAN:     return addBinary(COMPARISON, lineNumber, charPos, Comparison.Operation.LT.ordinal(), left, right);
+		case LESSER_EQUAL:  return addBinary(COMPARISON, lineNumber, charPos, Comparison.Operation.LE.ordinal(), left, right);
+		case EQUAL:         return addBinary(COMPARISON, lineNumber, charPos, Comparison.Operation.EQ.ordinal(), left, right);
+		case NOT_EQUAL:     return addBinary(COMPARISON, lineNumber, charPos, Comparison.Operation.NE.ordinal(), left, right);
+		case GREATER_EQUAL: return addBinary(COMPARISON, lineNumber, charPos, Comparison.Operation.GE.ordinal(), left, right);
+		case GREATER_THAN:  return addBinary(COMPARISON, lineNumber, charPos, Comparison.Operation.GT.ordinal(), left, right);
+
+		default: return addError(lineNumber, charPos, "Unknown Operation: " + op);
+		}
+	}
+
+	// Mirrors Command.newLiteral.
+	public int addLiteral(TokenBuffer tokens, int index)
+	{
+		int lineNum = tokens.lineNumber(index);
+		int charPos = tokens.charPos(index);
+
+		switch(tokens.kind(index))
+		{
+		case TRUE: return addLeaf(LITERAL_BOOL, lineNum, charPos, 1);
+		case FALSE: return addLeaf(LITERAL_BOOL, lineNum, charPos, 0);
+		case INTEGER: return addLeaf(LITERAL_INT, lineNum, charPos, tokens.intValue(index));
+		case FLOAT: return addLeaf(LITERAL_FLOAT, lineNum, charPos, Float.floatToRawIntBits(tokens.floatValue(index)));
+		default: return addError(lineNum, charPos, "Unknown Operation: " + tokens.token(index));
+		}
+	}
+
+	// Adds a copy of the node's subtree in another tree, with its symbols
+	// and messages, and returns the copy of the node. Links out of the
+	// subtree's range, such as the node's own next sibling, are dropped.
+	public int copy(FlatAst source, int node)
+	{
+		int from = source.subtreeStart(node);
+		int offset = size - from;
+		for(int i = from; i <= node; i++)
+		{
+			int payload = source.payloads[i];
+			switch(source.kinds[i])
+			{
+			case ADDRESS_OF:
+			case VARIABLE_DECLARATION:
+			case ARRAY_DECLARATION:
+			case FUNCTION_DEFINITION:
+			case PARAMETER:
+			case CALL:
+				symbols.add(source.symbols.get(payload));
+				payload = symbols.size() - 1;
+				break;
+			case ERROR:
+				messages.add(source.messages.get(payload));
+				payload = messages.size() - 1;
+				break;
+			}
+			int firstChild = source.firstChildren[i], nextSibling = source.nextSiblings[i];
+			add(source.kinds[i], source.lineNumbers[i], source.charPositions[i], payload,
+				firstChild >= from && firstChild <= node ? firstChild + offset : NONE);
+			link(i + offset, nextSibling >= from && nextSibling <= node ? nextSibling + offset : NONE);
+		}
+		return node + offset;
+	}
+
+	private void grow()
+	{
+		int capacity = kinds.length * 2;
+		kinds = Arrays.copyOf(kinds, capacity);
+		lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+		charPositions = Arrays.copyOf(charPositions, capacity);
+		firstChildren = Arrays.copyOf(firstChildren, capacity);
+		nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		payloads = Arrays.copyOf(payloads, capacity);
+	}
+
+	// Builds the Command objects of the node's whole subtree. Its range
+	// of indices is walked in order, so every child has been built by the
+	// time its parent is, without recursing however deep the tree is.
+	public Command toCommand(int node)
+	{
+		int from = subtreeStart(node);
+		Command[] built = new Command[node - from + 1];
+		numberTree();
+		for(int i = from; i <= node; i++)
+		{
+			built[i - from] = build(i, built, from);
+			if(built[i - from] != null)
+				built[i - from].id = ids[i];
+		}
+		return built[node - from];
+	}
+
+	// Builds the root's Command as toCommand does, except that a function
+	// whose body node lazyBody gives a Supplier for is built without its
+	// body, and the Supplier is called for it the first time body() is.
+	public Command toLazyCommand(IntFunction<Supplier<StatementList>> lazyBody)
+	{
+		int root = root();
+		if(kinds[root] != DECLARATION_LIST)
+			return toCommand(root);
+		numberTree();
+		ArrayList<Declaration> declarations = new ArrayList<Declaration>();
+		for(int child = firstChildren[root]; child != NONE; child = nextSiblings[child])
+		{
+			Supplier<StatementList> body = kinds[child] == FUNCTION_DEFINITION ? lazyBody.apply(functionBody(child)) : null;
+			if(body == null)
+			{
+				declarations.add((Declaration)toCommand(child));
+				continue;
+			}
+			ArrayList<Symbol> parameters = new ArrayList<Symbol>();
+			for(int parameter = firstChildren[child]; kinds[parameter] == PARAMETER; parameter = nextSiblings[parameter])
+				parameters.add(symbol(parameter));
+			FunctionDefinition function = new FunctionDefinition(lineNumbers[child], charPositions[child], symbol(child), parameters, body);
+			function.id = ids[child];
+			declarations.add(function);
+		}
+		DeclarationList list = new DeclarationList(lineNumbers[root], charPositions[root], declarations);
+		list.id = ids[root];
+		return list;
+	}
+
+	// The id of the node's Command.
+	public int id(int node)
+	{
+		numberTree();
+		return ids[node];
+	}
+
+	// The number of ids handed out to the tree's Commands, all of which
+	// are below it. It grows as lazily parsed bodies are numbered.
+	public synchronized int commandCount()
+	{
+		numberTree();
+		return nextId;
+	}
+
+	// Numbers the subtree of a function body that was skipped while
+	// parsing the tree, and parsed on its own into this one, as part of
+	// the tree: the node takes the id of the body's placeholder, and its
+	// descendants the ids after all those the tree has handed out.
+	public void numberInPlaceOf(FlatAst tree, int placeholder, int node)
+	{
+		synchronized(tree)
+		{
+			tree.numberTree();
+			tree.nextId = number(node, tree.ids[placeholder], tree.nextId);
+		}
+	}
+
+	// Numbers the whole tree from its root, the first time it is needed.
+	private synchronized void numberTree()
+	{
+		if(ids == null)
+			nextId = number(root(), 0, 1);
+	}
+
+	// Numbers the node's subtree in preorder, giving the node rootId and
+	// its descendants the ids from firstId up, and returns the id after
+	// the last. A first pass forward counts the Commands in each subtree,
+	// and a second one backward, which reaches every parent before its
+	// children, gives each child the ids after those of the child before
+	// it. Parameters, which are not Commands, get no id, and neither does
+	// anything in the range that is not in the subtree.
+	private int number(int node, int rootId, int firstId)
+	{
+		int from = subtreeStart(node);
+		if(ids == null)
+		{
+			ids = new int[size];
+			Arrays.fill(ids, NONE);
+		}
+		int[] counts = new int[node - from + 1];
+		for(int i = from; i <= node; i++)
+		{
+			int count = kinds[i] == PARAMETER ? 0 : 1;
+			for(int child = firstChildren[i]; child != NONE; child = nextSiblings[child])
+				count += counts[child - from];
+			counts[i - from] = count;
+		}
+		Arrays.fill(ids, from, node + 1, NONE);
+		ids[node] = rootId;
+		for(int i = node; i >= from; i--)
+		{
+			if(ids[i] == NONE)
+				continue;
+			int id = i == node ? firstId : ids[i] + 1;
+			for(int child = firstChildren[i]; child != NONE; child = nextSiblings[child])
+			{
+				if(kinds[child] == PARAMETER)
+					continue;
+				ids[child] = id;
+				id += counts[child - from];
+			}
+		}
+		return firstId + counts[node - from] - 1;
+	}
+
+	// Exposes the tree to a CommandVisitor through Command objects that
+	// are only built when they are reached. The declarations of the root
+	// list are built one at a time as the visitor iterates over them, so
+	// only the declaration being visited, rather than the whole program,
+	// is ever held as objects by the view itself. A declaration is built
+	// afresh each time it is fetched, with the same ids every time, so
+	// what a pass such as the TypeChecker keeps about it in NodeTables can
+	// be read back from the objects a later pass is given.
+	public Command view()
+	{
+		int root = root();
+		if(kinds[root] != DECLARATION_LIST)
+			return toCommand(root);
+		int count = 0;
+		for(int child = firstChildren[root]; child != NONE; child = nextSiblings[child])
+			count++;
+		final int[] declarations = new int[count];
+		count = 0;
+		for(int child = firstChildren[root]; child != NONE; child = nextSiblings[child])
+			declarations[count++] = child;
+		List<Declaration> list = new AbstractList<Declaration>()
+		{
+			@Override
+			public Declaration get(int index)
+			{
+				return (Declaration)toCommand(declarations[index]);
+			}
+
+			@Override
+			public int size()
+			{
+				return declarations.length;
+			}
+		};
+		DeclarationList program = new DeclarationList(lineNumbers[root], charPositions[root], list);
+		program.id = id(root);
+		return program;
+	}
+
+	// The text that toString gives for the node's Command, without building
+	// it.
+	public String describe(int node)
+	{
+		String text = COMMAND_CLASSES[kinds[node]].getName() + "(" + lineNumbers[node] + "," + charPositions[node] + ")";
+		switch(kinds[node])
+		{
+		case ADDRESS_OF: return text + "[" + symbol(node).getName() + "]";
+		case LITERAL_BOOL: return text + "[" + (payloads[node] != 0 ? LiteralBool.Value.TRUE : LiteralBool.Value.FALSE) + "]";
+		case LITERAL_FLOAT: return text + "[" + Float.intBitsToFloat(payloads[node]) + "]";
+		case LITERAL_INT: return text + "[" + payloads[node] + "]";
+		case VARIABLE_DECLARATION:
+		case ARRAY_DECLARATION:
+		case CALL: return text + "[" + symbol(node) + "]";
+		case FUNCTION_DEFINITION:
+		{
+			ArrayList<Symbol> parameters = new ArrayList<Symbol>();
+			for(int child = firstChildren[node]; kinds[child] == PARAMETER; child = nextSiblings[child])
+				parameters.add(symbol(child));
+			return text + "[" + symbol(node) + ", " + parameters + "]";
+		}
+		case COMPARISON: return text + "[" + OPERATIONS[payloads[node]] + "]";
+		case ERROR: return text + "[" + message(node) + "]";
+		default: return text;
+		}
+	}
+
+	public void accept(CommandVisitor visitor)
+	{
+		view().accept(visitor);
+	}
+
+	private Command build(int node, Command[] built, int from)
+	{
+		int lineNum = lineNumbers[node], charPos = charPositions[node];
+		int first = firstChildren[node];
+		Command left = first != NONE ? built[first - from] : null;
+		Command right = first != NONE && nextSiblings[first] != NONE ? built[nextSiblings[first] - from] : null;
+		switch(kinds[node])
+		{
+		case DECLARATION_LIST:
+		{
+			ArrayList<Declaration> declarations = new ArrayList<Declaration>();
+			for(int child = first; child != NONE; child = nextSiblings[child])
+				declarations.add((Declaration)built[child - from]);
+			return new DeclarationList(lineNum, charPos, declarations);
+		}
+		case STATEMENT_LIST:
+		{
+			ArrayList<Statement> statements = new ArrayList<Statement>();
+			for(int child = first; child != NONE; child = nextSiblings[child])
+				statements.add((Statement)built[child - from]);
+			return new StatementList(lineNum, charPos, statements);
+		}
+		case EXPRESSION_LIST:
+		{
+			ArrayList<Expression> expressions = new ArrayList<Expression>();
+			for(int child = first; child != NONE; child = nextSiblings[child])
+				expressions.add((Expression)built[child - from]);
+			return new ExpressionList(lineNum, charPos, expressions);
+		}
+		case ADDRESS_OF: return new AddressOf(lineNum, charPos, symbol(node));
+		case LITERAL_BOOL: return new LiteralBool(lineNum, charPos, payloads[node] != 0 ? LiteralBool.Value.TRUE : LiteralBool.Value.FALSE);
+		case LITERAL_FLOAT: return new LiteralFloat(lineNum, charPos, Float.intBitsToFloat(payloads[node]));
+		case LITERAL_INT: return new LiteralInt(lineNum, charPos, payloads[node]);
+		case VARIABLE_DECLARATION: return new VariableDeclaration(lineNum, charPos, symbol(node));
+		case ARRAY_DECLARATION: return new ArrayDeclaration(lineNum, charPos, symbol(node));
+		case FUNCTION_DEFINITION:
+		{
+			// The parameters come first, then the body.
+			ArrayList<Symbol> parameters = new ArrayList<Symbol>();
+			int child = first;
+			for(; kinds[child] == PARAMETER; child = nextSiblings[child])
+				parameters.add(symbol(child));
+			return new FunctionDefinition(lineNum, charPos, symbol(node), parameters, (StatementList)built[child - from]);
+		}
+		case PARAMETER: return null;
+		case ADDITION: return new Addition(lineNum, charPos, (Expression)left, (Expression)right);
+		case SUBTRACTION: return new Subtraction(lineNum, charPos, (Expression)left, (Expression)right);
+		case MULTIPLICATION: return new Multiplication(lineNum, charPos, (Expression)left, (Expression)right);
+		case DIVISION: return new Division(lineNum, charPos, (Expression)left, (Expression)right);
+		case LOGICAL_AND: return new LogicalAnd(lineNum, charPos, (Expression)left, (Expression)right);
+		case LOGICAL_OR: return new LogicalOr(lineNum, charPos, (Expression)left, (Expression)right);
+		case LOGICAL_NOT: return new LogicalNot(lineNum, charPos, (Expression)left);
+		case COMPARISON: return new Comparison(lineNum, charPos, (Expression)left, OPERATIONS[payloads[node]], (Expression)right);
+		case DEREFERENCE: return new Dereference(lineNum, charPos, (Expression)left);
+		case INDEX: return new Index(lineNum, charPos, (Expression)left, (Expression)right);
+		case ASSIGNMENT: return new Assignment(lineNum, charPos, (Expression)left, (Expression)right);
+		case CALL: return new Call(lineNum, charPos, symbol(node), (ExpressionList)left);
+		case IF_ELSE_BRANCH:
+			return new IfElseBranch(lineNum, charPos, (Expression)left, (StatementList)right,
+				(StatementList)built[nextSiblings[nextSiblings[first]] - from]);
+		case WHILE_LOOP: return new WhileLoop(lineNum, charPos, (Expression)left, (StatementList)right);
+		case RETURN: return new Return(lineNum, charPos, (Expression)left);
+		case ERROR: return new Error(lineNum, charPos, message(node));
+		default: throw new IllegalStateException("Unknown node kind " + kinds[node] + ".");
+		}
+	}
+}
@@ -1,12 +1,16 @@
 package ast;
 
 import java.util.List;
+import java.util.function.Supplier;
 import crux.Symbol;
 
 public class FunctionDefinition extends Command implements Declaration {
 
 	private Symbol func;
 	private StatementList body;
+	// Parses the body the first time it is asked for, when the body was
+	// skipped while parsing the program's outline.
+	private Supplier<StatementList> lazyBody;
 	private List<Symbol> args;
 	
 	public FunctionDefinition(int lineNum, int charPos, Symbol func, List<Symbol> args, StatementList body)
@@ -17,13 +21,26 @@ public class FunctionDefinition extends Command implements Declaration {
 		this.body = body;
 	}
 	
+	public FunctionDefinition(int lineNum, int charPos, Symbol func, List<Symbol> args, Supplier<StatementList> lazyBody)
+	{
+		super(lineNum, charPos);
+		this.func = func;
+		this.args = args;
+		this.lazyBody = lazyBody;
+	}
+	
 	public Symbol function()
 	{
 		return func;
 	}
 	
-	public StatementList body()
+	public synchronized StatementList body()
 	{
+		if(lazyBody != null)
+		{
+			body = lazyBody.get();
+			lazyBody = null;
+		}
 		return body;
 	}
 	
@@ -0,0 +1,112 @@
+package ast;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+// A side table holding a value for each of some Commands, in an array
+// indexed by their ids rather than in a map keyed by the objects. Each
+// tree numbers its commands densely from 0, so a table made with the
+// tree's command count holds all of them without growing: one reference
+// per node. Otherwise the array only spans the range of ids the table has
+// been given values for. Commands built by hand rather than from a FlatAst
+// have no id, and the table keeps their values in a map keyed by the
+// objects instead.
+public class NodeTable<T>
+{
+	private static final Object[] EMPTY = new Object[0];
+	private static final int MIN_CAPACITY = 64;
+	
+	private Object[] values;
+	private int base;
+	private IdentityHashMap<Command, Object> unnumbered;
+	
+	public NodeTable()
+	{
+		values = EMPTY;
+	}
+	
+	public NodeTable(int capacity)
+	{
+		values = capacity > 0 ? new Object[capacity] : EMPTY;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public T get(Command node)
+	{
+		if(node.id() == FlatAst.NONE)
+			return unnumbered != null ? (T)unnumbered.get(node) : null;
+		int index = node.id() - base;
+		return index >= 0 && index < values.length ? (T)values[index] : null;
+	}
+	
+	public void put(Command node, T value)
+	{
+		int id = node.id();
+		if(id == FlatAst.NONE)
+		{
+			if(unnumbered == null)
+				unnumbered = new IdentityHashMap<Command, Object>();
+			unnumbered.put(node, value);
+			return;
+		}
+		if(values.length == 0)
+		{
+			values = new Object[MIN_CAPACITY];
+			base = id;
+		}
+		else if(id < base || id - base >= values.length)
+			grow(id);
+		values[id - base] = value;
+	}
+	
+	// Copies in every value the other table holds.
+	@SuppressWarnings("unchecked")
+	public void putAll(NodeTable<? extends T> other)
+	{
+		if(other.unnumbered != null)
+		{
+			if(unnumbered == null)
+				unnumbered = new IdentityHashMap<Command, Object>();
+			unnumbered.putAll(other.unnumbered);
+		}
+		for(int i = 0; i < other.values.length; i++)
+		{
+			if(other.values[i] == null)
+				continue;
+			int id = other.base + i;
+			if(values.length == 0)
+			{
+				values = new Object[Math.max(MIN_CAPACITY, other.values.length - i)];
+				base = id;
+			}
+			else if(id < base || id - base >= values.length)
+				grow(id);
+			values[id - base] = (T)other.values[i];
+		}
+	}
+	
+	public void clear()
+	{
+		values = EMPTY;
+		unnumbered = null;
+	}
+	
+	// Widens the range to take in the id, at least doubling it so that
+	// filling a range one id at a time, in either direction, takes
+	// amortized constant time.
+	private void grow(int id)
+	{
+		int length = values.length;
+		if(id >= base)
+		{
+			values = Arrays.copyOf(values, Math.max(length * 2, id - base + 1));
+			return;
+		}
+		int capacity = Math.max(length * 2, base + length - id);
+		Object[] grown = new Object[capacity];
+		int newBase = base + length - capacity;
+		System.arraycopy(values, 0, grown, base - newBase, length);
+		values = grown;
+		base = newBase;
+	}
+}
@@ -1,5 +1,7 @@
 package ast;
 
+import java.util.Arrays;
+
 public class PrettyPrinter implements CommandVisitor {
 	
 	private int depth = 0;
@@ -7,12 +9,46 @@ public class PrettyPrinter implements CommandVisitor {
 	
 	private void println(Object obj)
 	{
-		String indent = new String();
 		for (int i = 0; i < depth; i++) {
-			indent += "  ";
+			sb.append("  ");
 		}
 		
-		sb.append(indent + obj.toString() + "\n");
+		sb.append(obj.toString()).append("\n");
+	}
+	
+	// Prints a flat tree the same way visiting its Command objects does,
+	// but walks it with an explicit stack instead of recursing, so that
+	// trees nested too deeply for the Java call stack can be printed.
+	public void print(FlatAst tree)
+	{
+		int[] nodes = new int[16], depths = new int[16], children = new int[16];
+		int top = 0;
+		nodes[top] = tree.root();
+		depths[top++] = 0;
+		while (top > 0) {
+			int node = nodes[--top];
+			depth = depths[top];
+			println(tree.describe(node));
+			// The parameters of a function are part of its own line.
+			int count = 0;
+			for (int child = tree.firstChild(node); child != FlatAst.NONE; child = tree.nextSibling(child)) {
+				if (tree.kind(child) == FlatAst.PARAMETER)
+					continue;
+				if (count == children.length)
+					children = Arrays.copyOf(children, count * 2);
+				children[count++] = child;
+			}
+			if (top + count > nodes.length) {
+				nodes = Arrays.copyOf(nodes, (top + count) * 2);
+				depths = Arrays.copyOf(depths, (top + count) * 2);
+			}
+			// Pushed last to first, so that they are printed first to last.
+			for (int i = count - 1; i >= 0; i--) {
+				nodes[top] = children[i];
+				depths[top++] = depth + 1;
+			}
+		}
+		depth = 0;
 	}
 	
 	public String toString()
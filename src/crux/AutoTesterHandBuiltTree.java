@@ -0,0 +1,71 @@
+package crux;
+
+import ast.Addition;
+import ast.Command;
+import ast.Comparison;
+import ast.Expression;
+import ast.LiteralFloat;
+import ast.LiteralInt;
+import ast.Multiplication;
+import types.TypeChecker;
+
+// Checks that the TypeChecker gives the same results for trees built by
+// hand with the ast constructors, whose nodes have no ids, as for parsed
+// ones: every node keeps its own type, and errors are reported.
+public class AutoTesterHandBuiltTree {
+
+	// Whether checking the tree reports the expected errors and gives each
+	// of the nodes the expected type, in order.
+	public static boolean test(String name, Command tree, String report, Command[] nodes, String[] types) {
+		TypeChecker tc = new TypeChecker();
+		tc.check(tree);
+		boolean pass = tc.errorReport().equals(report);
+		for (int i = 0; i < nodes.length; ++i) {
+			Object type = tc.getType(nodes[i]);
+			if (type == null || !type.toString().equals(types[i]))
+				pass = false;
+		}
+		if (!pass) {
+			System.out.println("failed: " + name);
+			System.out.println(tc.errorReport());
+			for (Command node : nodes)
+				System.out.println(node + ": " + tc.getType(node));
+		}
+		return pass;
+	}
+
+	public static void main(String args[]) {
+		int cases = 0, passed = 0;
+
+		// 1 + 2.0
+		LiteralInt one = new LiteralInt(1, 1, 1);
+		LiteralFloat two = new LiteralFloat(1, 5, 2f);
+		Addition mixed = new Addition(1, 1, one, two);
+		++cases;
+		if (test("int plus float", mixed, "TypeError(1,1)[Cannot add int with float.]\n",
+				new Command[] { one, two }, new String[] { "int", "float" }))
+			++passed;
+
+		// (1 + 2) * 3 < 4, with a made-up operator position for each node.
+		Expression sum = new Addition(1, 4, new LiteralInt(1, 2, 1), new LiteralInt(1, 6, 2));
+		Expression product = Command.newExpression(sum, Token.Kind.MUL, 1, 9, new LiteralInt(1, 11, 3));
+		Expression comparison = Command.newExpression(product, Token.Kind.LESS_THAN, 1, 13, new LiteralInt(1, 15, 4));
+		++cases;
+		if (test("nested expression", (Command)comparison, "",
+				new Command[] { (Command)sum, (Command)product, (Command)comparison }, new String[] { "int", "int", "bool" }))
+			++passed;
+
+		// 1.0 * 2 < 1, where the error is two levels down. The checker words
+		// every arithmetic error as an addition.
+		Expression floatProduct = new Multiplication(2, 5, new LiteralFloat(2, 1, 1f), new LiteralInt(2, 7, 2));
+		Expression floatComparison = new Comparison(2, 9, floatProduct, Comparison.Operation.LT, new LiteralInt(2, 11, 1));
+		++cases;
+		if (test("nested error", (Command)floatComparison, "TypeError(2,5)[Cannot add float with int.]\n"
+				+ "TypeError(2,9)[Cannot compare ErrorType(Cannot add float with int.) with int.]\n",
+				new Command[0], new String[0]))
+			++passed;
+
+		System.out.println("Hand-built trees checked: " + passed + "/" + cases);
+		System.exit(passed == cases ? 0 : 1);
+	}
+}
@@ -0,0 +1,127 @@
+package crux;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import ast.Command;
+import ast.Declaration;
+import ast.DeclarationList;
+import ast.FunctionDefinition;
+import types.TypeCheckCache;
+import types.TypeChecker;
+
+// Checks that TypeChecker.checkIncrementally reports what check() does
+// while reusing what it found for functions that did not change, and
+// prints how many functions each run reused and checked. Each case checks
+// a program, then an edited copy of it with the same cache.
+public class AutoTesterIncrementalCheck {
+
+	// Moving a function, here by adding one above it, reuses it, with its
+	// error moved down by as many lines.
+	public static final String MOVED_BEFORE =
+		"func addIntBool(a:int, b:bool) : void {\n" +
+		"  var c : int;\n" +
+		"  let c = a + b;\n" +
+		"}\n" +
+		"\n" +
+		"func main() : void {\n" +
+		"  ::addIntBool(1, true);\n" +
+		"}\n";
+	public static final String MOVED_AFTER =
+		"func added() : void {\n" +
+		"  ::println();\n" +
+		"}\n" +
+		"\n" +
+		MOVED_BEFORE;
+	public static final String MOVED_REPORT =
+		"TypeError(7,13)[Cannot add int with bool.]\n" +
+		"TypeError(7,3)[Cannot assign ErrorType(Cannot add int with bool.) to Address(int).]\n";
+
+	// Changing a function's signature checks it and its callers again,
+	// and the caller's call is now an error, but other functions are
+	// reused.
+	public static final String SIGNATURE_BEFORE =
+		"func scale(x:int) : int {\n" +
+		"  return x * 2;\n" +
+		"}\n" +
+		"\n" +
+		"func other() : void {\n" +
+		"  ::printInt(1);\n" +
+		"}\n" +
+		"\n" +
+		"func main() : void {\n" +
+		"  ::printInt(::scale(3));\n" +
+		"  ::other();\n" +
+		"}\n";
+	public static final String SIGNATURE_AFTER = SIGNATURE_BEFORE
+		.replace("func scale(x:int) : int {\n  return x * 2;", "func scale(x:float) : int {\n  return 2;");
+	public static final String SIGNATURE_REPORT =
+		"TypeError(10,14)[Cannot call func(TypeList(float)):int using TypeList(int).]\n" +
+		"TypeError(10,3)[Cannot call func(TypeList(int)):void using TypeList(ErrorType(Cannot call func(TypeList(float)):int using TypeList(int).)).]\n";
+
+	public static Command parse(String text) {
+		return new Parser(new TableScanner(new SourceBuffer(text)).scanAll(), false).parse();
+	}
+
+	// Whether checking the edited program after the original reports what
+	// check() does, and the expected report, after reusing and checking
+	// the expected numbers of functions.
+	public static boolean test(String name, String before, String after, String report, int reused, int checked) {
+		TypeCheckCache cache = new TypeCheckCache();
+		new TypeChecker().checkIncrementally(parse(before), cache);
+		TypeChecker incremental = new TypeChecker();
+		incremental.checkIncrementally(parse(after), cache);
+		TypeChecker full = new TypeChecker();
+		full.check(parse(after));
+
+		System.out.println(name + ": reused " + cache.reused() + ", checked " + cache.checked());
+		boolean pass = cache.reused() == reused && cache.checked() == checked
+			&& incremental.errorReport().equals(full.errorReport())
+			&& (report == null || incremental.errorReport().equals(report));
+		if (!pass) {
+			System.out.println("failed: " + name + ", expected reused " + reused + ", checked " + checked);
+			System.out.println(incremental.errorReport());
+		}
+		return pass;
+	}
+
+	// Checking a program again without changes reuses all of its
+	// functions. Programs that do not parse are left out.
+	public static boolean test(File file) throws IOException {
+		String text = Files.readString(file.toPath());
+		Command program = parse(text);
+		if (!(program instanceof DeclarationList))
+			return true;
+		int functions = 0;
+		for (Declaration declaration : (DeclarationList)program)
+			if (declaration instanceof FunctionDefinition)
+				++functions;
+		return test(file.getName() + " unchanged", text, text, null, functions, 0);
+	}
+
+	public static void main(String args[]) throws IOException {
+		int cases = 0, passed = 0;
+
+		++cases;
+		if (test("moved function", MOVED_BEFORE, MOVED_AFTER, MOVED_REPORT, 2, 1))
+			++passed;
+		++cases;
+		if (test("changed signature", SIGNATURE_BEFORE, SIGNATURE_AFTER, SIGNATURE_REPORT, 1, 2))
+			++passed;
+
+		File[] files = new File(args.length > 0 ? args[0] : "tests").listFiles((dir, name) -> name.endsWith(".crx"));
+		if (files != null) {
+			Arrays.sort(files);
+			for (File file : files) {
+				++cases;
+				if (test(file))
+					++passed;
+			}
+		}
+
+		System.out.println("Incremental check matched check(): " + passed + "/" + cases);
+		System.exit(passed == cases ? 0 : 1);
+	}
+}
@@ -0,0 +1,58 @@
+package crux;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import types.TypeChecker;
+
+// Checks that TypeChecker.checkInParallel reports the same errors as
+// check(), with the same number dropped, on every program in tests/ and
+// with every error cap from 0 to MAX_CAP as well as none.
+public class AutoTesterParallelCheck {
+
+	public static final int MAX_CAP = 5;
+
+	// Whether the two modes agree on the program at the cap.
+	public static boolean test(File file, int maxErrors, ForkJoinPool pool) throws IOException {
+		TokenBuffer tokens = new TableScanner(file.getPath()).scanAll();
+		Parser p = new Parser(tokens, false);
+		p.parse();
+		if (p.hasError())
+			return true;
+
+		TypeChecker sequential = new TypeChecker(maxErrors);
+		sequential.check(new Parser(tokens, false).parse());
+		TypeChecker parallel = new TypeChecker(maxErrors);
+		parallel.checkInParallel(new Parser(tokens, false).parse(), pool);
+		return sequential.hasError() == parallel.hasError()
+			&& sequential.errorReport().equals(parallel.errorReport())
+			&& sequential.diagnostics().dropped() == parallel.diagnostics().dropped();
+	}
+
+	public static void main(String args[]) throws IOException {
+		File[] files = new File(args.length > 0 ? args[0] : "tests").listFiles((dir, name) -> name.endsWith(".crx"));
+		if (files == null) {
+			System.err.println("No tests directory.");
+			System.exit(2);
+		}
+		Arrays.sort(files);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+
+		int cases = 0, passed = 0;
+		for (File file : files) {
+			for (int cap = 0; cap <= MAX_CAP + 1; ++cap) {
+				int maxErrors = cap <= MAX_CAP ? cap : Diagnostics.UNLIMITED;
+				++cases;
+				if (test(file, maxErrors, pool))
+					++passed;
+				else
+					System.out.println("failed: " + file.getName() + (cap <= MAX_CAP ? " with -max-errors=" + cap : " without a cap"));
+			}
+		}
+
+		System.out.println("Parallel check matched check(): " + passed + "/" + cases);
+		System.exit(passed == cases ? 0 : 1);
+	}
+}
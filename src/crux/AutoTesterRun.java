@@ -0,0 +1,86 @@
+package crux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import types.TypeChecker;
+
+// Runs each program in tests/run on every interpreter that -run selects,
+// reading the matching .in file, if there is one, as its input, and checks
+// that it prints what its .out file holds, which is what the Compiler
+// prints for it. The programs cover recursion, the short-circuit of and
+// and or, float arithmetic, multi-dimensional arrays, reading input and
+// runtime errors.
+public class AutoTesterRun {
+
+	public static final String[] INTERPRETERS = {
+		Compiler.TREE_INTERPRETER, Compiler.BYTECODE_INTERPRETER, Compiler.JVM_INTERPRETER
+	};
+
+	// What running the program prints, with a runtime error reported the
+	// way Compiler reports it.
+	public static String run(String interpreterName, File file, String input) throws IOException {
+		Parser p = new Parser(new TableScanner(file.getPath()).scanAll(), false);
+		ast.FlatAst syntaxTree = p.parseFlat();
+		if (p.hasError())
+			return "Error parsing file.\n" + p.errorReport();
+		ast.Command program = syntaxTree.view();
+		TypeChecker tc = new TypeChecker(Diagnostics.UNLIMITED, syntaxTree.commandCount());
+		if (!tc.check(program))
+			return "Error type-checking file.\n" + tc.errorReport();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes, false, "UTF-8");
+		StringReader in = new StringReader(input);
+		try {
+			if (interpreterName.equals(Compiler.TREE_INTERPRETER))
+				new interpreter.Interpreter(program, tc).run(in, out);
+			else if (interpreterName.equals(Compiler.BYTECODE_INTERPRETER))
+				new interpreter.VirtualMachine(program, tc).run(in, out);
+			else
+				new interpreter.JvmBackend(program, tc).run(in, out);
+		} catch (interpreter.CruxRuntimeException e) {
+			out.println();
+			out.println(e.getMessage());
+		}
+		out.flush();
+		return bytes.toString("UTF-8");
+	}
+
+	public static boolean test(String interpreterName, File file) throws IOException {
+		String name = file.getPath().substring(0, file.getPath().length() - ".crx".length());
+		File inputFile = new File(name + ".in");
+		String input = inputFile.exists() ? Files.readString(inputFile.toPath()) : "";
+		String expected = Files.readString(new File(name + ".out").toPath());
+		String output = run(interpreterName, file, input);
+		return output.replace("\r\n", "\n").equals(expected.replace("\r\n", "\n"));
+	}
+
+	public static void main(String args[]) throws IOException {
+		File[] files = new File(args.length > 0 ? args[0] : "tests/run").listFiles((dir, name) -> name.endsWith(".crx"));
+		if (files == null) {
+			System.err.println("No tests/run directory.");
+			System.exit(2);
+		}
+		Arrays.sort(files);
+
+		int cases = 0, passed = 0;
+		for (File file : files) {
+			for (String interpreterName : INTERPRETERS) {
+				++cases;
+				if (test(interpreterName, file))
+					++passed;
+				else
+					System.out.println("failed: " + file.getName() + " with -run=" + interpreterName);
+			}
+		}
+
+		System.out.println("Passed Run Cases: " + passed + "/" + cases);
+		System.exit(passed == cases ? 0 : 1);
+	}
+}
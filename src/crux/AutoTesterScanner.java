@@ -0,0 +1,114 @@
+package crux;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+// Checks that the table-driven and parallel scanners produce exactly the
+// same token stream as the state-object scanner, and that incremental
+// rescans match full ones. Scans the files named on
+// the command line, or the public test cases when none are given.
+public class AutoTesterScanner {
+
+	public static final int PASS = 0;
+	public static final int FAIL = 1;
+	public static final int NOT_ACCESSABLE = 2;
+	
+	// Deliberately tiny, so that even the test cases get cut
+	// into many chunks by the parallel scanner.
+	public static final int PARALLEL_CHUNK_LENGTH = 16;
+	
+	// Inserted at, then removed from, every offset of every file to
+	// exercise the incremental scanner. It joins and splits lines,
+	// tokens and comments depending on where it lands.
+	public static final String EDIT_TEXT = "/a=\n";
+
+	public static int test(String inputFilename, TokenSource expected, TokenSource actual)
+	{
+		int index = 0;
+		while(true)
+		{
+			Token expectedToken = expected.next(),
+				actualToken = actual.next();
+			if(!sameToken(expectedToken, actualToken))
+			{
+				System.out.println(String.format("%s: token %d expected %s but found %s.",
+					inputFilename, index, describe(expectedToken), describe(actualToken)));
+				return FAIL;
+			}
+			if(expectedToken.getKind() == Token.Kind.EOF)
+			{
+				// Exhausted scanners must keep reporting the same EOF.
+				return sameToken(expected.next(), actual.next()) ? PASS : FAIL;
+			}
+			index++;
+		}
+	}
+
+	// Checks that the incremental scanner agrees with a full rescan
+	// after every edit.
+	public static int testEdits(String inputFilename) throws IOException
+	{
+		IncrementalScanner scanner = new IncrementalScanner(SourceBuffer.map(inputFilename));
+		int length = scanner.source().length();
+		for(int offset = 0; offset <= length; offset++)
+		{
+			TokenBuffer inserted = scanner.edit(offset, 0, EDIT_TEXT);
+			if(test(inputFilename, new TableScanner(scanner.source()).scanAll().stream(), inserted.stream()) != PASS)
+				return FAIL;
+			TokenBuffer removed = scanner.edit(offset, EDIT_TEXT.length(), "");
+			if(test(inputFilename, new TableScanner(scanner.source()).scanAll().stream(), removed.stream()) != PASS)
+				return FAIL;
+		}
+		return PASS;
+	}
+
+	public static boolean sameToken(Token a, Token b)
+	{
+		return a.getKind() == b.getKind()
+			&& a.getLexeme().equals(b.getLexeme())
+			&& a.getLineNumber() == b.getLineNumber()
+			&& a.getCharPos() == b.getCharPos();
+	}
+
+	public static String describe(Token token)
+	{
+		return String.format("%s(%d,%d)[%s]", token.getKind(), token.getLineNumber(), token.getCharPos(), token.getLexeme());
+	}
+
+	public static void main(String args[]) {
+		if(args.length == 0)
+		{
+			args = new String[15];
+			for(int i = 0; i < args.length; i++)
+				args[i] = String.format("tests/test%02d.crx", i + 1);
+		}
+
+		int passed = 0;
+		for(String inputFilename : args)
+		{
+			int result;
+			try
+			{
+				result = test(inputFilename, new Scanner(inputFilename), new TableScanner(inputFilename));
+				if(result == PASS)
+				{
+					TokenBuffer parallelTokens = ParallelScanner.scan(
+						SourceBuffer.map(inputFilename), ForkJoinPool.commonPool(), PARALLEL_CHUNK_LENGTH);
+					result = test(inputFilename, new Scanner(inputFilename), parallelTokens.stream());
+				}
+				if(result == PASS)
+					result = testEdits(inputFilename);
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+				result = NOT_ACCESSABLE;
+			}
+			if(result == PASS)
+				passed++;
+			else
+				System.out.println("failed:" + inputFilename);
+		}
+		System.out.println("Equivalent token streams: " + passed + "/" + args.length);
+	}
+}
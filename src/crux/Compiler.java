@@ -1,37 +1,213 @@
 package crux;
 
-import java.io.FileReader;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+
+import crux.scanning.Skipper;
 
 public class Compiler 
 {
 	public static final String uciNetID = "dtetreau";
 	public static final String studentID = "35571095";
 	public static final String studentName = "Drake Tetreault";
+	
+	// Scanner engines selectable with -scanner=<name>.
+	public static final String STATE_SCANNER = "states";
+	public static final String TABLE_SCANNER = "table";
+	public static final String PARALLEL_SCANNER = "parallel";
+	public static final String VECTOR_SCANNER = "vector";
+	
+	// Interpreters selectable with -run=<name>.
+	public static final String TREE_INTERPRETER = "tree";
+	public static final String BYTECODE_INTERPRETER = "bytecode";
+	public static final String JVM_INTERPRETER = "jvm";
     
     public static void main(String[] args)
     {
-        String sourceFilename = args[0];
+        String sourceFilename = null;
+        String scannerName = STATE_SCANNER;
+        boolean buffered = false;
+        boolean explicitStack = false;
+        boolean parallelBodies = false;
+        boolean parallelCheck = false;
+        int maxErrors = Diagnostics.UNLIMITED;
+        String interpreterName = null;
+        for (String arg : args) {
+            if (arg.startsWith("-scanner=")) {
+                scannerName = arg.substring("-scanner=".length());
+                if (!scannerName.equals(STATE_SCANNER)
+                    && !scannerName.equals(TABLE_SCANNER)
+                    && !scannerName.equals(PARALLEL_SCANNER)
+                    && !scannerName.equals(VECTOR_SCANNER)) {
+                    System.err.println("Unknown scanner \"" + scannerName + "\". Expected "
+                        + STATE_SCANNER + ", " + TABLE_SCANNER + ", " + PARALLEL_SCANNER + " or " + VECTOR_SCANNER + ".");
+                    System.exit(-1);
+                }
+            }
+            else if (arg.equals("-buffered"))
+                buffered = true;
+            else if (arg.equals("-stack"))
+                explicitStack = true;
+            else if (arg.equals("-parallel-bodies"))
+                parallelBodies = true;
+            else if (arg.equals("-parallel-check"))
+                parallelCheck = true;
+            else if (arg.startsWith("-max-errors=")) {
+                // At least one error is always shown; leave the flag out to
+                // show them all.
+                String value = arg.substring("-max-errors=".length());
+                maxErrors = value.matches("[0-9]{1,9}") ? Integer.parseInt(value) : 0;
+                if (maxErrors < 1) {
+                    System.err.println("Invalid error cap \"" + value + "\". Expected a whole number of at least 1.");
+                    System.exit(-1);
+                }
+            }
+            else if (arg.equals("-run"))
+                interpreterName = TREE_INTERPRETER;
+            else if (arg.startsWith("-run=")) {
+                interpreterName = arg.substring("-run=".length());
+                if (!interpreterName.equals(TREE_INTERPRETER)
+                    && !interpreterName.equals(BYTECODE_INTERPRETER)
+                    && !interpreterName.equals(JVM_INTERPRETER)) {
+                    System.err.println("Unknown interpreter \"" + interpreterName + "\". Expected "
+                        + TREE_INTERPRETER + ", " + BYTECODE_INTERPRETER + " or " + JVM_INTERPRETER + ".");
+                    System.exit(-1);
+                }
+            }
+            else
+                sourceFilename = arg;
+        }
         
-        Scanner s = null;
+        Parser p = null;
         try {
-            s = new Scanner(new FileReader(sourceFilename));
+            // A buffered parse scans the whole file into a TokenBuffer
+            // up front instead of pulling Token objects one at a time.
+            // The parallel scanner can only work that way, and
+            // function bodies can only be parsed in parallel that way.
+            // Only the abstract syntax tree is printed, so the
+            // concrete parse tree is not recorded.
+            if (buffered || parallelBodies || scannerName.equals(PARALLEL_SCANNER))
+                p = new Parser(scanTokens(scannerName, sourceFilename), false);
+            else
+                p = new Parser(createScanner(scannerName, sourceFilename), false);
         } catch (IOException e) {
             e.printStackTrace();
             System.err.println("Error accessing the source file: \"" + sourceFilename + "\"");
             System.exit(-2);
         }
+        p.setMaxErrors(maxErrors);
 
-        Parser p = new Parser(s);
-        ast.Command syntaxTree = p.parse();
+        // The explicit-stack parser is not limited by the depth of the
+        // Java call stack, for machine-generated code that nests deeply.
+        // The tree is kept flat and printed straight from the flat form,
+        // which does not recurse either. Type checking and running with
+        // -run still recurse through the tree.
+        ast.FlatAst syntaxTree;
+        if (explicitStack)
+            syntaxTree = p.parseFlatWithExplicitStack();
+        else if (parallelBodies)
+            syntaxTree = p.parseFlatInParallel(ForkJoinPool.commonPool());
+        else
+            syntaxTree = p.parseFlat();
         if (p.hasError()) {
             System.out.println("Error parsing file " + sourceFilename);
             System.out.println(p.errorReport());
+            if (p.diagnostics().dropped() > 0)
+                System.out.println("(" + p.diagnostics().dropped() + " more errors not shown)");
             System.exit(-3);
         }
         
+        if (interpreterName != null)
+            run(interpreterName, syntaxTree, sourceFilename, maxErrors, parallelCheck);
+        
         ast.PrettyPrinter pp = new ast.PrettyPrinter();
-        syntaxTree.accept(pp);
+        pp.print(syntaxTree);
         System.out.println(pp.toString());
     }
-}
\ No newline at end of file
+    
+    // Type checks the program and, if it has no errors, runs it on the
+    // console instead of printing it. Both work on the flat tree's view,
+    // whose declarations keep their ids however often they are built, so
+    // the interpreter finds the checker's types for the nodes it is given.
+    // With -parallel-check, function bodies are checked on the common
+    // pool's threads, with the same report.
+    private static void run(String interpreterName, ast.FlatAst syntaxTree, String sourceFilename, int maxErrors, boolean parallelCheck)
+    {
+        ast.Command program = syntaxTree.view();
+        types.TypeChecker tc = new types.TypeChecker(maxErrors, syntaxTree.commandCount());
+        boolean checked = parallelCheck
+            ? tc.checkInParallel(program, ForkJoinPool.commonPool())
+            : tc.check(program);
+        if (!checked) {
+            System.out.println("Error type-checking file " + sourceFilename);
+            System.out.println(tc.errorReport());
+            if (tc.diagnostics().dropped() > 0)
+                System.out.println("(" + tc.diagnostics().dropped() + " more errors not shown)");
+            System.exit(-4);
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+        try {
+            if (interpreterName.equals(TREE_INTERPRETER))
+                new interpreter.Interpreter(program, tc).run(in, out);
+            else if (interpreterName.equals(BYTECODE_INTERPRETER))
+                new interpreter.VirtualMachine(program, tc).run(in, out);
+            else if (interpreterName.equals(JVM_INTERPRETER))
+                runOnJvm(program, tc, in, out);
+            else
+                throw new IllegalArgumentException("Unknown interpreter \"" + interpreterName + "\".");
+        } catch (interpreter.CruxRuntimeException e) {
+            System.out.println();
+            System.out.println(e.getMessage());
+            System.exit(-5);
+        } catch (StackOverflowError e) {
+            System.out.println();
+            System.out.println("RuntimeError[The call stack overflowed.]");
+            System.exit(-5);
+        }
+        System.exit(0);
+    }
+    
+    // Programs that are too large for the JVM's limits on a class run on
+    // the bytecode interpreter instead, which gives the same output.
+    private static void runOnJvm(ast.Command program, types.TypeChecker tc, BufferedReader in, PrintStream out)
+    {
+        interpreter.JvmBackend backend;
+        try {
+            backend = new interpreter.JvmBackend(program, tc);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + " Running it on the bytecode interpreter instead.");
+            new interpreter.VirtualMachine(program, tc).run(in, out);
+            return;
+        }
+        backend.run(in, out);
+    }
+    
+    public static TokenSource createScanner(String scannerName, String sourceFilename) throws IOException
+    {
+        if (scannerName.equals(STATE_SCANNER))
+            return new Scanner(sourceFilename);
+        if (scannerName.equals(TABLE_SCANNER))
+            return new TableScanner(sourceFilename);
+        if (scannerName.equals(VECTOR_SCANNER))
+            return new TableScanner(SourceBuffer.map(sourceFilename), Skipper.vector());
+        throw new IllegalArgumentException("Unknown scanner \"" + scannerName + "\".");
+    }
+    
+    public static TokenBuffer scanTokens(String scannerName, String sourceFilename) throws IOException
+    {
+        if (scannerName.equals(TABLE_SCANNER))
+            return new TableScanner(sourceFilename).scanAll();
+        if (scannerName.equals(VECTOR_SCANNER))
+            return new TableScanner(SourceBuffer.map(sourceFilename), Skipper.vector()).scanAll();
+        if (scannerName.equals(PARALLEL_SCANNER))
+            return ParallelScanner.scan(sourceFilename);
+        return TokenBuffer.fill(createScanner(scannerName, sourceFilename));
+    }
+}
@@ -0,0 +1,93 @@
+package crux;
+
+// One error found in a program: what kind of error it is, where it is,
+// and the arguments of its message. The message is only formatted, and the
+// symbols that were in scope only listed, when the report is rendered, so
+// errors that nobody reads cost little more than the object.
+public class Diagnostic
+{
+	public enum Code
+	{
+		SYNTAX_ERROR("SyntaxError"),
+		RESOLVE_SYMBOL_ERROR("ResolveSymbolError"),
+		DECLARE_SYMBOL_ERROR("DeclareSymbolError"),
+		TYPE_ERROR("TypeError");
+		
+		public final String label;
+		
+		private Code(String label)
+		{
+			this.label = label;
+		}
+	}
+	
+	private final Code code;
+	private final int lineNumber, charPos;
+	private final String template;
+	private final Object[] arguments;
+	// The symbols in scope where the error was found, which the report
+	// lists after the message, or null.
+	private final ScopeStack.Snapshot scopes;
+	private String message;
+	
+	public Diagnostic(Code code, int lineNumber, int charPos, String template, Object... arguments)
+	{
+		this(code, lineNumber, charPos, null, template, arguments);
+	}
+	
+	public Diagnostic(Code code, int lineNumber, int charPos, ScopeStack.Snapshot scopes, String template, Object... arguments)
+	{
+		this.code = code;
+		this.lineNumber = lineNumber;
+		this.charPos = charPos;
+		this.scopes = scopes;
+		this.template = template;
+		this.arguments = arguments;
+	}
+	
+	// The same error, the given number of lines further down.
+	public Diagnostic movedBy(int lines)
+	{
+		Diagnostic moved = new Diagnostic(code, lineNumber + lines, charPos, scopes, template, arguments);
+		moved.message = message;
+		return moved;
+	}
+	
+	public Code code() { return code; }
+	
+	public int lineNumber() { return lineNumber; }
+	
+	public int charPosition() { return charPos; }
+	
+	public Object[] arguments() { return arguments.clone(); }
+	
+	// The message formatted from the template and arguments. The
+	// arguments must not change before it is asked for.
+	public String message()
+	{
+		if(message == null)
+			message = String.format(template, arguments);
+		return message;
+	}
+	
+	// Appends the error as it appears in a report: its label, position
+	// and message, then the symbols that were in scope, if kept.
+	public void render(StringBuilder b)
+	{
+		b.append(code.label).append('(').append(lineNumber).append(',').append(charPos).append(")[");
+		b.append(message()).append("]\n");
+		if(scopes != null)
+		{
+			scopes.appendHistory(b);
+			b.append('\n');
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder b = new StringBuilder();
+		render(b);
+		return b.toString();
+	}
+}
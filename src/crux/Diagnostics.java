@@ -0,0 +1,97 @@
+package crux;
+
+import java.util.ArrayList;
+
+// The errors a pass reports, in order. At most maxErrors of them are kept;
+// any more are only counted, so that a file full of errors cannot make a
+// pass spend its time and memory on a report nobody will read in full.
+public class Diagnostics
+{
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+	
+	private final ArrayList<Diagnostic> kept;
+	private final int maxErrors;
+	// Every error reported, kept or not.
+	private int count;
+	
+	public Diagnostics()
+	{
+		this(UNLIMITED);
+	}
+	
+	public Diagnostics(int maxErrors)
+	{
+		if(maxErrors < 0)
+			throw new IllegalArgumentException("The error cap cannot be negative.");
+		this.maxErrors = maxErrors;
+		kept = new ArrayList<Diagnostic>();
+	}
+	
+	public int maxErrors() { return maxErrors; }
+	
+	// The number of errors reported, including those that were dropped.
+	public int count() { return count; }
+	
+	public boolean isEmpty() { return count == 0; }
+	
+	public int dropped() { return count - kept.size(); }
+	
+	public Iterable<Diagnostic> kept() { return kept; }
+	
+	public void add(Diagnostic diagnostic)
+	{
+		if(count++ < maxErrors)
+			kept.add(diagnostic);
+	}
+	
+	// Whether the cap has been reached, so that the next error will only
+	// be counted. A pass can then call drop() instead of gathering what
+	// only a kept error's message needs.
+	public boolean isFull()
+	{
+		return count >= maxErrors;
+	}
+	
+	// Counts an error once the list is full.
+	public void drop()
+	{
+		count++;
+	}
+	
+	// Adds the errors that were the start-th to the end-th reported to
+	// the other list, including the count of any it dropped.
+	public void append(Diagnostics other, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			if(i < other.kept.size())
+				add(other.kept.get(i));
+			else
+				count++;
+		}
+	}
+	
+	public void append(Diagnostics other)
+	{
+		append(other, 0, other.count);
+	}
+	
+	// Adds all of the other list's errors, moved the given number of
+	// lines down.
+	public void appendMovedBy(Diagnostics other, int lines)
+	{
+		for(Diagnostic diagnostic : other.kept)
+			add(lines == 0 ? diagnostic : diagnostic.movedBy(lines));
+		for(int i = other.kept.size(); i < other.count; i++)
+			count++;
+	}
+	
+	// The errors kept, in the textual format of the original reports.
+	public String report()
+	{
+		StringBuilder b = new StringBuilder();
+		for(Diagnostic diagnostic : kept)
+			diagnostic.render(b);
+		return b.toString();
+	}
+}
@@ -0,0 +1,109 @@
+package crux;
+
+import crux.Token.Kind;
+
+// Keeps the tokens of a source up to date as the source is edited. An
+// edit is rescanned from the start of the first line it touches, and
+// scanning stops as soon as a token begins, past the edit, at the same
+// text and column as a token of the old stream did. From that point on
+// the automaton sees the same chars in the same state as before, so the
+// rest of the old tokens are reused with their offsets and line numbers
+// moved instead of being scanned again.
+public class IncrementalScanner
+{
+	private SourceBuffer source;
+	private TokenBuffer tokens;
+	private int rescannedTokens;
+
+	public IncrementalScanner(SourceBuffer source)
+	{
+		this(new TableScanner(source).scanAll());
+	}
+
+	public IncrementalScanner(TokenBuffer tokens)
+	{
+		if(tokens.source() == null)
+			throw new IllegalArgumentException("Tokens must have been scanned from a source buffer.");
+		this.source = tokens.source();
+		this.tokens = tokens;
+		rescannedTokens = tokens.size();
+	}
+
+	public SourceBuffer source() { return source; }
+
+	public TokenBuffer tokens() { return tokens; }
+
+	// The number of tokens the most recent edit had to scan.
+	public int rescannedTokens() { return rescannedTokens; }
+
+	// Replaces the chars in [offset, offset + removedLength) with the
+	// inserted text and returns the tokens of the edited source.
+	public TokenBuffer edit(int offset, int removedLength, String insertedText)
+	{
+		SourceBuffer edited = source.replace(offset, removedLength, insertedText);
+		char[] chars = edited.chars();
+		int shift = insertedText.length() - removedLength;
+		int editEnd = offset + insertedText.length();
+
+		// A line feed always returns the automaton to its start state,
+		// so scanning can begin at the start of the edited line.
+		int lineStart = offset;
+		while(lineStart > 0 && chars[lineStart - 1] != '\n')
+			lineStart--;
+
+		// Tokens before that line are unaffected. The line's number is
+		// found by counting line feeds on from the last of them.
+		int kept = firstTokenFrom(lineStart);
+		int lineNumber = kept > 0 ? tokens.lineNumber(kept - 1) : 1;
+		for(int i = kept > 0 ? tokens.start(kept - 1) : 0; i < lineStart; i++)
+			if(chars[i] == '\n')
+				lineNumber++;
+
+		TokenBuffer result = new TokenBuffer(edited, tokens.size() + 16, tokens.names());
+		result.addAll(tokens, 0, kept, 0, 0);
+		TableScanner scanner = new TableScanner(edited, lineStart, edited.length());
+		int candidate = firstTokenFrom(offset + removedLength);
+		rescannedTokens = 0;
+		while(true)
+		{
+			int index = scanner.scanInto(result, lineNumber - 1);
+			rescannedTokens++;
+			if(result.kind(index) == Kind.EOF)
+				break;
+			int start = result.start(index);
+			if(start < editEnd)
+				continue;
+			while(candidate < tokens.size() && tokens.start(candidate) + shift < start)
+				candidate++;
+			if(candidate < tokens.size()
+				&& tokens.start(candidate) + shift == start
+				&& tokens.charPos(candidate) == result.charPos(index))
+			{
+				int lineShift = result.lineNumber(index) - tokens.lineNumber(candidate);
+				result.addAll(tokens, candidate + 1, tokens.size(), shift, lineShift);
+				break;
+			}
+		}
+
+		source = edited;
+		tokens = result;
+		return result;
+	}
+
+	// The index of the first token starting at or after the offset.
+	// Token starts strictly increase, ending with the EOF token at the
+	// end of the source, so a binary search finds it.
+	private int firstTokenFrom(int offset)
+	{
+		int low = 0, high = tokens.size() - 1;
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(tokens.start(middle) < offset)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+}
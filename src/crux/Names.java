@@ -0,0 +1,117 @@
+package crux;
+
+import java.util.Arrays;
+
+// The distinct identifiers of a compilation, each numbered with a dense id
+// in the order it was first seen. Scanning interns every identifier here,
+// straight from the source chars, so that each name is held as a String
+// once however often it appears, and the parser's symbol table can index
+// its scopes by id instead of hashing names.
+public class Names
+{
+	public static final int NONE = -1;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private String[] names;
+	private int[] hashes;
+	// An open-addressed table of ids plus one, with zero for empty slots.
+	private int[] slots;
+	private int count;
+
+	public Names()
+	{
+		names = new String[INITIAL_CAPACITY];
+		hashes = new int[INITIAL_CAPACITY];
+		slots = new int[INITIAL_CAPACITY * 2];
+		count = 0;
+	}
+
+	public int size() { return count; }
+
+	public String name(int id) { return names[id]; }
+
+	// Returns the id of the name, numbering it first if it is new.
+	public int intern(String name)
+	{
+		int hash = name.hashCode();
+		int slot = find(hash, name, null, 0, name.length());
+		int entry = slots[slot];
+		return entry != 0 ? entry - 1 : add(name, hash, slot);
+	}
+
+	// As intern(String), for the name in chars [start, start + length),
+	// which is only copied into a String if it is new.
+	public int intern(char[] chars, int start, int length)
+	{
+		// The same hash String.hashCode would give the name.
+		int hash = 0;
+		for(int i = start; i < start + length; i++)
+			hash = 31 * hash + chars[i];
+		int slot = find(hash, null, chars, start, length);
+		int entry = slots[slot];
+		return entry != 0 ? entry - 1 : add(new String(chars, start, length), hash, slot);
+	}
+
+	// Returns the slot holding the name, which is given either as a
+	// String or as a range of chars, or the empty slot it would go in.
+	private int find(int hash, String name, char[] chars, int start, int length)
+	{
+		int mask = slots.length - 1;
+		for(int slot = mix(hash) & mask; ; slot = (slot + 1) & mask)
+		{
+			int entry = slots[slot];
+			if(entry == 0)
+				return slot;
+			int id = entry - 1;
+			if(hashes[id] == hash && names[id].length() == length
+				&& (name != null ? names[id].equals(name) : matches(names[id], chars, start)))
+				return slot;
+		}
+	}
+
+	private static boolean matches(String name, char[] chars, int start)
+	{
+		for(int i = 0; i < name.length(); i++)
+			if(name.charAt(i) != chars[start + i])
+				return false;
+		return true;
+	}
+
+	// Spreads the high bits of String hashes, which differ most between
+	// short names, into the low bits the table is indexed by.
+	private static int mix(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+
+	private int add(String name, int hash, int slot)
+	{
+		if(count == names.length)
+		{
+			names = Arrays.copyOf(names, count * 2);
+			hashes = Arrays.copyOf(hashes, count * 2);
+		}
+		int id = count++;
+		names[id] = name;
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+		// Kept at most half full, so probe runs stay short.
+		if(count * 2 > slots.length)
+			rehash();
+		return id;
+	}
+
+	private void rehash()
+	{
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for(int id = 0; id < count; id++)
+		{
+			int slot = mix(hashes[id]) & mask;
+			while(slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = id + 1;
+		}
+	}
+}
@@ -1,181 +1,75 @@
 package crux;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Set;
 
 import crux.Token.Kind;
 
 public enum NonTerminal 
 {
-	LITERAL(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.INTEGER);
-			add(Token.Kind.FLOAT);
-			add(Token.Kind.TRUE);
-			add(Token.Kind.FALSE);
-		}
-	}),
-	DESIGNATOR(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.IDENTIFIER);
-		}
-	}),
-	TYPE(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.IDENTIFIER);
-		}
-	}),
-	OP0(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.GREATER_EQUAL);
-			add(Token.Kind.LESSER_EQUAL);
-			add(Token.Kind.NOT_EQUAL);
-			add(Token.Kind.EQUAL);
-			add(Token.Kind.GREATER_THAN);
-			add(Token.Kind.LESS_THAN);
-		}
-	}),
-	OP1(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.ADD);
-			add(Token.Kind.SUB);
-			add(Token.Kind.OR);
-		}
-	}),
-	OP2(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.MUL);
-			add(Token.Kind.DIV);
-			add(Token.Kind.AND);
-		}
-	}),
-	CALL_EXPRESSION(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.CALL);
-		}
-	}),
-	EXPRESSION3(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.NOT);
-			add(Token.Kind.OPEN_PAREN);
-			addAll(DESIGNATOR.FirstSet);
-			addAll(CALL_EXPRESSION.FirstSet);
-			addAll(LITERAL.FirstSet);
-		}
-	}),
-	EXPRESSION2(new HashSet<Token.Kind>() {
-		{
-			addAll(EXPRESSION3.FirstSet);
-		}
-	}),
-	EXPRESSION1(new HashSet<Token.Kind>() {
-		{
-			addAll(EXPRESSION2.FirstSet);
-		}
-	}),
-	EXPRESSION0(new HashSet<Token.Kind>() {
-		{
-			addAll(EXPRESSION1.FirstSet);
-		}
-	}),
-	EXPRESSION_LIST(new HashSet<Token.Kind>() {
-		{
-			addAll(EXPRESSION0.FirstSet);
-		}
-	}),
-	PARAMETER(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.IDENTIFIER);
-		}
-	}),
-	PARAMETER_LIST(new HashSet<Token.Kind>() {
-		{
-			addAll(PARAMETER.FirstSet);
-		}
-	}),
-	VARIABLE_DECLARATION(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.VAR);
-		}
-	}),
-	ARRAY_DECLARATION(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.ARRAY);
-		}
-	}),
-	FUNCTION_DEFINITION(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.FUNC);
-		}
-	}),
-	DECLARATION(new HashSet<Token.Kind>() {
-		{
-			addAll(VARIABLE_DECLARATION.FirstSet);
-			addAll(ARRAY_DECLARATION.FirstSet);
-			addAll(FUNCTION_DEFINITION.FirstSet);	
-		}
-	}),
-	DECLARATION_LIST(new HashSet<Token.Kind>() {
-		{
-			addAll(DECLARATION.FirstSet);
-		}
-	}),
-	ASSIGNMENT_STATEMENT(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.LET);
-		}
-	}),
-	CALL_STATEMENT(new HashSet<Token.Kind>() {
-		{
-			addAll(CALL_EXPRESSION.FirstSet);
-		}
-	}),
-	IF_STATEMENT(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.IF);
-		}
-	}),
-	WHILE_STATEMENT(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.WHILE);
-		}
-	}),
-	RETURN_STATEMENT(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.RETURN);
-		}
-	}),
-	STATEMENT(new HashSet<Token.Kind>() {
-		{
-			addAll(VARIABLE_DECLARATION.FirstSet);
-			addAll(CALL_STATEMENT.FirstSet);
-			addAll(ASSIGNMENT_STATEMENT.FirstSet);
-			addAll(IF_STATEMENT.FirstSet);
-			addAll(WHILE_STATEMENT.FirstSet);
-			addAll(RETURN_STATEMENT.FirstSet);
-		}
-	}),
-	STATEMENT_LIST(new HashSet<Token.Kind>() {
-		{
-			addAll(STATEMENT.FirstSet);
-		}
-	}),
-	STATEMENT_BLOCK(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.OPEN_BRACE);
-		}
-	}),
-	PROGRAM(new HashSet<Token.Kind>() {
-		{
-			add(Token.Kind.EOF);
-			addAll(DECLARATION_LIST.FirstSet);
-		}
-	});	
+	LITERAL(first(Kind.INTEGER, Kind.FLOAT, Kind.TRUE, Kind.FALSE)),
+	DESIGNATOR(first(Kind.IDENTIFIER)),
+	TYPE(first(Kind.IDENTIFIER)),
+	OP0(first(Kind.GREATER_EQUAL, Kind.LESSER_EQUAL, Kind.NOT_EQUAL, Kind.EQUAL, Kind.GREATER_THAN, Kind.LESS_THAN)),
+	OP1(first(Kind.ADD, Kind.SUB, Kind.OR)),
+	OP2(first(Kind.MUL, Kind.DIV, Kind.AND)),
+	CALL_EXPRESSION(first(Kind.CALL)),
+	EXPRESSION3(first(Kind.NOT, Kind.OPEN_PAREN), DESIGNATOR, CALL_EXPRESSION, LITERAL),
+	EXPRESSION2(first(), EXPRESSION3),
+	EXPRESSION1(first(), EXPRESSION2),
+	EXPRESSION0(first(), EXPRESSION1),
+	EXPRESSION_LIST(first(), EXPRESSION0),
+	PARAMETER(first(Kind.IDENTIFIER)),
+	PARAMETER_LIST(first(), PARAMETER),
+	VARIABLE_DECLARATION(first(Kind.VAR)),
+	ARRAY_DECLARATION(first(Kind.ARRAY)),
+	FUNCTION_DEFINITION(first(Kind.FUNC)),
+	DECLARATION(first(), VARIABLE_DECLARATION, ARRAY_DECLARATION, FUNCTION_DEFINITION),
+	DECLARATION_LIST(first(), DECLARATION),
+	ASSIGNMENT_STATEMENT(first(Kind.LET)),
+	CALL_STATEMENT(first(), CALL_EXPRESSION),
+	IF_STATEMENT(first(Kind.IF)),
+	WHILE_STATEMENT(first(Kind.WHILE)),
+	RETURN_STATEMENT(first(Kind.RETURN)),
+	STATEMENT(first(), VARIABLE_DECLARATION, CALL_STATEMENT, ASSIGNMENT_STATEMENT, IF_STATEMENT, WHILE_STATEMENT, RETURN_STATEMENT),
+	STATEMENT_LIST(first(), STATEMENT),
+	STATEMENT_BLOCK(first(Kind.OPEN_BRACE)),
+	PROGRAM(first(Kind.EOF), DECLARATION_LIST);
 	
-	public Set<Kind> FirstSet;
+	static
+	{
+		if(Kind.values().length > Long.SIZE)
+			throw new IllegalStateException("Too many token kinds for a first set mask.");
+	}
+	
+	public final Set<Kind> FirstSet;
+	// The first set again, with bit n set if the kind with
+	// ordinal n is in it, so it can be tested without a lookup.
+	public final long FirstMask;
+	
+	// The first set is the given kinds plus the first sets
+	// of the given non-terminals.
+	private NonTerminal(EnumSet<Kind> firstSet, NonTerminal... includes)
+	{
+		for(NonTerminal include : includes)
+			firstSet.addAll(include.FirstSet);
+		long mask = 0;
+		for(Kind kind : firstSet)
+			mask |= 1L << kind.ordinal();
+		FirstSet = Collections.unmodifiableSet(firstSet);
+		FirstMask = mask;
+	}
+	
+	private static EnumSet<Kind> first(Kind... kinds)
+	{
+		EnumSet<Kind> firstSet = EnumSet.noneOf(Kind.class);
+		Collections.addAll(firstSet, kinds);
+		return firstSet;
+	}
 	
-	private NonTerminal(Set<Kind> firstSet)
+	public boolean firstSetContains(Kind kind)
 	{
-		FirstSet = firstSet;
+		return (FirstMask & (1L << kind.ordinal())) != 0;
 	}
-}
\ No newline at end of file
+}
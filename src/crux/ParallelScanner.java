@@ -0,0 +1,102 @@
+package crux;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Scans a large source on several threads at once. No Crux token spans a
+// line break, and a line feed always leaves the scanner in its start state
+// with nothing accumulated, so the source can be cut into chunks just after
+// line feeds and each chunk scanned independently. The chunks' tokens are
+// then concatenated with their line numbers moved past the earlier chunks,
+// giving the same token stream as a sequential scan.
+public class ParallelScanner
+{
+	// Chunks shorter than this are not worth a task of their own.
+	public static final int MIN_CHUNK_LENGTH = 1 << 16;
+
+	public static TokenBuffer scan(String sourceFilename) throws IOException
+	{
+		return scan(SourceBuffer.map(sourceFilename));
+	}
+
+	public static TokenBuffer scan(SourceBuffer source)
+	{
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int chunkLength = Math.max(MIN_CHUNK_LENGTH, source.length() / (pool.getParallelism() * 4));
+		return scan(source, pool, chunkLength);
+	}
+
+	public static TokenBuffer scan(SourceBuffer source, ForkJoinPool pool, int chunkLength)
+	{
+		List<ChunkTask> chunks = new ArrayList<ChunkTask>();
+		int start = 0;
+		do
+		{
+			int end = chunkEnd(source, start, chunkLength);
+			chunks.add(new ChunkTask(source, start, end));
+			start = end;
+		}
+		while(start < source.length());
+
+		if(chunks.size() == 1)
+			return new TableScanner(source).scanAll();
+
+		for(ChunkTask chunk : chunks)
+			pool.execute(chunk);
+		int tokenCount = 0;
+		for(ChunkTask chunk : chunks)
+			tokenCount += chunk.join().size();
+
+		// Every chunk ends with an EOF token, but only the last chunk's
+		// EOF is the real end of the input.
+		TokenBuffer tokens = new TokenBuffer(source, tokenCount - chunks.size() + 1);
+		int lineShift = 0;
+		for(int i = 0; i < chunks.size(); i++)
+		{
+			ChunkTask chunk = chunks.get(i);
+			TokenBuffer chunkTokens = chunk.join();
+			int count = i < chunks.size() - 1 ? chunkTokens.size() - 1 : chunkTokens.size();
+			tokens.addAll(chunkTokens, 0, count, 0, lineShift);
+			lineShift += chunk.lineFeeds;
+		}
+		return tokens;
+	}
+
+	// Returns the end of the chunk beginning at start, which is just
+	// after the first line feed at least chunkLength chars into it.
+	private static int chunkEnd(SourceBuffer source, int start, int chunkLength)
+	{
+		char[] chars = source.chars();
+		int length = source.length();
+		for(int i = Math.max(start, Math.min(length, start + chunkLength) - 1); i < length; i++)
+			if(chars[i] == '\n')
+				return i + 1;
+		return length;
+	}
+
+	private static class ChunkTask extends RecursiveTask<TokenBuffer>
+	{
+		private final SourceBuffer source;
+		private final int start, end;
+		private int lineFeeds;
+
+		public ChunkTask(SourceBuffer source, int start, int end)
+		{
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected TokenBuffer compute()
+		{
+			TableScanner scanner = new TableScanner(source, start, end);
+			TokenBuffer tokens = scanner.scanAll();
+			lineFeeds = scanner.lineNumber() - 1;
+			return tokens;
+		}
+	}
+}
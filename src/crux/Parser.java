@@ -1,11 +1,13 @@
 package crux;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import ast.*;
-import ast.Error;
 import crux.parsing.*;
 import types.*;
 
@@ -15,103 +17,497 @@ public class Parser
     public static String studentID = "35571095";
     public static String uciNetID = "dtetreau";
 	
+	// Binary operator precedences, indexed by token kind ordinal. Kinds
+	// that are not binary operators have precedence NOT_AN_OPERATOR,
+	// which is below every level so that it always ends an expression.
+	private static final int NOT_AN_OPERATOR = 0,
+		COMPARISON = 1,
+		ADDITION = 2,
+		MULTIPLICATION = 3;
+	private static final int[] PRECEDENCE = new int[Token.Kind.values().length];
+	private static final NonTerminal[] OPERATOR_RULES = { null, NonTerminal.OP0, NonTerminal.OP1, NonTerminal.OP2 };
+	private static final NonTerminal[] LEVEL_RULES = { null, NonTerminal.EXPRESSION0, NonTerminal.EXPRESSION1, NonTerminal.EXPRESSION2 };
+	
+	static
+	{
+		for(Token.Kind kind : Token.Kind.values())
+		{
+			int precedence = NOT_AN_OPERATOR;
+			for(int level = COMPARISON; level <= MULTIPLICATION; level++)
+				if(OPERATOR_RULES[level].firstSetContains(kind))
+					precedence = level;
+			PRECEDENCE[kind.ordinal()] = precedence;
+		}
+	}
+	
 	private final LL1Reader reader;
-	private final StringBuilder errorReport;
-	private final Stack<SymbolTable> symbolTables;
-	private ParseNode root, current;
-	
-	public Parser(Scanner scanner)
-	{
-		this.reader = new LL1Reader(scanner);
-		this.errorReport = new StringBuilder();
-		this.symbolTables = new Stack<SymbolTable>();
-		root = current = null;
-		SymbolTable rootTable = new SymbolTable(null);
-		TypeList paramTypes = new TypeList();
-		rootTable.define("readInt", 0, 0, new FuncType(paramTypes, new IntType()));
-		paramTypes = new TypeList();
-		rootTable.define("readFloat", 0, 0, new FuncType(paramTypes, new FloatType()));
-		paramTypes = new TypeList();
-		paramTypes.append(new BoolType());
-		rootTable.define("printBool", 0, 0, new FuncType(paramTypes, new VoidType()));
-		paramTypes = new TypeList();
-		paramTypes.append(new IntType());
-		rootTable.define("printInt", 0, 0, new FuncType(paramTypes, new VoidType()));
-		paramTypes = new TypeList();
-		paramTypes.append(new FloatType());
-		rootTable.define("printFloat", 0, 0, new FuncType(paramTypes, new VoidType()));
-		paramTypes = new TypeList();
-		rootTable.define("println", 0, 0, new FuncType(paramTypes, new VoidType()));
-		symbolTables.push(rootTable);
+	private final TokenBuffer tokens;
+	private Diagnostics diagnostics;
+	private final ScopeStack scopes;
+	// Index of the token the last syntax error was reported at. Every
+	// rule left open by an error at the end of the input fails again at
+	// the same token, which is only worth reporting once.
+	private int lastSyntaxError;
+	// Null unless the concrete parse tree is being recorded.
+	private final ParseLog parseLog;
+	// The abstract syntax tree, which the rules add their nodes to.
+	private final FlatAst nodes;
+	// Set while the program's outline is parsed for parseFlatInParallel.
+	// Function bodies whose braces match up are then skipped and left
+	// to the tasks in deferredBodies.
+	private boolean deferBodies;
+	private int[] closingBraces;
+	private ArrayList<BodyTask> deferredBodies;
+	// Set once parseLazily has left bodies to be parsed on demand.
+	private boolean lazyBodies;
+	
+	public Parser(TokenSource scanner)
+	{
+		this(scanner, true);
+	}
+	
+	public Parser(TokenBuffer tokens)
+	{
+		this(tokens, true);
+	}
+	
+	public Parser(TokenSource scanner, boolean recordParseTree)
+	{
+		this(new LL1Reader(scanner), recordParseTree);
+	}
+	
+	public Parser(TokenBuffer tokens, boolean recordParseTree)
+	{
+		this(new LL1Reader(tokens), recordParseTree);
+	}
+	
+	private Parser(LL1Reader reader, boolean recordParseTree)
+	{
+		// A program has about as many nodes as tokens.
+		this(reader, recordParseTree ? new ParseLog() : null, predefinedSymbols(reader.tokens().names()), reader.tokens().size());
+	}
+	
+	private Parser(LL1Reader reader, ParseLog parseLog, ScopeStack scopes, int capacity)
+	{
+		this.reader = reader;
+		this.tokens = reader.tokens();
+		this.diagnostics = new Diagnostics();
+		this.scopes = scopes;
+		this.parseLog = parseLog;
+		this.nodes = new FlatAst(capacity);
+		lastSyntaxError = -1;
+	}
+	
+	private static ScopeStack predefinedSymbols(Names names)
+	{
+		ScopeStack rootTable = new ScopeStack(names);
+		rootTable.define(names.intern("readInt"), 0, 0, FuncType.of(TypeList.EMPTY, IntType.INSTANCE));
+		rootTable.define(names.intern("readFloat"), 0, 0, FuncType.of(TypeList.EMPTY, FloatType.INSTANCE));
+		rootTable.define(names.intern("printBool"), 0, 0, FuncType.of(TypeList.of(BoolType.INSTANCE), VoidType.INSTANCE));
+		rootTable.define(names.intern("printInt"), 0, 0, FuncType.of(TypeList.of(IntType.INSTANCE), VoidType.INSTANCE));
+		rootTable.define(names.intern("printFloat"), 0, 0, FuncType.of(TypeList.of(FloatType.INSTANCE), VoidType.INSTANCE));
+		rootTable.define(names.intern("println"), 0, 0, FuncType.of(TypeList.EMPTY, VoidType.INSTANCE));
+		return rootTable;
 	}
 		
+	// Keeps only the first maxErrors errors for the report, counting the
+	// rest. Must be called before parsing.
+	public void setMaxErrors(int maxErrors)
+	{
+		diagnostics = new Diagnostics(maxErrors);
+	}
+	
+	// After parseLazily, only the errors of the outline and of the bodies
+	// parsed so far are known.
 	public boolean hasError()
 	{
-		return errorReport.length() > 0;
+		if(!diagnostics.isEmpty())
+			return true;
+		if(lazyBodies)
+			for(BodyTask body : deferredBodies)
+				if(body.isDone() && body.parser.hasError())
+					return true;
+		return false;
+	}
+	
+	public Diagnostics diagnostics()
+	{
+		return lazyBodies ? withBodyErrors() : diagnostics;
 	}
 	
 	public String errorReport()
 	{
-		return errorReport.toString();
+		return diagnostics().report();
 	}
 	
 	public String parseTreeReport()
 	{
-		StringBuilder b = new StringBuilder();
-		buildReport(root, 0, b);
-		return b.toString();
+		if(parseLog == null)
+			throw new IllegalStateException("The parse tree was not recorded.");
+		return parseLog.report();
 	}
 	
-	private void buildReport(ParseNode current, int indent, StringBuilder b)
+	public Command parse()
 	{
-		while(current != null)
-		{
-			if(current.Terminal == null)
-			{
-				for(int i = 0; i < indent; i++)
-					b.append("  "); // 2 spaces
-				b.append(current.ProductionRule.toString());
-				b.append('\n');
-				// Children
-				buildReport(current.FirstChild, indent + 1, b);
-			}
-			// Siblings
-			current = current.Sibling;
-		}
+		FlatAst tree = parseFlat();
+		return tree.toCommand(tree.root());
 	}
 	
-	public Command parse()
+	// Parses into a FlatAst without building any Command objects. Its
+	// root is the program's DeclarationList, or an Error node.
+	public FlatAst parseFlat()
 	{
 			try 
 			{
-				return program();
+				program();
 			} 
 			catch (RequiredTokenException e)
 			{
 				// According to instructions, if the parser encounters a syntax
 				// error it returns an Error node.
-				return new Error(
+				nodes.addError(
 					e.ActualToken.getLineNumber(), 
 					e.ActualToken.getCharPos(), 
-					String.format("A token of kind \"%s\" was expected but the token \"%\" of kind \"%s\" was found instead.", e.ExpectedKind, e.ActualToken.getLexeme(), e.ActualToken.getKind()));
+					syntaxErrorMessage(e));
 			}
+			return nodes;
 	}
 	
-	private Command program() throws RequiredTokenException
+	// Parses into the same tree, with the same error report, as parse(),
+	// but parses the bodies of functions on the pool's threads. Crux is
+	// declare-before-use, so a body only sees the globals declared ahead
+	// of it, and nothing in a body changes the global scope. The global
+	// declarations and function signatures are parsed in order first,
+	// skipping each body from its opening brace to the matching closing
+	// brace, and then the bodies are parsed at once against snapshots of
+	// the global scope. Their nodes are copied into place and their
+	// errors spliced into the report where they would have come. Should
+	// any body not end at its matching brace, as when a syntax error
+	// ends a function early, the whole program is parsed again in order.
+	// The parse tree is not recorded this way, and a parser reading
+	// from a TokenSource has no tokens to look ahead through, so both
+	// parse in order.
+	public Command parseInParallel(ForkJoinPool pool)
+	{
+		FlatAst tree = parseFlatInParallel(pool);
+		return tree.toCommand(tree.root());
+	}
+	
+	public FlatAst parseFlatInParallel(ForkJoinPool pool)
+	{
+		if(parseLog != null || !reader.isBuffered())
+			return parseFlat();
+		FlatAst outline = parseOutline();
+		for(BodyTask body : deferredBodies)
+			pool.execute(body);
+		boolean parsed = true;
+		for(BodyTask body : deferredBodies)
+			parsed &= body.join();
+		if(!parsed || outline.kind(outline.root()) != FlatAst.DECLARATION_LIST)
+			return parseSequentially();
+		diagnostics = withBodyErrors();
+		return assembleTree(outline);
+	}
+	
+	// Parses only the program's outline: its global declarations and
+	// function signatures. Each function body is skipped from its opening
+	// brace to the matching closing brace, and parsed the first time the
+	// FunctionDefinition's body() is called, so that tools which only need
+	// names and types pay for the declarations alone. Bodies see the same
+	// globals they would in a full parse, and their errors join the report
+	// where they would have come once they are parsed. A body that a
+	// syntax error ends before its closing brace is cut short there,
+	// where a full parse would go on to read the rest of it as junk
+	// between declarations. Parsing the bodies in parallel does the same
+	// but starts again in order instead. The parse tree is not recorded
+	// this way, and a parser reading from a TokenSource parses everything.
+	public Command parseLazily()
+	{
+		if(parseLog != null || !reader.isBuffered())
+			return parse();
+		FlatAst outline = parseOutline();
+		int root = outline.root();
+		if(outline.kind(root) != FlatAst.DECLARATION_LIST)
+			return outline.toCommand(root);
+		lazyBodies = true;
+		HashMap<Integer, BodyTask> bodies = deferredBodiesByPlaceholder();
+		return outline.toLazyCommand(placeholder -> bodies.containsKey(placeholder)
+			? () -> bodies.get(placeholder).parseNow(outline)
+			: null);
+	}
+	
+	// Parses everything but the function bodies whose braces match up,
+	// which are left in deferredBodies.
+	private FlatAst parseOutline()
+	{
+		closingBraces = matchTopLevelBraces();
+		deferredBodies = new ArrayList<BodyTask>();
+		deferBodies = true;
+		FlatAst outline = parseFlat();
+		deferBodies = false;
+		return outline;
+	}
+	
+	private HashMap<Integer, BodyTask> deferredBodiesByPlaceholder()
+	{
+		HashMap<Integer, BodyTask> bodies = new HashMap<Integer, BodyTask>();
+		for(BodyTask body : deferredBodies)
+			bodies.put(body.placeholder, body);
+		return bodies;
+	}
+	
+	// Pairs each brace opened outside of any other with the brace that
+	// closes it. Unmatched braces are left at NONE.
+	private int[] matchTopLevelBraces()
+	{
+		int[] closing = new int[tokens.size()];
+		Arrays.fill(closing, FlatAst.NONE);
+		int depth = 0, open = FlatAst.NONE;
+		for(int i = 0; i < tokens.size(); i++)
+		{
+			if(tokens.kind(i) == Token.Kind.OPEN_BRACE)
+			{
+				if(depth++ == 0)
+					open = i;
+			}
+			else if(tokens.kind(i) == Token.Kind.CLOSE_BRACE && depth > 0)
+			{
+				if(--depth == 0)
+					closing[open] = i;
+			}
+		}
+		return closing;
+	}
+	
+	// Skips a function body whose closing brace is known, leaving it to
+	// be parsed later in the function's scope, and returns a placeholder
+	// for it. Other bodies are parsed on the spot.
+	private int deferBody() throws RequiredTokenException
+	{
+		int openBrace = reader.position();
+		if(reader.kind() != Token.Kind.OPEN_BRACE || closingBraces[openBrace] == FlatAst.NONE)
+			return statement_block(true);
+		int closeBrace = closingBraces[openBrace];
+		int placeholder = nodes.addLeaf(FlatAst.STATEMENT_LIST, tokens.lineNumber(openBrace), tokens.charPos(openBrace), 0);
+		deferredBodies.add(new BodyTask(
+			openBrace,
+			closeBrace,
+			scopes.getDeclarationOrder(0).size(),
+			new ArrayList<Symbol>(scopes.getDeclarationOrder()),
+			diagnostics.count(),
+			placeholder));
+		reader.seek(closeBrace + 1);
+		return placeholder;
+	}
+	
+	private FlatAst parseSequentially()
+	{
+		Parser sequential = new Parser(tokens, false);
+		sequential.setMaxErrors(diagnostics.maxErrors());
+		FlatAst tree = sequential.parseFlat();
+		diagnostics = sequential.diagnostics;
+		return tree;
+	}
+	
+	// The outline's errors, with the errors of each body parsed so far
+	// where the outline had got to when the body was skipped.
+	private Diagnostics withBodyErrors()
+	{
+		Diagnostics merged = new Diagnostics(diagnostics.maxErrors());
+		int copied = 0;
+		for(BodyTask body : deferredBodies)
+		{
+			if(!body.isDone())
+				continue;
+			merged.append(diagnostics, copied, body.errorOffset);
+			merged.append(body.parser.diagnostics);
+			copied = body.errorOffset;
+		}
+		merged.append(diagnostics, copied, diagnostics.count());
+		return merged;
+	}
+	
+	// Copies the outline's declarations into a new tree, putting each
+	// function's parsed body in place of its placeholder. A function that
+	// was redefined became an Error, and its body is dropped, just as it
+	// is when parsed in order.
+	private FlatAst assembleTree(FlatAst outline)
+	{
+		HashMap<Integer, BodyTask> bodies = deferredBodiesByPlaceholder();
+		FlatAst tree = new FlatAst(outline.size());
+		int root = outline.root(), last = FlatAst.NONE, first = FlatAst.NONE;
+		for(int declaration = outline.firstChild(root); declaration != FlatAst.NONE; declaration = outline.nextSibling(declaration))
+		{
+			int copy;
+			BodyTask body = outline.kind(declaration) == FlatAst.FUNCTION_DEFINITION
+				? bodies.get(outline.functionBody(declaration))
+				: null;
+			if(body == null)
+				copy = tree.copy(outline, declaration);
+			else
+			{
+				int firstChild = FlatAst.NONE, lastChild = FlatAst.NONE;
+				for(int child = outline.firstChild(declaration); outline.kind(child) == FlatAst.PARAMETER; child = outline.nextSibling(child))
+				{
+					int parameter = tree.copy(outline, child);
+					if(lastChild != FlatAst.NONE)
+						tree.link(lastChild, parameter);
+					else
+						firstChild = parameter;
+					lastChild = parameter;
+				}
+				int statements = tree.copy(body.parser.nodes, body.statements);
+				if(lastChild != FlatAst.NONE)
+					tree.link(lastChild, statements);
+				else
+					firstChild = statements;
+				copy = tree.addSymbol(
+					FlatAst.FUNCTION_DEFINITION,
+					outline.lineNumber(declaration),
+					outline.charPosition(declaration),
+					outline.symbol(declaration),
+					firstChild);
+			}
+			if(last != FlatAst.NONE)
+				tree.link(last, copy);
+			else
+				first = copy;
+			last = copy;
+		}
+		tree.add(FlatAst.DECLARATION_LIST, outline.lineNumber(root), outline.charPosition(root), 0, first);
+		return tree;
+	}
+	
+	// Parses one function body on its own, with a parser of its own that
+	// starts at the body's opening brace. Its scopes are the globals that
+	// had been declared when the body was skipped, borrowed from this
+	// parser, which has finished with them by then, and the function's
+	// scope, holding its parameters. The
+	// task succeeds if the body ends at its matching brace. A body cut
+	// short by a syntax error that would have ended the function becomes
+	// just that Error.
+	private class BodyTask extends RecursiveTask<Boolean>
+	{
+		private final int openBrace, closeBrace, globalCount, errorOffset, placeholder;
+		private final ArrayList<Symbol> functionScope;
+		private Parser parser;
+		private int statements;
+		
+		public BodyTask(int openBrace, int closeBrace, int globalCount, ArrayList<Symbol> functionScope, int errorOffset, int placeholder)
+		{
+			this.openBrace = openBrace;
+			this.closeBrace = closeBrace;
+			this.globalCount = globalCount;
+			this.functionScope = functionScope;
+			this.errorOffset = errorOffset;
+			this.placeholder = placeholder;
+		}
+		
+		@Override
+		protected Boolean compute()
+		{
+			ScopeStack bodyScopes = new ScopeStack(scopes, globalCount);
+			bodyScopes.enterScope();
+			for(Symbol symbol : functionScope)
+				bodyScopes.bind(symbol);
+			parser = new Parser(new LL1Reader(tokens, openBrace), null, bodyScopes, closeBrace - openBrace + 1);
+			parser.setMaxErrors(diagnostics.maxErrors());
+			try
+			{
+				statements = parser.statement_block(true);
+			}
+			catch(RequiredTokenException e)
+			{
+				int error = parser.nodes.addError(
+					e.ActualToken.getLineNumber(),
+					e.ActualToken.getCharPos(),
+					parser.reportSyntaxError(e));
+				statements = parser.newList(FlatAst.STATEMENT_LIST, error, 0, 0);
+				return false;
+			}
+			return parser.reader.position() == closeBrace + 1;
+		}
+		
+		// Parses the body, numbering its nodes as part of the outline's
+		// tree.
+		public StatementList parseNow(FlatAst outline)
+		{
+			invoke();
+			parser.nodes.numberInPlaceOf(outline, placeholder, statements);
+			return (StatementList)parser.nodes.toCommand(statements);
+		}
+	}
+	
+	// Parses the same language into the same tree, with the same error
+	// report and parse tree, as parse(), but keeps the rules in progress
+	// on a stack on the heap instead of the Java call stack. Blocks and
+	// parentheses may then nest as deeply as memory allows.
+	public Command parseWithExplicitStack()
+	{
+		FlatAst tree = parseFlatWithExplicitStack();
+		return tree.toCommand(tree.root());
+	}
+	
+	public FlatAst parseFlatWithExplicitStack()
+	{
+		ArrayList<Frame> stack = new ArrayList<Frame>();
+		stack.add(new ProgramFrame());
+		int result = FlatAst.NONE;
+		while(true)
+		{
+			Frame frame = stack.get(stack.size() - 1);
+			Frame next;
+			try
+			{
+				next = frame.resume(result);
+			}
+			catch(RequiredTokenException e)
+			{
+				// Unwind to the innermost rule that recovers, as the
+				// exception would unwind the recursive methods.
+				while(!stack.isEmpty() && stack.get(stack.size() - 1).recoveryRule() == null)
+					stack.remove(stack.size() - 1);
+				if(stack.isEmpty())
+				{
+					nodes.addError(
+						e.ActualToken.getLineNumber(), 
+						e.ActualToken.getCharPos(), 
+						syntaxErrorMessage(e));
+					return nodes;
+				}
+				RecoveringFrame handler = (RecoveringFrame)stack.get(stack.size() - 1);
+				handler.result = recover(e, handler.recoveryRule(), handler.ruleDepth, handler.scopeDepth);
+				exitRule();
+				next = null;
+			}
+			if(next != null)
+			{
+				stack.add(next);
+				result = FlatAst.NONE;
+				continue;
+			}
+			Frame finished = stack.remove(stack.size() - 1);
+			if(stack.isEmpty())
+				return nodes;
+			result = finished.result;
+		}
+	}
+	
+	private int program() throws RequiredTokenException
 	{
 		enterRule(NonTerminal.PROGRAM);
-		DeclarationList declarationList = declaration_list(1, 1);
+		int declarationList = declaration_list(1, 1);
 		exitRule();
 		return declarationList;
 	}
 	
-	private StatementList statement_block(boolean suppressNewScope) throws RequiredTokenException 
+	private int statement_block(boolean suppressNewScope) throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.STATEMENT_BLOCK);
 		if(!suppressNewScope)
 			enterScope();
-		Token openBraceToken = require(Token.Kind.OPEN_BRACE);
-		StatementList statementList = statement_list(openBraceToken.getLineNumber(), openBraceToken.getCharPos());		
+		int openBraceToken = require(Token.Kind.OPEN_BRACE);
+		int statementList = statement_list(tokens.lineNumber(openBraceToken), tokens.charPos(openBraceToken));		
 		require(Token.Kind.CLOSE_BRACE);
 		if(!suppressNewScope)
 			exitScope();
@@ -119,255 +515,294 @@ public class Parser
 		return statementList;
 	}
 	
-	private StatementList statement_list(int fallbackLineNumber, int fallbackCharPosition) throws RequiredTokenException 
+	private int statement_list(int fallbackLineNumber, int fallbackCharPosition) throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.STATEMENT_LIST);
-		List<Statement> statements = new ArrayList<Statement>();
+		int first = FlatAst.NONE, last = FlatAst.NONE;
 		while(firstSetSatisfied(NonTerminal.STATEMENT))
-			statements.add(statement());
+		{
+			last = chain(last, statement());
+			if(first == FlatAst.NONE)
+				first = last;
+		}
 		exitRule();
-		return new StatementList(
-			statements.size() > 0 ? ((Command)statements.get(0)).lineNumber() : fallbackLineNumber,
-			statements.size() > 0 ? ((Command)statements.get(0)).charPosition() : fallbackCharPosition,
-			statements);
+		return newList(FlatAst.STATEMENT_LIST, first, fallbackLineNumber, fallbackCharPosition);
 	}
 	
-	private Statement statement() throws RequiredTokenException 
+	private int statement()
 	{
 		enterRule(NonTerminal.STATEMENT);
-		Statement statement = null;
-		if(firstSetSatisfied(NonTerminal.VARIABLE_DECLARATION))
-			try 
-			{
-				statement = variable_declaration();
-			} 
-			catch (SymbolRedefinitionException e) 
-			{
-				statement = new Error(
-					e.DuplicateToken.getLineNumber(),
-					e.DuplicateToken.getCharPos(),
-					String.format("Attempted to redefine symbol \"%s\".", e.DuplicateToken.getLexeme()));
-			}
-		else if(firstSetSatisfied(NonTerminal.CALL_STATEMENT))
-			try 
+		int ruleDepth = ruleDepth(), scopeDepth = scopes.depth();
+		int statement;
+		try
+		{
+			switch(predict(NonTerminal.STATEMENT))
 			{
+			case VARIABLE_DECLARATION_STATEMENT:
+				try 
+				{
+					statement = variable_declaration();
+				} 
+				catch (SymbolRedefinitionException e) 
+				{
+					statement = redefinitionError(e.DuplicateToken);
+				}
+				break;
+			case CALL_STATEMENT:
 				statement = call_statement();
-			} 
-			catch (UnresolvableSymbolException e) 
-			{
-				statement = new Error(
-					e.UnresolvedToken.getLineNumber(),
-					e.UnresolvedToken.getCharPos(),
-					String.format("Unable to resolve symbol \"%s\".", e.UnresolvedToken.getLexeme()));
-			}
-		else if(firstSetSatisfied(NonTerminal.ASSIGNMENT_STATEMENT))
-			statement = assignment_statement();
-		else if(firstSetSatisfied(NonTerminal.IF_STATEMENT))
-			statement = if_statement();
-		else if(firstSetSatisfied(NonTerminal.WHILE_STATEMENT))
-			statement = while_statement();
-		else if(firstSetSatisfied(NonTerminal.RETURN_STATEMENT))
-			statement = return_statement();
-		else
+				break;
+			case ASSIGNMENT_STATEMENT:
+				statement = assignment_statement();
+				break;
+			case IF_STATEMENT:
+				statement = if_statement();
+				break;
+			case WHILE_STATEMENT:
+				statement = while_statement();
+				break;
+			case RETURN_STATEMENT:
+				statement = return_statement();
+				break;
+			default:
+				statement = nodes.addError(
+					tokens.lineNumber(reader.position()), 
+					tokens.charPos(reader.position()),
+					String.format("First set unsatisfied for non-terminal of kind \"%s\".", reader.kind()));
+			}
+		}
+		catch(RequiredTokenException e)
 		{
-			statement = new Error(
-				reader.token().getLineNumber(), 
-				reader.token().getCharPos(),
-				String.format("First set unsatisfied for non-terminal of kind \"%s\".", reader.token().getKind()));
+			statement = recover(e, NonTerminal.STATEMENT, ruleDepth, scopeDepth);
 		}
 		exitRule();
 		return statement;
 	}
 	
-	private Return return_statement() throws RequiredTokenException 
+	private int return_statement() throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.RETURN_STATEMENT);
-		Token returnToken = require(Token.Kind.RETURN);
-		Expression arg = expression0();
+		int returnToken = require(Token.Kind.RETURN);
+		int arg = expression0();
 		require(Token.Kind.SEMICOLON);
 		exitRule();
-		return new Return(returnToken.getLineNumber(), returnToken.getCharPos(), arg);
+		return nodes.addUnary(FlatAst.RETURN, tokens.lineNumber(returnToken), tokens.charPos(returnToken), arg);
 	}
 	
-	private WhileLoop while_statement() throws RequiredTokenException 
+	private int while_statement() throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.WHILE_STATEMENT);
-		Token whileToken = require(Token.Kind.WHILE);
-		Expression conditional = expression0();
-		StatementList body = statement_block(false);
+		int whileToken = require(Token.Kind.WHILE);
+		int conditional = expression0();
+		int body = statement_block(false);
 		exitRule();
-		return new WhileLoop(
-			whileToken.getLineNumber(),
-			whileToken.getCharPos(),
+		return nodes.addBinary(
+			FlatAst.WHILE_LOOP,
+			tokens.lineNumber(whileToken),
+			tokens.charPos(whileToken),
+			0,
 			conditional,
 			body);
 	}
 	
-	private IfElseBranch if_statement() throws RequiredTokenException 
+	private int if_statement() throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.IF_STATEMENT);
-		Token ifToken = require(Token.Kind.IF);
-		Expression conditional = expression0();
-		StatementList thenBlock = statement_block(false);
-		StatementList elseBlock = accept(Token.Kind.ELSE) ? statement_block(false) : new StatementList(reader.token().getLineNumber(), reader.token().getCharPos(), new ArrayList<Statement>());
+		int ifToken = require(Token.Kind.IF);
+		int conditional = expression0();
+		int thenBlock = statement_block(false);
+		int elseBlock = accept(Token.Kind.ELSE) ? statement_block(false) : emptyStatementList();
 		exitRule(); 
-		return new IfElseBranch(
-				ifToken.getLineNumber(), 
-				ifToken.getCharPos(), 
-				conditional, 
-				thenBlock, 
-				elseBlock);
+		return newIfElseBranch(ifToken, conditional, thenBlock, elseBlock);
 	}
 	
-	private Call call_statement() throws RequiredTokenException, UnresolvableSymbolException 
+	private int call_statement() throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.CALL_STATEMENT);
-		Call callExpression = call_expression();
+		int callStatement;
+		try 
+		{
+			callStatement = call_expression();
+		} 
+		catch (UnresolvableSymbolException e) 
+		{
+			// The semicolon still ends the statement.
+			callStatement = unresolvedError(e.UnresolvedToken);
+		}
 		require(Token.Kind.SEMICOLON);
 		exitRule();
-		return callExpression;
+		return callStatement;
 	}
 	
-	private Assignment assignment_statement() throws RequiredTokenException 
+	private int assignment_statement() throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.ASSIGNMENT_STATEMENT);
-		Token letToken = require(Token.Kind.LET);
-		Expression destination = designator(true);
+		int letToken = require(Token.Kind.LET);
+		int destination = designator(true);
 		require(Token.Kind.ASSIGN);
-		Expression source = expression0();
+		int source = expression0();
 		require(Token.Kind.SEMICOLON);
 		exitRule();
-		return new Assignment(
-			letToken.getLineNumber(),
-			letToken.getCharPos(),
+		return nodes.addBinary(
+			FlatAst.ASSIGNMENT,
+			tokens.lineNumber(letToken),
+			tokens.charPos(letToken),
+			0,
 			destination,
 			source);			
 	}
 	
-	private DeclarationList declaration_list(int fallbackLineNumber, int fallbackCharPosition) throws RequiredTokenException 
+	private int declaration_list(int fallbackLineNumber, int fallbackCharPosition) throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.DECLARATION_LIST);
-		ArrayList<Declaration> declarations = new ArrayList<Declaration>();
-		while(firstSetSatisfied(NonTerminal.DECLARATION))
+		int first = FlatAst.NONE, last = FlatAst.NONE;
+		while(firstSetSatisfied(NonTerminal.DECLARATION) || reader.kind() != Token.Kind.EOF)
 		{
-			declarations.add(declaration());			
+			if(firstSetSatisfied(NonTerminal.DECLARATION))
+			{
+				last = chain(last, declaration());
+				if(first == FlatAst.NONE)
+					first = last;
+			}
+			else
+			{
+				// Junk between declarations. Report it and skip
+				// ahead to the next declaration.
+				reportSyntaxError(new RequiredTokenException(Token.Kind.EOF, reader.token()));
+				reader.advance();
+				skipTo(NonTerminal.DECLARATION);
+			}
 		}
 		require(Token.Kind.EOF);
 		exitRule();
-		return new DeclarationList(
-			declarations.size() > 0 ? ((Command)declarations.get(0)).lineNumber() : fallbackLineNumber,
-			declarations.size() > 0 ? ((Command)declarations.get(0)).charPosition() : fallbackCharPosition,
-			declarations);
+		return newList(FlatAst.DECLARATION_LIST, first, fallbackLineNumber, fallbackCharPosition);
 	}
 	
-	private Declaration declaration() throws RequiredTokenException 
+	private int declaration()
 	{
 		enterRule(NonTerminal.DECLARATION);
-		Declaration declaration = null;
+		int ruleDepth = ruleDepth(), scopeDepth = scopes.depth();
+		int declaration;
 		try
 		{
-			if(firstSetSatisfied(NonTerminal.VARIABLE_DECLARATION))
+			switch(predict(NonTerminal.DECLARATION))
+			{
+			case VARIABLE_DECLARATION:
 				declaration = variable_declaration();
-			else if(firstSetSatisfied(NonTerminal.ARRAY_DECLARATION))
+				break;
+			case ARRAY_DECLARATION:
 				declaration = array_declaration();
-			else if(firstSetSatisfied(NonTerminal.FUNCTION_DEFINITION))
+				break;
+			case FUNCTION_DEFINITION:
 				declaration = function_definition();
-			else
-			{
-				declaration = new Error(
-					reader.token().getLineNumber(), 
-					reader.token().getCharPos(), 
-					String.format("First sets unsatisfied by token of kind \"%s\".", reader.token().getKind()));
+				break;
+			default:
+				declaration = nodes.addError(
+					tokens.lineNumber(reader.position()), 
+					tokens.charPos(reader.position()), 
+					String.format("First sets unsatisfied by token of kind \"%s\".", reader.kind()));
 			}
 		}
 		catch(SymbolRedefinitionException e)
 		{
-			declaration = new Error(
-				e.DuplicateToken.getLineNumber(),
-				e.DuplicateToken.getCharPos(),
-				String.format("Attempted to redefine symbol \"%s\".", e.DuplicateToken.getLexeme()));
+			declaration = redefinitionError(e.DuplicateToken);
+		}
+		catch(RequiredTokenException e)
+		{
+			declaration = recover(e, NonTerminal.DECLARATION, ruleDepth, scopeDepth);
 		}
 		exitRule();
 		return declaration;
 	}
 	
-	private FunctionDefinition function_definition() throws RequiredTokenException, SymbolRedefinitionException 
+	private int function_definition() throws RequiredTokenException, SymbolRedefinitionException 
 	{
 		enterRule(NonTerminal.FUNCTION_DEFINITION);
-		Token funcToken = require(Token.Kind.FUNC);
-		Symbol nameSymbol = defineSymbol(emitTerminal(require(Token.Kind.IDENTIFIER)), null);
+		int funcToken = require(Token.Kind.FUNC);
+		int nameToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+		Symbol nameSymbol = defineSymbol(nameToken, null);
 		enterScope();
 		require(Token.Kind.OPEN_PAREN);
 		ArrayList<Symbol> parameters = parameter_list();
-		TypeList paramTypes = new TypeList();
+		TypeList paramTypes = TypeList.EMPTY;
 		for(Symbol param : parameters)
-			paramTypes.append(param.getType());
+			paramTypes = paramTypes.with(param.getType());
 		require(Token.Kind.CLOSE_PAREN);
 		require(Token.Kind.COLON);
-		Type returnType = Type.getBaseType(type().getLexeme());
-		nameSymbol.setType(new FuncType(paramTypes, returnType));
-		StatementList bodyStatements = statement_block(true);				
+		Type returnType = Type.getBaseType(tokens.lexeme(type()));
+		if(nameSymbol != null)
+			nameSymbol.setType(FuncType.of(paramTypes, returnType));
+		int firstParameter = addParameters(parameters);
+		int bodyStatements = deferBodies ? deferBody() : statement_block(true);				
 		exitScope();
 		exitRule();
-		return new FunctionDefinition(
-				funcToken.getLineNumber(),
-				funcToken.getCharPos(),
-				nameSymbol,
-				parameters,
-				bodyStatements);
+		if(nameSymbol == null)
+			throw new SymbolRedefinitionException(tokens.token(nameToken));
+		return newFunctionDefinition(funcToken, nameSymbol, firstParameter, parameters.size(), bodyStatements);
 	}
 	
-	private ArrayDeclaration array_declaration() throws RequiredTokenException, SymbolRedefinitionException
+	private int array_declaration() throws RequiredTokenException, SymbolRedefinitionException
 	{
 		enterRule(NonTerminal.ARRAY_DECLARATION);
-		Token arrayToken = require(Token.Kind.ARRAY);
-		Symbol nameSymbol = defineSymbol(emitTerminal(require(Token.Kind.IDENTIFIER)), null);
+		int arrayToken = require(Token.Kind.ARRAY);
+		int nameToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+		Symbol nameSymbol = defineSymbol(nameToken, null);
 		require(Token.Kind.COLON);
-		Type elementType = Type.getBaseType(type().getLexeme());
+		Type elementType = Type.getBaseType(tokens.lexeme(type()));
 		require(Token.Kind.OPEN_BRACKET);
-		Stack<String> dimensions = new Stack<String>();
-		dimensions.push(emitTerminal(require(Token.Kind.INTEGER)).getLexeme());
+		Stack<Integer> dimensions = new Stack<Integer>();
+		dimensions.push(tokens.intValue(emitTerminal(require(Token.Kind.INTEGER))));
 		require(Token.Kind.CLOSE_BRACKET);		
 		while(accept(Token.Kind.OPEN_BRACKET))
 		{
-			dimensions.push(emitTerminal(require(Token.Kind.INTEGER)).getLexeme());
+			dimensions.push(tokens.intValue(emitTerminal(require(Token.Kind.INTEGER))));
 			require(Token.Kind.CLOSE_BRACKET);
 		}
 		// Have to reverse the order of dimensions, because
 		// int arr[8][5][3]
 		//		   is -> array(8, array(5, array(3, int)))
 		// instead of -> array(3, array(5, array(8, int)))
-		Type arrayType = new types.ArrayType(Integer.parseInt(dimensions.pop()), elementType);
+		Type arrayType = types.ArrayType.of(dimensions.pop(), elementType);
 		while(!dimensions.isEmpty())
 		{
-			arrayType = new types.ArrayType(Integer.parseInt(dimensions.pop()), arrayType);
+			arrayType = types.ArrayType.of(dimensions.pop(), arrayType);
 		}		
-		nameSymbol.setType(arrayType);
+		if(nameSymbol != null)
+			nameSymbol.setType(arrayType);
 		require(Token.Kind.SEMICOLON);
 		exitRule();
-		return new ArrayDeclaration(
-				arrayToken.getLineNumber(), 
-				arrayToken.getCharPos(),
-				nameSymbol);
+		if(nameSymbol == null)
+			throw new SymbolRedefinitionException(tokens.token(nameToken));
+		return nodes.addSymbol(
+				FlatAst.ARRAY_DECLARATION,
+				tokens.lineNumber(arrayToken), 
+				tokens.charPos(arrayToken),
+				nameSymbol,
+				FlatAst.NONE);
 	}
 	
-	private VariableDeclaration variable_declaration() throws RequiredTokenException, SymbolRedefinitionException
+	private int variable_declaration() throws RequiredTokenException, SymbolRedefinitionException
 	{
 		enterRule(NonTerminal.VARIABLE_DECLARATION);
-		Token varToken = require(Token.Kind.VAR);
-		Symbol nameSymbol = defineSymbol(emitTerminal(require(Token.Kind.IDENTIFIER)), null);
+		int varToken = require(Token.Kind.VAR);
+		int nameToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+		Symbol nameSymbol = defineSymbol(nameToken, null);
 		require(Token.Kind.COLON);
-		Type varType = Type.getBaseType(type().getLexeme());
-		nameSymbol.setType(varType);
+		Type varType = Type.getBaseType(tokens.lexeme(type()));
+		if(nameSymbol != null)
+			nameSymbol.setType(varType);
 		require(Token.Kind.SEMICOLON);
 		exitRule();
-		return new VariableDeclaration(
-			varToken.getLineNumber(), 
-			varToken.getCharPos(), 
-			nameSymbol);
+		if(nameSymbol == null)
+			throw new SymbolRedefinitionException(tokens.token(nameToken));
+		return nodes.addSymbol(
+			FlatAst.VARIABLE_DECLARATION,
+			tokens.lineNumber(varToken), 
+			tokens.charPos(varToken), 
+			nameSymbol,
+			FlatAst.NONE);
 	}
 	
-	private ArrayList<Symbol> parameter_list() throws RequiredTokenException, SymbolRedefinitionException
+	private ArrayList<Symbol> parameter_list() throws RequiredTokenException
 	{
 		enterRule(NonTerminal.PARAMETER_LIST);
 		ArrayList<Symbol> parameters = new ArrayList<Symbol>();
@@ -381,332 +816,437 @@ public class Parser
 		return parameters;
 	}
 	
-	private Symbol parameter() throws RequiredTokenException, SymbolRedefinitionException
+	private Symbol parameter() throws RequiredTokenException
 	{
 		enterRule(NonTerminal.PARAMETER);
-		Symbol nameSymbol = defineSymbol(emitTerminal(require(Token.Kind.IDENTIFIER)), null);
+		int nameToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+		Symbol nameSymbol = defineSymbol(nameToken, null);
+		// A duplicate parameter has been reported already. It is left out
+		// of the scope, but still takes its place in the function's type.
+		if(nameSymbol == null)
+			nameSymbol = new Symbol(tokens.nameId(nameToken), tokens.lexeme(nameToken), tokens.lineNumber(nameToken), tokens.charPos(nameToken), null);
 		require(Token.Kind.COLON);
-		Type paramType = Type.getBaseType(type().getLexeme());
+		Type paramType = Type.getBaseType(tokens.lexeme(type()));
 		nameSymbol.setType(paramType);
 		exitRule();
 		return nameSymbol;
 	}
 	
-	private ExpressionList expression_list(int fallbackLineNumber, int fallbackCharPosition) throws RequiredTokenException 
+	private int expression_list(int fallbackLineNumber, int fallbackCharPosition) throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.EXPRESSION_LIST);
-		ArrayList<Expression> expressions = new ArrayList<Expression>();
+		int first = FlatAst.NONE, last = FlatAst.NONE;
 		if(firstSetSatisfied(NonTerminal.EXPRESSION0))
 		{
-			expressions.add(expression0());
+			first = last = expression0();
 			while(accept(Token.Kind.COMMA))
-				expressions.add(expression0());
+				last = chain(last, expression0());
 		}
 		exitRule();
-		return new ExpressionList(
-			expressions.size() > 0 ? ((Command)expressions.get(0)).lineNumber() : fallbackLineNumber,
-			expressions.size() > 0 ? expressions.get(0).getLeftmostCharPos(): fallbackCharPosition,
-			expressions);
+		return newExpressionList(first, fallbackLineNumber, fallbackCharPosition);
 	}
 	
-	private Call call_expression() throws RequiredTokenException, UnresolvableSymbolException 
+	private int call_expression() throws RequiredTokenException, UnresolvableSymbolException 
 	{
 		enterRule(NonTerminal.CALL_EXPRESSION);
-		Token callToken = require(Token.Kind.CALL);
-		Symbol functionNameSymbol = resolveSymbol(emitTerminal(require(Token.Kind.IDENTIFIER)));
-		Token openParenToken = require(Token.Kind.OPEN_PAREN);
-		ExpressionList argumentExpressions = expression_list(openParenToken.getLineNumber(), openParenToken.getCharPos() + 1);
+		int callToken = require(Token.Kind.CALL);
+		int functionNameToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+		Symbol functionNameSymbol = resolveSymbol(functionNameToken);
+		int openParenToken = require(Token.Kind.OPEN_PAREN);
+		int argumentExpressions = expression_list(tokens.lineNumber(openParenToken), tokens.charPos(openParenToken) + 1);
 		require(Token.Kind.CLOSE_PAREN);
 		exitRule();
-		return new Call(
-			callToken.getLineNumber(),
-			callToken.getCharPos(),
+		if(functionNameSymbol == null)
+			throw new UnresolvableSymbolException(tokens.token(functionNameToken));
+		return nodes.addSymbol(
+			FlatAst.CALL,
+			tokens.lineNumber(callToken),
+			tokens.charPos(callToken),
 			functionNameSymbol,
 			argumentExpressions);
 	}
 	
-	private Expression expression3() throws RequiredTokenException 
+	private int expression3() throws RequiredTokenException 
 	{
 		enterRule(NonTerminal.EXPRESSION3);
-		Expression expression = null;
-		Token startToken = reader.token();
-		if(accept(Token.Kind.NOT))
+		int expression;
+		int startToken = reader.position();
+		switch(predict(NonTerminal.EXPRESSION3))
 		{
-			expression = new LogicalNot(
-				startToken.getLineNumber(),
-				startToken.getCharPos(),
+		case LOGICAL_NOT:
+			reader.advance();
+			expression = nodes.addUnary(
+				FlatAst.LOGICAL_NOT,
+				tokens.lineNumber(startToken),
+				tokens.charPos(startToken),
 				expression3());
-		}
-		else if(accept(Token.Kind.OPEN_PAREN))
-		{
+			break;
+		case GROUPED_EXPRESSION:
+			reader.advance();
 			expression = expression0();
 			require(Token.Kind.CLOSE_PAREN);
-		}
-		else if(firstSetSatisfied(NonTerminal.DESIGNATOR))
+			break;
+		case DESIGNATOR:
 			expression = designator(false);
-		else if(firstSetSatisfied(NonTerminal.CALL_EXPRESSION))
+			break;
+		case CALL_EXPRESSION:
 			try 
 			{
 				expression = call_expression();
 			} catch (UnresolvableSymbolException e) 
 			{
-				expression = new Error(
-					e.UnresolvedToken.getLineNumber(),
-					e.UnresolvedToken.getCharPos(),
-					String.format("Unable to resolve symbol \"%s\".", e.UnresolvedToken.getLexeme()));
+				expression = unresolvedError(e.UnresolvedToken);
 			}
-		else if(firstSetSatisfied(NonTerminal.LITERAL))
+			break;
+		case LITERAL:
 			expression = literal();
-		else
-			expression = new Error(
-				startToken.getLineNumber(),
-				startToken.getCharPos(),
-				String.format("First set unsatisfied by token of kind \"%s\".", startToken.getKind()));
+			break;
+		default:
+			expression = nodes.addError(
+				tokens.lineNumber(startToken),
+				tokens.charPos(startToken),
+				String.format("First set unsatisfied by token of kind \"%s\".", tokens.kind(startToken)));
+		}
 		exitRule();
 		return expression;
 	}
 	
-	private Expression expression2() throws RequiredTokenException 
+	private int expression0() throws RequiredTokenException 
 	{
-		enterRule(NonTerminal.EXPRESSION2);
-		Expression lhs = expression3();
-		while(firstSetSatisfied(NonTerminal.OP2))
-		{
-			Token op = op2();
-			lhs = Command.newExpression(lhs, op, expression3());
-		}
+		enterRule(NonTerminal.EXPRESSION0);
+		int expression = parseLog == null ? binaryExpression(COMPARISON) : recordedExpression(COMPARISON);
 		exitRule();
-		return lhs;
+		return expression;
 	}
 	
-	private Expression expression1() throws RequiredTokenException 
+	// Precedence climbing over the operator levels that expression0,
+	// expression1 and expression2 of the grammar describe. Parses an
+	// operand and then every operator binding at least as tightly as
+	// minPrecedence, each taking as its right operand whatever binds
+	// more tightly than itself, which makes them left associative.
+	private int binaryExpression(int minPrecedence) throws RequiredTokenException
 	{
-		enterRule(NonTerminal.EXPRESSION1);
-		Expression lhs = expression2();
-		while(firstSetSatisfied(NonTerminal.OP1))
+		int lhs = expression3();
+		while(true)
 		{
-			Token op;
-			try 
-			{
-				op = op1();
-				lhs = Command.newExpression(lhs, op, expression2());
-			} 
-			catch (FirstSetUnsatisfiedException e) 
-			{
-				lhs = new Error(
-					((Command)lhs).lineNumber(),
-					((Command)lhs).charPosition(),
-					String.format("First set unsatisfied for nonterminal of type \"%s\".", e.Unsatisfied));
-			}
+			int precedence = PRECEDENCE[reader.kind().ordinal()];
+			if(precedence < minPrecedence)
+				return lhs;
+			enterRule(OPERATOR_RULES[precedence]);
+			int op = emitTerminal(reader.position());
+			reader.advance();
+			exitRule();
+			lhs = newExpression(lhs, op, binaryExpression(precedence + 1));
+			// The grammar allows one comparison, not a chain of them.
+			if(precedence == COMPARISON)
+				return lhs;
 		}
-		exitRule();
-		return lhs;
 	}
 	
-	private Expression expression0() throws RequiredTokenException 
+	// Parses the operator level of the grammar at the given precedence the
+	// way the grammar nests it, one rule per level, for the parse tree,
+	// which has a node for every level that precedence climbing skips.
+	// The rule of the comparison level is expression0, which is entered by
+	// the caller.
+	private int recordedExpression(int precedence) throws RequiredTokenException
 	{
-		enterRule(NonTerminal.EXPRESSION0);
-		Expression lhs = expression1();
-		if(firstSetSatisfied(NonTerminal.OP0))
+		if(precedence > MULTIPLICATION)
+			return expression3();
+		if(precedence != COMPARISON)
+			enterRule(LEVEL_RULES[precedence]);
+		int lhs = recordedExpression(precedence + 1);
+		while(PRECEDENCE[reader.kind().ordinal()] == precedence)
 		{
-			Token op = null;
-			try 
-			{
-				op = op0();
-				lhs = Command.newExpression(lhs, op, expression1());
-			} 
-			catch (FirstSetUnsatisfiedException e) 
-			{
-				lhs = new Error(
-					((Command)lhs).lineNumber(),
-					((Command)lhs).charPosition(),
-					String.format("First set unsatisfied for nonterminal of type \"%s\".", e.Unsatisfied));
-			}
+			enterRule(OPERATOR_RULES[precedence]);
+			int op = emitTerminal(reader.position());
+			reader.advance();
+			exitRule();
+			lhs = newExpression(lhs, op, recordedExpression(precedence + 1));
+			if(precedence == COMPARISON)
+				break;
 		}
-		exitRule();
+		if(precedence != COMPARISON)
+			exitRule();
 		return lhs;
 	}
 	
-	private Token op2()
+	private int type() throws RequiredTokenException
 	{
-		enterRule(NonTerminal.OP2);
-		Token token = null;
-		firstSetSatisfied(NonTerminal.OP2);
-		token = emitTerminal(reader.token());
-		reader.advance();
+		enterRule(NonTerminal.TYPE);
+		int typeToken = emitTerminal(require(Token.Kind.IDENTIFIER));
 		exitRule();
-		return token;
+		return typeToken;
 	}
 	
-	private Token op1() throws FirstSetUnsatisfiedException
+	private int designator(boolean acceptAddressOf) throws RequiredTokenException 
 	{
-		enterRule(NonTerminal.OP1);
-		Token token = null;
-		requireFirstSetSatisfied(NonTerminal.OP1);
-		token = emitTerminal(reader.token());
-		reader.advance();
+		enterRule(NonTerminal.DESIGNATOR);
+		int dereferencedToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+		Symbol dereferencedSymbol = resolveSymbol(dereferencedToken);
+		int prevIndex = FlatAst.NONE;
+		while(accept(Token.Kind.OPEN_BRACKET))
+		{
+			int base = indexBase(prevIndex, dereferencedToken, dereferencedSymbol);
+			int indexExpression = expression0();
+			require(Token.Kind.CLOSE_BRACKET);
+			prevIndex = newIndex(base, indexExpression);
+		}
 		exitRule();
-		return token;
+		return designatorResult(dereferencedToken, dereferencedSymbol, prevIndex, acceptAddressOf);
 	}
 	
-	private Token op0() throws FirstSetUnsatisfiedException
+	// The base of the first index is the designated symbol's address. It
+	// is added before the index expression is parsed, since children must
+	// be added in order.
+	private int indexBase(int prevIndex, int dereferencedToken, Symbol dereferencedSymbol)
 	{
-		enterRule(NonTerminal.OP0);
-		Token token = null;
-		requireFirstSetSatisfied(NonTerminal.OP0);
-		token = emitTerminal(reader.token());
-		reader.advance();		
-		exitRule();
-		return token;
+		return prevIndex != FlatAst.NONE
+			? prevIndex
+			: newAddressOf(dereferencedToken, dereferencedSymbol);
 	}
 	
-	private Token type() throws RequiredTokenException
+	private int newIndex(int base, int indexExpression)
 	{
-		enterRule(NonTerminal.TYPE);
-		Token typeToken = emitTerminal(require(Token.Kind.IDENTIFIER));
-		exitRule();
-		return typeToken;
+		return nodes.addBinary(
+			FlatAst.INDEX,
+			nodes.lineNumber(indexExpression),
+			nodes.charPosition(indexExpression),
+			0,
+			base,
+			indexExpression);
 	}
 	
-	private Expression designator(boolean acceptAddressOf) throws RequiredTokenException 
+	private int designatorResult(int dereferencedToken, Symbol dereferencedSymbol, int prevIndex, boolean acceptAddressOf)
 	{
-		enterRule(NonTerminal.DESIGNATOR);
-		Token dereferencedToken = emitTerminal(require(Token.Kind.IDENTIFIER));
-		Symbol dereferencedSymbol = null;
-		try 
-		{
-			dereferencedSymbol = resolveSymbol(dereferencedToken);
-		}
-		catch (UnresolvableSymbolException e) 
-		{
-			exitRule();
-			return new Error(
-				dereferencedToken.getLineNumber(),
-				dereferencedToken.getCharPos(),
-				String.format("Unable to resolve symbol \"%s\".", dereferencedToken.getLexeme()));
-		}
-		Index prevIndex = null;
-		while(accept(Token.Kind.OPEN_BRACKET))
-		{
-			Expression indexExpression = expression0();
-			require(Token.Kind.CLOSE_BRACKET);
-			
-			if(prevIndex == null)
-			{
-				prevIndex = new Index(
-					((Command)indexExpression).lineNumber(), 
-					((Command)indexExpression).charPosition(), 
-					new AddressOf(
-						dereferencedToken.getLineNumber(),
-						dereferencedToken.getCharPos(),
-						dereferencedSymbol),
-					indexExpression);
-			}
-			else
-			{
-				prevIndex = new Index(
-					((Command)indexExpression).lineNumber(),
-					((Command)indexExpression).charPosition(),
-					prevIndex,
-					indexExpression);
-			}
-		}
-		exitRule();
-		if(acceptAddressOf && prevIndex == null)
-		{
-			return new AddressOf(
-				dereferencedToken.getLineNumber(),
-				dereferencedToken.getCharPos(),
-				dereferencedSymbol);
-		}
-		return new Dereference(
-			dereferencedToken.getLineNumber(),
-			dereferencedToken.getCharPos(),
-			prevIndex != null
+		// The indices of an unresolved designator are still parsed, to
+		// get past them, but the designator becomes an Error.
+		if(dereferencedSymbol == null)
+			return unresolvedError(tokens.token(dereferencedToken));
+		if(acceptAddressOf && prevIndex == FlatAst.NONE)
+			return newAddressOf(dereferencedToken, dereferencedSymbol);
+		return nodes.addUnary(
+			FlatAst.DEREFERENCE,
+			tokens.lineNumber(dereferencedToken),
+			tokens.charPos(dereferencedToken),
+			prevIndex != FlatAst.NONE
 				? prevIndex
-				: new AddressOf(
-					dereferencedToken.getLineNumber(),
-					dereferencedToken.getCharPos(),
-					dereferencedSymbol));
+				: newAddressOf(dereferencedToken, dereferencedSymbol));
 	}
 	
-	private Expression literal()
+	private int literal()
 	{
 		enterRule(NonTerminal.LITERAL);
-		Expression literal = firstSetSatisfied(NonTerminal.LITERAL)
-			? Command.newLiteral(emitTerminal(reader.token()))
-			: new Error(
-					reader.token().getLineNumber(),
-					reader.token().getCharPos(),
-					String.format("First set unsatisfied by token of kind \"%s\".", reader.token().getKind()));
+		int literal = firstSetSatisfied(NonTerminal.LITERAL)
+			? nodes.addLiteral(tokens, emitTerminal(reader.position()))
+			: nodes.addError(
+					tokens.lineNumber(reader.position()),
+					tokens.charPos(reader.position()),
+					String.format("First set unsatisfied by token of kind \"%s\".", reader.kind()));
 		reader.advance();
 		exitRule();
 		return literal;
 	}
 	
-	private Token emitTerminal(Token terminal)
+	private int redefinitionError(Token duplicate)
+	{
+		return nodes.addError(
+			duplicate.getLineNumber(),
+			duplicate.getCharPos(),
+			String.format("Attempted to redefine symbol \"%s\".", duplicate.getLexeme()));
+	}
+	
+	private int unresolvedError(Token unresolved)
+	{
+		return nodes.addError(
+			unresolved.getLineNumber(),
+			unresolved.getCharPos(),
+			String.format("Unable to resolve symbol \"%s\".", unresolved.getLexeme()));
+	}
+	
+	private int newExpression(int leftSide, int op, int rightSide)
+	{
+		return nodes.addExpression(tokens.kind(op), tokens.lineNumber(op), tokens.charPos(op), leftSide, rightSide);
+	}
+	
+	private int newAddressOf(int token, Symbol symbol)
 	{
-		if(root == null)
+		return nodes.addSymbol(FlatAst.ADDRESS_OF, tokens.lineNumber(token), tokens.charPos(token), symbol, FlatAst.NONE);
+	}
+	
+	// Makes node the sibling after last, if there is a last, and returns it.
+	private int chain(int last, int node)
+	{
+		if(last != FlatAst.NONE)
+			nodes.link(last, node);
+		return node;
+	}
+	
+	// Lists take the position of their first element, if they have one.
+	private int newList(int kind, int first, int fallbackLineNumber, int fallbackCharPosition)
+	{
+		return nodes.add(
+			kind,
+			first != FlatAst.NONE ? nodes.lineNumber(first) : fallbackLineNumber,
+			first != FlatAst.NONE ? nodes.charPosition(first) : fallbackCharPosition,
+			0,
+			first);
+	}
+	
+	private int newExpressionList(int first, int fallbackLineNumber, int fallbackCharPosition)
+	{
+		return nodes.add(
+			FlatAst.EXPRESSION_LIST,
+			first != FlatAst.NONE ? nodes.lineNumber(first) : fallbackLineNumber,
+			first != FlatAst.NONE ? nodes.leftmostCharPos(first) : fallbackCharPosition,
+			0,
+			first);
+	}
+	
+	private int emptyStatementList()
+	{
+		return nodes.addLeaf(FlatAst.STATEMENT_LIST, tokens.lineNumber(reader.position()), tokens.charPos(reader.position()), 0);
+	}
+	
+	private int newIfElseBranch(int ifToken, int conditional, int thenBlock, int elseBlock)
+	{
+		nodes.link(conditional, thenBlock);
+		nodes.link(thenBlock, elseBlock);
+		return nodes.addUnary(
+				FlatAst.IF_ELSE_BRANCH,
+				tokens.lineNumber(ifToken), 
+				tokens.charPos(ifToken), 
+				conditional);
+	}
+	
+	// The parameters are added as consecutive nodes of their own ahead of
+	// the body, which keeps the function's subtree in one range. Returns
+	// the first of them, or NONE.
+	private int addParameters(ArrayList<Symbol> parameters)
+	{
+		int first = FlatAst.NONE, last = FlatAst.NONE;
+		for(Symbol param : parameters)
 		{
-			root = current = new ParseNode(null, terminal);
-			return terminal;
+			last = chain(last, nodes.addSymbol(FlatAst.PARAMETER, param.getLineNumber(), param.getCharPosition(), param, FlatAst.NONE));
+			if(first == FlatAst.NONE)
+				first = last;
 		}
-		ParseNode newNode = new ParseNode(null, terminal);
-		newNode.Parent = current;
-		if(current.FirstChild == null)
-			current.FirstChild = newNode;
-		else
+		return first;
+	}
+	
+	private int newFunctionDefinition(int funcToken, Symbol nameSymbol, int firstParameter, int parameterCount, int body)
+	{
+		int first = body;
+		if(parameterCount > 0)
 		{
-			ParseNode lastChild = current.FirstChild;
-			while(lastChild.Sibling != null)
-				lastChild = lastChild.Sibling;
-			lastChild.Sibling = newNode;
+			nodes.link(firstParameter + parameterCount - 1, body);
+			first = firstParameter;
 		}
+		return nodes.addSymbol(
+				FlatAst.FUNCTION_DEFINITION,
+				tokens.lineNumber(funcToken),
+				tokens.charPos(funcToken),
+				nameSymbol,
+				first);
+	}
+	
+	private int emitTerminal(int terminal)
+	{
+		if(parseLog != null)
+			parseLog.terminal(terminal);
 		return terminal;
 	}
 			
 	private void enterRule(NonTerminal productionRule)
 	{
-		if(root == null)
+		if(parseLog != null)
+			parseLog.enter(productionRule);
+	}
+	
+	private void exitRule()
+	{
+		if(parseLog != null)
+			parseLog.exit();
+	}
+		
+	// Reports a syntax error inside the rule, then puts the parser back
+	// into a state where the rule can end: rules and scopes entered since
+	// it began are closed, and tokens are skipped up to one the rule can
+	// be followed by. The rule's result is replaced by an Error node.
+	private int recover(RequiredTokenException e, NonTerminal rule, int ruleDepth, int scopeDepth)
+	{
+		String message = reportSyntaxError(e);
+		if(parseLog != null)
+			parseLog.exitTo(ruleDepth);
+		scopes.exitTo(scopeDepth);
+		skipTo(rule);
+		return nodes.addError(e.ActualToken.getLineNumber(), e.ActualToken.getCharPos(), message);
+	}
+	
+	private String reportSyntaxError(RequiredTokenException e)
+	{
+		String message = syntaxErrorMessage(e);
+		if(reader.position() == lastSyntaxError)
+			return message;
+		lastSyntaxError = reader.position();
+		diagnostics.add(new Diagnostic(Diagnostic.Code.SYNTAX_ERROR, e.ActualToken.getLineNumber(), e.ActualToken.getCharPos(), "%s", message));
+		return message;
+	}
+	
+	private static String syntaxErrorMessage(RequiredTokenException e)
+	{
+		return String.format("A token of kind \"%s\" was expected but the token \"%s\" of kind \"%s\" was found instead.", e.ExpectedKind, e.ActualToken.getLexeme(), e.ActualToken.getKind());
+	}
+	
+	// Panic mode: skips tokens until one that may follow the rule. A
+	// statement may also end at its semicolon, which is consumed.
+	private void skipTo(NonTerminal rule)
+	{
+		long follow = followMask(rule);
+		while((follow & (1L << reader.kind().ordinal())) == 0)
 		{
-			root = current = new ParseNode(productionRule, null);
-			return;
+			if(rule == NonTerminal.STATEMENT && accept(Token.Kind.SEMICOLON))
+				return;
+			reader.advance();
 		}
-		ParseNode newNode = new ParseNode(productionRule, null);
-		newNode.Parent = current;
-		if(current.FirstChild == null)
-			current.FirstChild = newNode;
-		else
+	}
+	
+	// Tokens that panic-mode recovery in each rule stops at: the rule's
+	// follow set, plus the start of a declaration and the end of the
+	// input, so that one unclosed block does not swallow the whole file.
+	private static long followMask(NonTerminal rule)
+	{
+		long stop = NonTerminal.DECLARATION.FirstMask | (1L << Token.Kind.EOF.ordinal());
+		switch(rule)
 		{
-			ParseNode lastChild = current.FirstChild;
-			while(lastChild.Sibling != null)
-				lastChild = lastChild.Sibling;
-			lastChild.Sibling = newNode;
+		case STATEMENT:
+			return stop | NonTerminal.STATEMENT.FirstMask | (1L << Token.Kind.CLOSE_BRACE.ordinal());
+		case DECLARATION:
+			return stop;
+		default:
+			throw new IllegalArgumentException("No recovery for " + rule + ".");
 		}
-		current = newNode;
 	}
 	
-	private void exitRule()
+	private int ruleDepth()
 	{
-		current = current.Parent;
+		return parseLog != null ? parseLog.depth() : 0;
 	}
-		
+	
 	private boolean firstSetSatisfied(NonTerminal nonTerminal)
 	{
-		return nonTerminal.FirstSet.contains(reader.kind());
+		return nonTerminal.firstSetContains(reader.kind());
 	}
 	
-	private void requireFirstSetSatisfied(NonTerminal nonTerminal) throws FirstSetUnsatisfiedException
+	private Production predict(NonTerminal nonTerminal)
 	{
-		if(!firstSetSatisfied(nonTerminal))
-			throw new FirstSetUnsatisfiedException(nonTerminal);
+		return Production.predict(nonTerminal, reader.kind());
 	}
 	
-	private Token require(Token.Kind kind) throws RequiredTokenException
+	private int require(Token.Kind kind) throws RequiredTokenException
 	{
 		if(reader.kind().equals(kind))
 		{
-			Token token = reader.token();
+			int token = reader.position();
 			reader.advance();
 			return token;
 		}
@@ -724,54 +1264,728 @@ public class Parser
 		return false;
 	}
 	
-	private Symbol resolveSymbol(Token token) throws UnresolvableSymbolException
+	// Looks the symbol up, or reports it and returns null if there is
+	// none. The caller finishes parsing its rule before giving up on it,
+	// so that the tokens after the name are not mistaken for errors.
+	private Symbol resolveSymbol(int token)
 	{
-		if(symbolTables.peek().containsSymbol(token.getLexeme(), true))
-			return symbolTables.peek().lookup(token.getLexeme());
-		errorReport.append(String.format("ResolveSymbolError(%d,%d)[Could not find %s.]\n", token.getLineNumber(), token.getCharPos(), token.getLexeme()));
-		appendSymbolHistory(errorReport, symbolTables.peek());
-		errorReport.append("\n");
-		throw new UnresolvableSymbolException(token);
+		Symbol symbol = scopes.lookup(tokens.nameId(token));
+		if(symbol != null)
+			return symbol;
+		// Past the cap, the error is only counted, without copying the
+		// scopes its message would list.
+		if(diagnostics.isFull())
+			diagnostics.drop();
+		else
+			diagnostics.add(new Diagnostic(
+				Diagnostic.Code.RESOLVE_SYMBOL_ERROR,
+				tokens.lineNumber(token),
+				tokens.charPos(token),
+				scopes.snapshot(),
+				"Could not find %s.",
+				tokens.lexeme(token)));
+		return null;
 	}
 	
-	private Symbol defineSymbol(Token token, Type type) throws SymbolRedefinitionException
+	// Defines the symbol in the current scope, or reports it and returns
+	// null if the scope already has one by that name. As with resolving,
+	// the caller finishes parsing its rule before giving up on it.
+	private Symbol defineSymbol(int token, Type type)
 	{
 		// Define the symbol.
-		if(symbolTables.peek().containsSymbol(token.getLexeme(), false))
+		int nameId = tokens.nameId(token);
+		if(scopes.containsSymbol(nameId, false))
 		{
-			errorReport.append(String.format("DeclareSymbolError(%d,%d)[%s already exists.]\n", token.getLineNumber(), token.getCharPos(), token.getLexeme()));
-			appendSymbolHistory(errorReport, symbolTables.peek());
-			errorReport.append("\n");
-			throw new SymbolRedefinitionException(token);
+			if(diagnostics.isFull())
+				diagnostics.drop();
+			else
+				diagnostics.add(new Diagnostic(
+					Diagnostic.Code.DECLARE_SYMBOL_ERROR,
+					tokens.lineNumber(token),
+					tokens.charPos(token),
+					scopes.snapshot(),
+					"%s already exists.",
+					tokens.lexeme(token)));
+			return null;
 		}
 		else
 		{
-			return symbolTables.peek().define(token.getLexeme(), token.getLineNumber(), token.getCharPos(), type);
+			return scopes.define(nameId, tokens.lineNumber(token), tokens.charPos(token), type);
 		}
 	}
 	
-	private int appendSymbolHistory(StringBuilder b, SymbolTable current)
+	private void enterScope()
+	{
+		scopes.enterScope();
+	}
+	
+	private void exitScope()
+	{
+		scopes.exitScope();
+	}
+	
+	// The explicit-stack parser. Each rule that can nest is a Frame object
+	// holding the locals of the recursive method it mirrors, and the
+	// point it has reached in that method. A frame is resumed with the
+	// node the last frame it pushed finished with, and either returns
+	// another frame to push or finishes with a node of its own. The rules
+	// that never nest are called directly, as the recursive methods call
+	// them.
+	private abstract class Frame
 	{
-		if(current == null)
-			return 0;
-		int indent = appendSymbolHistory(b, current.getParent());
-		for(Symbol s : current.getDeclarationOrder())
+		protected int step;
+		protected int result;
+		
+		// Returns the Frame to run next, or null once finished.
+		public abstract Frame resume(int childResult) throws RequiredTokenException;
+		
+		// The rule that recovers from syntax errors inside this frame,
+		// or null if errors pass through it.
+		public NonTerminal recoveryRule() { return null; }
+		
+		protected Frame finish(int node)
 		{
-			// Two spaces per indent.
-			for(int i = 0; i < indent; i++)
-				b.append("  ");
-			b.append(String.format("Symbol(%s)\n", s.getName()));
+			result = node;
+			return null;
 		}
-		return indent + 1;
 	}
 	
-	private void enterScope()
+	private abstract class RecoveringFrame extends Frame
 	{
-		symbolTables.push(new SymbolTable(symbolTables.peek()));
+		protected int ruleDepth, scopeDepth;
+		
+		protected void recordDepths()
+		{
+			ruleDepth = ruleDepth();
+			scopeDepth = scopes.depth();
+		}
 	}
 	
-	private void exitScope()
+	private class ProgramFrame extends Frame
+	{
+		@Override
+		public Frame resume(int childResult)
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.PROGRAM);
+				return new DeclarationListFrame(1, 1);
+			}
+			exitRule();
+			return finish(childResult);
+		}
+	}
+	
+	private class DeclarationListFrame extends Frame
 	{
-		symbolTables.pop();
+		private final int fallbackLineNumber, fallbackCharPosition;
+		private int first = FlatAst.NONE, last = FlatAst.NONE;
+		
+		public DeclarationListFrame(int fallbackLineNumber, int fallbackCharPosition)
+		{
+			this.fallbackLineNumber = fallbackLineNumber;
+			this.fallbackCharPosition = fallbackCharPosition;
+		}
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ == 0)
+				enterRule(NonTerminal.DECLARATION_LIST);
+			else
+			{
+				last = chain(last, childResult);
+				if(first == FlatAst.NONE)
+					first = last;
+			}
+			while(firstSetSatisfied(NonTerminal.DECLARATION) || reader.kind() != Token.Kind.EOF)
+			{
+				if(firstSetSatisfied(NonTerminal.DECLARATION))
+					return new DeclarationFrame();
+				reportSyntaxError(new RequiredTokenException(Token.Kind.EOF, reader.token()));
+				reader.advance();
+				skipTo(NonTerminal.DECLARATION);
+			}
+			require(Token.Kind.EOF);
+			exitRule();
+			return finish(newList(FlatAst.DECLARATION_LIST, first, fallbackLineNumber, fallbackCharPosition));
+		}
+	}
+	
+	private class DeclarationFrame extends RecoveringFrame
+	{
+		@Override
+		public NonTerminal recoveryRule() { return NonTerminal.DECLARATION; }
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ > 0)
+			{
+				exitRule();
+				return finish(childResult);
+			}
+			enterRule(NonTerminal.DECLARATION);
+			recordDepths();
+			int declaration;
+			try
+			{
+				switch(predict(NonTerminal.DECLARATION))
+				{
+				case VARIABLE_DECLARATION:
+					declaration = variable_declaration();
+					break;
+				case ARRAY_DECLARATION:
+					declaration = array_declaration();
+					break;
+				case FUNCTION_DEFINITION:
+					return new FunctionDefinitionFrame();
+				default:
+					declaration = nodes.addError(
+						tokens.lineNumber(reader.position()), 
+						tokens.charPos(reader.position()), 
+						String.format("First sets unsatisfied by token of kind \"%s\".", reader.kind()));
+				}
+			}
+			catch(SymbolRedefinitionException e)
+			{
+				declaration = redefinitionError(e.DuplicateToken);
+			}
+			exitRule();
+			return finish(declaration);
+		}
+	}
+	
+	// Finishes with an Error if the name is already defined, which is
+	// what declaration makes of function_definition's exception.
+	private class FunctionDefinitionFrame extends Frame
+	{
+		private int funcToken, nameToken, firstParameter, parameterCount;
+		private Symbol nameSymbol;
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.FUNCTION_DEFINITION);
+				funcToken = require(Token.Kind.FUNC);
+				nameToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+				nameSymbol = defineSymbol(nameToken, null);
+				enterScope();
+				require(Token.Kind.OPEN_PAREN);
+				ArrayList<Symbol> parameters = parameter_list();
+				TypeList paramTypes = TypeList.EMPTY;
+				for(Symbol param : parameters)
+					paramTypes = paramTypes.with(param.getType());
+				require(Token.Kind.CLOSE_PAREN);
+				require(Token.Kind.COLON);
+				Type returnType = Type.getBaseType(tokens.lexeme(type()));
+				if(nameSymbol != null)
+					nameSymbol.setType(FuncType.of(paramTypes, returnType));
+				firstParameter = addParameters(parameters);
+				parameterCount = parameters.size();
+				return new StatementBlockFrame(true);
+			}
+			exitScope();
+			exitRule();
+			if(nameSymbol == null)
+				return finish(redefinitionError(tokens.token(nameToken)));
+			return finish(newFunctionDefinition(funcToken, nameSymbol, firstParameter, parameterCount, childResult));
+		}
+	}
+	
+	private class StatementBlockFrame extends Frame
+	{
+		private final boolean suppressNewScope;
+		
+		public StatementBlockFrame(boolean suppressNewScope)
+		{
+			this.suppressNewScope = suppressNewScope;
+		}
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.STATEMENT_BLOCK);
+				if(!suppressNewScope)
+					enterScope();
+				int openBraceToken = require(Token.Kind.OPEN_BRACE);
+				return new StatementListFrame(tokens.lineNumber(openBraceToken), tokens.charPos(openBraceToken));
+			}
+			require(Token.Kind.CLOSE_BRACE);
+			if(!suppressNewScope)
+				exitScope();
+			exitRule();
+			return finish(childResult);
+		}
+	}
+	
+	private class StatementListFrame extends Frame
+	{
+		private final int fallbackLineNumber, fallbackCharPosition;
+		private int first = FlatAst.NONE, last = FlatAst.NONE;
+		
+		public StatementListFrame(int fallbackLineNumber, int fallbackCharPosition)
+		{
+			this.fallbackLineNumber = fallbackLineNumber;
+			this.fallbackCharPosition = fallbackCharPosition;
+		}
+		
+		@Override
+		public Frame resume(int childResult)
+		{
+			if(step++ == 0)
+				enterRule(NonTerminal.STATEMENT_LIST);
+			else
+			{
+				last = chain(last, childResult);
+				if(first == FlatAst.NONE)
+					first = last;
+			}
+			if(firstSetSatisfied(NonTerminal.STATEMENT))
+				return new StatementFrame();
+			exitRule();
+			return finish(newList(FlatAst.STATEMENT_LIST, first, fallbackLineNumber, fallbackCharPosition));
+		}
+	}
+	
+	private class StatementFrame extends RecoveringFrame
+	{
+		@Override
+		public NonTerminal recoveryRule() { return NonTerminal.STATEMENT; }
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ > 0)
+			{
+				exitRule();
+				return finish(childResult);
+			}
+			enterRule(NonTerminal.STATEMENT);
+			recordDepths();
+			int statement;
+			switch(predict(NonTerminal.STATEMENT))
+			{
+			case VARIABLE_DECLARATION_STATEMENT:
+				try 
+				{
+					statement = variable_declaration();
+				} 
+				catch (SymbolRedefinitionException e) 
+				{
+					statement = redefinitionError(e.DuplicateToken);
+				}
+				break;
+			case CALL_STATEMENT:
+				return new CallStatementFrame();
+			case ASSIGNMENT_STATEMENT:
+				return new AssignmentStatementFrame();
+			case IF_STATEMENT:
+				return new IfStatementFrame();
+			case WHILE_STATEMENT:
+				return new WhileStatementFrame();
+			case RETURN_STATEMENT:
+				return new ReturnStatementFrame();
+			default:
+				statement = nodes.addError(
+					tokens.lineNumber(reader.position()), 
+					tokens.charPos(reader.position()),
+					String.format("First set unsatisfied for non-terminal of kind \"%s\".", reader.kind()));
+			}
+			exitRule();
+			return finish(statement);
+		}
+	}
+	
+	private class ReturnStatementFrame extends Frame
+	{
+		private int returnToken;
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.RETURN_STATEMENT);
+				returnToken = require(Token.Kind.RETURN);
+				return new Expression0Frame();
+			}
+			require(Token.Kind.SEMICOLON);
+			exitRule();
+			return finish(nodes.addUnary(FlatAst.RETURN, tokens.lineNumber(returnToken), tokens.charPos(returnToken), childResult));
+		}
+	}
+	
+	private class WhileStatementFrame extends Frame
+	{
+		private int whileToken, conditional;
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			switch(step++)
+			{
+			case 0:
+				enterRule(NonTerminal.WHILE_STATEMENT);
+				whileToken = require(Token.Kind.WHILE);
+				return new Expression0Frame();
+			case 1:
+				conditional = childResult;
+				return new StatementBlockFrame(false);
+			default:
+				exitRule();
+				return finish(nodes.addBinary(
+					FlatAst.WHILE_LOOP,
+					tokens.lineNumber(whileToken),
+					tokens.charPos(whileToken),
+					0,
+					conditional,
+					childResult));
+			}
+		}
+	}
+	
+	private class IfStatementFrame extends Frame
+	{
+		private int ifToken, conditional, thenBlock, elseBlock;
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			switch(step++)
+			{
+			case 0:
+				enterRule(NonTerminal.IF_STATEMENT);
+				ifToken = require(Token.Kind.IF);
+				return new Expression0Frame();
+			case 1:
+				conditional = childResult;
+				return new StatementBlockFrame(false);
+			case 2:
+				thenBlock = childResult;
+				if(accept(Token.Kind.ELSE))
+					return new StatementBlockFrame(false);
+				elseBlock = emptyStatementList();
+				break;
+			default:
+				elseBlock = childResult;
+			}
+			exitRule();
+			return finish(newIfElseBranch(ifToken, conditional, thenBlock, elseBlock));
+		}
+	}
+	
+	private class CallStatementFrame extends Frame
+	{
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.CALL_STATEMENT);
+				return new CallExpressionFrame();
+			}
+			require(Token.Kind.SEMICOLON);
+			exitRule();
+			return finish(childResult);
+		}
+	}
+	
+	private class AssignmentStatementFrame extends Frame
+	{
+		private int letToken, destination;
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			switch(step++)
+			{
+			case 0:
+				enterRule(NonTerminal.ASSIGNMENT_STATEMENT);
+				letToken = require(Token.Kind.LET);
+				return new DesignatorFrame(true);
+			case 1:
+				destination = childResult;
+				require(Token.Kind.ASSIGN);
+				return new Expression0Frame();
+			default:
+				require(Token.Kind.SEMICOLON);
+				exitRule();
+				return finish(nodes.addBinary(
+					FlatAst.ASSIGNMENT,
+					tokens.lineNumber(letToken),
+					tokens.charPos(letToken),
+					0,
+					destination,
+					childResult));
+			}
+		}
+	}
+	
+	// Finishes with an Error rather than a Call if the function cannot
+	// be resolved, which is what the callers of call_expression make of
+	// its UnresolvableSymbolException.
+	private class CallExpressionFrame extends Frame
+	{
+		private int callToken, functionNameToken;
+		private Symbol functionNameSymbol;
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.CALL_EXPRESSION);
+				callToken = require(Token.Kind.CALL);
+				functionNameToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+				functionNameSymbol = resolveSymbol(functionNameToken);
+				int openParenToken = require(Token.Kind.OPEN_PAREN);
+				return new ExpressionListFrame(tokens.lineNumber(openParenToken), tokens.charPos(openParenToken) + 1);
+			}
+			require(Token.Kind.CLOSE_PAREN);
+			exitRule();
+			if(functionNameSymbol == null)
+				return finish(unresolvedError(tokens.token(functionNameToken)));
+			return finish(nodes.addSymbol(
+				FlatAst.CALL,
+				tokens.lineNumber(callToken),
+				tokens.charPos(callToken),
+				functionNameSymbol,
+				childResult));
+		}
+	}
+	
+	private class ExpressionListFrame extends Frame
+	{
+		private final int fallbackLineNumber, fallbackCharPosition;
+		private int first = FlatAst.NONE, last = FlatAst.NONE;
+		
+		public ExpressionListFrame(int fallbackLineNumber, int fallbackCharPosition)
+		{
+			this.fallbackLineNumber = fallbackLineNumber;
+			this.fallbackCharPosition = fallbackCharPosition;
+		}
+		
+		@Override
+		public Frame resume(int childResult)
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.EXPRESSION_LIST);
+				if(firstSetSatisfied(NonTerminal.EXPRESSION0))
+					return new Expression0Frame();
+			}
+			else
+			{
+				last = chain(last, childResult);
+				if(first == FlatAst.NONE)
+					first = last;
+				if(accept(Token.Kind.COMMA))
+					return new Expression0Frame();
+			}
+			exitRule();
+			return finish(newExpressionList(first, fallbackLineNumber, fallbackCharPosition));
+		}
+	}
+	
+	private class Expression0Frame extends Frame
+	{
+		@Override
+		public Frame resume(int childResult)
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.EXPRESSION0);
+				return parseLog == null ? new BinaryExpressionFrame(COMPARISON) : operandFrame(COMPARISON);
+			}
+			exitRule();
+			return finish(childResult);
+		}
+	}
+	
+	// The frame of binaryExpression. Left associative operators loop
+	// within one frame, so only right operands and parentheses nest.
+	private class BinaryExpressionFrame extends Frame
+	{
+		private final int minPrecedence;
+		private int lhs, precedence, op;
+		
+		public BinaryExpressionFrame(int minPrecedence)
+		{
+			this.minPrecedence = minPrecedence;
+		}
+		
+		@Override
+		public Frame resume(int childResult)
+		{
+			switch(step++)
+			{
+			case 0:
+				return new Expression3Frame();
+			case 1:
+				lhs = childResult;
+				break;
+			default:
+				lhs = newExpression(lhs, op, childResult);
+				// The grammar allows one comparison, not a chain of them.
+				if(precedence == COMPARISON)
+					return finish(lhs);
+			}
+			precedence = PRECEDENCE[reader.kind().ordinal()];
+			if(precedence < minPrecedence)
+				return finish(lhs);
+			enterRule(OPERATOR_RULES[precedence]);
+			op = emitTerminal(reader.position());
+			reader.advance();
+			exitRule();
+			return new BinaryExpressionFrame(precedence + 1);
+		}
+	}
+	
+	// The frame of an operand at the given precedence when the parse tree
+	// is recorded.
+	private Frame operandFrame(int precedence)
+	{
+		return precedence > MULTIPLICATION ? new Expression3Frame() : new RecordedExpressionFrame(precedence);
+	}
+	
+	// The frame of recordedExpression.
+	private class RecordedExpressionFrame extends Frame
+	{
+		private final int precedence;
+		private int lhs, op;
+		
+		public RecordedExpressionFrame(int precedence)
+		{
+			this.precedence = precedence;
+		}
+		
+		@Override
+		public Frame resume(int childResult)
+		{
+			switch(step++)
+			{
+			case 0:
+				if(precedence != COMPARISON)
+					enterRule(LEVEL_RULES[precedence]);
+				return operandFrame(precedence + 1);
+			case 1:
+				lhs = childResult;
+				break;
+			default:
+				lhs = newExpression(lhs, op, childResult);
+			}
+			// The grammar allows one comparison, not a chain of them.
+			if(PRECEDENCE[reader.kind().ordinal()] != precedence || (precedence == COMPARISON && step > 2))
+			{
+				if(precedence != COMPARISON)
+					exitRule();
+				return finish(lhs);
+			}
+			enterRule(OPERATOR_RULES[precedence]);
+			op = emitTerminal(reader.position());
+			reader.advance();
+			exitRule();
+			return operandFrame(precedence + 1);
+		}
+	}
+	
+	private class Expression3Frame extends Frame
+	{
+		private static final int NOT_OPERAND = 1, GROUPED = 2, WHOLE = 3;
+		private int startToken;
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			int expression;
+			switch(step)
+			{
+			case 0:
+				enterRule(NonTerminal.EXPRESSION3);
+				startToken = reader.position();
+				switch(predict(NonTerminal.EXPRESSION3))
+				{
+				case LOGICAL_NOT:
+					reader.advance();
+					step = NOT_OPERAND;
+					return new Expression3Frame();
+				case GROUPED_EXPRESSION:
+					reader.advance();
+					step = GROUPED;
+					return new Expression0Frame();
+				case DESIGNATOR:
+					step = WHOLE;
+					return new DesignatorFrame(false);
+				case CALL_EXPRESSION:
+					step = WHOLE;
+					return new CallExpressionFrame();
+				case LITERAL:
+					expression = literal();
+					break;
+				default:
+					expression = nodes.addError(
+						tokens.lineNumber(startToken),
+						tokens.charPos(startToken),
+						String.format("First set unsatisfied by token of kind \"%s\".", tokens.kind(startToken)));
+				}
+				break;
+			case NOT_OPERAND:
+				expression = nodes.addUnary(
+					FlatAst.LOGICAL_NOT,
+					tokens.lineNumber(startToken),
+					tokens.charPos(startToken),
+					childResult);
+				break;
+			case GROUPED:
+				require(Token.Kind.CLOSE_PAREN);
+				expression = childResult;
+				break;
+			default:
+				expression = childResult;
+			}
+			exitRule();
+			return finish(expression);
+		}
+	}
+	
+	private class DesignatorFrame extends Frame
+	{
+		private final boolean acceptAddressOf;
+		private int dereferencedToken;
+		private Symbol dereferencedSymbol;
+		private int prevIndex = FlatAst.NONE, base;
+		
+		public DesignatorFrame(boolean acceptAddressOf)
+		{
+			this.acceptAddressOf = acceptAddressOf;
+		}
+		
+		@Override
+		public Frame resume(int childResult) throws RequiredTokenException
+		{
+			if(step++ == 0)
+			{
+				enterRule(NonTerminal.DESIGNATOR);
+				dereferencedToken = emitTerminal(require(Token.Kind.IDENTIFIER));
+				dereferencedSymbol = resolveSymbol(dereferencedToken);
+			}
+			else
+			{
+				require(Token.Kind.CLOSE_BRACKET);
+				prevIndex = newIndex(base, childResult);
+			}
+			if(accept(Token.Kind.OPEN_BRACKET))
+			{
+				base = indexBase(prevIndex, dereferencedToken, dereferencedSymbol);
+				return new Expression0Frame();
+			}
+			exitRule();
+			return finish(designatorResult(dereferencedToken, dereferencedSymbol, prevIndex, acceptAddressOf));
+		}
 	}
-}
\ No newline at end of file
+}
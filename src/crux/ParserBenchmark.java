@@ -0,0 +1,120 @@
+package crux;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Times the parser on a generated, expression-heavy program, scanned into
+// a TokenBuffer up front so that only parsing is measured. The program is
+// one function of assignments whose right hand sides mix every operator
+// level with parentheses, negations, array indexing and calls. The same
+// statements split among many functions measure parsing bodies in parallel.
+public class ParserBenchmark
+{
+	public static final int STATEMENTS = 20000;
+	public static final int FUNCTIONS = 200;
+	public static final int WARMUP_RUNS = 10;
+	public static final int TIMED_RUNS = 20;
+
+	private static final String[] OPERATORS = {
+		"+", "-", "or", "*", "/", "and", "<", ">", "<=", ">=", "==", "!="
+	};
+	private static final String[] OPERANDS = {
+		"a", "b", "1", "2", "x[a]", "x[a + 1]", "::f(a, b)"
+	};
+
+	public static void main(String args[])
+	{
+		SourceBuffer source = new SourceBuffer(generate(new Random(142), 1));
+		TokenBuffer tokens = new TableScanner(source).scanAll();
+		report("with parse tree", source, tokens, time(tokens, true, Parser::parse));
+		report("without parse tree", source, tokens, time(tokens, false, Parser::parse));
+		report("flat ast only", source, tokens, time(tokens, false, Parser::parseFlat));
+
+		source = new SourceBuffer(generate(new Random(142), FUNCTIONS));
+		tokens = new TableScanner(source).scanAll();
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		report("many functions", source, tokens, time(tokens, false, Parser::parseFlat));
+		report("parallel bodies", source, tokens, time(tokens, false, parser -> parser.parseFlatInParallel(pool)));
+		report("lazy outline", source, tokens, time(tokens, false, Parser::parseLazily));
+	}
+
+	private interface ParseMode
+	{
+		void parse(Parser parser);
+	}
+
+	private static String generate(Random random, int functions)
+	{
+		StringBuilder text = new StringBuilder();
+		text.append("var a : int;\nvar b : int;\narray x : int[16];\n");
+		text.append("func f(p : int, q : int) : int {\n  return p * q + 1;\n}\n");
+		for(int function = 0; function < functions; function++)
+		{
+			text.append(function < functions - 1 ? "func g" + function : "func main").append("() : void {\n");
+			for(int i = 0; i < STATEMENTS / functions; i++)
+			{
+				text.append("  let a = ");
+				expression(random, text, 0);
+				text.append(";\n");
+			}
+			text.append("}\n");
+		}
+		return text.toString();
+	}
+
+	// Appends an arithmetic expression, with at most one comparison in
+	// any parenthesised group since comparisons do not chain in Crux.
+	private static void expression(Random random, StringBuilder text, int depth)
+	{
+		int operands = 2 + random.nextInt(4);
+		boolean compared = false;
+		for(int i = 0; i < operands; i++)
+		{
+			if(i > 0)
+			{
+				int choice = random.nextInt(compared ? 6 : OPERATORS.length);
+				compared |= choice >= 6;
+				text.append(' ').append(OPERATORS[choice]).append(' ');
+			}
+			int kind = random.nextInt(10);
+			if(kind == 0 && depth < 3)
+			{
+				text.append('(');
+				expression(random, text, depth + 1);
+				text.append(')');
+			}
+			else if(kind == 1 && depth < 3)
+			{
+				text.append("not (");
+				expression(random, text, depth + 1);
+				text.append(')');
+			}
+			else
+				text.append(OPERANDS[random.nextInt(OPERANDS.length)]);
+		}
+	}
+
+	// Returns the fastest of the timed runs, in nanoseconds.
+	private static long time(TokenBuffer tokens, boolean recordParseTree, ParseMode mode)
+	{
+		long best = Long.MAX_VALUE;
+		for(int run = 0; run < WARMUP_RUNS + TIMED_RUNS; run++)
+		{
+			long start = System.nanoTime();
+			Parser parser = new Parser(tokens, recordParseTree);
+			mode.parse(parser);
+			long elapsed = System.nanoTime() - start;
+			if(parser.hasError())
+				throw new IllegalStateException("Generated program has errors:\n" + parser.errorReport());
+			if(run >= WARMUP_RUNS)
+				best = Math.min(best, elapsed);
+		}
+		return best;
+	}
+
+	private static void report(String mode, SourceBuffer source, TokenBuffer tokens, long nanos)
+	{
+		System.out.println(String.format("%-20s %8.2f ms %8.1f tokens/us (%d chars, %d tokens)",
+			mode, nanos / 1e6, tokens.size() * 1e3 / nanos, source.length(), tokens.size()));
+	}
+}
@@ -1,27 +1,29 @@
 package crux;
 
-import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
 
 import crux.Token.Kind;
+import crux.scanning.Lexicon;
 import crux.scanning.StartState;
 import crux.scanning.State;
 import crux.scanning.TransitionContext;
 
 // Converts input source into a stream of tokens.
-public class Scanner 
+public class Scanner implements TokenSource
 {
 	// The source of input that is currently being read from,
-	// or null if no input is currently being read from.
-	private BufferedReader input;
+	// and the index of the next char to be read from it.
+	private final char[] input;
+	private final int inputLength;
+	private int inputPosition;
 	
-	private StringBuilder accumulator;	
+	// Chars of the token being built, held in a reusable array.
+	private char[] accumulator;
+	private int accumulatorLength;
 	private int nextReadLineNumber, nextReadColumnNumber, tokenStartLineNumber, tokenStartColumnNumber;
 	private boolean eof;	
 	private char value;
@@ -29,10 +31,23 @@ public class Scanner
 	private TransitionContext context;
 	private Queue<Token> emittedTokens;
 	
-	public Scanner(FileReader source)
+	public Scanner(FileReader source) throws IOException
 	{
-		input = new BufferedReader(source);
-		accumulator = new StringBuilder();
+		this(SourceBuffer.read(source));
+	}
+	
+	public Scanner(String sourceFilename) throws IOException
+	{
+		this(SourceBuffer.map(sourceFilename));
+	}
+	
+	public Scanner(SourceBuffer source)
+	{
+		input = source.chars();
+		inputLength = source.length();
+		inputPosition = 0;
+		accumulator = new char[64];
+		accumulatorLength = 0;
 		context = new ScannerTransitionContext();
 		currentState = StartState.instance();
 		emittedTokens = new LinkedList<Token>();
@@ -40,6 +55,7 @@ public class Scanner
 		eof = false;
 	}
 	
+	@Override
 	public Token next()
 	{
 		if(eof)
@@ -67,100 +83,20 @@ public class Scanner
 	
 	private int readChar()
 	{
-		try
-		{
-			int readVal;
-			while(true)
-			{
-				readVal = input.read();
-				//if(readVal == (int)'\n')
-				//	continue;
-				nextReadColumnNumber++;
-				if(readVal == (int)'\n')
-				{
-					nextReadLineNumber++;
-					nextReadColumnNumber = 1;					
-				}
-				return readVal;
-			}
-		}
-		catch (IOException e)
-		{
+		nextReadColumnNumber++;
+		if(inputPosition >= inputLength)
 			return -1;
+		char readVal = input[inputPosition++];
+		if(readVal == '\n')
+		{
+			nextReadLineNumber++;
+			nextReadColumnNumber = 1;
 		}
+		return readVal;
 	}
 	
 	private class ScannerTransitionContext implements TransitionContext
 	{
-		private final HashMap<String, Kind> keywords;
-		private final HashSet<Character> symbolChars;
-		private final HashMap<String, Kind> symbols;
-		
-		public ScannerTransitionContext()
-		{
-			keywords = new HashMap<String, Kind>();
-			keywords.put("and", Kind.AND);
-			keywords.put("or", Kind.OR);
-			keywords.put("not", Kind.NOT);
-			keywords.put("let", Kind.LET);
-			keywords.put("var", Kind.VAR);
-			keywords.put("array", Kind.ARRAY);
-			keywords.put("func", Kind.FUNC);
-			keywords.put("if", Kind.IF);
-			keywords.put("else", Kind.ELSE);
-			keywords.put("while", Kind.WHILE);
-			keywords.put("true", Kind.TRUE);
-			keywords.put("false", Kind.FALSE);
-			keywords.put("return", Kind.RETURN);
-			
-			symbolChars = new HashSet<Character>();
-			symbolChars.add(new Character('('));
-			symbolChars.add(new Character(')'));
-			symbolChars.add(new Character('{'));
-			symbolChars.add(new Character('}'));
-			symbolChars.add(new Character('['));
-			symbolChars.add(new Character(']'));
-			symbolChars.add(new Character('+'));
-			symbolChars.add(new Character('-'));
-			symbolChars.add(new Character('*'));
-			symbolChars.add(new Character('/'));
-			symbolChars.add(new Character('>'));
-			symbolChars.add(new Character('<'));
-			symbolChars.add(new Character('='));
-			symbolChars.add(new Character('!'));
-			symbolChars.add(new Character(','));
-			symbolChars.add(new Character(';'));
-			symbolChars.add(new Character(':'));
-			
-			symbols = new HashMap<String, Kind>();
-			symbols.put("(", Kind.OPEN_PAREN);
-			symbols.put(")", Kind.CLOSE_PAREN);
-			symbols.put("{", Kind.OPEN_BRACE);
-			symbols.put("}", Kind.CLOSE_BRACE);
-			symbols.put("[", Kind.OPEN_BRACKET);
-			symbols.put("]", Kind.CLOSE_BRACKET);
-			symbols.put("+", Kind.ADD);
-			symbols.put("-", Kind.SUB);
-			symbols.put("*", Kind.MUL);
-			symbols.put("/", Kind.DIV);
-			symbols.put(">=", Kind.GREATER_EQUAL);
-			symbols.put("<=", Kind.LESSER_EQUAL);
-			symbols.put(">", Kind.GREATER_THAN);
-			symbols.put("<", Kind.LESS_THAN);
-			symbols.put("!=", Kind.NOT_EQUAL);
-			symbols.put("==", Kind.EQUAL);
-			symbols.put("=", Kind.ASSIGN);
-			symbols.put(",", Kind.COMMA);
-			symbols.put(";", Kind.SEMICOLON);
-			symbols.put(":", Kind.COLON);
-			symbols.put("::", Kind.CALL);
-		}
-		
-		public String accumulated()
-		{
-			return accumulator.toString();
-		}
-		
 		public char value()
 		{
 			return eof ? Character.MIN_VALUE : value;
@@ -168,24 +104,27 @@ public class Scanner
 		
 		public void pushChar() 
 		{
-			accumulator.append(value);
+			if(accumulatorLength == accumulator.length)
+				accumulator = Arrays.copyOf(accumulator, accumulator.length * 2);
+			accumulator[accumulatorLength++] = value;
 		}
 		
 		public char popChar()
 		{
-			if(accumulator.length() > 0)
-			{
-				char val = accumulator.charAt(accumulator.length() - 1);
-				accumulator.setLength(accumulator.length() - 1);
-				return val;
-			}
+			if(accumulatorLength > 0)
+				return accumulator[--accumulatorLength];
 			return Character.MIN_VALUE;
 		}
 		
 		public void emit(Token.Kind kind)
 		{
-			emittedTokens.add(new Token(kind, accumulator.toString(), tokenStartLineNumber, tokenStartColumnNumber));
-			accumulator.setLength(0);
+			// Keywords and symbols share one canonical lexeme, so
+			// only tokens whose text varies need a new String.
+			String lexeme = Lexicon.fixedLexeme(kind);
+			if(lexeme == null)
+				lexeme = new String(accumulator, 0, accumulatorLength);
+			emittedTokens.add(new Token(kind, lexeme, tokenStartLineNumber, tokenStartColumnNumber));
+			accumulatorLength = 0;
 		}
 		
 		public void startToken()
@@ -220,21 +159,21 @@ public class Scanner
 		}
 
 		@Override
-		public Map<String, Kind> getKeywords() 
+		public Kind accumulatedKeyword() 
 		{
-			return keywords;
+			return Lexicon.keyword(accumulator, 0, accumulatorLength);
 		}
 
 		@Override
-		public Map<String, Kind> getSymbols() 
+		public Kind accumulatedSymbol() 
 		{
-			return symbols;
+			return Lexicon.symbol(accumulator, 0, accumulatorLength);
 		}
 
 		@Override
 		public boolean isSymbol() 
 		{
-			return !eof && symbolChars.contains(new Character(value));
+			return !eof && Lexicon.isSymbolChar(value);
 		}
 
 		@Override
@@ -246,20 +185,13 @@ public class Scanner
 		@Override
 		public void popAllChars() 
 		{
-			accumulator.setLength(0);
+			accumulatorLength = 0;
 		}
 
 		@Override
 		public boolean existsSymbolWithAccumulatedAsPrefix()
 		{
-			// Should use a trie or other prefix tree here,
-			// but n is small and deadlines loom, so settle
-			// for this O(n) linear search.
-			String prefix = accumulated();
-			for(String symbolString : symbols.keySet())
-				if(symbolString.startsWith(prefix))
-					return true;
-			return false;
+			return Lexicon.isSymbolPrefix(accumulator, 0, accumulatorLength);
 		}
 	}
 }
\ No newline at end of file
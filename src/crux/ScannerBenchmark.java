@@ -0,0 +1,95 @@
+package crux;
+
+import java.io.IOException;
+
+import crux.scanning.Skipper;
+
+// Times the table-driven scanner with the scalar and vector skippers over
+// the given files, or the public test cases, scaled up into inputs that
+// are heavy on comments and on indentation. The vector skipper is only
+// timed when the JVM was started with --add-modules jdk.incubator.vector.
+public class ScannerBenchmark
+{
+	public static final int TARGET_LENGTH = 8 << 20;
+	public static final int WARMUP_RUNS = 10;
+	public static final int TIMED_RUNS = 20;
+
+	public static void main(String args[]) throws IOException
+	{
+		if(args.length == 0)
+		{
+			args = new String[15];
+			for(int i = 0; i < args.length; i++)
+				args[i] = String.format("tests/test%02d.crx", i + 1);
+		}
+		StringBuilder lines = new StringBuilder();
+		for(String inputFilename : args)
+		{
+			SourceBuffer source = SourceBuffer.map(inputFilename);
+			lines.append(source.substring(0, source.length())).append('\n');
+		}
+		String[] sourceLines = lines.toString().split("\n");
+
+		Skipper vector = Skipper.vector();
+		if(vector == Skipper.instance())
+		{
+			System.out.println("Vector skipper unavailable: compile src-vector and run with --add-modules jdk.incubator.vector.");
+			vector = null;
+		}
+
+		String[] names = { "plain", "comments", "indentation" };
+		for(String name : names)
+		{
+			SourceBuffer input = scale(sourceLines, name);
+			int tokens = new TableScanner(input).scanAll().size();
+			report(name, "scalar", input, tokens, time(input, Skipper.instance()));
+			if(vector != null)
+				report(name, "vector", input, tokens, time(input, vector));
+		}
+	}
+
+	// Repeats the lines until the input reaches TARGET_LENGTH, adding
+	// comment lines or deep indentation depending on the style.
+	private static SourceBuffer scale(String[] lines, String style)
+	{
+		StringBuilder text = new StringBuilder(TARGET_LENGTH + 1024);
+		while(text.length() < TARGET_LENGTH)
+		{
+			for(String line : lines)
+			{
+				if(style.equals("comments"))
+				{
+					text.append("// ").append(line.trim()).append(" -- a note on what the next line does,\n");
+					text.append("// why it is written this way and what would break if it changed.\n");
+					text.append(line).append("    // trailing note about ").append(line.trim()).append('\n');
+				}
+				else if(style.equals("indentation"))
+					text.append("                                ").append(line.trim().replace(" ", "        ")).append('\n');
+				else
+					text.append(line).append('\n');
+			}
+		}
+		return new SourceBuffer(text.toString());
+	}
+
+	// Returns the fastest of the timed runs, in nanoseconds.
+	private static long time(SourceBuffer input, Skipper skipper)
+	{
+		long best = Long.MAX_VALUE;
+		for(int run = 0; run < WARMUP_RUNS + TIMED_RUNS; run++)
+		{
+			long start = System.nanoTime();
+			new TableScanner(input, skipper).scanAll();
+			long elapsed = System.nanoTime() - start;
+			if(run >= WARMUP_RUNS)
+				best = Math.min(best, elapsed);
+		}
+		return best;
+	}
+
+	private static void report(String input, String skipper, SourceBuffer source, int tokens, long nanos)
+	{
+		System.out.println(String.format("%-12s %-7s %8.2f ms %8.1f MB/s (%d chars, %d tokens)",
+			input, skipper, nanos / 1e6, source.length() * 1e3 / nanos, source.length(), tokens));
+	}
+}
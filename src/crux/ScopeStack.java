@@ -0,0 +1,216 @@
+package crux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import types.Type;
+
+// All of the open scopes in one table, as an alternative to a chain of
+// SymbolTables. Every name maps to a stack of bindings, the innermost on
+// top, so resolving and defining a name take one array access however deep
+// the scopes nest. Names are referred to by their id in the compilation's
+// Names, which indexes the array. The symbols defined in the open scopes are also kept
+// in one list in declaration order, which doubles as the undo log that
+// exiting a scope pops its bindings from.
+public class ScopeStack
+{
+	private static class Binding
+	{
+		private final Symbol symbol;
+		private final int scope, order;
+		// The binding of the same name in an enclosing scope, if any.
+		private final Binding shadowed;
+		
+		public Binding(Symbol symbol, int scope, int order, Binding shadowed)
+		{
+			this.symbol = symbol;
+			this.scope = scope;
+			this.order = order;
+			this.shadowed = shadowed;
+		}
+	}
+	
+	// The symbols that were in scope at some point, as listed in error
+	// reports.
+	public static class Snapshot
+	{
+		private final List<Symbol> outermost;
+		private final int outermostCount;
+		private final Symbol[] inner;
+		private final int[] innerStarts;
+		
+		private Snapshot(List<Symbol> outermost, int outermostCount, Symbol[] inner, int[] innerStarts)
+		{
+			this.outermost = outermost;
+			this.outermostCount = outermostCount;
+			this.inner = inner;
+			this.innerStarts = innerStarts;
+		}
+		
+		// Lists the symbols outermost scope first, indented two spaces
+		// per scope.
+		public void appendHistory(StringBuilder b)
+		{
+			for(int i = 0; i < outermostCount; i++)
+				b.append("Symbol(").append(outermost.get(i).getName()).append(")\n");
+			for(int scope = 0; scope < innerStarts.length; scope++)
+			{
+				int end = scope + 1 < innerStarts.length ? innerStarts[scope + 1] : inner.length;
+				for(int i = innerStarts[scope]; i < end; i++)
+				{
+					for(int indent = 0; indent <= scope; indent++)
+						b.append("  ");
+					b.append("Symbol(").append(inner[i].getName()).append(")\n");
+				}
+			}
+		}
+	}
+	
+	private final Names names;
+	// The innermost binding of each name id, or null.
+	private Binding[] bindings;
+	private final ArrayList<Symbol> declarationOrder;
+	// The index in declarationOrder at which each open scope's symbols
+	// begin. The outermost scope is always open.
+	private int[] scopeStarts;
+	private int depth;
+	// A stack may borrow its outermost scope from another stack that is
+	// no longer changing, seeing only the first baseCount symbols of it.
+	private final ScopeStack base;
+	private final int baseCount;
+	
+	public ScopeStack(Names names)
+	{
+		this(names, null, 0);
+	}
+	
+	// A stack whose outermost scope is the outermost scope of base, as it
+	// was when it held its first baseCount symbols. Base must not change
+	// while this stack is in use, which lets stacks on several threads
+	// share it.
+	public ScopeStack(ScopeStack base, int baseCount)
+	{
+		this(base.names, base, baseCount);
+	}
+	
+	private ScopeStack(Names names, ScopeStack base, int baseCount)
+	{
+		this.names = names;
+		this.base = base;
+		this.baseCount = baseCount;
+		bindings = new Binding[Math.max(names.size(), 16)];
+		declarationOrder = new ArrayList<Symbol>();
+		scopeStarts = new int[16];
+		depth = 1;
+	}
+	
+	// The number of open scopes, counting the outermost.
+	public int depth() { return depth; }
+	
+	// The symbols of the scope at the given depth, outermost first.
+	public List<Symbol> getDeclarationOrder(int scope)
+	{
+		if(scope == 0 && base != null)
+			return base.declarationOrder.subList(0, baseCount);
+		int end = scope + 1 < depth ? scopeStarts[scope + 1] : declarationOrder.size();
+		return declarationOrder.subList(scopeStarts[scope], end);
+	}
+	
+	// The symbols of the innermost scope.
+	public List<Symbol> getDeclarationOrder() { return getDeclarationOrder(depth - 1); }
+	
+	// The symbols of the open scopes as they are now, for an error report
+	// to list later. The outermost scope only ever grows, so it is kept as
+	// a count of its symbols rather than copied, and only the symbols of
+	// the inner scopes are.
+	public Snapshot snapshot()
+	{
+		int innerStart = depth > 1 ? scopeStarts[1] : declarationOrder.size();
+		List<Symbol> outermost = base != null ? base.declarationOrder : declarationOrder;
+		int outermostCount = base != null ? baseCount : innerStart;
+		Symbol[] inner = declarationOrder.subList(innerStart, declarationOrder.size()).toArray(new Symbol[0]);
+		int[] innerStarts = new int[depth - 1];
+		for(int scope = 1; scope < depth; scope++)
+			innerStarts[scope - 1] = scopeStarts[scope] - innerStart;
+		return new Snapshot(outermost, outermostCount, inner, innerStarts);
+	}
+	
+	public void enterScope()
+	{
+		if(depth == scopeStarts.length)
+			scopeStarts = Arrays.copyOf(scopeStarts, depth * 2);
+		scopeStarts[depth++] = declarationOrder.size();
+	}
+	
+	public void exitScope()
+	{
+		if(depth == 1)
+			throw new IllegalStateException("The outermost scope cannot be exited.");
+		int start = scopeStarts[--depth];
+		for(int i = declarationOrder.size() - 1; i >= start; i--)
+		{
+			int nameId = declarationOrder.get(i).getNameId();
+			bindings[nameId] = bindings[nameId].shadowed;
+		}
+		declarationOrder.subList(start, declarationOrder.size()).clear();
+	}
+	
+	// Exits scopes until only the given number are open.
+	public void exitTo(int depth)
+	{
+		while(this.depth > depth)
+			exitScope();
+	}
+	
+	public boolean containsSymbol(int nameId, boolean checkOuterScopes)
+	{
+		if(checkOuterScopes)
+			return lookup(nameId) != null;
+		if(depth == 1 && base != null)
+			return lookupBase(nameId) != null;
+		Binding binding = innermost(nameId);
+		return binding != null && binding.scope == depth - 1;
+	}
+	
+	public Symbol lookup(int nameId)
+	{
+		Binding binding = innermost(nameId);
+		if(binding != null)
+			return binding.symbol;
+		return base != null ? lookupBase(nameId) : null;
+	}
+	
+	private Binding innermost(int nameId)
+	{
+		return nameId < bindings.length ? bindings[nameId] : null;
+	}
+	
+	private Symbol lookupBase(int nameId)
+	{
+		for(Binding binding = base.innermost(nameId); binding != null; binding = binding.shadowed)
+			if(binding.scope == 0)
+				return binding.order < baseCount ? binding.symbol : null;
+		return null;
+	}
+	
+	public Symbol define(int nameId, int lineNumber, int charPosition, Type type)
+	{
+		Symbol symbol = new Symbol(nameId, names.name(nameId), lineNumber, charPosition, type);
+		bind(symbol);
+		return symbol;
+	}
+	
+	// Defines an existing symbol, which must have a name id, in the
+	// innermost scope.
+	public void bind(Symbol symbol)
+	{
+		if(depth == 1 && base != null)
+			throw new IllegalStateException("Cannot define symbols in a borrowed scope.");
+		int nameId = symbol.getNameId();
+		if(nameId >= bindings.length)
+			bindings = Arrays.copyOf(bindings, Math.max(nameId + 1, bindings.length * 2));
+		bindings[nameId] = new Binding(symbol, depth - 1, declarationOrder.size(), bindings[nameId]);
+		declarationOrder.add(symbol);
+	}
+}
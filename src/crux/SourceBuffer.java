@@ -0,0 +1,90 @@
+package crux;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+// The entire text of a source file, held in a single char array
+// so that scanners can consume it by index rather than pulling
+// one char at a time through a Reader.
+public class SourceBuffer
+{
+	private final char[] chars;
+	private final int length;
+
+	public SourceBuffer(char[] chars, int length)
+	{
+		if(length < 0 || length > chars.length)
+			throw new IllegalArgumentException("Invalid source length " + length + ".");
+		this.chars = chars;
+		this.length = length;
+	}
+
+	public SourceBuffer(String text)
+	{
+		this(text.toCharArray(), text.length());
+	}
+
+	// Maps the file into memory and decodes it in one pass. The
+	// platform default charset is used so that the result matches
+	// what a FileReader over the same file would have produced.
+	public static SourceBuffer map(String filename) throws IOException
+	{
+		try(FileInputStream stream = new FileInputStream(filename);
+			FileChannel channel = stream.getChannel())
+		{
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			CharBuffer decoded = decoder.decode(bytes);
+			return new SourceBuffer(decoded.array(), decoded.limit());
+		}
+	}
+
+	// Drains the reader into memory using bulk reads.
+	public static SourceBuffer read(Reader reader) throws IOException
+	{
+		char[] chars = new char[8192];
+		int length = 0, count;
+		while((count = reader.read(chars, length, chars.length - length)) >= 0)
+		{
+			length += count;
+			if(length == chars.length)
+				chars = Arrays.copyOf(chars, chars.length * 2);
+		}
+		return new SourceBuffer(chars, length);
+	}
+
+	public char[] chars() { return chars; }
+
+	public int length() { return length; }
+
+	public char charAt(int index) { return chars[index]; }
+
+	public String substring(int start, int end)
+	{
+		return new String(chars, start, end - start);
+	}
+
+	// Returns a new buffer holding this text with the chars in
+	// [offset, offset + removedLength) replaced by the given text.
+	public SourceBuffer replace(int offset, int removedLength, String text)
+	{
+		if(offset < 0 || removedLength < 0 || offset + removedLength > length)
+			throw new IllegalArgumentException("Invalid edit range " + offset + "+" + removedLength + ".");
+		int tailStart = offset + removedLength;
+		char[] edited = new char[length - removedLength + text.length()];
+		System.arraycopy(chars, 0, edited, 0, offset);
+		text.getChars(0, text.length(), edited, offset);
+		System.arraycopy(chars, tailStart, edited, offset + text.length(), length - tailStart);
+		return new SourceBuffer(edited, edited.length);
+	}
+}
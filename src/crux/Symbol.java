@@ -5,11 +5,19 @@ import types.Type;
 public class Symbol
 {
 	private final String identifier;
+	// The name's id in the compilation's Names, if it has one.
+	private final int nameId;
 	private final int lineNumber, charPosition;
 	private Type type;
 	
 	public Symbol(String name, int lineNumber, int charPosition, Type type)
 	{
+		this(Names.NONE, name, lineNumber, charPosition, type);
+	}
+	
+	public Symbol(int nameId, String name, int lineNumber, int charPosition, Type type)
+	{
+		this.nameId = nameId;
 		this.identifier = name;
 		this.lineNumber = lineNumber;
 		this.charPosition = charPosition;
@@ -17,6 +25,7 @@ public class Symbol
 	}
 	
 	public String getName() { return identifier; }
+	public int getNameId() { return nameId; }
 	public int getLineNumber() { return lineNumber; }
 	public int getCharPosition() { return charPosition; }
 	public Type getType() { return type; }
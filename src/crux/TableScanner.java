@@ -0,0 +1,328 @@
+package crux;
+
+import java.io.IOException;
+
+import crux.Token.Kind;
+import crux.scanning.Lexicon;
+import crux.scanning.Skipper;
+
+// Converts input source into a stream of tokens using the same automaton
+// as the State objects in crux.scanning, flattened into a transition table
+// indexed by (state, character class). Each call to next() runs a single
+// loop of table lookups over the source buffer, with no per-char virtual
+// calls and no allocation other than the returned Token.
+public class TableScanner implements TokenSource
+{
+	// Scanner states. Every multi-char symbol prefix gets its own
+	// state, so no accumulated text needs to be inspected until a
+	// word is emitted.
+	private static final int START = 0,
+		WORD = 1,
+		NUMBER = 2,
+		FLOAT = 3,
+		COMMENT_OR_DIV = 4,
+		DRAIN_LINE = 5,
+		GREATER = 6,
+		LESSER = 7,
+		EQUALS = 8,
+		BANG = 9,
+		COLON = 10,
+		STATE_COUNT = 11;
+
+	// Character classes. Symbol chars that always form a complete
+	// token by themselves get a class each so that the table can
+	// name the kind to emit directly.
+	private static final int C_OTHER = 0,
+		C_WHITESPACE = 1,
+		C_CARRIAGE_RETURN = 2,
+		C_LINE_FEED = 3,
+		C_DIGIT = 4,
+		C_LETTER = 5,
+		C_DOT = 6,
+		C_SLASH = 7,
+		C_GREATER = 8,
+		C_LESSER = 9,
+		C_EQUALS = 10,
+		C_BANG = 11,
+		C_COLON = 12,
+		C_OPEN_PAREN = 13,
+		C_CLOSE_PAREN = 14,
+		C_OPEN_BRACE = 15,
+		C_CLOSE_BRACE = 16,
+		C_OPEN_BRACKET = 17,
+		C_CLOSE_BRACKET = 18,
+		C_ADD = 19,
+		C_SUB = 20,
+		C_MUL = 21,
+		C_COMMA = 22,
+		C_SEMICOLON = 23,
+		C_EOF = 24,
+		CLASS_COUNT = 25;
+
+	// Layout of a transition table entry.
+	private static final int STATE_MASK = 0xF,
+		ADVANCE = 1 << 4,
+		NEWLINE = 1 << 5,
+		MARK = 1 << 6,
+		EMIT = 1 << 7,
+		KIND_SHIFT = 8;
+
+	private static final byte[] ASCII_CLASSES = new byte[128];
+	private static final int[] TRANSITIONS = new int[STATE_COUNT * CLASS_COUNT];
+	private static final Kind[] KINDS = Kind.values();
+
+	static
+	{
+		for(char c = 0; c < ASCII_CLASSES.length; c++)
+			ASCII_CLASSES[c] = (byte)classify(c);
+
+		for(int c = 0; c < CLASS_COUNT; c++)
+		{
+			on(START, c, MARK | ADVANCE | emits(Kind.ERROR));
+			on(WORD, c, emits(Kind.IDENTIFIER));
+			on(NUMBER, c, emits(Kind.INTEGER));
+			on(FLOAT, c, emits(Kind.FLOAT));
+			on(COMMENT_OR_DIV, c, emits(Kind.DIV));
+			on(DRAIN_LINE, c, ADVANCE | DRAIN_LINE);
+			on(GREATER, c, emits(Kind.GREATER_THAN));
+			on(LESSER, c, emits(Kind.LESS_THAN));
+			on(EQUALS, c, emits(Kind.ASSIGN));
+			on(BANG, c, emits(Kind.ERROR));
+			on(COLON, c, emits(Kind.COLON));
+		}
+
+		on(START, C_EOF, MARK | emits(Kind.EOF));
+		on(START, C_WHITESPACE, ADVANCE | START);
+		on(START, C_CARRIAGE_RETURN, ADVANCE | START);
+		on(START, C_LINE_FEED, ADVANCE | NEWLINE | START);
+		on(START, C_DIGIT, MARK | ADVANCE | NUMBER);
+		on(START, C_LETTER, MARK | ADVANCE | WORD);
+		on(START, C_SLASH, MARK | ADVANCE | COMMENT_OR_DIV);
+		on(START, C_GREATER, MARK | ADVANCE | GREATER);
+		on(START, C_LESSER, MARK | ADVANCE | LESSER);
+		on(START, C_EQUALS, MARK | ADVANCE | EQUALS);
+		on(START, C_BANG, MARK | ADVANCE | BANG);
+		on(START, C_COLON, MARK | ADVANCE | COLON);
+		on(START, C_OPEN_PAREN, MARK | ADVANCE | emits(Kind.OPEN_PAREN));
+		on(START, C_CLOSE_PAREN, MARK | ADVANCE | emits(Kind.CLOSE_PAREN));
+		on(START, C_OPEN_BRACE, MARK | ADVANCE | emits(Kind.OPEN_BRACE));
+		on(START, C_CLOSE_BRACE, MARK | ADVANCE | emits(Kind.CLOSE_BRACE));
+		on(START, C_OPEN_BRACKET, MARK | ADVANCE | emits(Kind.OPEN_BRACKET));
+		on(START, C_CLOSE_BRACKET, MARK | ADVANCE | emits(Kind.CLOSE_BRACKET));
+		on(START, C_ADD, MARK | ADVANCE | emits(Kind.ADD));
+		on(START, C_SUB, MARK | ADVANCE | emits(Kind.SUB));
+		on(START, C_MUL, MARK | ADVANCE | emits(Kind.MUL));
+		on(START, C_COMMA, MARK | ADVANCE | emits(Kind.COMMA));
+		on(START, C_SEMICOLON, MARK | ADVANCE | emits(Kind.SEMICOLON));
+
+		on(WORD, C_LETTER, ADVANCE | WORD);
+		on(WORD, C_DIGIT, ADVANCE | WORD);
+
+		on(NUMBER, C_DIGIT, ADVANCE | NUMBER);
+		on(NUMBER, C_DOT, ADVANCE | FLOAT);
+
+		on(FLOAT, C_DIGIT, ADVANCE | FLOAT);
+
+		on(COMMENT_OR_DIV, C_SLASH, ADVANCE | DRAIN_LINE);
+
+		on(DRAIN_LINE, C_CARRIAGE_RETURN, START);
+		on(DRAIN_LINE, C_LINE_FEED, START);
+		on(DRAIN_LINE, C_EOF, START);
+
+		on(GREATER, C_EQUALS, ADVANCE | emits(Kind.GREATER_EQUAL));
+		on(LESSER, C_EQUALS, ADVANCE | emits(Kind.LESSER_EQUAL));
+		on(EQUALS, C_EQUALS, ADVANCE | emits(Kind.EQUAL));
+		on(BANG, C_EQUALS, ADVANCE | emits(Kind.NOT_EQUAL));
+		on(COLON, C_COLON, ADVANCE | emits(Kind.CALL));
+	}
+
+	private static void on(int state, int charClass, int action)
+	{
+		TRANSITIONS[state * CLASS_COUNT + charClass] = action;
+	}
+
+	private static int emits(Kind kind)
+	{
+		return EMIT | (kind.ordinal() << KIND_SHIFT);
+	}
+
+	// Mirrors the predicates of the state-object scanner's transition
+	// context, so the two engines agree on every char.
+	private static int classify(char c)
+	{
+		if(Character.isDigit(c))
+			return C_DIGIT;
+		if(c == '\n')
+			return C_LINE_FEED;
+		if(c == '\r')
+			return C_CARRIAGE_RETURN;
+		if(Character.isWhitespace(c))
+			return C_WHITESPACE;
+		if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_')
+			return C_LETTER;
+		switch(c)
+		{
+		case '.': return C_DOT;
+		case '/': return C_SLASH;
+		case '>': return C_GREATER;
+		case '<': return C_LESSER;
+		case '=': return C_EQUALS;
+		case '!': return C_BANG;
+		case ':': return C_COLON;
+		case '(': return C_OPEN_PAREN;
+		case ')': return C_CLOSE_PAREN;
+		case '{': return C_OPEN_BRACE;
+		case '}': return C_CLOSE_BRACE;
+		case '[': return C_OPEN_BRACKET;
+		case ']': return C_CLOSE_BRACKET;
+		case '+': return C_ADD;
+		case '-': return C_SUB;
+		case '*': return C_MUL;
+		case ',': return C_COMMA;
+		case ';': return C_SEMICOLON;
+		default: return C_OTHER;
+		}
+	}
+
+	private final SourceBuffer source;
+	private final Skipper skipper;
+	// Identifiers are interned as they are scanned, for the Token
+	// objects and buffers this scanner creates alike.
+	private final Names names;
+	private final char[] input;
+	private final int inputLength;
+	private int position, lineNumber, lineStart;
+	private int tokenStart, tokenLineNumber, tokenCharPos;
+	private boolean eof;
+
+	public TableScanner(String sourceFilename) throws IOException
+	{
+		this(SourceBuffer.map(sourceFilename));
+	}
+
+	public TableScanner(SourceBuffer source)
+	{
+		this(source, 0, source.length());
+	}
+
+	public TableScanner(SourceBuffer source, Skipper skipper)
+	{
+		this(source, 0, source.length(), skipper);
+	}
+	
+	public TableScanner(SourceBuffer source, int start, int end)
+	{
+		this(source, start, end, Skipper.instance());
+	}
+	
+	// Scans only the chars in [start, end), treating end as the end of
+	// the input. The range must begin at the start of a line, and line
+	// numbers are counted from 1 at that line.
+	public TableScanner(SourceBuffer source, int start, int end, Skipper skipper)
+	{
+		this.source = source;
+		this.skipper = skipper;
+		names = new Names();
+		input = source.chars();
+		inputLength = end;
+		position = lineStart = start;
+		lineNumber = 1;
+		eof = false;
+	}
+	
+	// The number of the line the scanner is currently on.
+	public int lineNumber() { return lineNumber; }
+
+	@Override
+	public Token next()
+	{
+		if(eof)
+			return new Token(Kind.EOF, "", lineNumber, position - lineStart + 1);
+		Kind kind = scanToken();
+		String lexeme = Lexicon.fixedLexeme(kind);
+		if(kind == Kind.IDENTIFIER)
+			lexeme = names.name(names.intern(input, tokenStart, position - tokenStart));
+		else if(lexeme == null)
+			lexeme = new String(input, tokenStart, position - tokenStart);
+		return new Token(kind, lexeme, tokenLineNumber, tokenCharPos);
+	}
+
+	// Scans everything that remains of the input, up to and including
+	// the EOF token, without creating any Token objects.
+	public TokenBuffer scanAll()
+	{
+		TokenBuffer tokens = new TokenBuffer(source, names);
+		while(!eof)
+			scanInto(tokens, 0);
+		return tokens;
+	}
+
+	// Scans the next token onto the end of the buffer with its line
+	// number moved by lineShift, and returns its index there. Must not
+	// be called once the EOF token has been scanned.
+	public int scanInto(TokenBuffer tokens, int lineShift)
+	{
+		Kind kind = scanToken();
+		tokens.add(kind, tokenStart, position - tokenStart, tokenLineNumber + lineShift, tokenCharPos);
+		return tokens.size() - 1;
+	}
+
+	// Runs the automaton up to the end of the next token, leaving its
+	// bounds and position in the token fields, and returns its kind.
+	private Kind scanToken()
+	{
+		final char[] input = this.input;
+		int state = START;
+		while(true)
+		{
+			// Blanks and comment bodies would only loop through the
+			// table one char at a time, so they are skipped in bulk.
+			if(state == START)
+				position = skipper.skipBlanks(input, position, inputLength);
+			else if(state == DRAIN_LINE)
+				position = skipper.skipToLineEnd(input, position, inputLength);
+
+			int charClass;
+			if(position >= inputLength)
+				charClass = C_EOF;
+			else
+			{
+				char value = input[position];
+				charClass = value < 128 ? ASCII_CLASSES[value] : classify(value);
+			}
+
+			int action = TRANSITIONS[state * CLASS_COUNT + charClass];
+			if((action & MARK) != 0)
+			{
+				tokenStart = position;
+				tokenLineNumber = lineNumber;
+				tokenCharPos = position - lineStart + 1;
+			}
+			if((action & ADVANCE) != 0)
+			{
+				position++;
+				if((action & NEWLINE) != 0)
+				{
+					lineNumber++;
+					lineStart = position;
+				}
+			}
+			if((action & EMIT) != 0)
+				return classifyToken(KINDS[action >>> KIND_SHIFT]);
+			state = action & STATE_MASK;
+		}
+	}
+
+	private Kind classifyToken(Kind kind)
+	{
+		if(kind == Kind.IDENTIFIER)
+		{
+			Kind keyword = Lexicon.keyword(input, tokenStart, position - tokenStart);
+			if(keyword != null)
+				return keyword;
+		}
+		else if(kind == Kind.EOF)
+			eof = true;
+		return kind;
+	}
+}
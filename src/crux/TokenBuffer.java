@@ -0,0 +1,230 @@
+package crux;
+
+import java.util.Arrays;
+
+import crux.Token.Kind;
+import crux.scanning.Lexicon;
+
+// A random access sequence of tokens stored as parallel primitive arrays
+// rather than as Token objects. Tokens scanned from a SourceBuffer only
+// record where their text lies in it; lexemes and literal values are
+// decoded from the source when they are asked for. Identifiers are
+// interned into the buffer's Names as they are added, and keep their id.
+public class TokenBuffer
+{
+	private static final Kind[] KINDS = Kind.values();
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final SourceBuffer source;
+	private final Names names;
+	private byte[] kinds;
+	private int[] starts, lengths, lineNumbers, charPositions, nameIds;
+	// Lexemes of tokens that were added as Token objects rather than
+	// as source ranges. Only allocated if such a token is added.
+	private String[] lexemes;
+	private int size;
+
+	public TokenBuffer(SourceBuffer source)
+	{
+		this(source, INITIAL_CAPACITY);
+	}
+	
+	public TokenBuffer(SourceBuffer source, Names names)
+	{
+		this(source, INITIAL_CAPACITY, names);
+	}
+	
+	public TokenBuffer(SourceBuffer source, int capacity)
+	{
+		this(source, capacity, new Names());
+	}
+	
+	// A buffer whose identifiers are interned into names, which may be
+	// shared with earlier buffers of the same compilation.
+	public TokenBuffer(SourceBuffer source, int capacity, Names names)
+	{
+		this.source = source;
+		this.names = names;
+		capacity = Math.max(capacity, 1);
+		kinds = new byte[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		lineNumbers = new int[capacity];
+		charPositions = new int[capacity];
+		nameIds = new int[capacity];
+		size = 0;
+	}
+
+	// Drains a token source up to and including its first EOF token.
+	public static TokenBuffer fill(TokenSource scanner)
+	{
+		TokenBuffer tokens = new TokenBuffer(null);
+		Token token;
+		do
+		{
+			token = scanner.next();
+			tokens.add(token);
+		}
+		while(token.getKind() != Kind.EOF);
+		return tokens;
+	}
+
+	public SourceBuffer source() { return source; }
+
+	public Names names() { return names; }
+
+	public int size() { return size; }
+
+	public void add(Kind kind, int start, int length, int lineNumber, int charPos)
+	{
+		append(kind, start, length, lineNumber, charPos,
+			kind == Kind.IDENTIFIER ? names.intern(source.chars(), start, length) : Names.NONE);
+	}
+
+	public void add(Token token)
+	{
+		int index = size;
+		Kind kind = token.getKind();
+		append(kind, -1, token.getLexeme().length(), token.getLineNumber(), token.getCharPos(),
+			kind == Kind.IDENTIFIER ? names.intern(token.getLexeme()) : Names.NONE);
+		if(kind != Kind.IDENTIFIER && Lexicon.fixedLexeme(kind) == null)
+		{
+			if(lexemes == null)
+				lexemes = new String[kinds.length];
+			lexemes[index] = token.getLexeme();
+		}
+	}
+
+	private void append(Kind kind, int start, int length, int lineNumber, int charPos, int nameId)
+	{
+		if(size == kinds.length)
+			grow();
+		kinds[size] = (byte)kind.ordinal();
+		starts[size] = start;
+		lengths[size] = length;
+		lineNumbers[size] = lineNumber;
+		charPositions[size] = charPos;
+		nameIds[size] = nameId;
+		size++;
+	}
+
+	// Appends tokens [from, to) of another buffer over the same source,
+	// moving their start offsets and line numbers by the given amounts.
+	// Identifiers interned into another Names are interned again here,
+	// once for each distinct name.
+	public void addAll(TokenBuffer other, int from, int to, int startShift, int lineShift)
+	{
+		int count = to - from;
+		while(size + count > kinds.length)
+			grow();
+		System.arraycopy(other.kinds, from, kinds, size, count);
+		System.arraycopy(other.lengths, from, lengths, size, count);
+		System.arraycopy(other.charPositions, from, charPositions, size, count);
+		for(int i = 0; i < count; i++)
+		{
+			int start = other.starts[from + i];
+			starts[size + i] = start < 0 ? start : start + startShift;
+			lineNumbers[size + i] = other.lineNumbers[from + i] + lineShift;
+		}
+		if(other.names == names)
+			System.arraycopy(other.nameIds, from, nameIds, size, count);
+		else
+		{
+			int[] ids = new int[other.names.size()];
+			Arrays.fill(ids, Names.NONE);
+			for(int i = 0; i < count; i++)
+			{
+				int id = other.nameIds[from + i];
+				if(id != Names.NONE && ids[id] == Names.NONE)
+					ids[id] = names.intern(other.names.name(id));
+				nameIds[size + i] = id != Names.NONE ? ids[id] : Names.NONE;
+			}
+		}
+		if(other.lexemes != null)
+		{
+			if(lexemes == null)
+				lexemes = new String[kinds.length];
+			System.arraycopy(other.lexemes, from, lexemes, size, count);
+		}
+		size += count;
+	}
+	
+	private void grow()
+	{
+		int capacity = kinds.length * 2;
+		kinds = Arrays.copyOf(kinds, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+		charPositions = Arrays.copyOf(charPositions, capacity);
+		nameIds = Arrays.copyOf(nameIds, capacity);
+		if(lexemes != null)
+			lexemes = Arrays.copyOf(lexemes, capacity);
+	}
+
+	public Kind kind(int index) { return KINDS[kinds[index]]; }
+
+	public int start(int index) { return starts[index]; }
+
+	public int length(int index) { return lengths[index]; }
+
+	public int lineNumber(int index) { return lineNumbers[index]; }
+
+	public int charPos(int index) { return charPositions[index]; }
+
+	// The interned id of an IDENTIFIER token's name, or Names.NONE.
+	public int nameId(int index) { return nameIds[index]; }
+
+	public String lexeme(int index)
+	{
+		String lexeme = Lexicon.fixedLexeme(kind(index));
+		if(lexeme != null)
+			return lexeme;
+		if(nameIds[index] != Names.NONE)
+			return names.name(nameIds[index]);
+		if(lexemes != null && lexemes[index] != null)
+			return lexemes[index];
+		return new String(source.chars(), starts[index], lengths[index]);
+	}
+
+	// Decodes an INTEGER token the same way Integer.parseInt would,
+	// but straight from the source when the value cannot overflow.
+	public int intValue(int index)
+	{
+		int length = lengths[index];
+		if(starts[index] < 0 || length > 9)
+			return Integer.parseInt(lexeme(index));
+		char[] chars = source.chars();
+		int value = 0;
+		for(int i = starts[index]; i < starts[index] + length; i++)
+			value = value * 10 + Character.digit(chars[i], 10);
+		return value;
+	}
+
+	public float floatValue(int index)
+	{
+		return Float.parseFloat(lexeme(index));
+	}
+
+	// Materialises a Token object, for code that still needs one.
+	public Token token(int index)
+	{
+		return new Token(kind(index), lexeme(index), lineNumbers[index], charPositions[index]);
+	}
+	
+	// Replays the buffer as a stream of Token objects. Once the
+	// buffer is exhausted its last token, the EOF, is repeated.
+	public TokenSource stream()
+	{
+		return new TokenSource()
+		{
+			private int position = 0;
+			
+			@Override
+			public Token next()
+			{
+				return token(position < size - 1 ? position++ : size - 1);
+			}
+		};
+	}
+}
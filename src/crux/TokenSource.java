@@ -0,0 +1,8 @@
+package crux;
+
+// Supplies the parser with a stream of tokens, ending in an
+// endless run of EOF tokens once the input is exhausted.
+public interface TokenSource
+{
+	Token next();
+}
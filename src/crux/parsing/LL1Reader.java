@@ -1,22 +1,71 @@
 package crux.parsing;
 
-import crux.Scanner;
 import crux.Token;
+import crux.TokenBuffer;
+import crux.TokenSource;
 
+// Gives the parser one token of lookahead over a TokenBuffer. The buffer
+// is either scanned up front, or filled from a TokenSource as the reader
+// advances. Tokens are referred to by their index in the buffer, so the
+// parser never needs to materialise Token objects.
 public class LL1Reader
 {
-	private final Scanner scanner;
-	private Token token;
+	private final TokenSource scanner;
+	private final TokenBuffer tokens;
+	private int position;
 	
-	public LL1Reader(Scanner scanner)
+	public LL1Reader(TokenSource scanner)
 	{
 		this.scanner = scanner;
-		token = scanner.next();
+		tokens = new TokenBuffer(null);
+		tokens.add(scanner.next());
+		position = 0;
 	}
 	
-	public Token token() { return token; }
+	public LL1Reader(TokenBuffer tokens)
+	{
+		this(tokens, 0);
+	}
+	
+	// Reads the buffer from the token at the given index onwards.
+	public LL1Reader(TokenBuffer tokens, int position)
+	{
+		this.scanner = null;
+		this.tokens = tokens;
+		this.position = position;
+	}
+	
+	public TokenBuffer tokens() { return tokens; }
+	
+	// Whether the whole input is already in the buffer, rather than
+	// being scanned as the reader advances.
+	public boolean isBuffered() { return scanner == null; }
 	
-	public Token.Kind kind() { return token.getKind(); }
+	// The index of the current token in the buffer.
+	public int position() { return position; }
 	
-	public void advance() { token = scanner.next(); }
-}
\ No newline at end of file
+	public Token token() { return tokens.token(position); }
+	
+	public Token.Kind kind() { return tokens.kind(position); }
+	
+	public void advance()
+	{
+		if(position + 1 < tokens.size())
+			position++;
+		else if(scanner != null)
+		{
+			tokens.add(scanner.next());
+			position++;
+		}
+		// Otherwise the reader stays on the buffer's final EOF token.
+	}
+	
+	// Moves the reader to the token at the given index of a buffer that
+	// has been scanned up front.
+	public void seek(int position)
+	{
+		if(!isBuffered())
+			throw new IllegalStateException("Only a buffered reader can seek.");
+		this.position = position;
+	}
+}
@@ -0,0 +1,85 @@
+package crux.parsing;
+
+import java.util.Arrays;
+
+import crux.NonTerminal;
+
+// The concrete parse tree, recorded as the sequence of events the parser
+// went through instead of as linked nodes: entering a rule, consuming a
+// terminal and leaving the rule again. Each event is a single int, so the
+// whole tree is one array that the report is regenerated from on demand.
+public class ParseLog
+{
+	// Terminals are logged as their index in the parser's TokenBuffer,
+	// which is never negative. Entering a rule is logged as -2 minus its
+	// ordinal, and leaving the innermost open rule as EXIT.
+	private static final int EXIT = -1;
+	private static final NonTerminal[] RULES = NonTerminal.values();
+	
+	private int[] events;
+	private int size, depth;
+	
+	public ParseLog()
+	{
+		events = new int[256];
+		size = depth = 0;
+	}
+	
+	public void enter(NonTerminal rule)
+	{
+		append(-2 - rule.ordinal());
+		depth++;
+	}
+	
+	public void exit()
+	{
+		append(EXIT);
+		depth--;
+	}
+	
+	// Leaves rules until only the given number remain open.
+	public void exitTo(int depth)
+	{
+		while(this.depth > depth)
+			exit();
+	}
+	
+	public void terminal(int token)
+	{
+		append(token);
+	}
+	
+	public int size() { return size; }
+	
+	// The number of rules entered and not yet left.
+	public int depth() { return depth; }
+	
+	private void append(int event)
+	{
+		if(size == events.length)
+			events = Arrays.copyOf(events, size * 2);
+		events[size++] = event;
+	}
+	
+	// Lists every rule entered, indented two spaces per enclosing rule.
+	public String report()
+	{
+		StringBuilder b = new StringBuilder();
+		int depth = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int event = events[i];
+			if(event == EXIT)
+				depth--;
+			else if(event < EXIT)
+			{
+				for(int j = 0; j < depth; j++)
+					b.append("  "); // 2 spaces
+				b.append(RULES[-2 - event].toString());
+				b.append('\n');
+				depth++;
+			}
+		}
+		return b.toString();
+	}
+}
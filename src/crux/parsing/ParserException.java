@@ -0,0 +1,12 @@
+package crux.parsing;
+
+// Base of the exceptions the parser throws to unwind out of a production
+// when it meets an error. Files full of errors throw them constantly and
+// their stack traces are never looked at, so none is captured.
+public abstract class ParserException extends Exception
+{
+	protected ParserException()
+	{
+		super(null, null, false, false);
+	}
+}
@@ -0,0 +1,88 @@
+package crux.parsing;
+
+import java.util.Arrays;
+
+import crux.NonTerminal;
+import crux.Token.Kind;
+
+// The alternatives of every non-terminal that has more than one, each
+// told apart from the others by the first set of what it begins with.
+// The prediction table maps a (non-terminal, token kind) pair straight
+// to the alternative to parse, and is checked when it is built: two
+// alternatives of a rule that share a first token, or alternatives that
+// do not cover the rule's own first set, mean the grammar is not LL(1).
+public enum Production 
+{
+	// Predicted wherever no alternative begins with the token.
+	NONE(null),
+	
+	VARIABLE_DECLARATION_STATEMENT(NonTerminal.STATEMENT, NonTerminal.VARIABLE_DECLARATION),
+	CALL_STATEMENT(NonTerminal.STATEMENT, NonTerminal.CALL_STATEMENT),
+	ASSIGNMENT_STATEMENT(NonTerminal.STATEMENT, NonTerminal.ASSIGNMENT_STATEMENT),
+	IF_STATEMENT(NonTerminal.STATEMENT, NonTerminal.IF_STATEMENT),
+	WHILE_STATEMENT(NonTerminal.STATEMENT, NonTerminal.WHILE_STATEMENT),
+	RETURN_STATEMENT(NonTerminal.STATEMENT, NonTerminal.RETURN_STATEMENT),
+	
+	VARIABLE_DECLARATION(NonTerminal.DECLARATION, NonTerminal.VARIABLE_DECLARATION),
+	ARRAY_DECLARATION(NonTerminal.DECLARATION, NonTerminal.ARRAY_DECLARATION),
+	FUNCTION_DEFINITION(NonTerminal.DECLARATION, NonTerminal.FUNCTION_DEFINITION),
+	
+	LOGICAL_NOT(NonTerminal.EXPRESSION3, Kind.NOT),
+	GROUPED_EXPRESSION(NonTerminal.EXPRESSION3, Kind.OPEN_PAREN),
+	DESIGNATOR(NonTerminal.EXPRESSION3, NonTerminal.DESIGNATOR),
+	CALL_EXPRESSION(NonTerminal.EXPRESSION3, NonTerminal.CALL_EXPRESSION),
+	LITERAL(NonTerminal.EXPRESSION3, NonTerminal.LITERAL);
+	
+	private static final int KIND_COUNT = Kind.values().length;
+	private static final Production[] table = new Production[NonTerminal.values().length * KIND_COUNT];
+	
+	static
+	{
+		Arrays.fill(table, NONE);
+		long[] covered = new long[NonTerminal.values().length];
+		for(Production production : values())
+		{
+			if(production.Rule == null)
+				continue;
+			int row = production.Rule.ordinal() * KIND_COUNT;
+			for(Kind kind : Kind.values())
+			{
+				if((production.FirstMask & (1L << kind.ordinal())) == 0)
+					continue;
+				if(table[row + kind.ordinal()] != NONE)
+					throw new IllegalStateException(String.format("LL(1) conflict in %s: %s and %s both begin with %s.",
+						production.Rule, table[row + kind.ordinal()], production, kind));
+				table[row + kind.ordinal()] = production;
+			}
+			covered[production.Rule.ordinal()] |= production.FirstMask;
+		}
+		for(Production production : values())
+			if(production.Rule != null && covered[production.Rule.ordinal()] != production.Rule.FirstMask)
+				throw new IllegalStateException(String.format("The alternatives of %s do not match its first set.", production.Rule));
+	}
+	
+	public final NonTerminal Rule;
+	public final long FirstMask;
+	
+	private Production(NonTerminal rule, NonTerminal start)
+	{
+		Rule = rule;
+		FirstMask = start.FirstMask;
+	}
+	
+	private Production(NonTerminal rule, Kind... start)
+	{
+		Rule = rule;
+		long mask = 0;
+		for(Kind kind : start)
+			mask |= 1L << kind.ordinal();
+		FirstMask = mask;
+	}
+	
+	// The alternative of the rule that begins with the given kind, or
+	// NONE if there is none.
+	public static Production predict(NonTerminal rule, Kind kind)
+	{
+		return table[rule.ordinal() * KIND_COUNT + kind.ordinal()];
+	}
+}
@@ -2,7 +2,7 @@ package crux.parsing;
 
 import crux.Token;
 
-public class RequiredTokenException extends Exception 
+public class RequiredTokenException extends ParserException 
 {
 	public final Token.Kind ExpectedKind;
 	public final Token ActualToken;
@@ -2,7 +2,7 @@ package crux.parsing;
 
 import crux.Token;
 
-public class SymbolRedefinitionException extends Exception {
+public class SymbolRedefinitionException extends ParserException {
 	public final Token DuplicateToken;
 	
 	public SymbolRedefinitionException(Token duplicateToken) {
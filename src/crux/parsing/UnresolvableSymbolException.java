@@ -2,7 +2,7 @@ package crux.parsing;
 
 import crux.Token;
 
-public class UnresolvableSymbolException extends Exception {
+public class UnresolvableSymbolException extends ParserException {
 	public final Token UnresolvedToken;
 	
 	public UnresolvableSymbolException(Token unresolvedToken) {
@@ -0,0 +1,157 @@
+package crux.scanning;
+
+import java.util.Arrays;
+
+import crux.Token.Kind;
+
+// Static tables that classify keywords and symbols straight from a
+// region of a char buffer, so that scanners never need to build a
+// String just to find out what kind of token they have accumulated.
+public final class Lexicon
+{
+	private static final String[] KEYWORD_TEXT = {
+		"and", "or", "not", "let", "var", "array", "func",
+		"if", "else", "while", "true", "false", "return"
+	};
+	private static final Kind[] KEYWORD_KINDS = {
+		Kind.AND, Kind.OR, Kind.NOT, Kind.LET, Kind.VAR, Kind.ARRAY, Kind.FUNC,
+		Kind.IF, Kind.ELSE, Kind.WHILE, Kind.TRUE, Kind.FALSE, Kind.RETURN
+	};
+	private static final String[] SYMBOL_TEXT = {
+		"(", ")", "{", "}", "[", "]", "+", "-", "*", "/",
+		">=", "<=", ">", "<", "!=", "==", "=", ",", ";", ":", "::"
+	};
+	private static final Kind[] SYMBOL_KINDS = {
+		Kind.OPEN_PAREN, Kind.CLOSE_PAREN, Kind.OPEN_BRACE, Kind.CLOSE_BRACE,
+		Kind.OPEN_BRACKET, Kind.CLOSE_BRACKET, Kind.ADD, Kind.SUB, Kind.MUL, Kind.DIV,
+		Kind.GREATER_EQUAL, Kind.LESSER_EQUAL, Kind.GREATER_THAN, Kind.LESS_THAN,
+		Kind.NOT_EQUAL, Kind.EQUAL, Kind.ASSIGN, Kind.COMMA, Kind.SEMICOLON, Kind.COLON, Kind.CALL
+	};
+
+	// Keywords live in a perfect hash table keyed on their first char,
+	// last char and length. The hash only picks a candidate; the chars
+	// are still compared against it before it is accepted.
+	private static final int KEYWORD_TABLE_MASK = 15;
+	private static final String[] keywordTable = new String[KEYWORD_TABLE_MASK + 1];
+	private static final Kind[] keywordTableKinds = new Kind[KEYWORD_TABLE_MASK + 1];
+
+	// Symbols live in a trie over ASCII chars. Node 0 is the root and
+	// an entry of 0 in symbolTrie means there is no such child.
+	private static final int ALPHABET = 128;
+	private static int[] symbolTrie = new int[ALPHABET];
+	private static Kind[] symbolTrieKinds = new Kind[1];
+	private static int symbolTrieSize = 1;
+	private static final boolean[] symbolChars = new boolean[ALPHABET];
+
+	// Canonical lexemes for every kind whose spelling is fixed.
+	private static final String[] fixedLexemes = new String[Kind.values().length];
+
+	static
+	{
+		for(int i = 0; i < KEYWORD_TEXT.length; i++)
+		{
+			String text = KEYWORD_TEXT[i];
+			int slot = keywordHash(text.charAt(0), text.charAt(text.length() - 1), text.length());
+			if(keywordTable[slot] != null)
+				throw new IllegalStateException("Keywords \"" + keywordTable[slot] + "\" and \"" + text + "\" collide.");
+			keywordTable[slot] = text;
+			keywordTableKinds[slot] = KEYWORD_KINDS[i];
+			fixedLexemes[KEYWORD_KINDS[i].ordinal()] = text;
+		}
+		for(int i = 0; i < SYMBOL_TEXT.length; i++)
+		{
+			String text = SYMBOL_TEXT[i];
+			int node = 0;
+			for(int j = 0; j < text.length(); j++)
+			{
+				char c = text.charAt(j);
+				symbolChars[c] = true;
+				if(symbolTrie[node * ALPHABET + c] == 0)
+				{
+					// Adding a node may reallocate the trie, so it must
+					// happen before the child slot is written.
+					int child = addSymbolTrieNode();
+					symbolTrie[node * ALPHABET + c] = child;
+				}
+				node = symbolTrie[node * ALPHABET + c];
+			}
+			symbolTrieKinds[node] = SYMBOL_KINDS[i];
+			fixedLexemes[SYMBOL_KINDS[i].ordinal()] = text;
+		}
+		fixedLexemes[Kind.EOF.ordinal()] = "";
+	}
+
+	private Lexicon() { }
+
+	private static int keywordHash(char first, char last, int length)
+	{
+		return (first * 12 + last * 5 + length) & KEYWORD_TABLE_MASK;
+	}
+
+	private static int addSymbolTrieNode()
+	{
+		if((symbolTrieSize + 1) * ALPHABET > symbolTrie.length)
+		{
+			symbolTrie = Arrays.copyOf(symbolTrie, symbolTrie.length * 2);
+			symbolTrieKinds = Arrays.copyOf(symbolTrieKinds, symbolTrie.length / ALPHABET);
+		}
+		return symbolTrieSize++;
+	}
+
+	// Returns the keyword spelled by chars[start, start + length),
+	// or null if those chars do not spell a keyword.
+	public static Kind keyword(char[] chars, int start, int length)
+	{
+		if(length == 0)
+			return null;
+		int slot = keywordHash(chars[start], chars[start + length - 1], length);
+		String candidate = keywordTable[slot];
+		if(candidate == null || candidate.length() != length)
+			return null;
+		for(int i = 0; i < length; i++)
+			if(candidate.charAt(i) != chars[start + i])
+				return null;
+		return keywordTableKinds[slot];
+	}
+
+	// Returns the symbol spelled by chars[start, start + length),
+	// or null if those chars do not spell a symbol.
+	public static Kind symbol(char[] chars, int start, int length)
+	{
+		int node = symbolTrieNode(chars, start, length);
+		return node < 0 ? null : symbolTrieKinds[node];
+	}
+
+	// Whether chars[start, start + length) is a prefix of any symbol.
+	public static boolean isSymbolPrefix(char[] chars, int start, int length)
+	{
+		return symbolTrieNode(chars, start, length) >= 0;
+	}
+
+	public static boolean isSymbolChar(char c)
+	{
+		return c < ALPHABET && symbolChars[c];
+	}
+
+	// The one spelling of a keyword, symbol or EOF token, or null
+	// for kinds such as IDENTIFIER whose lexemes vary.
+	public static String fixedLexeme(Kind kind)
+	{
+		return fixedLexemes[kind.ordinal()];
+	}
+
+	private static int symbolTrieNode(char[] chars, int start, int length)
+	{
+		int node = 0;
+		for(int i = start; i < start + length; i++)
+		{
+			char c = chars[i];
+			if(c >= ALPHABET)
+				return -1;
+			node = symbolTrie[node * ALPHABET + c];
+			if(node == 0)
+				return -1;
+		}
+		return node;
+	}
+}
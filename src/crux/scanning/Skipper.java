@@ -0,0 +1,51 @@
+package crux.scanning;
+
+// Consumes the runs of chars that never form part of a token: the blanks
+// between tokens and the bodies of comments. Neither run includes a line
+// feed, so skipping one never changes the line number. This version
+// tests one char at a time; VectorSkipper tests many at once.
+public class Skipper
+{
+	private static final Skipper inst = new Skipper();
+	public static Skipper instance() { return inst; }
+
+	// Loads the vector implementation by name. It lives in the separate
+	// src-vector source root, since compiling it needs the incubating
+	// vector module, so it is missing from a default build, and it cannot
+	// load when the module has not been added to the runtime. This scalar
+	// skipper is used instead in both cases.
+	public static Skipper vector()
+	{
+		try
+		{
+			return (Skipper)Class.forName("crux.scanning.VectorSkipper").getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException | LinkageError e)
+		{
+			return inst;
+		}
+	}
+
+	public static boolean isBlank(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	// Returns the offset of the first char in [position, end) that is
+	// not a space, tab or carriage return, or end if there is none.
+	public int skipBlanks(char[] input, int position, int end)
+	{
+		while(position < end && isBlank(input[position]))
+			position++;
+		return position;
+	}
+
+	// Returns the offset of the first line feed or carriage return in
+	// [position, end), or end if there is none.
+	public int skipToLineEnd(char[] input, int position, int end)
+	{
+		while(position < end && input[position] != '\n' && input[position] != '\r')
+			position++;
+		return position;
+	}
+}
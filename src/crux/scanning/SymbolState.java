@@ -22,10 +22,8 @@ public class SymbolState implements State
 			// or error token depending on whether the accumulated
 			// value is a valid symbol string.
 			context.popChar();
-			String potentialSymbol = context.accumulated();
-			context.emit(context.getSymbols().containsKey(potentialSymbol)
-				? context.getSymbols().get(potentialSymbol)
-				: Kind.ERROR);
+			Kind symbol = context.accumulatedSymbol();
+			context.emit(symbol != null ? symbol : Kind.ERROR);
 			// Finally, we defer handling of this potential new symbol
 			// to the start state, because it might be a comment.
 			return StartState.instance().transition(context);
@@ -34,10 +32,8 @@ public class SymbolState implements State
 		// away from this state, emitting the correct symbol
 		// token or error token depending on whether the
 		// accumulated value is a valid symbol string or not.
-		String potentialSymbol = context.accumulated();
-		context.emit(context.getSymbols().containsKey(potentialSymbol)
-			? context.getSymbols().get(potentialSymbol)
-			: Kind.ERROR);
+		Kind symbol = context.accumulatedSymbol();
+		context.emit(symbol != null ? symbol : Kind.ERROR);
 		// Because the value is not a symbol, defer its 
 		// handling to the StartState.
 		return StartState.instance().transition(context);
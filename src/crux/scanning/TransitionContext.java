@@ -1,14 +1,14 @@
 package crux.scanning;
 
-import java.util.Map;
 import crux.Token;
 import crux.Token.Kind;
 
 public interface TransitionContext
 {
-	public Map<String, Kind> getKeywords();
-	public Map<String, Kind> getSymbols();
-	public String accumulated();
+	// The keyword or symbol spelled by the accumulated chars,
+	// or null if they do not spell one.
+	public Kind accumulatedKeyword();
+	public Kind accumulatedSymbol();
 	public char value();
 	public void pushChar();
 	public char popChar();
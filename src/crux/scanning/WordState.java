@@ -15,10 +15,8 @@ public class WordState implements State
 			context.pushChar();
 			return this;
 		}
-		String word = context.accumulated();
-		context.emit(context.getKeywords().containsKey(word)
-			? context.getKeywords().get(word)
-			: Kind.IDENTIFIER);
+		Kind keyword = context.accumulatedKeyword();
+		context.emit(keyword != null ? keyword : Kind.IDENTIFIER);
 		return StartState.instance().transition(context);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package interpreter;
+
+// A call of one of the functions the parser predefines: readInt,
+// readFloat, printBool, printInt, printFloat and println.
+final class BuiltinCall extends ExpressionNode
+{
+	static final int READ_INT = 0,
+		READ_FLOAT = 1,
+		PRINT_BOOL = 2,
+		PRINT_INT = 3,
+		PRINT_FLOAT = 4,
+		PRINTLN = 5;
+	
+	// The builtin with the given name, or -1 if there is none.
+	static int named(String name)
+	{
+		switch(name)
+		{
+		case "readInt": return READ_INT;
+		case "readFloat": return READ_FLOAT;
+		case "printBool": return PRINT_BOOL;
+		case "printInt": return PRINT_INT;
+		case "printFloat": return PRINT_FLOAT;
+		case "println": return PRINTLN;
+		default: return -1;
+		}
+	}
+	
+	private final Console console;
+	private final int builtin;
+	// The argument of the print functions, or null.
+	private final ExpressionNode argument;
+	private final int lineNumber, charPosition;
+	
+	BuiltinCall(Console console, int builtin, ExpressionNode argument, int lineNumber, int charPosition)
+	{
+		this.console = console;
+		this.builtin = builtin;
+		this.argument = argument;
+		this.lineNumber = lineNumber;
+		this.charPosition = charPosition;
+	}
+	
+	@Override
+	int evalInt(Frame frame)
+	{
+		if(builtin != READ_INT)
+			return super.evalInt(frame);
+		return console.readInt(lineNumber, charPosition);
+	}
+	
+	@Override
+	float evalFloat(Frame frame)
+	{
+		if(builtin != READ_FLOAT)
+			return super.evalFloat(frame);
+		return console.readFloat(lineNumber, charPosition);
+	}
+	
+	@Override
+	void evalVoid(Frame frame)
+	{
+		switch(builtin)
+		{
+		case PRINT_BOOL: console.out().print(argument.evalBool(frame)); break;
+		case PRINT_INT: console.out().print(argument.evalInt(frame)); break;
+		case PRINT_FLOAT: console.out().print(argument.evalFloat(frame)); break;
+		case PRINTLN: console.out().println(); break;
+		case READ_INT: evalInt(frame); break;
+		case READ_FLOAT: evalFloat(frame); break;
+		default: throw new IllegalStateException("Unknown builtin " + builtin + ".");
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package interpreter;
+
+import java.util.Arrays;
+
+// A growable array of bytes, written in the big-endian units of class
+// files.
+final class ByteVector
+{
+	private byte[] bytes = new byte[64];
+	private int length;
+	
+	int length()
+	{
+		return length;
+	}
+	
+	ByteVector u1(int value)
+	{
+		ensure(1);
+		bytes[length++] = (byte)value;
+		return this;
+	}
+	
+	ByteVector u2(int value)
+	{
+		ensure(2);
+		bytes[length++] = (byte)(value >>> 8);
+		bytes[length++] = (byte)value;
+		return this;
+	}
+	
+	ByteVector u4(int value)
+	{
+		ensure(4);
+		bytes[length++] = (byte)(value >>> 24);
+		bytes[length++] = (byte)(value >>> 16);
+		bytes[length++] = (byte)(value >>> 8);
+		bytes[length++] = (byte)value;
+		return this;
+	}
+	
+	ByteVector bytes(ByteVector other)
+	{
+		ensure(other.length);
+		System.arraycopy(other.bytes, 0, bytes, length, other.length);
+		length += other.length;
+		return this;
+	}
+	
+	// Overwrites two bytes that were written before.
+	void putU2(int position, int value)
+	{
+		bytes[position] = (byte)(value >>> 8);
+		bytes[position + 1] = (byte)value;
+	}
+	
+	void putU4(int position, int value)
+	{
+		putU2(position, value >>> 16);
+		putU2(position + 2, value);
+	}
+	
+	// Writes a string as its length and its chars in the modified UTF-8
+	// of class files, in which the null char takes two bytes.
+	ByteVector utf8(String text)
+	{
+		int start = length;
+		u2(0);
+		for(int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if(c >= 0x01 && c <= 0x7F)
+				u1(c);
+			else if(c <= 0x7FF)
+				u1(0xC0 | (c >> 6)).u1(0x80 | (c & 0x3F));
+			else
+				u1(0xE0 | (c >> 12)).u1(0x80 | ((c >> 6) & 0x3F)).u1(0x80 | (c & 0x3F));
+		}
+		putU2(start, length - start - 2);
+		return this;
+	}
+	
+	byte[] toByteArray()
+	{
+		return Arrays.copyOf(bytes, length);
+	}
+	
+	private void ensure(int count)
+	{
+		if(length + count > bytes.length)
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+	}
+}
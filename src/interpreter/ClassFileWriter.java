@@ -0,0 +1,156 @@
+package interpreter;
+
+import java.util.HashMap;
+
+// Assembles a class file in memory: its constant pool, which shares equal
+// entries, its static fields and its methods. Only what the JVM backend
+// needs is supported.
+final class ClassFileWriter
+{
+	static final int ACC_STATIC = 0x0008,
+		ACC_FINAL = 0x0010,
+		ACC_SUPER = 0x0020;
+	
+	// Java 17, which verifies methods by their stack map frames.
+	private static final int MAJOR_VERSION = 61;
+	
+	private static final int CONSTANT_UTF8 = 1,
+		CONSTANT_INTEGER = 3,
+		CONSTANT_FLOAT = 4,
+		CONSTANT_CLASS = 7,
+		CONSTANT_FIELDREF = 9,
+		CONSTANT_METHODREF = 10,
+		CONSTANT_NAME_AND_TYPE = 12;
+	
+	private final String name;
+	private final ByteVector pool = new ByteVector();
+	private final HashMap<String, Integer> poolIndices = new HashMap<String, Integer>();
+	private int poolCount = 1;
+	private final ByteVector fields = new ByteVector(), methods = new ByteVector();
+	private int fieldCount, methodCount;
+	
+	// The class is named by its internal name, with slashes.
+	ClassFileWriter(String name)
+	{
+		this.name = name;
+	}
+	
+	String name()
+	{
+		return name;
+	}
+	
+	// The index of a constant, which is added to the pool the first time
+	// it is asked for. Keys tell the kinds of constant apart.
+	private Integer indexOf(String key)
+	{
+		return poolIndices.get(key);
+	}
+	
+	private int add(String key, int slots)
+	{
+		int index = poolCount;
+		poolIndices.put(key, index);
+		poolCount += slots;
+		return index;
+	}
+	
+	int utf8(String value)
+	{
+		Integer index = indexOf("U" + value);
+		if(index != null)
+			return index;
+		pool.u1(CONSTANT_UTF8).utf8(value);
+		return add("U" + value, 1);
+	}
+	
+	int integer(int value)
+	{
+		Integer index = indexOf("I" + value);
+		if(index != null)
+			return index;
+		pool.u1(CONSTANT_INTEGER).u4(value);
+		return add("I" + value, 1);
+	}
+	
+	// Floats are keyed by their bits, so that 0.0 and -0.0 stay apart.
+	int floatConstant(float value)
+	{
+		int bits = Float.floatToRawIntBits(value);
+		Integer index = indexOf("F" + bits);
+		if(index != null)
+			return index;
+		pool.u1(CONSTANT_FLOAT).u4(bits);
+		return add("F" + bits, 1);
+	}
+	
+	int classRef(String internalName)
+	{
+		Integer index = indexOf("C" + internalName);
+		if(index != null)
+			return index;
+		int nameIndex = utf8(internalName);
+		pool.u1(CONSTANT_CLASS).u2(nameIndex);
+		return add("C" + internalName, 1);
+	}
+	
+	private int nameAndType(String name, String descriptor)
+	{
+		Integer index = indexOf("N" + name + " " + descriptor);
+		if(index != null)
+			return index;
+		int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+		pool.u1(CONSTANT_NAME_AND_TYPE).u2(nameIndex).u2(descriptorIndex);
+		return add("N" + name + " " + descriptor, 1);
+	}
+	
+	int fieldRef(String owner, String name, String descriptor)
+	{
+		return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+	
+	int methodRef(String owner, String name, String descriptor)
+	{
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+	
+	private int memberRef(int tag, String owner, String name, String descriptor)
+	{
+		String key = tag + owner + "." + name + " " + descriptor;
+		Integer index = indexOf(key);
+		if(index != null)
+			return index;
+		int classIndex = classRef(owner), nameAndTypeIndex = nameAndType(name, descriptor);
+		pool.u1(tag).u2(classIndex).u2(nameAndTypeIndex);
+		return add(key, 1);
+	}
+	
+	void field(int access, String name, String descriptor)
+	{
+		fields.u2(access).u2(utf8(name)).u2(utf8(descriptor)).u2(0);
+		fieldCount++;
+	}
+	
+	void method(int access, String name, String descriptor, CodeWriter code)
+	{
+		methods.u2(access).u2(utf8(name)).u2(utf8(descriptor)).u2(1);
+		code.writeAttribute(methods);
+		methodCount++;
+	}
+	
+	byte[] toByteArray()
+	{
+		int thisIndex = classRef(name), superIndex = classRef("java/lang/Object");
+		if(poolCount > 65535)
+			throw new IllegalArgumentException("The program has too many names and constants to compile to the JVM.");
+		ByteVector out = new ByteVector();
+		out.u4(0xCAFEBABE).u2(0).u2(MAJOR_VERSION);
+		out.u2(poolCount).bytes(pool);
+		out.u2(ACC_FINAL | ACC_SUPER).u2(thisIndex).u2(superIndex);
+		out.u2(0);
+		out.u2(fieldCount).bytes(fields);
+		out.u2(methodCount).bytes(methods);
+		out.u2(0);
+		return out.toByteArray();
+	}
+}
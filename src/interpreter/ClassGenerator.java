@@ -0,0 +1,655 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import ast.*;
+import crux.Symbol;
+import types.*;
+
+// Lowers a checked program to a class file for the JVM. Every function
+// becomes a static method of the class, taking and returning ints, floats
+// and booleans, with its variables in the method's locals. Globals become
+// static fields, and arrays static fields holding an int[], float[] or
+// boolean[] with all of their elements, however many dimensions they have.
+// Errors the checker cannot rule out are reported by the runtime methods
+// of JvmBackend, at the position of the command that makes them.
+class ClassGenerator implements CommandVisitor
+{
+	// Named in the package of the backend, which the class is defined in,
+	// so that it has access to the package's classes.
+	static final String CLASS_NAME = "interpreter/CruxProgram";
+	// Sets the fields of the console and runs main, with every global at
+	// zero. Crux names cannot start with a dollar sign.
+	static final String RUN = "$run";
+	static final String RUN_DESCRIPTOR = "(Linterpreter/Console;Ljava/io/PrintStream;)V";
+	
+	private static final String CONSOLE = "$console";
+	private static final String CONSOLE_DESCRIPTOR = "Linterpreter/Console;";
+	private static final String OUT = "$out";
+	private static final String OUT_DESCRIPTOR = "Ljava/io/PrintStream;";
+	private static final String BACKEND = "interpreter/JvmBackend";
+	private static final String STACK_OVERFLOW = "java/lang/StackOverflowError";
+	
+	private final TypeChecker checker;
+	private final ClassFileWriter classFile;
+	// The field descriptors of the globals, and the globals in the order
+	// they are declared.
+	private final IdentityHashMap<Symbol, String> globals;
+	private final ArrayList<Symbol> globalOrder;
+	// The method descriptors of the functions the program defines.
+	private final IdentityHashMap<Symbol, String> methods;
+	// The locals of the function being compiled, or null at the top level.
+	private IdentityHashMap<Symbol, Integer> locals;
+	private CodeWriter code;
+	// The calls of the function being compiled, and where running out of
+	// Java stack in each goes.
+	private ArrayList<ast.Call> calls;
+	private ArrayList<CodeWriter.Label> overflows;
+	
+	ClassGenerator(TypeChecker checker)
+	{
+		this.checker = checker;
+		classFile = new ClassFileWriter(CLASS_NAME);
+		globals = new IdentityHashMap<Symbol, String>();
+		globalOrder = new ArrayList<Symbol>();
+		methods = new IdentityHashMap<Symbol, String>();
+	}
+	
+	// Compiles the program, which must have a main function.
+	byte[] generate(DeclarationList program)
+	{
+		program.accept(this);
+		Symbol main = null;
+		for(Symbol function : methods.keySet())
+			if(function.getName().equals("main"))
+				main = function;
+		if(main == null)
+			throw new IllegalArgumentException("The program has no main function.");
+		classFile.field(ClassFileWriter.ACC_STATIC, CONSOLE, CONSOLE_DESCRIPTOR);
+		classFile.field(ClassFileWriter.ACC_STATIC, OUT, OUT_DESCRIPTOR);
+		code = new CodeWriter(classFile, CONSOLE_DESCRIPTOR.substring(1, CONSOLE_DESCRIPTOR.length() - 1),
+			OUT_DESCRIPTOR.substring(1, OUT_DESCRIPTOR.length() - 1));
+		code.load(0);
+		code.putStatic(CLASS_NAME, CONSOLE, CONSOLE_DESCRIPTOR);
+		code.load(1);
+		code.putStatic(CLASS_NAME, OUT, OUT_DESCRIPTOR);
+		for(Symbol global : globalOrder)
+		{
+			String descriptor = globals.get(global);
+			if(descriptor.startsWith("["))
+				code.newArray(descriptor, Kind.slotCount(global.getType()));
+			else if(descriptor.equals("F"))
+				code.pushFloat(0);
+			else
+				code.pushInt(0);
+			code.putStatic(CLASS_NAME, global.getName(), descriptor);
+		}
+		code.invokeStatic(CLASS_NAME, main.getName(), methods.get(main));
+		code.instruction(CodeWriter.RETURN);
+		classFile.method(ClassFileWriter.ACC_STATIC, RUN, RUN_DESCRIPTOR, code);
+		code = null;
+		return classFile.toByteArray();
+	}
+	
+	private static String descriptorOf(Type type)
+	{
+		if(type instanceof ArrayType)
+			return "[" + descriptorOf(elementsOf(type));
+		switch(Kind.of(type))
+		{
+		case INT: return "I";
+		case FLOAT: return "F";
+		case BOOL: return "Z";
+		default: return "V";
+		}
+	}
+	
+	private static Type elementsOf(Type type)
+	{
+		while(type instanceof ArrayType)
+			type = ((ArrayType)type).elementType();
+		return type;
+	}
+	
+	// The type of a value of the kind on the operand stack and in locals.
+	private static String stackTypeOf(Type type)
+	{
+		return Kind.of(type) == Kind.FLOAT ? "F" : "I";
+	}
+	
+	private static String methodDescriptorOf(FuncType type)
+	{
+		StringBuilder descriptor = new StringBuilder("(");
+		for(Type argument : type.arguments())
+			descriptor.append(descriptorOf(argument));
+		return descriptor.append(')').append(descriptorOf(type.returnType())).toString();
+	}
+	
+	private Kind kindOf(Expression node)
+	{
+		return Kind.of(checker.getType((Command)node));
+	}
+	
+	private boolean isGlobal(Symbol symbol)
+	{
+		return locals == null || !locals.containsKey(symbol);
+	}
+	
+	// Emits code that pushes the value of an expression.
+	private void expression(Expression node)
+	{
+		Object constant = checker.getConstant((Command)node);
+		if(constant instanceof Integer)
+			code.pushInt((Integer)constant);
+		else if(constant instanceof Float)
+			code.pushFloat((Float)constant);
+		else if(constant instanceof Boolean)
+			code.pushInt((Boolean)constant ? 1 : 0);
+		else
+			((Command)node).accept(this);
+	}
+	
+	private void statement(Visitable node)
+	{
+		node.accept(this);
+		// A call made for its effects leaves nothing behind.
+		if(node instanceof ast.Call && kindOf((ast.Call)node) != Kind.VOID)
+			code.instruction(CodeWriter.POP);
+	}
+	
+	// Emits code that jumps to the label when the condition is false, or
+	// when it is true if jumpIf is true, and otherwise goes on.
+	private void branch(Expression condition, boolean jumpIf, CodeWriter.Label label)
+	{
+		Object constant = checker.getConstant((Command)condition);
+		if(constant instanceof Boolean)
+		{
+			if((Boolean)constant == jumpIf)
+				code.jump(CodeWriter.GOTO, label);
+		}
+		else if(condition instanceof LogicalNot)
+			branch(((LogicalNot)condition).expression(), !jumpIf, label);
+		else if(condition instanceof LogicalAnd || condition instanceof LogicalOr)
+		{
+			// The left operand decides the whole condition when it is
+			// false for and, or true for or.
+			boolean decidedBy = condition instanceof LogicalOr;
+			Expression left, right;
+			if(condition instanceof LogicalAnd)
+			{
+				left = ((LogicalAnd)condition).leftSide();
+				right = ((LogicalAnd)condition).rightSide();
+			}
+			else
+			{
+				left = ((LogicalOr)condition).leftSide();
+				right = ((LogicalOr)condition).rightSide();
+			}
+			if(decidedBy == jumpIf)
+			{
+				branch(left, jumpIf, label);
+				branch(right, jumpIf, label);
+			}
+			else
+			{
+				CodeWriter.Label skip = new CodeWriter.Label();
+				branch(left, decidedBy, skip);
+				branch(right, jumpIf, label);
+				code.bind(skip);
+			}
+		}
+		else if(condition instanceof Comparison)
+		{
+			Comparison comparison = (Comparison)condition;
+			Comparison.Operation operation = comparison.operation();
+			expression(comparison.leftSide());
+			expression(comparison.rightSide());
+			if(kindOf(comparison.leftSide()) != Kind.FLOAT)
+			{
+				code.jump(compareAndJump(jumpIf ? operation : opposite(operation)), label);
+				return;
+			}
+			// Floats are compared to -1, 0 or 1 first. A NaN on either
+			// side gives whichever of -1 and 1 makes the comparison false,
+			// which makes its opposite true.
+			boolean less = operation == Comparison.Operation.LT || operation == Comparison.Operation.LE;
+			code.instruction(less ? CodeWriter.FCMPG : CodeWriter.FCMPL);
+			int op = compareAndJump(jumpIf ? operation : opposite(operation));
+			code.jump(op - CodeWriter.IF_ICMPEQ + CodeWriter.IFEQ, label);
+		}
+		else
+		{
+			expression(condition);
+			code.jump(jumpIf ? CodeWriter.IFNE : CodeWriter.IFEQ, label);
+		}
+	}
+	
+	// The instruction that compares two ints and jumps if the comparison
+	// holds. Those that compare one int to zero are in the same order.
+	private static int compareAndJump(Comparison.Operation operation)
+	{
+		switch(operation)
+		{
+		case LT: return CodeWriter.IF_ICMPLT;
+		case LE: return CodeWriter.IF_ICMPLE;
+		case EQ: return CodeWriter.IF_ICMPEQ;
+		case NE: return CodeWriter.IF_ICMPNE;
+		case GE: return CodeWriter.IF_ICMPGE;
+		case GT: return CodeWriter.IF_ICMPGT;
+		default: throw new IllegalStateException("Unknown comparison " + operation + ".");
+		}
+	}
+	
+	// The comparison that holds exactly when the given one does not.
+	private static Comparison.Operation opposite(Comparison.Operation operation)
+	{
+		switch(operation)
+		{
+		case LT: return Comparison.Operation.GE;
+		case LE: return Comparison.Operation.GT;
+		case EQ: return Comparison.Operation.NE;
+		case NE: return Comparison.Operation.EQ;
+		case GE: return Comparison.Operation.LT;
+		case GT: return Comparison.Operation.LE;
+		default: throw new IllegalStateException("Unknown comparison " + operation + ".");
+		}
+	}
+	
+	// Emits code that pushes the array a designator is in and the index of
+	// its element in that array, after checking every index against the
+	// length of its dimension.
+	private void element(Index node)
+	{
+		ArrayType type = (ArrayType)((AddressType)checker.getType((Command)node.base())).base();
+		boolean outermost = node.base() instanceof AddressOf;
+		if(outermost)
+		{
+			Symbol array = ((AddressOf)node.base()).symbol();
+			code.getStatic(CLASS_NAME, array.getName(), globals.get(array));
+		}
+		else
+			element((Index)node.base());
+		expression(node.amount());
+		code.pushInt(type.arrayLength());
+		code.pushInt(node.lineNumber());
+		code.pushInt(node.charPosition());
+		code.invokeStatic(BACKEND, "index", "(IIII)I");
+		int stride = Kind.slotCount(type.elementType());
+		if(stride != 1)
+		{
+			code.pushInt(stride);
+			code.instruction(CodeWriter.IMUL);
+		}
+		if(!outermost)
+			code.instruction(CodeWriter.IADD);
+	}
+	
+	@Override
+	public void visit(ExpressionList node)
+	{
+		throw new IllegalStateException("Expression lists are compiled by their call.");
+	}
+	
+	@Override
+	public void visit(DeclarationList node)
+	{
+		for(Declaration declaration : node)
+			((Command)declaration).accept(this);
+	}
+	
+	@Override
+	public void visit(StatementList node)
+	{
+		for(Statement statement : node)
+			statement(statement);
+	}
+	
+	@Override
+	public void visit(AddressOf node)
+	{
+		throw new IllegalStateException("Addresses are compiled by what uses them.");
+	}
+	
+	@Override
+	public void visit(LiteralBool node)
+	{
+		code.pushInt(node.value() == LiteralBool.Value.TRUE ? 1 : 0);
+	}
+	
+	@Override
+	public void visit(LiteralFloat node)
+	{
+		code.pushFloat(node.value());
+	}
+	
+	@Override
+	public void visit(LiteralInt node)
+	{
+		code.pushInt(node.value());
+	}
+	
+	@Override
+	public void visit(VariableDeclaration node)
+	{
+		Symbol symbol = node.symbol();
+		if(locals == null)
+		{
+			declareGlobal(symbol);
+			return;
+		}
+		// Locals are cleared wherever they are declared.
+		int local = code.newLocal(stackTypeOf(symbol.getType()));
+		locals.put(symbol, local);
+		if(Kind.of(symbol.getType()) == Kind.FLOAT)
+			code.pushFloat(0);
+		else
+			code.pushInt(0);
+		code.store(local);
+	}
+	
+	@Override
+	public void visit(ArrayDeclaration node)
+	{
+		if(locals != null)
+			throw new IllegalStateException("Arrays can only be declared globally.");
+		declareGlobal(node.symbol());
+	}
+	
+	private void declareGlobal(Symbol symbol)
+	{
+		String descriptor = descriptorOf(symbol.getType());
+		classFile.field(ClassFileWriter.ACC_STATIC, symbol.getName(), descriptor);
+		globals.put(symbol, descriptor);
+		globalOrder.add(symbol);
+	}
+	
+	@Override
+	public void visit(FunctionDefinition node)
+	{
+		// Added before the body is compiled, for recursive calls.
+		String descriptor = methodDescriptorOf((FuncType)node.function().getType());
+		methods.put(node.function(), descriptor);
+		compile(node, false);
+		// Wide jumps make the code longer, so only functions with jumps
+		// too long for the short ones are compiled again with them.
+		if(code.jumpsTooLong())
+			compile(node, true);
+		classFile.method(ClassFileWriter.ACC_STATIC, node.function().getName(), descriptor, code);
+		locals = null;
+		calls = null;
+		overflows = null;
+		code = null;
+	}
+	
+	private void compile(FunctionDefinition node, boolean wideJumps)
+	{
+		locals = new IdentityHashMap<Symbol, Integer>();
+		String[] parameterTypes = new String[node.arguments().size()];
+		for(int i = 0; i < parameterTypes.length; i++)
+		{
+			Symbol parameter = node.arguments().get(i);
+			parameterTypes[i] = stackTypeOf(parameter.getType());
+			locals.put(parameter, i);
+		}
+		code = new CodeWriter(classFile, wideJumps, parameterTypes);
+		calls = new ArrayList<ast.Call>();
+		overflows = new ArrayList<CodeWriter.Label>();
+		statement(node.body());
+		// Falling off the end returns zero, as the tree does.
+		if(code.reachable())
+		{
+			switch(Kind.of(node.function().getType()))
+			{
+			case INT:
+			case BOOL: code.pushInt(0); code.instruction(CodeWriter.IRETURN); break;
+			case FLOAT: code.pushFloat(0); code.instruction(CodeWriter.FRETURN); break;
+			default: code.instruction(CodeWriter.RETURN);
+			}
+		}
+		// Running out of Java stack in a call is reported at the call, as
+		// the bytecode interpreter reports running out of its own.
+		for(int i = 0; i < calls.size(); i++)
+		{
+			code.bindHandler(overflows.get(i), STACK_OVERFLOW);
+			code.instruction(CodeWriter.POP);
+			code.pushInt(calls.get(i).lineNumber());
+			code.pushInt(calls.get(i).charPosition());
+			code.invokeStatic(BACKEND, "stackOverflowed", "(II)Linterpreter/CruxRuntimeException;");
+			code.instruction(CodeWriter.ATHROW);
+		}
+	}
+	
+	private void arithmetic(Expression node, Expression left, Expression right, int intOp, int floatOp)
+	{
+		expression(left);
+		expression(right);
+		code.instruction(kindOf(node) == Kind.FLOAT ? floatOp : intOp);
+	}
+	
+	@Override
+	public void visit(Addition node)
+	{
+		arithmetic(node, node.leftSide(), node.rightSide(), CodeWriter.IADD, CodeWriter.FADD);
+	}
+	
+	@Override
+	public void visit(Subtraction node)
+	{
+		arithmetic(node, node.leftSide(), node.rightSide(), CodeWriter.ISUB, CodeWriter.FSUB);
+	}
+	
+	@Override
+	public void visit(Multiplication node)
+	{
+		arithmetic(node, node.leftSide(), node.rightSide(), CodeWriter.IMUL, CodeWriter.FMUL);
+	}
+	
+	@Override
+	public void visit(Division node)
+	{
+		expression(node.leftSide());
+		expression(node.rightSide());
+		if(kindOf(node) == Kind.FLOAT)
+		{
+			code.instruction(CodeWriter.FDIV);
+			return;
+		}
+		code.pushInt(node.lineNumber());
+		code.pushInt(node.charPosition());
+		code.invokeStatic(BACKEND, "divide", "(IIII)I");
+	}
+	
+	@Override
+	public void visit(LogicalAnd node)
+	{
+		// The left operand is the result when it is false.
+		CodeWriter.Label end = new CodeWriter.Label();
+		expression(node.leftSide());
+		code.instruction(CodeWriter.DUP);
+		code.jump(CodeWriter.IFEQ, end);
+		code.instruction(CodeWriter.POP);
+		expression(node.rightSide());
+		code.bind(end);
+	}
+	
+	@Override
+	public void visit(LogicalOr node)
+	{
+		// The left operand is the result when it is true.
+		CodeWriter.Label end = new CodeWriter.Label();
+		expression(node.leftSide());
+		code.instruction(CodeWriter.DUP);
+		code.jump(CodeWriter.IFNE, end);
+		code.instruction(CodeWriter.POP);
+		expression(node.rightSide());
+		code.bind(end);
+	}
+	
+	@Override
+	public void visit(LogicalNot node)
+	{
+		expression(node.expression());
+		code.pushInt(1);
+		code.instruction(CodeWriter.IXOR);
+	}
+	
+	@Override
+	public void visit(Comparison node)
+	{
+		CodeWriter.Label holds = new CodeWriter.Label(), end = new CodeWriter.Label();
+		branch(node, true, holds);
+		code.pushInt(0);
+		code.jump(CodeWriter.GOTO, end);
+		code.bind(holds);
+		code.pushInt(1);
+		code.bind(end);
+	}
+	
+	@Override
+	public void visit(Dereference node)
+	{
+		if(node.expression() instanceof AddressOf)
+		{
+			Symbol symbol = ((AddressOf)node.expression()).symbol();
+			if(isGlobal(symbol))
+				code.getStatic(CLASS_NAME, symbol.getName(), globals.get(symbol));
+			else
+				code.load(locals.get(symbol));
+			return;
+		}
+		element((Index)node.expression());
+		code.arrayLoad();
+	}
+	
+	@Override
+	public void visit(Index node)
+	{
+		throw new IllegalStateException("Elements are compiled by what uses them.");
+	}
+	
+	@Override
+	public void visit(Assignment node)
+	{
+		// A variable is assigned through its address, but an element
+		// through a dereference of its address.
+		Expression destination = node.destination();
+		if(destination instanceof Dereference)
+			destination = ((Dereference)destination).expression();
+		if(destination instanceof AddressOf)
+		{
+			Symbol symbol = ((AddressOf)destination).symbol();
+			expression(node.source());
+			if(isGlobal(symbol))
+				code.putStatic(CLASS_NAME, symbol.getName(), globals.get(symbol));
+			else
+				code.store(locals.get(symbol));
+			return;
+		}
+		// The element is found before the value is evaluated.
+		element((Index)destination);
+		expression(node.source());
+		code.arrayStore();
+	}
+	
+	@Override
+	public void visit(ast.Call node)
+	{
+		for(Expression argument : node.arguments())
+			expression(argument);
+		String descriptor = methods.get(node.function());
+		if(descriptor != null)
+		{
+			int start = code.offset();
+			code.invokeStatic(CLASS_NAME, node.function().getName(), descriptor);
+			if(code.offset() > start)
+			{
+				CodeWriter.Label overflow = new CodeWriter.Label();
+				code.catchIn(start, code.offset(), overflow, STACK_OVERFLOW);
+				calls.add(node);
+				overflows.add(overflow);
+			}
+			return;
+		}
+		// The arguments of the print functions go after the stream they
+		// are printed to.
+		switch(BuiltinCall.named(node.function().getName()))
+		{
+		case BuiltinCall.READ_INT: read(node, "readInt", "(II)I"); break;
+		case BuiltinCall.READ_FLOAT: read(node, "readFloat", "(II)F"); break;
+		case BuiltinCall.PRINT_BOOL: print("print", "(Z)V"); break;
+		case BuiltinCall.PRINT_INT: print("print", "(I)V"); break;
+		case BuiltinCall.PRINT_FLOAT: print("print", "(F)V"); break;
+		case BuiltinCall.PRINTLN:
+			code.getStatic(CLASS_NAME, OUT, OUT_DESCRIPTOR);
+			code.invokeVirtual("java/io/PrintStream", "println", "()V");
+			break;
+		default: throw new IllegalStateException("Unknown function " + node.function().getName() + ".");
+		}
+	}
+	
+	private void read(ast.Call node, String name, String descriptor)
+	{
+		code.getStatic(CLASS_NAME, CONSOLE, CONSOLE_DESCRIPTOR);
+		code.pushInt(node.lineNumber());
+		code.pushInt(node.charPosition());
+		code.invokeVirtual("interpreter/Console", name, descriptor);
+	}
+	
+	private void print(String name, String descriptor)
+	{
+		code.getStatic(CLASS_NAME, OUT, OUT_DESCRIPTOR);
+		code.instruction(CodeWriter.SWAP);
+		code.invokeVirtual("java/io/PrintStream", name, descriptor);
+	}
+	
+	@Override
+	public void visit(IfElseBranch node)
+	{
+		CodeWriter.Label elseBlock = new CodeWriter.Label(), end = new CodeWriter.Label();
+		branch(node.condition(), false, elseBlock);
+		statement(node.thenBlock());
+		if(!node.elseBlock().iterator().hasNext())
+		{
+			code.bind(elseBlock);
+			return;
+		}
+		code.jump(CodeWriter.GOTO, end);
+		code.bind(elseBlock);
+		statement(node.elseBlock());
+		code.bind(end);
+	}
+	
+	@Override
+	public void visit(WhileLoop node)
+	{
+		// The condition is tested before the body, since the body must be
+		// reachable when it is emitted. The JIT rotates loops itself.
+		CodeWriter.Label condition = new CodeWriter.Label(), end = new CodeWriter.Label();
+		code.bind(condition);
+		branch(node.condition(), false, end);
+		statement(node.body());
+		code.jump(CodeWriter.GOTO, condition);
+		code.bind(end);
+	}
+	
+	@Override
+	public void visit(Return node)
+	{
+		Expression argument = node.argument();
+		expression(argument);
+		switch(kindOf(argument))
+		{
+		case INT:
+		case BOOL: code.instruction(CodeWriter.IRETURN); break;
+		case FLOAT: code.instruction(CodeWriter.FRETURN); break;
+		default: code.instruction(CodeWriter.RETURN);
+		}
+	}
+	
+	@Override
+	public void visit(ast.Error node)
+	{
+		throw new IllegalStateException("Cannot run a program with errors.");
+	}
+}
@@ -0,0 +1,690 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import ast.*;
+import crux.Symbol;
+import types.*;
+
+// Lowers a checked program to the code of the virtual machine. Symbols are
+// resolved to slots the same way the Resolver does, and the checker's
+// types pick the kind of each instruction. Conditions compile to jumps,
+// with and and or only evaluating their right operand when the left one
+// does not decide them.
+class CodeGenerator implements CommandVisitor
+{
+	// A place in the code that jumps can go to before it is known.
+	private static final class Label
+	{
+		int target = -1;
+		int[] jumps = new int[2];
+		int jumpCount;
+	}
+	
+	private final TypeChecker checker;
+	private int[] code = new int[256];
+	private int length;
+	private int[] siteLineNumbers = new int[16], siteCharPositions = new int[16];
+	private int siteCount;
+	private final ArrayList<Program.Function> functions;
+	private final IdentityHashMap<Symbol, Integer> functionIndices;
+	private final IdentityHashMap<Symbol, Integer> globalSlots;
+	private int globalIntSlots, globalFloatSlots;
+	// The slots of the function being compiled, or null at the top level.
+	private IdentityHashMap<Symbol, Integer> localSlots;
+	private Program.Function function;
+	// How many values the code emitted so far leaves on each stack.
+	private int intDepth, floatDepth;
+	// Where the last instruction is, if it pushes an int constant, or -1.
+	private int constantAt = -1;
+	
+	CodeGenerator(TypeChecker checker)
+	{
+		this.checker = checker;
+		functions = new ArrayList<Program.Function>();
+		functionIndices = new IdentityHashMap<Symbol, Integer>();
+		globalSlots = new IdentityHashMap<Symbol, Integer>();
+	}
+	
+	// Compiles the program, which must have a main function.
+	Program generate(DeclarationList program)
+	{
+		program.accept(this);
+		Integer main = null;
+		for(int i = 0; i < functions.size(); i++)
+			if(functions.get(i).name.equals("main"))
+				main = i;
+		if(main == null)
+			throw new IllegalArgumentException("The program has no main function.");
+		int start = length;
+		emit(Opcode.CALL, main, site(program));
+		emit(Opcode.HALT);
+		return new Program(
+			Arrays.copyOf(code, length),
+			start,
+			functions.toArray(new Program.Function[functions.size()]),
+			Arrays.copyOf(siteLineNumbers, siteCount),
+			Arrays.copyOf(siteCharPositions, siteCount),
+			globalIntSlots,
+			globalFloatSlots);
+	}
+	
+	private void emit(int op)
+	{
+		// A constant pushed just for this instruction is taken from the
+		// code instead, by the superinstruction for that.
+		if(Opcode.WITH_CONSTANT[op] != Opcode.HALT && constantAt == length - 2)
+		{
+			int value = code[length - 1];
+			length -= 2;
+			adjust(-1, 0);
+			emit(Opcode.WITH_CONSTANT[op], value);
+			return;
+		}
+		if(length == code.length)
+			code = Arrays.copyOf(code, length * 2);
+		constantAt = op == Opcode.INT_CONSTANT ? length : -1;
+		code[length++] = op;
+		adjust(Opcode.INT_EFFECTS[op], Opcode.FLOAT_EFFECTS[op]);
+	}
+	
+	private void emit(int op, int operand)
+	{
+		emit(op);
+		operand(operand);
+	}
+	
+	private void emit(int op, int first, int second)
+	{
+		emit(op);
+		operand(first);
+		operand(second);
+	}
+	
+	private void operand(int value)
+	{
+		if(length == code.length)
+			code = Arrays.copyOf(code, length * 2);
+		code[length++] = value;
+	}
+	
+	private void adjust(int intEffect, int floatEffect)
+	{
+		intDepth += intEffect;
+		floatDepth += floatEffect;
+		if(function != null)
+		{
+			function.intStack = Math.max(function.intStack, intDepth);
+			function.floatStack = Math.max(function.floatStack, floatDepth);
+		}
+	}
+	
+	// Records where errors at a command are reported.
+	private int site(Command node)
+	{
+		if(siteCount == siteLineNumbers.length)
+		{
+			siteLineNumbers = Arrays.copyOf(siteLineNumbers, siteCount * 2);
+			siteCharPositions = Arrays.copyOf(siteCharPositions, siteCount * 2);
+		}
+		siteLineNumbers[siteCount] = node.lineNumber();
+		siteCharPositions[siteCount] = node.charPosition();
+		return siteCount++;
+	}
+	
+	private void jump(int op, Label label)
+	{
+		emit(op);
+		if(label.target >= 0)
+		{
+			operand(label.target);
+			return;
+		}
+		if(label.jumpCount == label.jumps.length)
+			label.jumps = Arrays.copyOf(label.jumps, label.jumpCount * 2);
+		label.jumps[label.jumpCount++] = length;
+		operand(-1);
+	}
+	
+	private void bind(Label label)
+	{
+		label.target = length;
+		// The constant before a label is not pushed by the code that
+		// jumps there.
+		constantAt = -1;
+		for(int i = 0; i < label.jumpCount; i++)
+			code[label.jumps[i]] = label.target;
+	}
+	
+	private Kind kindOf(Expression node)
+	{
+		return Kind.of(checker.getType((Command)node));
+	}
+	
+	// The kind of the values at an address.
+	private Kind kindAt(Expression address)
+	{
+		return Kind.of(((AddressType)checker.getType((Command)address)).base());
+	}
+	
+	private boolean isGlobal(Symbol symbol)
+	{
+		return localSlots == null || !localSlots.containsKey(symbol);
+	}
+	
+	private int slotOf(Symbol symbol)
+	{
+		return isGlobal(symbol) ? globalSlots.get(symbol) : localSlots.get(symbol);
+	}
+	
+	// Gives a variable the next free slots of the current function, or of
+	// the globals.
+	private int allocate(Symbol symbol)
+	{
+		Type type = symbol.getType();
+		boolean floats = Kind.ofElements(type) == Kind.FLOAT;
+		int slot;
+		if(localSlots == null)
+		{
+			slot = floats ? globalFloatSlots : globalIntSlots;
+			if(floats)
+				globalFloatSlots += Kind.slotCount(type);
+			else
+				globalIntSlots += Kind.slotCount(type);
+			globalSlots.put(symbol, slot);
+			return slot;
+		}
+		slot = floats ? function.floatSlots : function.intSlots;
+		if(floats)
+			function.floatSlots += Kind.slotCount(type);
+		else
+			function.intSlots += Kind.slotCount(type);
+		localSlots.put(symbol, slot);
+		return slot;
+	}
+	
+	// Emits code that pushes the value of an expression.
+	private void expression(Expression node)
+	{
+		Object constant = checker.getConstant((Command)node);
+		if(constant instanceof Integer)
+			emit(Opcode.INT_CONSTANT, (Integer)constant);
+		else if(constant instanceof Float)
+			emit(Opcode.FLOAT_CONSTANT, Float.floatToRawIntBits((Float)constant));
+		else if(constant instanceof Boolean)
+			emit(Opcode.INT_CONSTANT, (Boolean)constant ? 1 : 0);
+		else
+			((Command)node).accept(this);
+	}
+	
+	private void statement(Visitable node)
+	{
+		if(node instanceof ast.Call)
+		{
+			// A call made for its effects leaves nothing behind.
+			node.accept(this);
+			switch(kindOf((ast.Call)node))
+			{
+			case INT:
+			case BOOL: emit(Opcode.POP); break;
+			case FLOAT: emit(Opcode.POP_FLOAT); break;
+			default:
+			}
+		}
+		else
+			node.accept(this);
+	}
+	
+	// Emits code that jumps to the label when the condition is false, or
+	// when it is true if jumpIf is true, and otherwise goes on.
+	private void branch(Expression condition, boolean jumpIf, Label label)
+	{
+		Object constant = checker.getConstant((Command)condition);
+		if(constant instanceof Boolean)
+		{
+			if((Boolean)constant == jumpIf)
+				jump(Opcode.JUMP, label);
+		}
+		else if(condition instanceof LogicalNot)
+			branch(((LogicalNot)condition).expression(), !jumpIf, label);
+		else if(condition instanceof LogicalAnd || condition instanceof LogicalOr)
+		{
+			// The left operand decides the whole condition when it is
+			// false for and, or true for or.
+			boolean decidedBy = condition instanceof LogicalOr;
+			Expression left, right;
+			if(condition instanceof LogicalAnd)
+			{
+				left = ((LogicalAnd)condition).leftSide();
+				right = ((LogicalAnd)condition).rightSide();
+			}
+			else
+			{
+				left = ((LogicalOr)condition).leftSide();
+				right = ((LogicalOr)condition).rightSide();
+			}
+			if(decidedBy == jumpIf)
+			{
+				branch(left, jumpIf, label);
+				branch(right, jumpIf, label);
+			}
+			else
+			{
+				Label skip = new Label();
+				branch(left, decidedBy, skip);
+				branch(right, jumpIf, label);
+				bind(skip);
+			}
+		}
+		else if(condition instanceof Comparison && kindOf(((Comparison)condition).leftSide()) != Kind.FLOAT)
+		{
+			// Int comparisons jump by themselves.
+			Comparison comparison = (Comparison)condition;
+			expression(comparison.leftSide());
+			expression(comparison.rightSide());
+			Comparison.Operation operation = jumpIf ? comparison.operation() : opposite(comparison.operation());
+			jump(Opcode.JUMP_IF_LESS_INT + order(operation), label);
+		}
+		else
+		{
+			expression(condition);
+			jump(jumpIf ? Opcode.JUMP_IF_TRUE : Opcode.JUMP_IF_FALSE, label);
+		}
+	}
+	
+	// Emits code that pushes the slot of a designator.
+	private void address(Expression node)
+	{
+		if(node instanceof AddressOf)
+			emit(Opcode.INT_CONSTANT, slotOf(((AddressOf)node).symbol()));
+		else
+			((Command)node).accept(this);
+	}
+	
+	// The variable a designator ends up in.
+	private static Symbol rootSymbol(Expression node)
+	{
+		while(node instanceof Index)
+			node = ((Index)node).base();
+		return ((AddressOf)node).symbol();
+	}
+	
+	@Override
+	public void visit(ExpressionList node)
+	{
+		throw new IllegalStateException("Expression lists are compiled by their call.");
+	}
+	
+	@Override
+	public void visit(DeclarationList node)
+	{
+		for(Declaration declaration : node)
+			((Command)declaration).accept(this);
+	}
+	
+	@Override
+	public void visit(StatementList node)
+	{
+		for(Statement statement : node)
+			statement(statement);
+	}
+	
+	@Override
+	public void visit(AddressOf node)
+	{
+		address(node);
+	}
+	
+	@Override
+	public void visit(LiteralBool node)
+	{
+		emit(Opcode.INT_CONSTANT, node.value() == LiteralBool.Value.TRUE ? 1 : 0);
+	}
+	
+	@Override
+	public void visit(LiteralFloat node)
+	{
+		emit(Opcode.FLOAT_CONSTANT, Float.floatToRawIntBits(node.value()));
+	}
+	
+	@Override
+	public void visit(LiteralInt node)
+	{
+		emit(Opcode.INT_CONSTANT, node.value());
+	}
+	
+	@Override
+	public void visit(VariableDeclaration node)
+	{
+		declare(node.symbol());
+	}
+	
+	@Override
+	public void visit(ArrayDeclaration node)
+	{
+		declare(node.symbol());
+	}
+	
+	// Globals start at zero. Locals are cleared wherever they are
+	// declared.
+	private void declare(Symbol symbol)
+	{
+		boolean local = localSlots != null;
+		int slot = allocate(symbol);
+		if(local)
+		{
+			boolean floats = Kind.ofElements(symbol.getType()) == Kind.FLOAT;
+			emit(floats ? Opcode.CLEAR_LOCAL_FLOAT : Opcode.CLEAR_LOCAL, slot, Kind.slotCount(symbol.getType()));
+		}
+	}
+	
+	@Override
+	public void visit(FunctionDefinition node)
+	{
+		localSlots = new IdentityHashMap<Symbol, Integer>();
+		function = new Program.Function(node.function().getName());
+		function.entry = length;
+		intDepth = floatDepth = 0;
+		for(Symbol parameter : node.arguments())
+		{
+			allocate(parameter);
+			if(Kind.of(parameter.getType()) == Kind.FLOAT)
+				function.floatParameters++;
+			else
+				function.intParameters++;
+		}
+		// Added before the body is compiled, for recursive calls.
+		functionIndices.put(node.function(), functions.size());
+		functions.add(function);
+		statement(node.body());
+		// Falling off the end returns zero, as the tree does.
+		switch(Kind.of(node.function().getType()))
+		{
+		case INT:
+		case BOOL: emit(Opcode.INT_CONSTANT, 0); emit(Opcode.RETURN_INT); break;
+		case FLOAT: emit(Opcode.FLOAT_CONSTANT, 0); emit(Opcode.RETURN_FLOAT); break;
+		default: emit(Opcode.RETURN);
+		}
+		localSlots = null;
+		function = null;
+	}
+	
+	private void arithmetic(Expression node, Expression left, Expression right, int intOp, int floatOp)
+	{
+		expression(left);
+		expression(right);
+		emit(kindOf(node) == Kind.FLOAT ? floatOp : intOp);
+	}
+	
+	@Override
+	public void visit(Addition node)
+	{
+		arithmetic(node, node.leftSide(), node.rightSide(), Opcode.ADD_INT, Opcode.ADD_FLOAT);
+	}
+	
+	@Override
+	public void visit(Subtraction node)
+	{
+		arithmetic(node, node.leftSide(), node.rightSide(), Opcode.SUBTRACT_INT, Opcode.SUBTRACT_FLOAT);
+	}
+	
+	@Override
+	public void visit(Multiplication node)
+	{
+		arithmetic(node, node.leftSide(), node.rightSide(), Opcode.MULTIPLY_INT, Opcode.MULTIPLY_FLOAT);
+	}
+	
+	@Override
+	public void visit(Division node)
+	{
+		expression(node.leftSide());
+		expression(node.rightSide());
+		if(kindOf(node) == Kind.FLOAT)
+			emit(Opcode.DIVIDE_FLOAT);
+		else
+			emit(Opcode.DIVIDE_INT, site(node));
+	}
+	
+	@Override
+	public void visit(LogicalAnd node)
+	{
+		Label end = new Label();
+		expression(node.leftSide());
+		jump(Opcode.JUMP_IF_FALSE_OR_POP, end);
+		expression(node.rightSide());
+		bind(end);
+	}
+	
+	@Override
+	public void visit(LogicalOr node)
+	{
+		Label end = new Label();
+		expression(node.leftSide());
+		jump(Opcode.JUMP_IF_TRUE_OR_POP, end);
+		expression(node.rightSide());
+		bind(end);
+	}
+	
+	@Override
+	public void visit(LogicalNot node)
+	{
+		expression(node.expression());
+		emit(Opcode.NOT);
+	}
+	
+	@Override
+	public void visit(Comparison node)
+	{
+		expression(node.leftSide());
+		expression(node.rightSide());
+		// The float comparisons are in the same order as the int ones.
+		int op = Opcode.LESS_INT + order(node.operation());
+		if(kindOf(node.leftSide()) == Kind.FLOAT)
+			op += Opcode.LESS_FLOAT - Opcode.LESS_INT;
+		emit(op);
+	}
+	
+	// Where a comparison is in the order LESS_INT to GREATER_INT.
+	private static int order(Comparison.Operation operation)
+	{
+		switch(operation)
+		{
+		case LT: return 0;
+		case LE: return 1;
+		case EQ: return 2;
+		case NE: return 3;
+		case GE: return 4;
+		case GT: return 5;
+		default: throw new IllegalStateException("Unknown comparison " + operation + ".");
+		}
+	}
+	
+	// The comparison that holds exactly when the given one does not, for
+	// ints, though not for floats, which may be NaN.
+	private static Comparison.Operation opposite(Comparison.Operation operation)
+	{
+		switch(operation)
+		{
+		case LT: return Comparison.Operation.GE;
+		case LE: return Comparison.Operation.GT;
+		case EQ: return Comparison.Operation.NE;
+		case NE: return Comparison.Operation.EQ;
+		case GE: return Comparison.Operation.LT;
+		case GT: return Comparison.Operation.LE;
+		default: throw new IllegalStateException("Unknown comparison " + operation + ".");
+		}
+	}
+	
+	@Override
+	public void visit(Dereference node)
+	{
+		boolean floats = kindOf(node) == Kind.FLOAT;
+		Symbol root = rootSymbol(node.expression());
+		boolean global = isGlobal(root);
+		// Variables are read from their slot by a single instruction.
+		if(node.expression() instanceof AddressOf)
+		{
+			int op = global
+				? (floats ? Opcode.LOAD_GLOBAL_FLOAT : Opcode.LOAD_GLOBAL)
+				: (floats ? Opcode.LOAD_LOCAL_FLOAT : Opcode.LOAD_LOCAL);
+			emit(op, slotOf(root));
+			return;
+		}
+		// So are the elements of global arrays of one dimension, which
+		// are what arrays mostly are.
+		if(global && ((Index)node.expression()).base() instanceof AddressOf)
+		{
+			Index index = (Index)node.expression();
+			ArrayType type = (ArrayType)root.getType();
+			expression(index.amount());
+			emit(floats ? Opcode.LOAD_ELEMENT_FLOAT : Opcode.LOAD_ELEMENT);
+			operand(slotOf(root));
+			operand(type.arrayLength());
+			operand(site(index));
+			return;
+		}
+		address(node.expression());
+		emit(global
+			? (floats ? Opcode.LOAD_AT_GLOBAL_FLOAT : Opcode.LOAD_AT_GLOBAL)
+			: (floats ? Opcode.LOAD_AT_LOCAL_FLOAT : Opcode.LOAD_AT_LOCAL));
+	}
+	
+	@Override
+	public void visit(Index node)
+	{
+		ArrayType type = (ArrayType)((AddressType)checker.getType((Command)node.base())).base();
+		if(node.base() instanceof AddressOf)
+		{
+			// The slot of a variable is part of the instruction.
+			expression(node.amount());
+			emit(Opcode.ELEMENT);
+			operand(slotOf(((AddressOf)node.base()).symbol()));
+		}
+		else
+		{
+			address(node.base());
+			expression(node.amount());
+			emit(Opcode.INDEX);
+		}
+		operand(type.arrayLength());
+		operand(Kind.slotCount(type.elementType()));
+		operand(site(node));
+	}
+	
+	@Override
+	public void visit(Assignment node)
+	{
+		// A variable is assigned through its address, but an element
+		// through a dereference of its address.
+		Expression destination = node.destination();
+		boolean floats;
+		if(destination instanceof Dereference)
+		{
+			floats = kindOf(destination) == Kind.FLOAT;
+			destination = ((Dereference)destination).expression();
+		}
+		else
+			floats = kindAt(destination) == Kind.FLOAT;
+		Symbol root = rootSymbol(destination);
+		boolean global = isGlobal(root);
+		if(destination instanceof AddressOf)
+		{
+			expression(node.source());
+			int op = global
+				? (floats ? Opcode.STORE_GLOBAL_FLOAT : Opcode.STORE_GLOBAL)
+				: (floats ? Opcode.STORE_LOCAL_FLOAT : Opcode.STORE_LOCAL);
+			emit(op, slotOf(root));
+			return;
+		}
+		// The element is found before the value is evaluated.
+		address(destination);
+		expression(node.source());
+		emit(global
+			? (floats ? Opcode.STORE_AT_GLOBAL_FLOAT : Opcode.STORE_AT_GLOBAL)
+			: (floats ? Opcode.STORE_AT_LOCAL_FLOAT : Opcode.STORE_AT_LOCAL));
+	}
+	
+	@Override
+	public void visit(ast.Call node)
+	{
+		for(Expression argument : node.arguments())
+			expression(argument);
+		Integer index = functionIndices.get(node.function());
+		if(index != null)
+		{
+			Program.Function callee = functions.get(index);
+			emit(Opcode.CALL, index, site(node));
+			adjust(-callee.intParameters, -callee.floatParameters);
+			switch(kindOf(node))
+			{
+			case INT:
+			case BOOL: adjust(1, 0); break;
+			case FLOAT: adjust(0, 1); break;
+			default:
+			}
+			return;
+		}
+		switch(BuiltinCall.named(node.function().getName()))
+		{
+		case BuiltinCall.READ_INT: emit(Opcode.READ_INT, site(node)); break;
+		case BuiltinCall.READ_FLOAT: emit(Opcode.READ_FLOAT, site(node)); break;
+		case BuiltinCall.PRINT_BOOL: emit(Opcode.PRINT_BOOL); break;
+		case BuiltinCall.PRINT_INT: emit(Opcode.PRINT_INT); break;
+		case BuiltinCall.PRINT_FLOAT: emit(Opcode.PRINT_FLOAT); break;
+		case BuiltinCall.PRINTLN: emit(Opcode.PRINTLN); break;
+		default: throw new IllegalStateException("Unknown function " + node.function().getName() + ".");
+		}
+	}
+	
+	@Override
+	public void visit(IfElseBranch node)
+	{
+		Label elseBlock = new Label(), end = new Label();
+		branch(node.condition(), false, elseBlock);
+		statement(node.thenBlock());
+		if(!node.elseBlock().iterator().hasNext())
+		{
+			bind(elseBlock);
+			return;
+		}
+		jump(Opcode.JUMP, end);
+		bind(elseBlock);
+		statement(node.elseBlock());
+		bind(end);
+	}
+	
+	@Override
+	public void visit(WhileLoop node)
+	{
+		// The condition is placed after the body, so that each pass
+		// through the loop takes a single jump.
+		Label body = new Label(), condition = new Label();
+		jump(Opcode.JUMP, condition);
+		bind(body);
+		statement(node.body());
+		bind(condition);
+		branch(node.condition(), true, body);
+	}
+	
+	@Override
+	public void visit(Return node)
+	{
+		Expression argument = node.argument();
+		expression(argument);
+		switch(kindOf(argument))
+		{
+		case INT:
+		case BOOL: emit(Opcode.RETURN_INT); break;
+		case FLOAT: emit(Opcode.RETURN_FLOAT); break;
+		default: emit(Opcode.RETURN);
+		}
+	}
+	
+	@Override
+	public void visit(ast.Error node)
+	{
+		throw new IllegalStateException("Cannot run a program with errors.");
+	}
+}
@@ -0,0 +1,504 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Emits the code of one method of a class file. The types on the operand
+// stack are tracked as the code is emitted, so that the stack map frames
+// the verifier needs can be written at every place that is jumped to.
+// Types are named the way frames name them: "I" for ints and bools, "F"
+// for floats, and otherwise the internal name of a class or the descriptor
+// of an array. Code that cannot be reached, such as statements after a
+// return, is left out, since it could not be given frames.
+final class CodeWriter
+{
+	static final int IXOR = 0x82,
+		IADD = 0x60,
+		FADD = 0x62,
+		ISUB = 0x64,
+		FSUB = 0x66,
+		IMUL = 0x68,
+		FMUL = 0x6A,
+		FDIV = 0x6E,
+		FCMPL = 0x95,
+		FCMPG = 0x96,
+		IFEQ = 0x99,
+		IFNE = 0x9A,
+		IFLT = 0x9B,
+		IFGE = 0x9C,
+		IFGT = 0x9D,
+		IFLE = 0x9E,
+		IF_ICMPEQ = 0x9F,
+		IF_ICMPNE = 0xA0,
+		IF_ICMPLT = 0xA1,
+		IF_ICMPGE = 0xA2,
+		IF_ICMPGT = 0xA3,
+		IF_ICMPLE = 0xA4,
+		GOTO = 0xA7,
+		IRETURN = 0xAC,
+		FRETURN = 0xAE,
+		RETURN = 0xB1,
+		ATHROW = 0xBF,
+		POP = 0x57,
+		DUP = 0x59,
+		SWAP = 0x5F;
+	
+	private static final int ICONST_0 = 0x03,
+		FCONST_0 = 0x0B,
+		BIPUSH = 0x10,
+		SIPUSH = 0x11,
+		LDC = 0x12,
+		LDC_W = 0x13,
+		ILOAD = 0x15,
+		FLOAD = 0x17,
+		ALOAD = 0x19,
+		IALOAD = 0x2E,
+		FALOAD = 0x30,
+		BALOAD = 0x33,
+		ISTORE = 0x36,
+		FSTORE = 0x38,
+		ASTORE = 0x3A,
+		IASTORE = 0x4F,
+		FASTORE = 0x51,
+		BASTORE = 0x54,
+		GETSTATIC = 0xB2,
+		PUTSTATIC = 0xB3,
+		INVOKEVIRTUAL = 0xB6,
+		INVOKESTATIC = 0xB8,
+		NEWARRAY = 0xBC,
+		WIDE = 0xC4,
+		GOTO_W = 0xC8;
+	
+	private static final int T_BOOLEAN = 4, T_FLOAT = 6, T_INT = 10;
+	private static final int ITEM_INTEGER = 1, ITEM_FLOAT = 2, ITEM_OBJECT = 7;
+	
+	// A place in the code that jumps can go to before it is known. The
+	// stack it expects is known from the first jump or from the code that
+	// runs into it.
+	static final class Label
+	{
+		int offset = -1;
+		String[] stack;
+		int[] jumps = new int[2];
+		int jumpCount;
+	}
+	
+	// A range of code whose exceptions of a type go to a handler.
+	private static final class Catch
+	{
+		final int start, end;
+		final Label handler;
+		final String type;
+		
+		Catch(int start, int end, Label handler, String type)
+		{
+			this.start = start;
+			this.end = end;
+			this.handler = handler;
+			this.type = type;
+		}
+	}
+	
+	private final ClassFileWriter classFile;
+	private final ByteVector code = new ByteVector();
+	private final ArrayList<String> locals = new ArrayList<String>();
+	private final int parameterCount;
+	// Whether jumps take the forms that reach any offset, and whether one
+	// in the short form had to go further than it can.
+	private final boolean wideJumps;
+	private boolean jumpsTooLong;
+	private String[] stack = new String[16];
+	private int stackSize, maxStack;
+	private boolean reachable = true;
+	private final ArrayList<Integer> frameOffsets = new ArrayList<Integer>();
+	private final ArrayList<String[]> frameStacks = new ArrayList<String[]>();
+	private final ArrayList<Catch> catches = new ArrayList<Catch>();
+	
+	// The parameters take the first locals, in order.
+	CodeWriter(ClassFileWriter classFile, String... parameterTypes)
+	{
+		this(classFile, false, parameterTypes);
+	}
+	
+	// With wideJumps, a goto is a goto_w, and a conditional jump is the
+	// opposite condition skipping over a goto_w, so that jumps reach
+	// anywhere in a method however long it is.
+	CodeWriter(ClassFileWriter classFile, boolean wideJumps, String... parameterTypes)
+	{
+		this.classFile = classFile;
+		this.wideJumps = wideJumps;
+		locals.addAll(Arrays.asList(parameterTypes));
+		parameterCount = parameterTypes.length;
+	}
+	
+	// Whether a jump went further than the short forms reach, in which
+	// case the code is wrong and has to be emitted again with wide jumps.
+	boolean jumpsTooLong()
+	{
+		return jumpsTooLong;
+	}
+	
+	// Whether the code emitted next would run. It is left out if not.
+	boolean reachable()
+	{
+		return reachable;
+	}
+	
+	// The offset of the code emitted next.
+	int offset()
+	{
+		return code.length();
+	}
+	
+	// Adds a local, which is zero from the start of the method, so that it
+	// has a value in every frame.
+	int newLocal(String type)
+	{
+		locals.add(type);
+		return locals.size() - 1;
+	}
+	
+	private void effect(int pop, String push)
+	{
+		stackSize -= pop;
+		if(push == null)
+			return;
+		if(stackSize == stack.length)
+			stack = Arrays.copyOf(stack, stackSize * 2);
+		stack[stackSize++] = push;
+		maxStack = Math.max(maxStack, stackSize);
+	}
+	
+	// The stack type of a value of a field descriptor, or null for void.
+	private static String typeOf(String descriptor)
+	{
+		switch(descriptor.charAt(0))
+		{
+		case 'V': return null;
+		case 'F': return "F";
+		case 'L': return descriptor.substring(1, descriptor.length() - 1);
+		case '[': return descriptor;
+		default: return "I";
+		}
+	}
+	
+	void pushInt(int value)
+	{
+		if(!reachable)
+			return;
+		if(value >= -1 && value <= 5)
+			code.u1(ICONST_0 + value);
+		else if(value == (byte)value)
+			code.u1(BIPUSH).u1(value);
+		else if(value == (short)value)
+			code.u1(SIPUSH).u2(value);
+		else
+			constant(classFile.integer(value));
+		effect(0, "I");
+	}
+	
+	void pushFloat(float value)
+	{
+		if(!reachable)
+			return;
+		// Not -0.0, which only equals 0.0.
+		int bits = Float.floatToRawIntBits(value);
+		if(bits == 0 || value == 1 || value == 2)
+			code.u1(FCONST_0 + (int)value);
+		else
+			constant(classFile.floatConstant(value));
+		effect(0, "F");
+	}
+	
+	private void constant(int index)
+	{
+		if(index < 256)
+			code.u1(LDC).u1(index);
+		else
+			code.u1(LDC_W).u2(index);
+	}
+	
+	void load(int local)
+	{
+		if(!reachable)
+			return;
+		String type = locals.get(local);
+		localInstruction(type.equals("I") ? ILOAD : type.equals("F") ? FLOAD : ALOAD, local);
+		effect(0, type);
+	}
+	
+	void store(int local)
+	{
+		if(!reachable)
+			return;
+		String type = locals.get(local);
+		localInstruction(type.equals("I") ? ISTORE : type.equals("F") ? FSTORE : ASTORE, local);
+		effect(1, null);
+	}
+	
+	private void localInstruction(int opcode, int local)
+	{
+		if(local < 256)
+			code.u1(opcode).u1(local);
+		else
+			code.u1(WIDE).u1(opcode).u2(local);
+	}
+	
+	void getStatic(String owner, String name, String descriptor)
+	{
+		if(!reachable)
+			return;
+		code.u1(GETSTATIC).u2(classFile.fieldRef(owner, name, descriptor));
+		effect(0, typeOf(descriptor));
+	}
+	
+	void putStatic(String owner, String name, String descriptor)
+	{
+		if(!reachable)
+			return;
+		code.u1(PUTSTATIC).u2(classFile.fieldRef(owner, name, descriptor));
+		effect(1, null);
+	}
+	
+	void invokeStatic(String owner, String name, String descriptor)
+	{
+		invoke(INVOKESTATIC, owner, name, descriptor, 0);
+	}
+	
+	void invokeVirtual(String owner, String name, String descriptor)
+	{
+		invoke(INVOKEVIRTUAL, owner, name, descriptor, 1);
+	}
+	
+	private void invoke(int opcode, String owner, String name, String descriptor, int receivers)
+	{
+		if(!reachable)
+			return;
+		code.u1(opcode).u2(classFile.methodRef(owner, name, descriptor));
+		// Counts the arguments, none of which are longs or doubles.
+		int arguments = 0, i = 1;
+		while(descriptor.charAt(i) != ')')
+		{
+			while(descriptor.charAt(i) == '[')
+				i++;
+			i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+			arguments++;
+		}
+		effect(arguments + receivers, typeOf(descriptor.substring(i + 1)));
+	}
+	
+	// Pushes a new array of zeros, of type [I, [F or [Z.
+	void newArray(String descriptor, int length)
+	{
+		if(!reachable)
+			return;
+		pushInt(length);
+		int type = descriptor.equals("[F") ? T_FLOAT : descriptor.equals("[Z") ? T_BOOLEAN : T_INT;
+		code.u1(NEWARRAY).u1(type);
+		effect(1, descriptor);
+	}
+	
+	// Loads an element of the array under the index on the stack.
+	void arrayLoad()
+	{
+		if(!reachable)
+			return;
+		String array = stack[stackSize - 2];
+		code.u1(array.equals("[F") ? FALOAD : array.equals("[Z") ? BALOAD : IALOAD);
+		effect(2, array.equals("[F") ? "F" : "I");
+	}
+	
+	// Stores the value on the stack to an element of the array under its
+	// index.
+	void arrayStore()
+	{
+		if(!reachable)
+			return;
+		String array = stack[stackSize - 3];
+		code.u1(array.equals("[F") ? FASTORE : array.equals("[Z") ? BASTORE : IASTORE);
+		effect(3, null);
+	}
+	
+	// Emits an instruction that has no operands.
+	void instruction(int opcode)
+	{
+		if(!reachable)
+			return;
+		code.u1(opcode);
+		switch(opcode)
+		{
+		case POP: effect(1, null); break;
+		case DUP: effect(0, stack[stackSize - 1]); break;
+		case SWAP:
+		{
+			String top = stack[stackSize - 1];
+			stack[stackSize - 1] = stack[stackSize - 2];
+			stack[stackSize - 2] = top;
+			break;
+		}
+		case FCMPL:
+		case FCMPG: effect(2, "I"); break;
+		case IRETURN:
+		case FRETURN:
+		case ATHROW: effect(1, null); reachable = false; break;
+		case RETURN: reachable = false; break;
+		// The rest are arithmetic on two values of the same type.
+		default: effect(1, null);
+		}
+	}
+	
+	void jump(int opcode, Label label)
+	{
+		if(!reachable)
+			return;
+		int at = code.length();
+		if(!wideJumps)
+			code.u1(opcode).u2(0);
+		else
+		{
+			if(opcode != GOTO)
+			{
+				// Opposite conditions come in pairs, counting from IFEQ
+				// and from IF_ICMPEQ. The opposite one skips the goto_w.
+				int first = opcode >= IF_ICMPEQ ? IF_ICMPEQ : IFEQ;
+				code.u1(first + ((opcode - first) ^ 1)).u2(8);
+				at = code.length();
+			}
+			code.u1(GOTO_W).u4(0);
+		}
+		if(opcode >= IF_ICMPEQ && opcode <= IF_ICMPLE)
+			effect(2, null);
+		else if(opcode != GOTO)
+			effect(1, null);
+		if(label.stack == null)
+			label.stack = Arrays.copyOf(stack, stackSize);
+		if(wideJumps && opcode != GOTO)
+		{
+			// Where the opposite condition jumps to.
+			frameOffsets.add(code.length());
+			frameStacks.add(Arrays.copyOf(stack, stackSize));
+		}
+		if(label.offset >= 0)
+			patch(at, label.offset - at);
+		else
+		{
+			if(label.jumpCount == label.jumps.length)
+				label.jumps = Arrays.copyOf(label.jumps, label.jumpCount * 2);
+			label.jumps[label.jumpCount++] = at;
+		}
+		if(opcode == GOTO)
+			reachable = false;
+	}
+	
+	// Sets the offset of the jump at the position.
+	private void patch(int at, int offset)
+	{
+		if(wideJumps)
+			code.putU4(at + 1, offset);
+		else if(offset != (short)offset)
+			jumpsTooLong = true;
+		else
+			code.putU2(at + 1, offset);
+	}
+	
+	void bind(Label label)
+	{
+		if(reachable)
+		{
+			if(label.stack == null)
+				label.stack = Arrays.copyOf(stack, stackSize);
+		}
+		else if(label.stack != null)
+		{
+			// Only reached by jumps, which say what is on the stack.
+			stack = Arrays.copyOf(label.stack, Math.max(label.stack.length, 16));
+			stackSize = label.stack.length;
+			reachable = true;
+		}
+		label.offset = code.length();
+		for(int i = 0; i < label.jumpCount; i++)
+			patch(label.jumps[i], label.offset - label.jumps[i]);
+		if(reachable && (frameOffsets.isEmpty() || frameOffsets.get(frameOffsets.size() - 1) != label.offset))
+		{
+			frameOffsets.add(label.offset);
+			frameStacks.add(label.stack);
+		}
+	}
+	
+	// Sends the exceptions of the type that the code from start to end
+	// throws to the handler, which is bound with bindHandler.
+	void catchIn(int start, int end, Label handler, String type)
+	{
+		catches.add(new Catch(start, end, handler, type));
+	}
+	
+	// Binds a handler, which is only reached with the exception it caught
+	// on the stack. Code never runs into it.
+	void bindHandler(Label handler, String type)
+	{
+		handler.stack = new String[] { type };
+		reachable = false;
+		bind(handler);
+	}
+	
+	// Writes the Code attribute of the method. Its locals are set to zero
+	// before the code runs.
+	void writeAttribute(ByteVector out)
+	{
+		ByteVector prologue = new ByteVector();
+		for(int i = parameterCount; i < locals.size(); i++)
+		{
+			boolean floats = locals.get(i).equals("F");
+			prologue.u1(floats ? FCONST_0 : ICONST_0);
+			if(i < 256)
+				prologue.u1(floats ? FSTORE : ISTORE).u1(i);
+			else
+				prologue.u1(WIDE).u1(floats ? FSTORE : ISTORE).u2(i);
+		}
+		int length = prologue.length() + code.length();
+		if(length > 65535)
+			throw new IllegalArgumentException("A function is too large to compile to the JVM.");
+		ByteVector frames = new ByteVector();
+		int previous = -1;
+		for(int i = 0; i < frameOffsets.size(); i++)
+		{
+			int offset = prologue.length() + frameOffsets.get(i);
+			frames.u1(255).u2(offset - previous - 1);
+			previous = offset;
+			frames.u2(locals.size());
+			for(String type : locals)
+				verificationType(frames, type);
+			String[] frameStack = frameStacks.get(i);
+			frames.u2(frameStack.length);
+			for(String type : frameStack)
+				verificationType(frames, type);
+		}
+		ByteVector attribute = new ByteVector();
+		attribute.u2(Math.max(maxStack, prologue.length() > 0 ? 1 : 0)).u2(locals.size());
+		attribute.u4(length).bytes(prologue).bytes(code);
+		attribute.u2(catches.size());
+		for(Catch c : catches)
+		{
+			attribute.u2(prologue.length() + c.start).u2(prologue.length() + c.end);
+			attribute.u2(prologue.length() + c.handler.offset).u2(classFile.classRef(c.type));
+		}
+		if(frameOffsets.isEmpty())
+			attribute.u2(0);
+		else
+		{
+			attribute.u2(1).u2(classFile.utf8("StackMapTable")).u4(frames.length() + 2);
+			attribute.u2(frameOffsets.size()).bytes(frames);
+		}
+		out.u2(classFile.utf8("Code")).u4(attribute.length()).bytes(attribute);
+	}
+	
+	private void verificationType(ByteVector out, String type)
+	{
+		if(type.equals("I"))
+			out.u1(ITEM_INTEGER);
+		else if(type.equals("F"))
+			out.u1(ITEM_FLOAT);
+		else
+			out.u1(ITEM_OBJECT).u2(classFile.classRef(type));
+	}
+}
@@ -0,0 +1,76 @@
+package interpreter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+
+// The input and output of the predefined functions. Input is read as
+// whitespace-separated words, one for each call of readInt or readFloat.
+// Output is flushed before every read, so that prompts appear in time.
+final class Console
+{
+	private Reader in;
+	private PrintStream out;
+	private final StringBuilder word = new StringBuilder();
+	
+	void open(Reader in, PrintStream out)
+	{
+		this.in = in;
+		this.out = out;
+	}
+	
+	PrintStream out()
+	{
+		return out;
+	}
+	
+	int readInt(int lineNumber, int charPosition)
+	{
+		String text = readWord(lineNumber, charPosition);
+		try
+		{
+			return Integer.parseInt(text);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new CruxRuntimeException(lineNumber, charPosition, "Expected an int but read \"" + text + "\".");
+		}
+	}
+	
+	float readFloat(int lineNumber, int charPosition)
+	{
+		String text = readWord(lineNumber, charPosition);
+		try
+		{
+			return Float.parseFloat(text);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new CruxRuntimeException(lineNumber, charPosition, "Expected a float but read \"" + text + "\".");
+		}
+	}
+	
+	private String readWord(int lineNumber, int charPosition)
+	{
+		out.flush();
+		word.setLength(0);
+		try
+		{
+			int c = in.read();
+			while(c != -1 && Character.isWhitespace(c))
+				c = in.read();
+			while(c != -1 && !Character.isWhitespace(c))
+			{
+				word.append((char)c);
+				c = in.read();
+			}
+		}
+		catch(IOException e)
+		{
+			throw new CruxRuntimeException(lineNumber, charPosition, "Could not read input: " + e.getMessage());
+		}
+		if(word.length() == 0)
+			throw new CruxRuntimeException(lineNumber, charPosition, "Reached the end of the input.");
+		return word.toString();
+	}
+}
@@ -0,0 +1,27 @@
+package interpreter;
+
+// Stops a running program that has done something the type checker cannot
+// rule out, such as indexing past the end of an array, at the position of
+// the command that did it. The message is only formatted when it is asked
+// for, and no stack trace is taken, so that one can still be thrown where
+// the Java stack has run out.
+public class CruxRuntimeException extends RuntimeException
+{
+	public final int LineNumber;
+	public final int CharPosition;
+	private final String error;
+	
+	public CruxRuntimeException(int lineNumber, int charPosition, String message)
+	{
+		super(null, null, false, false);
+		LineNumber = lineNumber;
+		CharPosition = charPosition;
+		error = message;
+	}
+	
+	@Override
+	public String getMessage()
+	{
+		return String.format("RuntimeError(%d,%d)[%s]", LineNumber, CharPosition, error);
+	}
+}
@@ -0,0 +1,387 @@
+package interpreter;
+
+import ast.Comparison;
+
+// An expression with its symbols resolved and its operators specialized
+// to the kinds of their operands, evaluated by the method for its kind.
+// Each returns its value unboxed; evalVoid evaluates a call for its
+// effects alone.
+abstract class ExpressionNode
+{
+	int evalInt(Frame frame)
+	{
+		throw new IllegalStateException(getClass().getSimpleName() + " has no int value.");
+	}
+	
+	float evalFloat(Frame frame)
+	{
+		throw new IllegalStateException(getClass().getSimpleName() + " has no float value.");
+	}
+	
+	boolean evalBool(Frame frame)
+	{
+		throw new IllegalStateException(getClass().getSimpleName() + " has no bool value.");
+	}
+	
+	void evalVoid(Frame frame)
+	{
+		throw new IllegalStateException(getClass().getSimpleName() + " is not a call.");
+	}
+	
+	// Constants, including whole expressions that the type checker
+	// found to be made only of literals.
+	
+	static final class IntConstant extends ExpressionNode
+	{
+		private final int value;
+		
+		IntConstant(int value) { this.value = value; }
+		
+		@Override
+		int evalInt(Frame frame) { return value; }
+	}
+	
+	static final class FloatConstant extends ExpressionNode
+	{
+		private final float value;
+		
+		FloatConstant(float value) { this.value = value; }
+		
+		@Override
+		float evalFloat(Frame frame) { return value; }
+	}
+	
+	static final class BoolConstant extends ExpressionNode
+	{
+		private final boolean value;
+		
+		BoolConstant(boolean value) { this.value = value; }
+		
+		@Override
+		boolean evalBool(Frame frame) { return value; }
+	}
+	
+	// Reads of variables, which are most reads, go straight to their slot.
+	
+	static final class LocalInt extends ExpressionNode
+	{
+		private final int slot;
+		
+		LocalInt(int slot) { this.slot = slot; }
+		
+		@Override
+		int evalInt(Frame frame) { return frame.ints[slot]; }
+	}
+	
+	static final class LocalFloat extends ExpressionNode
+	{
+		private final int slot;
+		
+		LocalFloat(int slot) { this.slot = slot; }
+		
+		@Override
+		float evalFloat(Frame frame) { return frame.floats[slot]; }
+	}
+	
+	static final class LocalBool extends ExpressionNode
+	{
+		private final int slot;
+		
+		LocalBool(int slot) { this.slot = slot; }
+		
+		@Override
+		boolean evalBool(Frame frame) { return frame.ints[slot] != 0; }
+	}
+	
+	static final class GlobalInt extends ExpressionNode
+	{
+		private final Frame globals;
+		private final int slot;
+		
+		GlobalInt(Frame globals, int slot) { this.globals = globals; this.slot = slot; }
+		
+		@Override
+		int evalInt(Frame frame) { return globals.ints[slot]; }
+	}
+	
+	static final class GlobalFloat extends ExpressionNode
+	{
+		private final Frame globals;
+		private final int slot;
+		
+		GlobalFloat(Frame globals, int slot) { this.globals = globals; this.slot = slot; }
+		
+		@Override
+		float evalFloat(Frame frame) { return globals.floats[slot]; }
+	}
+	
+	static final class GlobalBool extends ExpressionNode
+	{
+		private final Frame globals;
+		private final int slot;
+		
+		GlobalBool(Frame globals, int slot) { this.globals = globals; this.slot = slot; }
+		
+		@Override
+		boolean evalBool(Frame frame) { return globals.ints[slot] != 0; }
+	}
+	
+	// Reads of array elements.
+	
+	static final class LoadInt extends ExpressionNode
+	{
+		private final Place place;
+		
+		LoadInt(Place place) { this.place = place; }
+		
+		@Override
+		int evalInt(Frame frame) { return place.frame(frame).ints[place.slot(frame)]; }
+	}
+	
+	static final class LoadFloat extends ExpressionNode
+	{
+		private final Place place;
+		
+		LoadFloat(Place place) { this.place = place; }
+		
+		@Override
+		float evalFloat(Frame frame) { return place.frame(frame).floats[place.slot(frame)]; }
+	}
+	
+	static final class LoadBool extends ExpressionNode
+	{
+		private final Place place;
+		
+		LoadBool(Place place) { this.place = place; }
+		
+		@Override
+		boolean evalBool(Frame frame) { return place.frame(frame).ints[place.slot(frame)] != 0; }
+	}
+	
+	// Operators. Both operands are evaluated, left first, since either
+	// may be a call, except where and and or are decided by the left.
+	
+	static abstract class Binary extends ExpressionNode
+	{
+		protected final ExpressionNode left, right;
+		
+		Binary(ExpressionNode left, ExpressionNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+	}
+	
+	static final class AddInt extends Binary
+	{
+		AddInt(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		int evalInt(Frame frame) { return left.evalInt(frame) + right.evalInt(frame); }
+	}
+	
+	static final class SubtractInt extends Binary
+	{
+		SubtractInt(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		int evalInt(Frame frame) { return left.evalInt(frame) - right.evalInt(frame); }
+	}
+	
+	static final class MultiplyInt extends Binary
+	{
+		MultiplyInt(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		int evalInt(Frame frame) { return left.evalInt(frame) * right.evalInt(frame); }
+	}
+	
+	static final class DivideInt extends Binary
+	{
+		private final int lineNumber, charPosition;
+		
+		DivideInt(ExpressionNode left, ExpressionNode right, int lineNumber, int charPosition)
+		{
+			super(left, right);
+			this.lineNumber = lineNumber;
+			this.charPosition = charPosition;
+		}
+		
+		@Override
+		int evalInt(Frame frame)
+		{
+			int dividend = left.evalInt(frame), divisor = right.evalInt(frame);
+			if(divisor == 0)
+				throw new CruxRuntimeException(lineNumber, charPosition, "Division by zero.");
+			return dividend / divisor;
+		}
+	}
+	
+	static final class AddFloat extends Binary
+	{
+		AddFloat(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		float evalFloat(Frame frame) { return left.evalFloat(frame) + right.evalFloat(frame); }
+	}
+	
+	static final class SubtractFloat extends Binary
+	{
+		SubtractFloat(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		float evalFloat(Frame frame) { return left.evalFloat(frame) - right.evalFloat(frame); }
+	}
+	
+	static final class MultiplyFloat extends Binary
+	{
+		MultiplyFloat(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		float evalFloat(Frame frame) { return left.evalFloat(frame) * right.evalFloat(frame); }
+	}
+	
+	static final class DivideFloat extends Binary
+	{
+		DivideFloat(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		float evalFloat(Frame frame) { return left.evalFloat(frame) / right.evalFloat(frame); }
+	}
+	
+	static final class And extends Binary
+	{
+		And(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		boolean evalBool(Frame frame) { return left.evalBool(frame) && right.evalBool(frame); }
+	}
+	
+	static final class Or extends Binary
+	{
+		Or(ExpressionNode left, ExpressionNode right) { super(left, right); }
+		
+		@Override
+		boolean evalBool(Frame frame) { return left.evalBool(frame) || right.evalBool(frame); }
+	}
+	
+	static final class Not extends ExpressionNode
+	{
+		private final ExpressionNode operand;
+		
+		Not(ExpressionNode operand) { this.operand = operand; }
+		
+		@Override
+		boolean evalBool(Frame frame) { return !operand.evalBool(frame); }
+	}
+	
+	static final class CompareInt extends Binary
+	{
+		private final Comparison.Operation operation;
+		
+		CompareInt(ExpressionNode left, Comparison.Operation operation, ExpressionNode right)
+		{
+			super(left, right);
+			this.operation = operation;
+		}
+		
+		@Override
+		boolean evalBool(Frame frame)
+		{
+			int a = left.evalInt(frame), b = right.evalInt(frame);
+			switch(operation)
+			{
+			case LT: return a < b;
+			case LE: return a <= b;
+			case EQ: return a == b;
+			case NE: return a != b;
+			case GE: return a >= b;
+			case GT: return a > b;
+			default: throw new IllegalStateException("Unknown comparison " + operation + ".");
+			}
+		}
+	}
+	
+	static final class CompareFloat extends Binary
+	{
+		private final Comparison.Operation operation;
+		
+		CompareFloat(ExpressionNode left, Comparison.Operation operation, ExpressionNode right)
+		{
+			super(left, right);
+			this.operation = operation;
+		}
+		
+		@Override
+		boolean evalBool(Frame frame)
+		{
+			float a = left.evalFloat(frame), b = right.evalFloat(frame);
+			switch(operation)
+			{
+			case LT: return a < b;
+			case LE: return a <= b;
+			case EQ: return a == b;
+			case NE: return a != b;
+			case GE: return a >= b;
+			case GT: return a > b;
+			default: throw new IllegalStateException("Unknown comparison " + operation + ".");
+			}
+		}
+	}
+	
+	// A call of one of the program's functions. The arguments are
+	// evaluated in the caller's frame straight into the slots of the new
+	// one. Running out of Java stack in the callee is reported at the
+	// call, as the bytecode interpreter reports running out of its own.
+	static final class Call extends ExpressionNode
+	{
+		private final Function function;
+		private final ExpressionNode[] arguments;
+		private final int lineNumber, charPosition;
+		
+		Call(Function function, ExpressionNode[] arguments, int lineNumber, int charPosition)
+		{
+			this.function = function;
+			this.arguments = arguments;
+			this.lineNumber = lineNumber;
+			this.charPosition = charPosition;
+		}
+		
+		private Frame invoke(Frame caller)
+		{
+			Frame callee = new Frame(function.intSlots, function.floatSlots);
+			for(int i = 0; i < arguments.length; i++)
+			{
+				int slot = function.parameterSlots[i];
+				switch(function.parameterKinds[i])
+				{
+				case INT: callee.ints[slot] = arguments[i].evalInt(caller); break;
+				case BOOL: callee.ints[slot] = arguments[i].evalBool(caller) ? 1 : 0; break;
+				case FLOAT: callee.floats[slot] = arguments[i].evalFloat(caller); break;
+				default: throw new IllegalStateException("Void argument.");
+				}
+			}
+			try
+			{
+				function.body.execute(callee);
+			}
+			catch(StackOverflowError e)
+			{
+				throw new CruxRuntimeException(lineNumber, charPosition, "The call stack overflowed.");
+			}
+			return callee;
+		}
+		
+		@Override
+		int evalInt(Frame frame) { return invoke(frame).returnInt; }
+		
+		@Override
+		float evalFloat(Frame frame) { return invoke(frame).returnFloat; }
+		
+		@Override
+		boolean evalBool(Frame frame) { return invoke(frame).returnInt != 0; }
+		
+		@Override
+		void evalVoid(Frame frame) { invoke(frame); }
+	}
+}
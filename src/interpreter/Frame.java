@@ -0,0 +1,21 @@
+package interpreter;
+
+// The variables of one call of a function, or the program's globals, in
+// slots that the interpreter resolved every symbol to before running.
+// Ints and bools share the int slots, bools as 0 or 1, and floats have
+// slots of their own, so that no value is ever boxed. Arrays take one slot
+// per element, laid out row by row.
+final class Frame
+{
+	final int[] ints;
+	final float[] floats;
+	// Where a function's return statement leaves its value.
+	int returnInt;
+	float returnFloat;
+	
+	Frame(int intSlots, int floatSlots)
+	{
+		ints = new int[intSlots];
+		floats = new float[floatSlots];
+	}
+}
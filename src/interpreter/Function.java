@@ -0,0 +1,21 @@
+package interpreter;
+
+// A function of the program, with its symbols resolved to slots: the
+// number of slots its frames need, and which ones its arguments go in.
+// The body is filled in after the Function is made, so that calls in the
+// body, which may be to the function itself, can refer to it.
+final class Function
+{
+	final String name;
+	final Kind[] parameterKinds;
+	final int[] parameterSlots;
+	int intSlots, floatSlots;
+	StatementNode body;
+	
+	Function(String name, Kind[] parameterKinds, int[] parameterSlots)
+	{
+		this.name = name;
+		this.parameterKinds = parameterKinds;
+		this.parameterSlots = parameterSlots;
+	}
+}
@@ -0,0 +1,57 @@
+package interpreter;
+
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Arrays;
+
+import ast.Command;
+import ast.DeclarationList;
+import types.TypeChecker;
+
+// Runs Crux programs by walking a tree of nodes made from the program's
+// abstract syntax tree, with every symbol already resolved to a slot, so
+// that running never looks a name up, and every value kept unboxed in the
+// int and float slots of its frame. Programs start at main, with globals
+// and locals all starting at zero. The right operand of and and or is
+// only evaluated when the left one does not decide the result.
+public class Interpreter
+{
+	private final Console console;
+	private final Frame globals;
+	private final Function main;
+	
+	// The program must be the same tree that the checker checked, without
+	// finding any errors, since the checker's types decide what each
+	// operator does.
+	public Interpreter(Command program, TypeChecker checker)
+	{
+		if(checker.hasError())
+			throw new IllegalArgumentException("Cannot run a program with type errors.");
+		if(!(program instanceof DeclarationList))
+			throw new IllegalArgumentException("Cannot run a program with syntax errors.");
+		console = new Console();
+		Resolver resolver = new Resolver(checker, console, (DeclarationList)program);
+		program.accept(resolver);
+		globals = resolver.globals();
+		main = resolver.function("main");
+		if(main == null)
+			throw new IllegalArgumentException("The program has no main function.");
+	}
+	
+	// Runs main, reading the input of readInt and readFloat from in and
+	// printing to out.
+	public void run(Reader in, PrintStream out)
+	{
+		Arrays.fill(globals.ints, 0);
+		Arrays.fill(globals.floats, 0);
+		console.open(in, out);
+		try
+		{
+			main.body.execute(new Frame(main.intSlots, main.floatSlots));
+		}
+		finally
+		{
+			out.flush();
+		}
+	}
+}
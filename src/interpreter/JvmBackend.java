@@ -0,0 +1,97 @@
+package interpreter;
+
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import ast.Command;
+import ast.DeclarationList;
+import types.TypeChecker;
+
+// Runs Crux programs compiled to JVM bytecode, so that the JVM's own JIT
+// compiles what they do most. The class the ClassGenerator makes is
+// defined in memory as a hidden class of this package, which nothing else
+// can see and which is unloaded with the backend, and its main is called
+// directly. Deep recursion uses the Java stack, as the tree does, and
+// running out of it is reported at the call that did. The right operand
+// of and and or is only evaluated when the left one does not decide the
+// result.
+public class JvmBackend
+{
+	private final Console console;
+	private final MethodHandle run;
+	
+	// The program must be the same tree that the checker checked, without
+	// finding any errors, since the checker's types decide what each
+	// operator does. A program with a function too long for a JVM method
+	// is rejected too, though the VirtualMachine can still run it.
+	public JvmBackend(Command program, TypeChecker checker)
+	{
+		if(checker.hasError())
+			throw new IllegalArgumentException("Cannot run a program with type errors.");
+		if(!(program instanceof DeclarationList))
+			throw new IllegalArgumentException("Cannot run a program with syntax errors.");
+		console = new Console();
+		byte[] classFile = new ClassGenerator(checker).generate((DeclarationList)program);
+		try
+		{
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			run = lookup.findStatic(lookup.lookupClass(), ClassGenerator.RUN,
+				MethodType.methodType(void.class, Console.class, PrintStream.class));
+		}
+		catch(IllegalAccessException | NoSuchMethodException e)
+		{
+			throw new IllegalStateException("Could not load the compiled program.", e);
+		}
+	}
+	
+	// Runs main, reading the input of readInt and readFloat from in and
+	// printing to out. Globals start at zero on every run.
+	public void run(Reader in, PrintStream out)
+	{
+		console.open(in, out);
+		try
+		{
+			run.invokeExact(console, out);
+		}
+		catch(RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch(Throwable e)
+		{
+			throw new IllegalStateException("The compiled program failed.", e);
+		}
+		finally
+		{
+			out.flush();
+		}
+	}
+	
+	// Called by compiled programs to check an index into one dimension of
+	// an array, which they go on to use.
+	static int index(int i, int length, int lineNumber, int charPosition)
+	{
+		if(i < 0 || i >= length)
+			throw new CruxRuntimeException(lineNumber, charPosition,
+				"Index " + i + " is out of bounds for length " + length + ".");
+		return i;
+	}
+	
+	// Called by compiled programs when a call runs out of Java stack, for
+	// the error they throw.
+	static CruxRuntimeException stackOverflowed(int lineNumber, int charPosition)
+	{
+		return new CruxRuntimeException(lineNumber, charPosition, "The call stack overflowed.");
+	}
+	
+	// Called by compiled programs to divide ints.
+	static int divide(int dividend, int divisor, int lineNumber, int charPosition)
+	{
+		if(divisor == 0)
+			throw new CruxRuntimeException(lineNumber, charPosition, "Division by zero.");
+		return dividend / divisor;
+	}
+}
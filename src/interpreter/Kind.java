@@ -0,0 +1,49 @@
+package interpreter;
+
+import types.*;
+
+// Which slots a value of a type lives in.
+enum Kind
+{
+	INT,
+	FLOAT,
+	BOOL,
+	VOID;
+	
+	// A call is typed as the function it calls, which stands in for its
+	// return type.
+	static Kind of(Type type)
+	{
+		if(type instanceof FuncType)
+			type = ((FuncType)type).returnType();
+		if(type instanceof IntType)
+			return INT;
+		if(type instanceof FloatType)
+			return FLOAT;
+		if(type instanceof BoolType)
+			return BOOL;
+		if(type instanceof VoidType)
+			return VOID;
+		throw new IllegalArgumentException("No values of type " + type + ".");
+	}
+	
+	// The kind of an array's elements, however deeply nested it is.
+	static Kind ofElements(Type type)
+	{
+		while(type instanceof ArrayType)
+			type = ((ArrayType)type).elementType();
+		return of(type);
+	}
+	
+	// The number of slots a variable of the type takes.
+	static int slotCount(Type type)
+	{
+		int count = 1;
+		while(type instanceof ArrayType)
+		{
+			count *= ((ArrayType)type).arrayLength();
+			type = ((ArrayType)type).elementType();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,186 @@
+package interpreter;
+
+// The instructions of the virtual machine. Each is an int in the code,
+// followed by the int operands named beside it. Ints and bools share the
+// int operand stack, bools as 0 or 1, and floats have a stack of their
+// own. Slots are counted from the start of the running call's frame, or of
+// the globals, and a site names the position to report errors at.
+final class Opcode
+{
+	static final int HALT = 0,
+		INT_CONSTANT = 1,                        // value
+		FLOAT_CONSTANT = 2,                      // bits of the value
+		
+		// Superinstructions for reading and assigning a variable, the
+		// same as pushing its slot and loading or storing through it.
+		LOAD_LOCAL = 3,                          // slot
+		LOAD_LOCAL_FLOAT = 4,                    // slot
+		LOAD_GLOBAL = 5,                         // slot
+		LOAD_GLOBAL_FLOAT = 6,                   // slot
+		STORE_LOCAL = 7,                         // slot
+		STORE_LOCAL_FLOAT = 8,                   // slot
+		STORE_GLOBAL = 9,                        // slot
+		STORE_GLOBAL_FLOAT = 10,                 // slot
+		
+		// Pops an index and the slot of an array, and pushes the slot of
+		// the element, which is stride slots long.
+		INDEX = 11,                              // length, stride, site
+		// Superinstructions for indexing a variable, the same as pushing
+		// its slot and indexing it, and for reading the element of a
+		// global array of one dimension, which is also the same as loading
+		// through the element's slot.
+		ELEMENT = 12,                            // slot, length, stride, site
+		LOAD_ELEMENT = 13,                       // slot, length, site
+		LOAD_ELEMENT_FLOAT = 14,                 // slot, length, site
+		LOAD_AT_LOCAL = 15,
+		LOAD_AT_LOCAL_FLOAT = 16,
+		LOAD_AT_GLOBAL = 17,
+		LOAD_AT_GLOBAL_FLOAT = 18,
+		// Pop the value, then the slot to store it in.
+		STORE_AT_LOCAL = 19,
+		STORE_AT_LOCAL_FLOAT = 20,
+		STORE_AT_GLOBAL = 21,
+		STORE_AT_GLOBAL_FLOAT = 22,
+		CLEAR_LOCAL = 23,                        // slot, count
+		CLEAR_LOCAL_FLOAT = 24,                  // slot, count
+		
+		ADD_INT = 25,
+		SUBTRACT_INT = 26,
+		MULTIPLY_INT = 27,
+		DIVIDE_INT = 28,                         // site
+		ADD_FLOAT = 29,
+		SUBTRACT_FLOAT = 30,
+		MULTIPLY_FLOAT = 31,
+		DIVIDE_FLOAT = 32,
+		// Superinstructions for int arithmetic on a constant, the same as
+		// pushing the constant and doing the arithmetic.
+		ADD_INT_CONSTANT = 33,                   // value
+		SUBTRACT_INT_CONSTANT = 34,              // value
+		MULTIPLY_INT_CONSTANT = 35,              // value
+		DIVIDE_INT_CONSTANT = 36,                // value, site
+		NOT = 37,
+		LESS_INT = 38,
+		LESS_EQUAL_INT = 39,
+		EQUAL_INT = 40,
+		NOT_EQUAL_INT = 41,
+		GREATER_EQUAL_INT = 42,
+		GREATER_INT = 43,
+		LESS_FLOAT = 44,
+		LESS_EQUAL_FLOAT = 45,
+		EQUAL_FLOAT = 46,
+		NOT_EQUAL_FLOAT = 47,
+		GREATER_EQUAL_FLOAT = 48,
+		GREATER_FLOAT = 49,
+		POP = 50,
+		POP_FLOAT = 51,
+		
+		JUMP = 52,                               // target
+		JUMP_IF_FALSE = 53,                      // target
+		JUMP_IF_TRUE = 54,                       // target
+		// Jump leaving the bool on the stack, or pop it and go on. These
+		// evaluate and and or for their value.
+		JUMP_IF_FALSE_OR_POP = 55,               // target
+		JUMP_IF_TRUE_OR_POP = 56,                // target
+		// Superinstructions for comparing two ints and jumping if the
+		// comparison holds, in the same order as the comparisons.
+		JUMP_IF_LESS_INT = 57,                   // target
+		JUMP_IF_LESS_EQUAL_INT = 58,             // target
+		JUMP_IF_EQUAL_INT = 59,                  // target
+		JUMP_IF_NOT_EQUAL_INT = 60,              // target
+		JUMP_IF_GREATER_EQUAL_INT = 61,          // target
+		JUMP_IF_GREATER_INT = 62,                // target
+		// And for comparing an int with a constant and jumping.
+		JUMP_IF_LESS_INT_CONSTANT = 63,          // value, target
+		JUMP_IF_LESS_EQUAL_INT_CONSTANT = 64,    // value, target
+		JUMP_IF_EQUAL_INT_CONSTANT = 65,         // value, target
+		JUMP_IF_NOT_EQUAL_INT_CONSTANT = 66,     // value, target
+		JUMP_IF_GREATER_EQUAL_INT_CONSTANT = 67, // value, target
+		JUMP_IF_GREATER_INT_CONSTANT = 68,       // value, target
+		
+		// Pops the arguments into the first slots of a new frame.
+		CALL = 69,                               // function, site
+		RETURN = 70,
+		RETURN_INT = 71,
+		RETURN_FLOAT = 72,
+		READ_INT = 73,                           // site
+		READ_FLOAT = 74,                         // site
+		PRINT_BOOL = 75,
+		PRINT_INT = 76,
+		PRINT_FLOAT = 77,
+		PRINTLN = 78,
+		COUNT = 79;
+	
+	// How many values each instruction leaves on the int and the float
+	// stack, less how many it takes off them. A call's depend on the
+	// function it calls.
+	static final int[] INT_EFFECTS = new int[COUNT];
+	static final int[] FLOAT_EFFECTS = new int[COUNT];
+	// The superinstruction that takes the int constant an instruction
+	// pops last from the code instead, or HALT if it has none.
+	static final int[] WITH_CONSTANT = new int[COUNT];
+	
+	static
+	{
+		effect(INT_CONSTANT, 1, 0);
+		effect(FLOAT_CONSTANT, 0, 1);
+		effect(LOAD_LOCAL, 1, 0);
+		effect(LOAD_LOCAL_FLOAT, 0, 1);
+		effect(LOAD_GLOBAL, 1, 0);
+		effect(LOAD_GLOBAL_FLOAT, 0, 1);
+		effect(STORE_LOCAL, -1, 0);
+		effect(STORE_LOCAL_FLOAT, 0, -1);
+		effect(STORE_GLOBAL, -1, 0);
+		effect(STORE_GLOBAL_FLOAT, 0, -1);
+		effect(INDEX, -1, 0);
+		effect(LOAD_ELEMENT_FLOAT, -1, 1);
+		effect(LOAD_AT_LOCAL_FLOAT, -1, 1);
+		effect(LOAD_AT_GLOBAL_FLOAT, -1, 1);
+		effect(STORE_AT_LOCAL, -2, 0);
+		effect(STORE_AT_LOCAL_FLOAT, -1, -1);
+		effect(STORE_AT_GLOBAL, -2, 0);
+		effect(STORE_AT_GLOBAL_FLOAT, -1, -1);
+		for(int op = ADD_INT; op <= DIVIDE_INT; op++)
+		{
+			effect(op, -1, 0);
+			WITH_CONSTANT[op] = op - ADD_INT + ADD_INT_CONSTANT;
+		}
+		for(int op = ADD_FLOAT; op <= DIVIDE_FLOAT; op++)
+			effect(op, 0, -1);
+		for(int op = LESS_INT; op <= GREATER_INT; op++)
+			effect(op, -1, 0);
+		for(int op = LESS_FLOAT; op <= GREATER_FLOAT; op++)
+			effect(op, 1, -2);
+		effect(POP, -1, 0);
+		effect(POP_FLOAT, 0, -1);
+		effect(JUMP_IF_FALSE, -1, 0);
+		effect(JUMP_IF_TRUE, -1, 0);
+		// Counted as popping, since the jump lands where the other
+		// operand has pushed a bool in its place.
+		effect(JUMP_IF_FALSE_OR_POP, -1, 0);
+		effect(JUMP_IF_TRUE_OR_POP, -1, 0);
+		for(int op = JUMP_IF_LESS_INT; op <= JUMP_IF_GREATER_INT; op++)
+		{
+			effect(op, -2, 0);
+			WITH_CONSTANT[op] = op - JUMP_IF_LESS_INT + JUMP_IF_LESS_INT_CONSTANT;
+		}
+		for(int op = JUMP_IF_LESS_INT_CONSTANT; op <= JUMP_IF_GREATER_INT_CONSTANT; op++)
+			effect(op, -1, 0);
+		effect(RETURN_INT, -1, 0);
+		effect(RETURN_FLOAT, 0, -1);
+		effect(READ_INT, 1, 0);
+		effect(READ_FLOAT, 0, 1);
+		effect(PRINT_BOOL, -1, 0);
+		effect(PRINT_INT, -1, 0);
+		effect(PRINT_FLOAT, 0, -1);
+	}
+	
+	private static void effect(int op, int intEffect, int floatEffect)
+	{
+		INT_EFFECTS[op] = intEffect;
+		FLOAT_EFFECTS[op] = floatEffect;
+	}
+	
+	private Opcode()
+	{
+	}
+}
@@ -0,0 +1,72 @@
+package interpreter;
+
+// What a designator evaluates to: a slot in the globals or in the running
+// call's frame, of the kind its symbol's values are. Which of the two it is
+// never changes, since it is decided by the symbol the designator names.
+abstract class Place
+{
+	// The globals, if the place is one of them, or null.
+	private final Frame globals;
+	
+	Place(Frame globals)
+	{
+		this.globals = globals;
+	}
+	
+	final Frame frame(Frame frame)
+	{
+		return globals != null ? globals : frame;
+	}
+	
+	abstract int slot(Frame frame);
+	
+	// The first slot of a variable, or of a whole array.
+	static final class Variable extends Place
+	{
+		private final int slot;
+		
+		Variable(Frame globals, int slot)
+		{
+			super(globals);
+			this.slot = slot;
+		}
+		
+		@Override
+		int slot(Frame frame)
+		{
+			return slot;
+		}
+	}
+	
+	// An element of an array, or a row of a nested one, which is stride
+	// slots long.
+	static final class Element extends Place
+	{
+		private final Place array;
+		private final ExpressionNode index;
+		private final int length, stride;
+		private final int lineNumber, charPosition;
+		
+		Element(Frame globals, Place array, ExpressionNode index, int length, int stride, int lineNumber, int charPosition)
+		{
+			super(globals);
+			this.array = array;
+			this.index = index;
+			this.length = length;
+			this.stride = stride;
+			this.lineNumber = lineNumber;
+			this.charPosition = charPosition;
+		}
+		
+		@Override
+		int slot(Frame frame)
+		{
+			int first = array.slot(frame);
+			int i = index.evalInt(frame);
+			if(i < 0 || i >= length)
+				throw new CruxRuntimeException(lineNumber, charPosition,
+					"Index " + i + " is out of bounds for length " + length + ".");
+			return first + i * stride;
+		}
+	}
+}
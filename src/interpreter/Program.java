@@ -0,0 +1,43 @@
+package interpreter;
+
+// A program compiled for the virtual machine: the code of every function
+// and of the call of main that starts it, the functions' frame layouts and
+// the positions that the sites of the code refer to.
+final class Program
+{
+	// What a call needs to know about the function it calls. Int and bool
+	// arguments take its first int slots, and float arguments its first
+	// float slots, in the order they are passed. The stack sizes are the
+	// most values its code ever has on each operand stack at once.
+	static final class Function
+	{
+		final String name;
+		int entry;
+		int intParameters, floatParameters;
+		int intSlots, floatSlots;
+		int intStack, floatStack;
+		
+		Function(String name)
+		{
+			this.name = name;
+		}
+	}
+	
+	final int[] code;
+	final int start;
+	final Function[] functions;
+	final int[] siteLineNumbers, siteCharPositions;
+	final int globalIntSlots, globalFloatSlots;
+	
+	Program(int[] code, int start, Function[] functions, int[] siteLineNumbers, int[] siteCharPositions,
+		int globalIntSlots, int globalFloatSlots)
+	{
+		this.code = code;
+		this.start = start;
+		this.functions = functions;
+		this.siteLineNumbers = siteLineNumbers;
+		this.siteCharPositions = siteCharPositions;
+		this.globalIntSlots = globalIntSlots;
+		this.globalFloatSlots = globalFloatSlots;
+	}
+}
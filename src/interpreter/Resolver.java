@@ -0,0 +1,434 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import ast.*;
+import crux.Symbol;
+import types.*;
+
+// Turns a checked program into the nodes the interpreter runs. Every
+// symbol is resolved to a global slot, a slot of its function's frame or a
+// Function once, here, so that running the program never looks a name up.
+// Each block's variables get slots of their own. The checker's types pick
+// the kind of each operator, and its constants replace whole expressions.
+class Resolver implements CommandVisitor
+{
+	private final TypeChecker checker;
+	private final Console console;
+	private final Frame globals;
+	private final IdentityHashMap<Symbol, Integer> globalSlots;
+	private final IdentityHashMap<Symbol, Function> functions;
+	// The slots of the function being resolved, or null at the top level.
+	private IdentityHashMap<Symbol, Integer> localSlots;
+	private Function function;
+	// What visiting the last command made: an ExpressionNode, a
+	// StatementNode or a Place.
+	private Object result;
+	
+	Resolver(TypeChecker checker, Console console, DeclarationList program)
+	{
+		this.checker = checker;
+		this.console = console;
+		globalSlots = new IdentityHashMap<Symbol, Integer>();
+		functions = new IdentityHashMap<Symbol, Function>();
+		// The globals are laid out first, so that their frame exists
+		// before any function that refers to it is resolved.
+		int intSlots = 0, floatSlots = 0;
+		for(Declaration declaration : program)
+		{
+			if(!(declaration instanceof VariableDeclaration || declaration instanceof ArrayDeclaration))
+				continue;
+			Type type = declaration.symbol().getType();
+			if(Kind.ofElements(type) == Kind.FLOAT)
+			{
+				globalSlots.put(declaration.symbol(), floatSlots);
+				floatSlots += Kind.slotCount(type);
+			}
+			else
+			{
+				globalSlots.put(declaration.symbol(), intSlots);
+				intSlots += Kind.slotCount(type);
+			}
+		}
+		globals = new Frame(intSlots, floatSlots);
+	}
+	
+	Frame globals()
+	{
+		return globals;
+	}
+	
+	// The function of the program by the given name, or null.
+	Function function(String name)
+	{
+		for(Function f : functions.values())
+			if(f.name.equals(name))
+				return f;
+		return null;
+	}
+	
+	private ExpressionNode expression(Expression node)
+	{
+		Object constant = checker.getConstant((Command)node);
+		if(constant instanceof Integer)
+			return new ExpressionNode.IntConstant((Integer)constant);
+		if(constant instanceof Float)
+			return new ExpressionNode.FloatConstant((Float)constant);
+		if(constant instanceof Boolean)
+			return new ExpressionNode.BoolConstant((Boolean)constant);
+		node.accept(this);
+		return (ExpressionNode)result;
+	}
+	
+	private StatementNode statement(Visitable node)
+	{
+		if(node instanceof ast.Call)
+			return callStatement((ast.Call)node);
+		node.accept(this);
+		return (StatementNode)result;
+	}
+	
+	private Place place(Expression node)
+	{
+		node.accept(this);
+		return (Place)result;
+	}
+	
+	private Kind kindOf(Expression node)
+	{
+		return Kind.of(checker.getType((Command)node));
+	}
+	
+	// The kind of the values at an address.
+	private Kind kindAt(Expression address)
+	{
+		return Kind.of(((AddressType)checker.getType((Command)address)).base());
+	}
+	
+	private boolean isGlobal(Symbol symbol)
+	{
+		return localSlots == null || !localSlots.containsKey(symbol);
+	}
+	
+	private int slotOf(Symbol symbol)
+	{
+		return isGlobal(symbol) ? globalSlots.get(symbol) : localSlots.get(symbol);
+	}
+	
+	// Gives a variable of the current function the next free slots.
+	private int allocate(Symbol symbol)
+	{
+		Type type = symbol.getType();
+		int slot;
+		if(Kind.ofElements(type) == Kind.FLOAT)
+		{
+			slot = function.floatSlots;
+			function.floatSlots += Kind.slotCount(type);
+		}
+		else
+		{
+			slot = function.intSlots;
+			function.intSlots += Kind.slotCount(type);
+		}
+		localSlots.put(symbol, slot);
+		return slot;
+	}
+	
+	@Override
+	public void visit(ExpressionList node)
+	{
+		throw new IllegalStateException("Expression lists are resolved by their call.");
+	}
+	
+	@Override
+	public void visit(DeclarationList node)
+	{
+		for(Declaration declaration : node)
+			((Command)declaration).accept(this);
+		result = null;
+	}
+	
+	@Override
+	public void visit(StatementList node)
+	{
+		ArrayList<StatementNode> statements = new ArrayList<StatementNode>();
+		for(Statement statement : node)
+		{
+			StatementNode resolved = statement(statement);
+			if(resolved != null)
+				statements.add(resolved);
+		}
+		result = new StatementNode.Block(statements.toArray(new StatementNode[statements.size()]));
+	}
+	
+	@Override
+	public void visit(AddressOf node)
+	{
+		Symbol symbol = node.symbol();
+		result = new Place.Variable(isGlobal(symbol) ? globals : null, slotOf(symbol));
+	}
+	
+	@Override
+	public void visit(LiteralBool node)
+	{
+		result = new ExpressionNode.BoolConstant(node.value() == LiteralBool.Value.TRUE);
+	}
+	
+	@Override
+	public void visit(LiteralFloat node)
+	{
+		result = new ExpressionNode.FloatConstant(node.value());
+	}
+	
+	@Override
+	public void visit(LiteralInt node)
+	{
+		result = new ExpressionNode.IntConstant(node.value());
+	}
+	
+	@Override
+	public void visit(VariableDeclaration node)
+	{
+		declare(node.symbol());
+	}
+	
+	@Override
+	public void visit(ArrayDeclaration node)
+	{
+		declare(node.symbol());
+	}
+	
+	// Globals were laid out up front and start at zero. Locals are
+	// cleared wherever they are declared.
+	private void declare(Symbol symbol)
+	{
+		if(localSlots == null)
+		{
+			result = null;
+			return;
+		}
+		int slot = allocate(symbol);
+		result = new StatementNode.Clear(Kind.ofElements(symbol.getType()) == Kind.FLOAT, slot, Kind.slotCount(symbol.getType()));
+	}
+	
+	@Override
+	public void visit(FunctionDefinition node)
+	{
+		localSlots = new IdentityHashMap<Symbol, Integer>();
+		Kind[] parameterKinds = new Kind[node.arguments().size()];
+		int[] parameterSlots = new int[parameterKinds.length];
+		function = new Function(node.function().getName(), parameterKinds, parameterSlots);
+		for(int i = 0; i < parameterKinds.length; i++)
+		{
+			Symbol parameter = node.arguments().get(i);
+			parameterKinds[i] = Kind.of(parameter.getType());
+			parameterSlots[i] = allocate(parameter);
+		}
+		// Defined before the body is resolved, for recursive calls.
+		functions.put(node.function(), function);
+		function.body = statement(node.body());
+		localSlots = null;
+		function = null;
+		result = null;
+	}
+	
+	@Override
+	public void visit(Addition node)
+	{
+		ExpressionNode left = expression(node.leftSide()), right = expression(node.rightSide());
+		result = kindOf(node) == Kind.FLOAT
+			? new ExpressionNode.AddFloat(left, right)
+			: new ExpressionNode.AddInt(left, right);
+	}
+	
+	@Override
+	public void visit(Subtraction node)
+	{
+		ExpressionNode left = expression(node.leftSide()), right = expression(node.rightSide());
+		result = kindOf(node) == Kind.FLOAT
+			? new ExpressionNode.SubtractFloat(left, right)
+			: new ExpressionNode.SubtractInt(left, right);
+	}
+	
+	@Override
+	public void visit(Multiplication node)
+	{
+		ExpressionNode left = expression(node.leftSide()), right = expression(node.rightSide());
+		result = kindOf(node) == Kind.FLOAT
+			? new ExpressionNode.MultiplyFloat(left, right)
+			: new ExpressionNode.MultiplyInt(left, right);
+	}
+	
+	@Override
+	public void visit(Division node)
+	{
+		ExpressionNode left = expression(node.leftSide()), right = expression(node.rightSide());
+		result = kindOf(node) == Kind.FLOAT
+			? new ExpressionNode.DivideFloat(left, right)
+			: new ExpressionNode.DivideInt(left, right, node.lineNumber(), node.charPosition());
+	}
+	
+	@Override
+	public void visit(LogicalAnd node)
+	{
+		result = new ExpressionNode.And(expression(node.leftSide()), expression(node.rightSide()));
+	}
+	
+	@Override
+	public void visit(LogicalOr node)
+	{
+		result = new ExpressionNode.Or(expression(node.leftSide()), expression(node.rightSide()));
+	}
+	
+	@Override
+	public void visit(LogicalNot node)
+	{
+		result = new ExpressionNode.Not(expression(node.expression()));
+	}
+	
+	@Override
+	public void visit(Comparison node)
+	{
+		ExpressionNode left = expression(node.leftSide()), right = expression(node.rightSide());
+		result = kindOf(node.leftSide()) == Kind.FLOAT
+			? new ExpressionNode.CompareFloat(left, node.operation(), right)
+			: new ExpressionNode.CompareInt(left, node.operation(), right);
+	}
+	
+	@Override
+	public void visit(Dereference node)
+	{
+		Kind kind = kindOf(node);
+		// Variables are read from their slot directly.
+		if(node.expression() instanceof AddressOf)
+		{
+			Symbol symbol = ((AddressOf)node.expression()).symbol();
+			int slot = slotOf(symbol);
+			if(isGlobal(symbol))
+			{
+				switch(kind)
+				{
+				case INT: result = new ExpressionNode.GlobalInt(globals, slot); return;
+				case FLOAT: result = new ExpressionNode.GlobalFloat(globals, slot); return;
+				default: result = new ExpressionNode.GlobalBool(globals, slot); return;
+				}
+			}
+			switch(kind)
+			{
+			case INT: result = new ExpressionNode.LocalInt(slot); return;
+			case FLOAT: result = new ExpressionNode.LocalFloat(slot); return;
+			default: result = new ExpressionNode.LocalBool(slot); return;
+			}
+		}
+		Place place = place(node.expression());
+		switch(kind)
+		{
+		case INT: result = new ExpressionNode.LoadInt(place); break;
+		case FLOAT: result = new ExpressionNode.LoadFloat(place); break;
+		default: result = new ExpressionNode.LoadBool(place);
+		}
+	}
+	
+	@Override
+	public void visit(Index node)
+	{
+		Place array = place(node.base());
+		ArrayType type = (ArrayType)((AddressType)checker.getType((Command)node.base())).base();
+		ExpressionNode index = expression(node.amount());
+		Symbol root = rootSymbol(node);
+		result = new Place.Element(
+			isGlobal(root) ? globals : null,
+			array,
+			index,
+			type.arrayLength(),
+			Kind.slotCount(type.elementType()),
+			node.lineNumber(),
+			node.charPosition());
+	}
+	
+	// The array an index ends up in.
+	private static Symbol rootSymbol(Index node)
+	{
+		Expression base = node.base();
+		while(base instanceof Index)
+			base = ((Index)base).base();
+		return ((AddressOf)base).symbol();
+	}
+	
+	@Override
+	public void visit(Assignment node)
+	{
+		// A variable is assigned through its address, but an element
+		// through a dereference of its address.
+		Expression destination = node.destination();
+		Kind kind;
+		if(destination instanceof Dereference)
+		{
+			kind = kindOf(destination);
+			destination = ((Dereference)destination).expression();
+		}
+		else
+			kind = kindAt(destination);
+		Place place = place(destination);
+		ExpressionNode value = expression(node.source());
+		switch(kind)
+		{
+		case INT: result = new StatementNode.StoreInt(place, value); break;
+		case FLOAT: result = new StatementNode.StoreFloat(place, value); break;
+		default: result = new StatementNode.StoreBool(place, value);
+		}
+	}
+	
+	@Override
+	public void visit(ast.Call node)
+	{
+		ArrayList<ExpressionNode> arguments = new ArrayList<ExpressionNode>();
+		for(Expression argument : node.arguments())
+			arguments.add(expression(argument));
+		ExpressionNode call;
+		Function callee = functions.get(node.function());
+		if(callee != null)
+			call = new ExpressionNode.Call(callee, arguments.toArray(new ExpressionNode[arguments.size()]),
+				node.lineNumber(), node.charPosition());
+		else
+		{
+			int builtin = BuiltinCall.named(node.function().getName());
+			if(builtin < 0)
+				throw new IllegalStateException("Unknown function " + node.function().getName() + ".");
+			call = new BuiltinCall(console, builtin, arguments.isEmpty() ? null : arguments.get(0), node.lineNumber(), node.charPosition());
+		}
+		result = call;
+	}
+	
+	// A call made as a statement, for its effects.
+	private StatementNode callStatement(ast.Call node)
+	{
+		node.accept(this);
+		return new StatementNode.Evaluate((ExpressionNode)result, kindOf(node));
+	}
+	
+	@Override
+	public void visit(IfElseBranch node)
+	{
+		result = new StatementNode.If(expression(node.condition()), statement(node.thenBlock()), statement(node.elseBlock()));
+	}
+	
+	@Override
+	public void visit(WhileLoop node)
+	{
+		result = new StatementNode.While(expression(node.condition()), statement(node.body()));
+	}
+	
+	@Override
+	public void visit(Return node)
+	{
+		result = new StatementNode.Return(expression(node.argument()), kindOf(node.argument()));
+	}
+	
+	@Override
+	public void visit(ast.Error node)
+	{
+		throw new IllegalStateException("Cannot run a program with errors.");
+	}
+}
@@ -0,0 +1,181 @@
+package interpreter;
+
+import java.util.Arrays;
+
+// A statement with its symbols resolved. Executing one tells whether a
+// return statement was reached, which ends the call.
+abstract class StatementNode
+{
+	abstract boolean execute(Frame frame);
+	
+	static final class Block extends StatementNode
+	{
+		private final StatementNode[] statements;
+		
+		Block(StatementNode[] statements) { this.statements = statements; }
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			for(StatementNode statement : statements)
+				if(statement.execute(frame))
+					return true;
+			return false;
+		}
+	}
+	
+	// A local declaration, which clears its variable or array each time
+	// it is reached, so that every pass through a block starts afresh.
+	static final class Clear extends StatementNode
+	{
+		private final boolean floats;
+		private final int slot, count;
+		
+		Clear(boolean floats, int slot, int count)
+		{
+			this.floats = floats;
+			this.slot = slot;
+			this.count = count;
+		}
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			if(floats)
+				Arrays.fill(frame.floats, slot, slot + count, 0);
+			else
+				Arrays.fill(frame.ints, slot, slot + count, 0);
+			return false;
+		}
+	}
+	
+	static final class StoreInt extends StatementNode
+	{
+		private final Place place;
+		private final ExpressionNode value;
+		
+		StoreInt(Place place, ExpressionNode value) { this.place = place; this.value = value; }
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			int[] slots = place.frame(frame).ints;
+			int slot = place.slot(frame);
+			slots[slot] = value.evalInt(frame);
+			return false;
+		}
+	}
+	
+	static final class StoreFloat extends StatementNode
+	{
+		private final Place place;
+		private final ExpressionNode value;
+		
+		StoreFloat(Place place, ExpressionNode value) { this.place = place; this.value = value; }
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			float[] slots = place.frame(frame).floats;
+			int slot = place.slot(frame);
+			slots[slot] = value.evalFloat(frame);
+			return false;
+		}
+	}
+	
+	static final class StoreBool extends StatementNode
+	{
+		private final Place place;
+		private final ExpressionNode value;
+		
+		StoreBool(Place place, ExpressionNode value) { this.place = place; this.value = value; }
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			int[] slots = place.frame(frame).ints;
+			int slot = place.slot(frame);
+			slots[slot] = value.evalBool(frame) ? 1 : 0;
+			return false;
+		}
+	}
+	
+	// A call made for its effects, whatever it returns.
+	static final class Evaluate extends StatementNode
+	{
+		private final ExpressionNode call;
+		private final Kind kind;
+		
+		Evaluate(ExpressionNode call, Kind kind) { this.call = call; this.kind = kind; }
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			switch(kind)
+			{
+			case INT: call.evalInt(frame); break;
+			case FLOAT: call.evalFloat(frame); break;
+			case BOOL: call.evalBool(frame); break;
+			default: call.evalVoid(frame);
+			}
+			return false;
+		}
+	}
+	
+	static final class If extends StatementNode
+	{
+		private final ExpressionNode condition;
+		private final StatementNode thenBlock, elseBlock;
+		
+		If(ExpressionNode condition, StatementNode thenBlock, StatementNode elseBlock)
+		{
+			this.condition = condition;
+			this.thenBlock = thenBlock;
+			this.elseBlock = elseBlock;
+		}
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			return condition.evalBool(frame) ? thenBlock.execute(frame) : elseBlock.execute(frame);
+		}
+	}
+	
+	static final class While extends StatementNode
+	{
+		private final ExpressionNode condition;
+		private final StatementNode body;
+		
+		While(ExpressionNode condition, StatementNode body) { this.condition = condition; this.body = body; }
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			while(condition.evalBool(frame))
+				if(body.execute(frame))
+					return true;
+			return false;
+		}
+	}
+	
+	static final class Return extends StatementNode
+	{
+		private final ExpressionNode value;
+		private final Kind kind;
+		
+		Return(ExpressionNode value, Kind kind) { this.value = value; this.kind = kind; }
+		
+		@Override
+		boolean execute(Frame frame)
+		{
+			switch(kind)
+			{
+			case INT: frame.returnInt = value.evalInt(frame); break;
+			case BOOL: frame.returnInt = value.evalBool(frame) ? 1 : 0; break;
+			case FLOAT: frame.returnFloat = value.evalFloat(frame); break;
+			default: value.evalVoid(frame);
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,479 @@
+package interpreter;
+
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Arrays;
+
+import ast.Command;
+import ast.DeclarationList;
+import types.TypeChecker;
+
+// Runs Crux programs compiled to the code of Opcode, in a single loop that
+// switches on one instruction at a time. The frames of all calls and the
+// values they work on are kept in an int and a float stack of the
+// machine's own, so that deep recursion in a program never runs out of
+// Java stack. The right operand of and and or is only evaluated when the
+// left one does not decide the result.
+public class VirtualMachine
+{
+	// Each call on the call stack records where to return to and the
+	// bases of the caller's frames.
+	private static final int CALL_RECORD = 3;
+	// Programs that recurse deeper than this are stopped, rather than
+	// letting their stacks grow until memory runs out.
+	private static final int MAX_CALL_DEPTH = 1 << 20;
+	
+	private final Console console;
+	private final Program program;
+	private final int[] globalInts;
+	private final float[] globalFloats;
+	
+	// The program must be the same tree that the checker checked, without
+	// finding any errors, since the checker's types decide what each
+	// operator does.
+	public VirtualMachine(Command program, TypeChecker checker)
+	{
+		if(checker.hasError())
+			throw new IllegalArgumentException("Cannot run a program with type errors.");
+		if(!(program instanceof DeclarationList))
+			throw new IllegalArgumentException("Cannot run a program with syntax errors.");
+		console = new Console();
+		this.program = new CodeGenerator(checker).generate((DeclarationList)program);
+		globalInts = new int[this.program.globalIntSlots];
+		globalFloats = new float[this.program.globalFloatSlots];
+	}
+	
+	// Runs main, reading the input of readInt and readFloat from in and
+	// printing to out.
+	public void run(Reader in, PrintStream out)
+	{
+		Arrays.fill(globalInts, 0);
+		Arrays.fill(globalFloats, 0);
+		console.open(in, out);
+		try
+		{
+			execute();
+		}
+		finally
+		{
+			out.flush();
+		}
+	}
+	
+	private void execute()
+	{
+		final int[] code = program.code;
+		final int[] globalInts = this.globalInts;
+		final float[] globalFloats = this.globalFloats;
+		int[] ints = new int[1024];
+		float[] floats = new float[1024];
+		int[] calls = new int[CALL_RECORD * 64];
+		// The top of each stack, the bases of the running call's frames
+		// in them, and the top of the call stack.
+		int sp = 0, fsp = 0, fp = 0, ffp = 0, callTop = 0;
+		int pc = program.start;
+		while(true)
+		{
+			switch(code[pc++])
+			{
+			case Opcode.HALT:
+				return;
+			case Opcode.INT_CONSTANT:
+				ints[sp++] = code[pc++];
+				break;
+			case Opcode.FLOAT_CONSTANT:
+				floats[fsp++] = Float.intBitsToFloat(code[pc++]);
+				break;
+			case Opcode.LOAD_LOCAL:
+				ints[sp++] = ints[fp + code[pc++]];
+				break;
+			case Opcode.LOAD_LOCAL_FLOAT:
+				floats[fsp++] = floats[ffp + code[pc++]];
+				break;
+			case Opcode.LOAD_GLOBAL:
+				ints[sp++] = globalInts[code[pc++]];
+				break;
+			case Opcode.LOAD_GLOBAL_FLOAT:
+				floats[fsp++] = globalFloats[code[pc++]];
+				break;
+			case Opcode.STORE_LOCAL:
+				ints[fp + code[pc++]] = ints[--sp];
+				break;
+			case Opcode.STORE_LOCAL_FLOAT:
+				floats[ffp + code[pc++]] = floats[--fsp];
+				break;
+			case Opcode.STORE_GLOBAL:
+				globalInts[code[pc++]] = ints[--sp];
+				break;
+			case Opcode.STORE_GLOBAL_FLOAT:
+				globalFloats[code[pc++]] = floats[--fsp];
+				break;
+			case Opcode.INDEX:
+			{
+				int length = code[pc], i = ints[--sp];
+				if(i < 0 || i >= length)
+				{
+					int site = code[pc + 2];
+					throw new CruxRuntimeException(program.siteLineNumbers[site], program.siteCharPositions[site],
+						"Index " + i + " is out of bounds for length " + length + ".");
+				}
+				ints[sp - 1] += i * code[pc + 1];
+				pc += 3;
+				break;
+			}
+			case Opcode.ELEMENT:
+			{
+				int length = code[pc + 1], i = ints[sp - 1];
+				if(i < 0 || i >= length)
+				{
+					int site = code[pc + 3];
+					throw new CruxRuntimeException(program.siteLineNumbers[site], program.siteCharPositions[site],
+						"Index " + i + " is out of bounds for length " + length + ".");
+				}
+				ints[sp - 1] = code[pc] + i * code[pc + 2];
+				pc += 4;
+				break;
+			}
+			case Opcode.LOAD_ELEMENT:
+			{
+				int length = code[pc + 1], i = ints[sp - 1];
+				if(i < 0 || i >= length)
+				{
+					int site = code[pc + 2];
+					throw new CruxRuntimeException(program.siteLineNumbers[site], program.siteCharPositions[site],
+						"Index " + i + " is out of bounds for length " + length + ".");
+				}
+				ints[sp - 1] = globalInts[code[pc] + i];
+				pc += 3;
+				break;
+			}
+			case Opcode.LOAD_ELEMENT_FLOAT:
+			{
+				int length = code[pc + 1], i = ints[--sp];
+				if(i < 0 || i >= length)
+				{
+					int site = code[pc + 2];
+					throw new CruxRuntimeException(program.siteLineNumbers[site], program.siteCharPositions[site],
+						"Index " + i + " is out of bounds for length " + length + ".");
+				}
+				floats[fsp++] = globalFloats[code[pc] + i];
+				pc += 3;
+				break;
+			}
+			case Opcode.LOAD_AT_LOCAL:
+				ints[sp - 1] = ints[fp + ints[sp - 1]];
+				break;
+			case Opcode.LOAD_AT_LOCAL_FLOAT:
+				floats[fsp++] = floats[ffp + ints[--sp]];
+				break;
+			case Opcode.LOAD_AT_GLOBAL:
+				ints[sp - 1] = globalInts[ints[sp - 1]];
+				break;
+			case Opcode.LOAD_AT_GLOBAL_FLOAT:
+				floats[fsp++] = globalFloats[ints[--sp]];
+				break;
+			case Opcode.STORE_AT_LOCAL:
+				ints[fp + ints[sp - 2]] = ints[sp - 1];
+				sp -= 2;
+				break;
+			case Opcode.STORE_AT_LOCAL_FLOAT:
+				floats[ffp + ints[--sp]] = floats[--fsp];
+				break;
+			case Opcode.STORE_AT_GLOBAL:
+				globalInts[ints[sp - 2]] = ints[sp - 1];
+				sp -= 2;
+				break;
+			case Opcode.STORE_AT_GLOBAL_FLOAT:
+				globalFloats[ints[--sp]] = floats[--fsp];
+				break;
+			case Opcode.CLEAR_LOCAL:
+			{
+				int first = fp + code[pc];
+				Arrays.fill(ints, first, first + code[pc + 1], 0);
+				pc += 2;
+				break;
+			}
+			case Opcode.CLEAR_LOCAL_FLOAT:
+			{
+				int first = ffp + code[pc];
+				Arrays.fill(floats, first, first + code[pc + 1], 0);
+				pc += 2;
+				break;
+			}
+			case Opcode.ADD_INT:
+				sp--;
+				ints[sp - 1] += ints[sp];
+				break;
+			case Opcode.SUBTRACT_INT:
+				sp--;
+				ints[sp - 1] -= ints[sp];
+				break;
+			case Opcode.MULTIPLY_INT:
+				sp--;
+				ints[sp - 1] *= ints[sp];
+				break;
+			case Opcode.DIVIDE_INT:
+			{
+				int divisor = ints[--sp];
+				if(divisor == 0)
+				{
+					int site = code[pc];
+					throw new CruxRuntimeException(program.siteLineNumbers[site], program.siteCharPositions[site],
+						"Division by zero.");
+				}
+				ints[sp - 1] /= divisor;
+				pc++;
+				break;
+			}
+			case Opcode.ADD_FLOAT:
+				fsp--;
+				floats[fsp - 1] += floats[fsp];
+				break;
+			case Opcode.SUBTRACT_FLOAT:
+				fsp--;
+				floats[fsp - 1] -= floats[fsp];
+				break;
+			case Opcode.MULTIPLY_FLOAT:
+				fsp--;
+				floats[fsp - 1] *= floats[fsp];
+				break;
+			case Opcode.DIVIDE_FLOAT:
+				fsp--;
+				floats[fsp - 1] /= floats[fsp];
+				break;
+			case Opcode.ADD_INT_CONSTANT:
+				ints[sp - 1] += code[pc++];
+				break;
+			case Opcode.SUBTRACT_INT_CONSTANT:
+				ints[sp - 1] -= code[pc++];
+				break;
+			case Opcode.MULTIPLY_INT_CONSTANT:
+				ints[sp - 1] *= code[pc++];
+				break;
+			case Opcode.DIVIDE_INT_CONSTANT:
+			{
+				int divisor = code[pc];
+				if(divisor == 0)
+				{
+					int site = code[pc + 1];
+					throw new CruxRuntimeException(program.siteLineNumbers[site], program.siteCharPositions[site],
+						"Division by zero.");
+				}
+				ints[sp - 1] /= divisor;
+				pc += 2;
+				break;
+			}
+			case Opcode.NOT:
+				ints[sp - 1] ^= 1;
+				break;
+			case Opcode.LESS_INT:
+				sp--;
+				ints[sp - 1] = ints[sp - 1] < ints[sp] ? 1 : 0;
+				break;
+			case Opcode.LESS_EQUAL_INT:
+				sp--;
+				ints[sp - 1] = ints[sp - 1] <= ints[sp] ? 1 : 0;
+				break;
+			case Opcode.EQUAL_INT:
+				sp--;
+				ints[sp - 1] = ints[sp - 1] == ints[sp] ? 1 : 0;
+				break;
+			case Opcode.NOT_EQUAL_INT:
+				sp--;
+				ints[sp - 1] = ints[sp - 1] != ints[sp] ? 1 : 0;
+				break;
+			case Opcode.GREATER_EQUAL_INT:
+				sp--;
+				ints[sp - 1] = ints[sp - 1] >= ints[sp] ? 1 : 0;
+				break;
+			case Opcode.GREATER_INT:
+				sp--;
+				ints[sp - 1] = ints[sp - 1] > ints[sp] ? 1 : 0;
+				break;
+			case Opcode.LESS_FLOAT:
+				fsp -= 2;
+				ints[sp++] = floats[fsp] < floats[fsp + 1] ? 1 : 0;
+				break;
+			case Opcode.LESS_EQUAL_FLOAT:
+				fsp -= 2;
+				ints[sp++] = floats[fsp] <= floats[fsp + 1] ? 1 : 0;
+				break;
+			case Opcode.EQUAL_FLOAT:
+				fsp -= 2;
+				ints[sp++] = floats[fsp] == floats[fsp + 1] ? 1 : 0;
+				break;
+			case Opcode.NOT_EQUAL_FLOAT:
+				fsp -= 2;
+				ints[sp++] = floats[fsp] != floats[fsp + 1] ? 1 : 0;
+				break;
+			case Opcode.GREATER_EQUAL_FLOAT:
+				fsp -= 2;
+				ints[sp++] = floats[fsp] >= floats[fsp + 1] ? 1 : 0;
+				break;
+			case Opcode.GREATER_FLOAT:
+				fsp -= 2;
+				ints[sp++] = floats[fsp] > floats[fsp + 1] ? 1 : 0;
+				break;
+			case Opcode.POP:
+				sp--;
+				break;
+			case Opcode.POP_FLOAT:
+				fsp--;
+				break;
+			case Opcode.JUMP:
+				pc = code[pc];
+				break;
+			case Opcode.JUMP_IF_FALSE:
+				pc = ints[--sp] == 0 ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_TRUE:
+				pc = ints[--sp] != 0 ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_FALSE_OR_POP:
+				if(ints[sp - 1] == 0)
+					pc = code[pc];
+				else
+				{
+					sp--;
+					pc++;
+				}
+				break;
+			case Opcode.JUMP_IF_TRUE_OR_POP:
+				if(ints[sp - 1] != 0)
+					pc = code[pc];
+				else
+				{
+					sp--;
+					pc++;
+				}
+				break;
+			case Opcode.JUMP_IF_LESS_INT:
+				sp -= 2;
+				pc = ints[sp] < ints[sp + 1] ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_LESS_EQUAL_INT:
+				sp -= 2;
+				pc = ints[sp] <= ints[sp + 1] ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_EQUAL_INT:
+				sp -= 2;
+				pc = ints[sp] == ints[sp + 1] ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_NOT_EQUAL_INT:
+				sp -= 2;
+				pc = ints[sp] != ints[sp + 1] ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_GREATER_EQUAL_INT:
+				sp -= 2;
+				pc = ints[sp] >= ints[sp + 1] ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_GREATER_INT:
+				sp -= 2;
+				pc = ints[sp] > ints[sp + 1] ? code[pc] : pc + 1;
+				break;
+			case Opcode.JUMP_IF_LESS_INT_CONSTANT:
+				pc = ints[--sp] < code[pc] ? code[pc + 1] : pc + 2;
+				break;
+			case Opcode.JUMP_IF_LESS_EQUAL_INT_CONSTANT:
+				pc = ints[--sp] <= code[pc] ? code[pc + 1] : pc + 2;
+				break;
+			case Opcode.JUMP_IF_EQUAL_INT_CONSTANT:
+				pc = ints[--sp] == code[pc] ? code[pc + 1] : pc + 2;
+				break;
+			case Opcode.JUMP_IF_NOT_EQUAL_INT_CONSTANT:
+				pc = ints[--sp] != code[pc] ? code[pc + 1] : pc + 2;
+				break;
+			case Opcode.JUMP_IF_GREATER_EQUAL_INT_CONSTANT:
+				pc = ints[--sp] >= code[pc] ? code[pc + 1] : pc + 2;
+				break;
+			case Opcode.JUMP_IF_GREATER_INT_CONSTANT:
+				pc = ints[--sp] > code[pc] ? code[pc + 1] : pc + 2;
+				break;
+			case Opcode.CALL:
+			{
+				Program.Function callee = program.functions[code[pc]];
+				if(callTop == calls.length)
+				{
+					if(callTop / CALL_RECORD >= MAX_CALL_DEPTH)
+					{
+						int site = code[pc + 1];
+						throw new CruxRuntimeException(program.siteLineNumbers[site], program.siteCharPositions[site],
+							"The call stack overflowed.");
+					}
+					calls = Arrays.copyOf(calls, calls.length * 2);
+				}
+				calls[callTop++] = pc + 2;
+				calls[callTop++] = fp;
+				calls[callTop++] = ffp;
+				// The arguments on top of the stacks become the first
+				// slots of the callee's frames.
+				fp = sp - callee.intParameters;
+				ffp = fsp - callee.floatParameters;
+				sp = fp + callee.intSlots;
+				fsp = ffp + callee.floatSlots;
+				if(sp + callee.intStack > ints.length)
+					ints = Arrays.copyOf(ints, Math.max(ints.length * 2, sp + callee.intStack));
+				if(fsp + callee.floatStack > floats.length)
+					floats = Arrays.copyOf(floats, Math.max(floats.length * 2, fsp + callee.floatStack));
+				pc = callee.entry;
+				break;
+			}
+			case Opcode.RETURN:
+				sp = fp;
+				fsp = ffp;
+				ffp = calls[--callTop];
+				fp = calls[--callTop];
+				pc = calls[--callTop];
+				break;
+			case Opcode.RETURN_INT:
+			{
+				int value = ints[sp - 1];
+				sp = fp;
+				fsp = ffp;
+				ffp = calls[--callTop];
+				fp = calls[--callTop];
+				pc = calls[--callTop];
+				ints[sp++] = value;
+				break;
+			}
+			case Opcode.RETURN_FLOAT:
+			{
+				float value = floats[fsp - 1];
+				sp = fp;
+				fsp = ffp;
+				ffp = calls[--callTop];
+				fp = calls[--callTop];
+				pc = calls[--callTop];
+				floats[fsp++] = value;
+				break;
+			}
+			case Opcode.READ_INT:
+			{
+				int site = code[pc++];
+				ints[sp++] = console.readInt(program.siteLineNumbers[site], program.siteCharPositions[site]);
+				break;
+			}
+			case Opcode.READ_FLOAT:
+			{
+				int site = code[pc++];
+				floats[fsp++] = console.readFloat(program.siteLineNumbers[site], program.siteCharPositions[site]);
+				break;
+			}
+			case Opcode.PRINT_BOOL:
+				console.out().print(ints[--sp] != 0);
+				break;
+			case Opcode.PRINT_INT:
+				console.out().print(ints[--sp]);
+				break;
+			case Opcode.PRINT_FLOAT:
+				console.out().print(floats[--fsp]);
+				break;
+			case Opcode.PRINTLN:
+				console.out().println();
+				break;
+			default:
+				throw new IllegalStateException("Unknown instruction " + code[pc - 1] + " at " + (pc - 1) + ".");
+			}
+		}
+	}
+}
@@ -4,11 +4,16 @@ public class AddressType extends Type {
     
     private Type base;
     
-    public AddressType(Type base)
+    AddressType(Type base)
     {
         this.base = base;
     }
     
+    public static AddressType of(Type base)
+    {
+        return base.addressOf();
+    }
+    
     public Type base()
     {
         return base;
@@ -30,13 +35,18 @@ public class AddressType extends Type {
     public Type assign(Type source)
     {
     	return equivalent(source)
-    		? new AddressType(base)
+    		? this
     		: super.assign(source);
     }
 
     @Override
     public boolean equivalent(Type that) 
     {
+        // Equal addresses are the same instance. Different ones can still
+        // be equivalent when one base is a function type standing for its
+        // return type, or an ErrorType with the same message.
+        if (that == this)
+            return true;
         if (!(that instanceof AddressType))
             return false;        
         AddressType aType = (AddressType)that;
@@ -5,12 +5,17 @@ public class ArrayType extends Type {
 	private Type element;
 	private int length;
 	
-	public ArrayType(int length, Type element)
+	ArrayType(int length, Type element)
 	{
 	    this.length = length;
 	    this.element = element;
 	}
 	
+	public static ArrayType of(int length, Type element)
+	{
+	    return element.arrayOf(length);
+	}
+	
 	public int arrayLength()
 	{
 	    return length;
@@ -39,13 +44,18 @@ public class ArrayType extends Type {
 	public Type assign(Type source)
 	{
 	    return equivalent(source)
-	    	? new ArrayType(length, element)
+	    	? this
 	    	: super.assign(source);
 	}
 	
 	@Override
 	public boolean equivalent(Type that)
 	{
+	    // Equal arrays are the same instance. Different ones can still
+	    // be equivalent only through an ErrorType element with the same
+	    // message.
+	    if (that == this)
+	        return true;
 	    if (!(that instanceof ArrayType))
 	        return false;        
 	    ArrayType aType = (ArrayType)that;
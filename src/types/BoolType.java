@@ -2,6 +2,12 @@ package types;
 
 public class BoolType extends Type 
 {
+	public static final BoolType INSTANCE = new BoolType();
+	
+	private BoolType()
+	{
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -12,7 +18,7 @@ public class BoolType extends Type
 	public Type and(Type that)
 	{
 		return equivalent(that)
-	        	? new BoolType()
+	        	? BoolType.INSTANCE
 	        	: super.and(that);
 	}
 	
@@ -20,21 +26,21 @@ public class BoolType extends Type
 	public Type or(Type that)
 	{
 		return equivalent(that)
-	    	? new BoolType()
+	    	? BoolType.INSTANCE
 	    	: super.or(that);
 	}
 	
 	@Override
 	public Type not()
 	{
-	    return new BoolType();
+	    return BoolType.INSTANCE;
 	}
 	
 	@Override
 	public Type compare(Type that)
 	{
 	    return equivalent(that)
-	    	? new BoolType()
+	    	? BoolType.INSTANCE
 	    	: super.compare(that);
 	}
 	
@@ -42,14 +48,14 @@ public class BoolType extends Type
 	public Type assign(Type source)
 	{
 		return equivalent(source)
-			? new BoolType()
+			? BoolType.INSTANCE
 			: super.assign(source);
 	}
 	
 	@Override
 	public boolean equivalent(Type that)
 	{
-	    return that instanceof BoolType
+	    return that == this
 	    	|| (that instanceof FuncType && equivalent(((FuncType)that).returnType()));
 	}
 	
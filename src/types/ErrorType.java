@@ -2,22 +2,44 @@ package types;
 
 public class ErrorType extends Type {
     
+    // The message is only formatted from its template and arguments when
+    // it is asked for, since most are discarded or only ever reported.
+    private final String template;
+    private final Object[] arguments;
     private String message;
     
     public ErrorType(String message)
     {
-        this.message = message;
+        this("%s", message);
+    }
+    
+    public ErrorType(String template, Object... arguments)
+    {
+        this.template = template;
+        this.arguments = arguments;
+    }
+    
+    String template()
+    {
+        return template;
+    }
+    
+    Object[] arguments()
+    {
+        return arguments;
     }
     
     public String getMessage()
     {
+        if (message == null)
+            message = String.format(template, arguments);
         return message;
     }
     
     @Override
     public String toString()
     {
-        return "ErrorType(" + message + ")";
+        return "ErrorType(" + getMessage() + ")";
     }
     
     @Override
@@ -28,7 +50,7 @@ public class ErrorType extends Type {
         if (!(that instanceof ErrorType))
             return false;
         
-        return message.equals(((ErrorType)that).message);
+        return getMessage().equals(((ErrorType)that).getMessage());
     }
     
     @Override
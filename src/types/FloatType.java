@@ -2,6 +2,12 @@ package types;
 
 public class FloatType extends Type 
 {    
+    public static final FloatType INSTANCE = new FloatType();
+    
+    private FloatType()
+    {
+    }
+    
     @Override
     public String toString()
     {
@@ -12,7 +18,7 @@ public class FloatType extends Type
     public Type add(Type that)
     {
         return equivalent(that)
-        	? new FloatType()
+        	? FloatType.INSTANCE
         	: super.add(that);
     }
     
@@ -20,7 +26,7 @@ public class FloatType extends Type
     public Type sub(Type that)
     {
         return equivalent(that)
-        	? new FloatType()
+        	? FloatType.INSTANCE
         	: super.sub(that);
     }
     
@@ -28,7 +34,7 @@ public class FloatType extends Type
     public Type mul(Type that)
     {
         return equivalent(that)
-        	? new FloatType()
+        	? FloatType.INSTANCE
         	: super.mul(that);
     }
     
@@ -36,7 +42,7 @@ public class FloatType extends Type
     public Type div(Type that)
     {
         return equivalent(that)
-        	? new FloatType()
+        	? FloatType.INSTANCE
         	: super.div(that);
     }
     
@@ -44,7 +50,7 @@ public class FloatType extends Type
     public Type compare(Type that)
     {
     	return equivalent(that)
-    		? new BoolType()
+    		? BoolType.INSTANCE
     		: super.compare(that);
     }
     
@@ -52,14 +58,14 @@ public class FloatType extends Type
     public Type assign(Type source)
     {
     	return equivalent(source)
-    		? new FloatType()
+    		? FloatType.INSTANCE
     		: super.assign(source);
     }
     
     @Override
     public boolean equivalent(Type that)
     {
-    	return that instanceof FloatType
+    	return that == this
     		|| (that instanceof FuncType && equivalent(((FuncType)that).returnType()));
     }
     
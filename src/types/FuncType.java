@@ -5,12 +5,17 @@ public class FuncType extends Type
 	private TypeList args;
 	private Type ret;
    
-   public FuncType(TypeList args, Type returnType)
+   FuncType(TypeList args, Type returnType)
    {
       this.args = args;
       this.ret = returnType;
    }
    
+   public static FuncType of(TypeList args, Type returnType)
+   {
+      return args.functionReturning(returnType);
+   }
+   
    public Type returnType()
    {
       return ret;
@@ -90,6 +95,10 @@ public class FuncType extends Type
    @Override
    public boolean equivalent(Type that)
    {
+      // Equal function types are the same instance. Different ones can
+      // still be equivalent through ErrorTypes with the same message.
+      if (that == this)
+         return true;
       if (!(that instanceof FuncType))
          return false;
       FuncType thatType = (FuncType)that;
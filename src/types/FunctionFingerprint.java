@@ -0,0 +1,243 @@
+package types;
+
+import java.util.ArrayList;
+
+import crux.Symbol;
+import ast.*;
+
+// Describes a function definition in everything that checking it depends
+// on: the kind, value and position of every node in it, with lines counted
+// from the function's own line so that moving the whole function does not
+// change it, and the name and type of every symbol it declares or refers
+// to. Two functions with the same fingerprint check the same way, with
+// their errors the same number of lines apart. The nodes are listed in the
+// order they are described, which is the same for both.
+class FunctionFingerprint implements CommandVisitor {
+    
+    private final StringBuilder text;
+    private final ArrayList<Command> nodes;
+    private final int firstLine;
+    
+    private FunctionFingerprint(int firstLine)
+    {
+        this.text = new StringBuilder();
+        this.nodes = new ArrayList<Command>();
+        this.firstLine = firstLine;
+    }
+    
+    public static FunctionFingerprint of(FunctionDefinition function)
+    {
+        FunctionFingerprint fingerprint = new FunctionFingerprint(function.lineNumber());
+        function.accept(fingerprint);
+        return fingerprint;
+    }
+    
+    public String text()
+    {
+        return text.toString();
+    }
+    
+    public ArrayList<Command> nodes()
+    {
+        return nodes;
+    }
+    
+    private void node(Command node, char tag)
+    {
+        nodes.add(node);
+        text.append(tag).append(node.lineNumber() - firstLine).append(',').append(node.charPosition());
+    }
+    
+    private void symbol(Symbol symbol)
+    {
+        // Type names may hold any text, if they are errors, so they are
+        // preceded by their length.
+        String type = String.valueOf(symbol.getType());
+        text.append('<').append(symbol.getName()).append(':').append(type.length()).append(':').append(type).append('>');
+    }
+    
+    private void end()
+    {
+        text.append(';');
+    }
+
+    @Override
+    public void visit(ExpressionList node) {
+        node(node, 'E');
+        for (Expression e : node)
+            e.accept(this);
+        end();
+    }
+
+    @Override
+    public void visit(DeclarationList node) {
+        node(node, 'D');
+        for (Declaration d : node)
+            d.accept(this);
+        end();
+    }
+
+    @Override
+    public void visit(StatementList node) {
+        node(node, 'S');
+        for (Statement s : node)
+            s.accept(this);
+        end();
+    }
+
+    @Override
+    public void visit(AddressOf node) {
+        node(node, '&');
+        symbol(node.symbol());
+    }
+
+    @Override
+    public void visit(LiteralBool node) {
+        node(node, 'b');
+        text.append(node.value());
+    }
+
+    @Override
+    public void visit(LiteralFloat node) {
+        node(node, 'f');
+        text.append(Float.floatToRawIntBits(node.value()));
+    }
+
+    @Override
+    public void visit(LiteralInt node) {
+        node(node, 'i');
+        text.append(node.value());
+    }
+
+    @Override
+    public void visit(VariableDeclaration node) {
+        node(node, 'v');
+        symbol(node.symbol());
+    }
+
+    @Override
+    public void visit(ArrayDeclaration node) {
+        node(node, 'a');
+        symbol(node.symbol());
+    }
+
+    @Override
+    public void visit(FunctionDefinition node) {
+        node(node, 'F');
+        symbol(node.function());
+        for (Symbol argument : node.arguments())
+            symbol(argument);
+        node.body().accept(this);
+        end();
+    }
+
+    @Override
+    public void visit(Addition node) {
+        node(node, '+');
+        node.leftSide().accept(this);
+        node.rightSide().accept(this);
+    }
+
+    @Override
+    public void visit(Subtraction node) {
+        node(node, '-');
+        node.leftSide().accept(this);
+        node.rightSide().accept(this);
+    }
+
+    @Override
+    public void visit(Multiplication node) {
+        node(node, '*');
+        node.leftSide().accept(this);
+        node.rightSide().accept(this);
+    }
+
+    @Override
+    public void visit(Division node) {
+        node(node, '/');
+        node.leftSide().accept(this);
+        node.rightSide().accept(this);
+    }
+
+    @Override
+    public void visit(LogicalAnd node) {
+        node(node, 'A');
+        node.leftSide().accept(this);
+        node.rightSide().accept(this);
+    }
+
+    @Override
+    public void visit(LogicalOr node) {
+        node(node, 'O');
+        node.leftSide().accept(this);
+        node.rightSide().accept(this);
+    }
+
+    @Override
+    public void visit(LogicalNot node) {
+        node(node, '!');
+        node.expression().accept(this);
+    }
+
+    @Override
+    public void visit(Comparison node) {
+        node(node, 'C');
+        text.append(node.operation());
+        node.leftSide().accept(this);
+        node.rightSide().accept(this);
+    }
+
+    @Override
+    public void visit(Dereference node) {
+        node(node, '@');
+        node.expression().accept(this);
+    }
+
+    @Override
+    public void visit(Index node) {
+        node(node, '[');
+        node.base().accept(this);
+        node.amount().accept(this);
+    }
+
+    @Override
+    public void visit(Assignment node) {
+        node(node, '=');
+        node.destination().accept(this);
+        node.source().accept(this);
+    }
+
+    @Override
+    public void visit(Call node) {
+        node(node, '(');
+        symbol(node.function());
+        node.arguments().accept(this);
+    }
+
+    @Override
+    public void visit(IfElseBranch node) {
+        node(node, '?');
+        node.condition().accept(this);
+        node.thenBlock().accept(this);
+        node.elseBlock().accept(this);
+    }
+
+    @Override
+    public void visit(WhileLoop node) {
+        node(node, 'W');
+        node.condition().accept(this);
+        node.body().accept(this);
+    }
+
+    @Override
+    public void visit(Return node) {
+        node(node, 'R');
+        node.argument().accept(this);
+    }
+
+    @Override
+    public void visit(ast.Error node) {
+        node(node, 'X');
+        text.append(node.message().length()).append(':').append(node.message());
+    }
+}
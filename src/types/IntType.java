@@ -2,6 +2,12 @@ package types;
 
 public class IntType extends Type 
 {
+    public static final IntType INSTANCE = new IntType();
+    
+    private IntType()
+    {
+    }
+    
     @Override
     public String toString() {
         return "int";
@@ -11,7 +17,7 @@ public class IntType extends Type
     public Type add(Type that)
     {
         return equivalent(that)
-        	? new IntType()
+        	? IntType.INSTANCE
         	: super.add(that);
     }
     
@@ -19,7 +25,7 @@ public class IntType extends Type
     public Type sub(Type that)
     {
         return equivalent(that)
-        	? new IntType()
+        	? IntType.INSTANCE
         	: super.sub(that);
     }
     
@@ -27,7 +33,7 @@ public class IntType extends Type
     public Type mul(Type that)
     {
         return equivalent(that)
-        	? new IntType()
+        	? IntType.INSTANCE
         	: super.mul(that);
     }
     
@@ -35,7 +41,7 @@ public class IntType extends Type
     public Type div(Type that)
     {
         return equivalent(that)
-        	? new IntType()
+        	? IntType.INSTANCE
         	: super.div(that);
     }
     
@@ -43,7 +49,7 @@ public class IntType extends Type
     public Type compare(Type that)
     {
     	return equivalent(that)
-    		? new BoolType()
+    		? BoolType.INSTANCE
     		: super.compare(that);
     }
     
@@ -51,14 +57,14 @@ public class IntType extends Type
     public Type assign(Type source)
     {
     	return equivalent(source)
-    		? new IntType()
+    		? IntType.INSTANCE
     		: super.assign(source);
     }
     
     @Override
     public boolean equivalent(Type that)
     {
-    	return that instanceof IntType
+    	return that == this
     		|| (that instanceof FuncType && equivalent(((FuncType)that).returnType()));
     }
 
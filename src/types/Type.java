@@ -1,74 +1,106 @@
 package types;
 
+import java.util.HashMap;
+
+// Types other than ErrorType are canonical: there is one instance of each
+// primitive type, and the composite types are only made through their
+// of() factories, which hand out the same instance for the same parts.
+// Structurally equal types are therefore the same object, and equivalent()
+// can usually answer by comparing references.
 public abstract class Type {
     
+    // The types built from this one, each created the first time it is
+    // asked for. Guarded by this type's lock.
+    private AddressType address;
+    private HashMap<Integer, ArrayType> arrays;
+    
     public static Type getBaseType(String typeStr)
     {
-        if (typeStr.equals("int")) return new IntType();
-        if (typeStr.equals("float")) return new FloatType();
-        if (typeStr.equals("bool")) return new BoolType();
-        if (typeStr.equals("void")) return new VoidType();
+        if (typeStr.equals("int")) return IntType.INSTANCE;
+        if (typeStr.equals("float")) return FloatType.INSTANCE;
+        if (typeStr.equals("bool")) return BoolType.INSTANCE;
+        if (typeStr.equals("void")) return VoidType.INSTANCE;
         return new ErrorType("Unkown type: " + typeStr);
     }
     
+    synchronized AddressType addressOf()
+    {
+        if (address == null)
+            address = new AddressType(this);
+        return address;
+    }
+    
+    synchronized ArrayType arrayOf(int length)
+    {
+        if (arrays == null)
+            arrays = new HashMap<Integer, ArrayType>();
+        ArrayType array = arrays.get(length);
+        if (array == null)
+        {
+            array = new ArrayType(length, this);
+            arrays.put(length, array);
+        }
+        return array;
+    }
+    
     public Type add(Type that)
     {
-        return new ErrorType("Cannot add " + this + " with " + that + ".");
+        return new ErrorType("Cannot add %s with %s.", this, that);
     }
     
     public Type sub(Type that)
     {
-        return new ErrorType("Cannot subtract " + that + " from " + this + ".");
+        return new ErrorType("Cannot subtract %s from %s.", that, this);
     }
     
     public Type mul(Type that)
     {
-        return new ErrorType("Cannot multiply " + this + " with " + that + ".");
+        return new ErrorType("Cannot multiply %s with %s.", this, that);
     }
     
     public Type div(Type that)
     {
-        return new ErrorType("Cannot divide " + this + " by " + that + ".");
+        return new ErrorType("Cannot divide %s by %s.", this, that);
     }
     
     public Type and(Type that)
     {
-        return new ErrorType("Cannot compute " + this + " and " + that + ".");
+        return new ErrorType("Cannot compute %s and %s.", this, that);
     }
     
     public Type or(Type that)
     {
-        return new ErrorType("Cannot compute " + this + " or " + that + ".");
+        return new ErrorType("Cannot compute %s or %s.", this, that);
     }
     
     public Type not()
     {
-        return new ErrorType("Cannot negate " + this + ".");
+        return new ErrorType("Cannot negate %s.", this);
     }
     
     public Type compare(Type that)
     {
-        return new ErrorType("Cannot compare " + this + " with " + that + ".");
+        return new ErrorType("Cannot compare %s with %s.", this, that);
     }
     
     public Type deref()
     {
-        return new ErrorType("Cannot dereference " + this);
+        return new ErrorType("Cannot dereference %s", this);
     }
     
     public Type index(Type that)
     {
-        return new ErrorType("Cannot index " + this + " with " + that + ".");
+        return new ErrorType("Cannot index %s with %s.", this, that);
     }
     
     public Type call(Type args)
     {
-        return new ErrorType("Cannot call " + this + " using " + args + ".");
+        return new ErrorType("Cannot call %s using %s.", this, args);
     }
     
     public Type assign(Type source)
     {
-        return new ErrorType("Cannot assign " + source + " to " + this + ".");
+        return new ErrorType("Cannot assign %s to %s.", source, this);
     }
     
     public abstract boolean isPrimitive();
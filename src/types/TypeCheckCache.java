@@ -0,0 +1,75 @@
+package types;
+
+import java.util.HashMap;
+
+import crux.Diagnostics;
+
+// What checking each function definition found, kept from one run of
+// TypeChecker.checkIncrementally to the next and looked up by the
+// function's fingerprint. A run keeps the entries it used or made and
+// forgets the rest, so the cache holds one program's functions at a time.
+public class TypeCheckCache {
+    
+    static class CheckedFunction
+    {
+        final int lineNumber;
+        // The results for each node, in the fingerprint's order.
+        final Type[] types;
+        final Object[] constants;
+        final Diagnostics diagnostics;
+        
+        CheckedFunction(int lineNumber, Type[] types, Object[] constants, Diagnostics diagnostics)
+        {
+            this.lineNumber = lineNumber;
+            this.types = types;
+            this.constants = constants;
+            this.diagnostics = diagnostics;
+        }
+    }
+    
+    private HashMap<String, CheckedFunction> previous;
+    private HashMap<String, CheckedFunction> current;
+    private int reused, checked;
+    
+    public TypeCheckCache()
+    {
+        previous = new HashMap<String, CheckedFunction>();
+        current = new HashMap<String, CheckedFunction>();
+    }
+    
+    // The number of functions the last run reused and checked.
+    public int reused() { return reused; }
+    
+    public int checked() { return checked; }
+    
+    void startRun()
+    {
+        reused = checked = 0;
+    }
+    
+    CheckedFunction lookup(String fingerprint)
+    {
+        CheckedFunction function = current.get(fingerprint);
+        if (function == null)
+        {
+            function = previous.remove(fingerprint);
+            if (function != null)
+                current.put(fingerprint, function);
+        }
+        if (function != null)
+            reused++;
+        return function;
+    }
+    
+    void store(String fingerprint, CheckedFunction function)
+    {
+        current.put(fingerprint, function);
+        checked++;
+    }
+    
+    void finishRun()
+    {
+        previous = current;
+        current = new HashMap<String, CheckedFunction>();
+    }
+}
@@ -1,15 +1,23 @@
 package types;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import crux.Diagnostic;
+import crux.Diagnostics;
 import crux.Symbol;
 import ast.*;
 
 public class TypeChecker implements CommandVisitor {
     
-    private HashMap<Command, Type> typeMap;
-    private StringBuffer errorBuffer;
+    // What the checker learns about each node, indexed by node id: its
+    // type, the symbol it names, and its value when that is a constant.
+    private NodeTable<Type> types;
+    private NodeTable<Symbol> symbols;
+    private NodeTable<Object> constants;
+    private Diagnostics diagnostics;
     private Symbol currentFunctionSymbol = null;
     private Stack<Integer> subStatementListsWithoutReturns;
 
@@ -33,15 +41,30 @@ public class TypeChecker implements CommandVisitor {
 
     public TypeChecker()
     {
-        typeMap = new HashMap<Command, Type>();
-        errorBuffer = new StringBuffer();
+        this(Diagnostics.UNLIMITED);
+    }
+    
+    // Keeps only the first maxErrors errors for the report, counting the
+    // rest.
+    public TypeChecker(int maxErrors)
+    {
+        this(maxErrors, 0);
+    }
+    
+    // Sizes the side tables for a tree of nodeCount commands, such as a
+    // FlatAst's commandCount().
+    public TypeChecker(int maxErrors, int nodeCount)
+    {
+        types = new NodeTable<Type>(nodeCount);
+        symbols = new NodeTable<Symbol>(nodeCount);
+        constants = new NodeTable<Object>(nodeCount);
+        diagnostics = new Diagnostics(maxErrors);
         subStatementListsWithoutReturns = new Stack<Integer>();
     }
 
-    private void reportError(int lineNum, int charPos, String message)
+    private void reportError(int lineNum, int charPos, String template, Object... arguments)
     {
-        errorBuffer.append("TypeError(" + lineNum + "," + charPos + ")");
-        errorBuffer.append("[" + message + "]" + "\n");
+        diagnostics.add(new Diagnostic(Diagnostic.Code.TYPE_ERROR, lineNum, charPos, template, arguments));
     }
 
     private void put(Command node, Type type)
@@ -49,14 +72,28 @@ public class TypeChecker implements CommandVisitor {
     	if(type == null)
     		throw new RuntimeException("Null type.");
         if (type instanceof ErrorType) {
-            reportError(node.lineNumber(), node.charPosition(), ((ErrorType)type).getMessage());
+            ErrorType error = (ErrorType)type;
+            reportError(node.lineNumber(), node.charPosition(), error.template(), error.arguments());
         }
-        typeMap.put(node, type);
+        types.put(node, type);
     }
     
     public Type getType(Command node)
     {
-        return typeMap.get(node);
+        return types.get(node);
+    }
+    
+    // The symbol a declaration, call or address names.
+    public Symbol getSymbol(Command node)
+    {
+        return symbols.get(node);
+    }
+    
+    // The Integer, Float or Boolean an expression always evaluates to,
+    // or null if it is not made only of literals.
+    public Object getConstant(Command node)
+    {
+        return constants.get(node);
     }
     
     public boolean check(Command ast)
@@ -65,14 +102,153 @@ public class TypeChecker implements CommandVisitor {
         return !hasError();
     }
     
+    // Checks the program the same way as check(), with the same report,
+    // but checks the declarations of a DeclarationList at once on the
+    // pool's threads. A function body only refers to symbols whose types
+    // were settled when the program was parsed, so checking one needs
+    // nothing from checking another. Each declaration gets a checker of its
+    // own, and their types and errors are gathered here in order.
+    public boolean checkInParallel(Command ast, ForkJoinPool pool)
+    {
+        if (!(ast instanceof DeclarationList))
+            return check(ast);
+        ArrayList<DeclarationTask> tasks = new ArrayList<DeclarationTask>();
+        for (Declaration declaration : (DeclarationList)ast)
+        {
+            DeclarationTask task = new DeclarationTask((Command)declaration);
+            tasks.add(task);
+            // Only function bodies are worth handing to another thread.
+            if (declaration instanceof FunctionDefinition)
+                pool.execute(task);
+            else
+                task.invoke();
+        }
+        for (DeclarationTask task : tasks)
+        {
+            task.join();
+            absorb(task.checker);
+        }
+        return !hasError();
+    }
+    
+    // Checks the program the same way as check(), with the same report,
+    // but only checks the function definitions that the cache has no
+    // results for. A function whose fingerprint, which covers its body and
+    // the types of the symbols it refers to, matches one checked before is
+    // given the types and errors found then, moved to where it is now.
+    public boolean checkIncrementally(Command ast, TypeCheckCache cache)
+    {
+        if (!(ast instanceof DeclarationList))
+            return check(ast);
+        cache.startRun();
+        for (Declaration declaration : (DeclarationList)ast)
+        {
+            if (!(declaration instanceof FunctionDefinition))
+            {
+                TypeChecker checker = new TypeChecker(diagnostics.maxErrors());
+                ((Command)declaration).accept(checker);
+                absorb(checker);
+                continue;
+            }
+            FunctionDefinition function = (FunctionDefinition)declaration;
+            FunctionFingerprint fingerprint = FunctionFingerprint.of(function);
+            String text = fingerprint.text();
+            TypeCheckCache.CheckedFunction checked = cache.lookup(text);
+            // Results cut short by a lower error cap are incomplete.
+            if (checked == null
+                || (checked.diagnostics.dropped() > 0 && checked.diagnostics.maxErrors() < diagnostics.maxErrors()))
+            {
+                TypeChecker checker = new TypeChecker(diagnostics.maxErrors());
+                function.accept(checker);
+                absorb(checker);
+                cache.store(text, remember(function, fingerprint, checker));
+                continue;
+            }
+            ArrayList<Command> nodes = fingerprint.nodes();
+            for (int i = 0; i < nodes.size(); i++)
+            {
+                Command node = nodes.get(i);
+                if (checked.types[i] != null)
+                    types.put(node, checked.types[i]);
+                // The symbols are those of the new tree, not the old.
+                Symbol symbol = namedSymbol(node);
+                if (symbol != null)
+                    symbols.put(node, symbol);
+                if (checked.constants[i] != null)
+                    constants.put(node, checked.constants[i]);
+            }
+            diagnostics.appendMovedBy(checked.diagnostics, function.lineNumber() - checked.lineNumber);
+        }
+        cache.finishRun();
+        return !hasError();
+    }
+    
+    private static TypeCheckCache.CheckedFunction remember(FunctionDefinition function, FunctionFingerprint fingerprint, TypeChecker checker)
+    {
+        ArrayList<Command> nodes = fingerprint.nodes();
+        Type[] types = new Type[nodes.size()];
+        Object[] constants = new Object[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            Command node = nodes.get(i);
+            types[i] = checker.types.get(node);
+            constants[i] = checker.constants.get(node);
+        }
+        return new TypeCheckCache.CheckedFunction(function.lineNumber(), types, constants, checker.diagnostics);
+    }
+    
+    // The symbol that checking the node records for getSymbol.
+    private static Symbol namedSymbol(Command node)
+    {
+        if (node instanceof Call)
+            return ((Call)node).function();
+        if (node instanceof AddressOf)
+            return ((AddressOf)node).symbol();
+        if (node instanceof VariableDeclaration || node instanceof ArrayDeclaration || node instanceof FunctionDefinition)
+            return ((Declaration)node).symbol();
+        return null;
+    }
+    
+    // Takes in the results of a checker that checked part of the program.
+    private void absorb(TypeChecker checker)
+    {
+        types.putAll(checker.types);
+        symbols.putAll(checker.symbols);
+        constants.putAll(checker.constants);
+        diagnostics.append(checker.diagnostics);
+    }
+    
+    private class DeclarationTask extends RecursiveAction
+    {
+        private final Command declaration;
+        private TypeChecker checker;
+        
+        public DeclarationTask(Command declaration)
+        {
+            this.declaration = declaration;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            checker = new TypeChecker(diagnostics.maxErrors());
+            declaration.accept(checker);
+        }
+    }
+    
     public boolean hasError()
     {
-        return errorBuffer.length() != 0;
+        return !diagnostics.isEmpty();
+    }
+    
+    public Diagnostics diagnostics()
+    {
+        return diagnostics;
     }
     
     public String errorReport()
     {
-        return errorBuffer.toString();
+        return diagnostics.report();
     }
 
     @Override
@@ -106,68 +282,75 @@ public class TypeChecker implements CommandVisitor {
 
     @Override
     public void visit(AddressOf node) {
-    	put(node, new AddressType(node.symbol().getType()));
+    	symbols.put(node, node.symbol());
+    	put(node, AddressType.of(node.symbol().getType()));
     }
 
     @Override
     public void visit(LiteralBool node) {
-    	put(node, new BoolType());
+    	constants.put(node, node.value() == LiteralBool.Value.TRUE);
+    	put(node, BoolType.INSTANCE);
     }
 
     @Override
     public void visit(LiteralFloat node) {
-        put(node, new FloatType());
+        constants.put(node, node.value());
+        put(node, FloatType.INSTANCE);
     }
 
     @Override
     public void visit(LiteralInt node) {
-    	put(node, new IntType());
+    	constants.put(node, node.value());
+    	put(node, IntType.INSTANCE);
     }
 
     @Override
     public void visit(VariableDeclaration node) {
+    	symbols.put(node, node.symbol());
     	Type symbolType = node.symbol().getType();
     	if(!symbolType.isPrimitive())
-    		reportError(node.lineNumber(), node.charPosition(), "Variable " + node.symbol().getName() + " has invalid type " + symbolType + ".");
+    		reportError(node.lineNumber(), node.charPosition(), "Variable %s has invalid type %s.", node.symbol().getName(), symbolType);
     }
 
     @Override
     public void visit(ArrayDeclaration node) {
+        symbols.put(node, node.symbol());
         Type elementType = ((ArrayType)node.symbol().getType()).elementType();
         // Descend possible nested array declarations to get at the root element type.
         while(elementType instanceof ArrayType)
         	elementType = ((ArrayType)elementType).elementType();
         if(!elementType.isPrimitive())
-    		reportError(node.lineNumber(), node.charPosition(), "Array " + node.symbol().getName() + " has invalid base type " + elementType + ".");
+    		reportError(node.lineNumber(), node.charPosition(), "Array %s has invalid base type %s.", node.symbol().getName(), elementType);
     }
 
     @Override
     public void visit(FunctionDefinition node) {
+    	symbols.put(node, node.function());
     	subStatementListsWithoutReturns.push(0);
     	currentFunctionSymbol = node.function();    	
     	// Recurse down tree.        
         node.body().accept(this);
         currentFunctionSymbol = null;
-        if(!((FuncType)node.function().getType()).returnType().equivalent(new VoidType())
+        if(!((FuncType)node.function().getType()).returnType().equivalent(VoidType.INSTANCE)
         	&& subStatementListsWithoutReturns.pop() > 0)
-        	reportError(node.lineNumber(), node.charPosition(), "Not all paths in function " + node.function().getName() + " have a return.");
+        	reportError(node.lineNumber(), node.charPosition(), "Not all paths in function %s have a return.", node.function().getName());
         
-        VoidType type = new VoidType();
+        VoidType type = VoidType.INSTANCE;
         
         // Make sure no arguments have void or error types.
         for(int i = 0; i < node.arguments().size(); i++)
         {
         	Symbol arg = node.arguments().get(i);
         	if(type.equivalent(arg.getType()))
-        		reportError(node.lineNumber(), node.charPosition(), "Function " + node.function().getName() + " has a void argument in position " + i + ".");
+        		reportError(node.lineNumber(), node.charPosition(), "Function %s has a void argument in position %s.", node.function().getName(), i);
         	else if(arg.getType() instanceof ErrorType)
-        		reportError(node.lineNumber(), node.charPosition(), "Function " + node.function().getName() + " has an error in argument in position " + i + ": " + ((ErrorType)arg.getType()).getMessage());
+        		reportError(node.lineNumber(), node.charPosition(), "Function %s has an error in argument in position %s: %s", node.function().getName(), i, ((ErrorType)arg.getType()).getMessage());
         }
         
         // Make sure "main" function has void return type and no arguments.
         if(node.function().getName().equals("main")
         	&& (node.arguments().size() > 0 
-    			|| !((FuncType)node.function().getType()).returnType().equivalent(new VoidType())))
+    			|| !((FuncType)node.function().getType()).returnType().equivalent(VoidType.INSTANCE)))
         {
         	reportError(node.lineNumber(), node.charPosition(), "Function main has invalid signature.");
         }
@@ -178,16 +361,19 @@ public class TypeChecker implements CommandVisitor {
     	node.leftSide().accept(this);
     	node.rightSide().accept(this);
     	
-    	Type intType = new IntType(),
-            	floatType = new FloatType(),
+    	Type intType = IntType.INSTANCE,
+            	floatType = FloatType.INSTANCE,
             	leftType = getType((Command)node.leftSide()),
             	rightType = getType((Command)node.rightSide());
     	if(!leftType.equivalent(rightType))
-        	put(node, new ErrorType("Cannot compare " + leftType + " with " + rightType + "."));
+        	put(node, new ErrorType("Cannot compare %s with %s.", leftType, rightType));
     	else if(leftType.equivalent(intType) || leftType.equivalent(floatType))
-    		put(node, new BoolType());
+    	{
+    		fold(node, (Command)node.leftSide(), (Command)node.rightSide());
+    		put(node, BoolType.INSTANCE);
+    	}
     	else
-    		put(node, new ErrorType("Cannot compare " + leftType + " with " + rightType + "."));    		
+    		put(node, new ErrorType("Cannot compare %s with %s.", leftType, rightType));    		
     }
     
     private void visitBinaryArithmetic(Command node, Command leftSide, Command rightSide, String name)
@@ -195,18 +381,89 @@ public class TypeChecker implements CommandVisitor {
     	leftSide.accept(this);
         rightSide.accept(this);
         
-        Type intType = new IntType(),
-        	floatType = new FloatType(),
+        Type intType = IntType.INSTANCE,
+        	floatType = FloatType.INSTANCE,
         	leftType = getType(leftSide),
         	rightType = getType(rightSide);
         if(!leftType.equivalent(rightType))
-        	put(node, new ErrorType("Cannot add " + leftType + " with " + rightType + "."));
+        	put(node, new ErrorType("Cannot add %s with %s.", leftType, rightType));
         else if(leftType.equivalent(intType))
+        {
+        	fold(node, leftSide, rightSide);
         	put(node, intType);
+        }
         else if(leftType.equivalent(floatType))
+        {
+        	fold(node, leftSide, rightSide);
         	put(node, floatType);
+        }
         else
-        	put(node, new ErrorType("Cannot add " + leftType + " with " + rightType + "."));
+        	put(node, new ErrorType("Cannot add %s with %s.", leftType, rightType));
+    }
+    
+    // Records the value of an operation on two well typed constants.
+    // Integer division by zero is left for run time.
+    private void fold(Command node, Command leftSide, Command rightSide)
+    {
+    	Object left = constants.get(leftSide),
+    		right = constants.get(rightSide);
+    	if(left == null || right == null)
+    		return;
+    	Object value = null;
+    	if(left instanceof Integer)
+    	{
+    		int a = (Integer)left, b = (Integer)right;
+    		if(node instanceof Addition) value = a + b;
+    		else if(node instanceof Subtraction) value = a - b;
+    		else if(node instanceof Multiplication) value = a * b;
+    		else if(node instanceof Division) value = b != 0 ? (Object)(a / b) : null;
+    		else if(node instanceof Comparison) value = compare(((Comparison)node).operation(), Integer.compare(a, b));
+    	}
+    	else if(left instanceof Float)
+    	{
+    		float a = (Float)left, b = (Float)right;
+    		if(node instanceof Addition) value = a + b;
+    		else if(node instanceof Subtraction) value = a - b;
+    		else if(node instanceof Multiplication) value = a * b;
+    		else if(node instanceof Division) value = a / b;
+    		else if(node instanceof Comparison) value = compareFloats(((Comparison)node).operation(), a, b);
+    	}
+    	else if(node instanceof LogicalAnd)
+    		value = (Boolean)left && (Boolean)right;
+    	else if(node instanceof LogicalOr)
+    		value = (Boolean)left || (Boolean)right;
+    	if(value != null)
+    		constants.put(node, value);
+    }
+    
+    private static Boolean compare(Comparison.Operation operation, int order)
+    {
+    	switch(operation)
+    	{
+    	case LT: return order < 0;
+    	case LE: return order <= 0;
+    	case EQ: return order == 0;
+    	case NE: return order != 0;
+    	case GE: return order >= 0;
+    	case GT: return order > 0;
+    	default: return null;
+    	}
+    }
+    
+    // Compared with the float operators rather than Float.compare, so
+    // that NaN is unordered as it would be at run time.
+    private static Boolean compareFloats(Comparison.Operation operation, float a, float b)
+    {
+    	switch(operation)
+    	{
+    	case LT: return a < b;
+    	case LE: return a <= b;
+    	case EQ: return a == b;
+    	case NE: return a != b;
+    	case GE: return a >= b;
+    	case GT: return a > b;
+    	default: return null;
+    	}
     }
     
     @Override
@@ -234,15 +491,18 @@ public class TypeChecker implements CommandVisitor {
     	node.leftSide().accept(this);
         node.rightSide().accept(this);
         
-        BoolType boolType = new BoolType();
+        BoolType boolType = BoolType.INSTANCE;
         Type leftType = getType((Command)node.leftSide()),
         	rightType = getType((Command)node.rightSide());
         if(!boolType.equivalent(leftType))
-        	put(node, new ErrorType("Cannot compute " + leftType + " and " + rightType + "."));
+        	put(node, new ErrorType("Cannot compute %s and %s.", leftType, rightType));
         else if(!boolType.equivalent(rightType))
-        	put(node, new ErrorType("Cannot compute " + leftType + " and " + rightType + "."));
+        	put(node, new ErrorType("Cannot compute %s and %s.", leftType, rightType));
         else
-        	put(node, new BoolType());
+        {
+        	fold(node, (Command)node.leftSide(), (Command)node.rightSide());
+        	put(node, BoolType.INSTANCE);
+        }
     }
 
     @Override
@@ -250,25 +510,33 @@ public class TypeChecker implements CommandVisitor {
         node.leftSide().accept(this);
         node.rightSide().accept(this);
         
-        BoolType boolType = new BoolType();
+        BoolType boolType = BoolType.INSTANCE;
         Type leftType = getType((Command)node.leftSide()),
         	rightType = getType((Command)node.rightSide());
         if(!boolType.equivalent(leftType))
-        	put(node, new ErrorType("Cannot compute " + leftType + " or " + rightType + "."));
+        	put(node, new ErrorType("Cannot compute %s or %s.", leftType, rightType));
         else if(!boolType.equivalent(rightType))
-        	put(node, new ErrorType("Cannot compute " + leftType + " or " + rightType + "."));
+        	put(node, new ErrorType("Cannot compute %s or %s.", leftType, rightType));
         else
-        	put(node, new BoolType());
+        {
+        	fold(node, (Command)node.leftSide(), (Command)node.rightSide());
+        	put(node, BoolType.INSTANCE);
+        }
     }
 
     @Override
     public void visit(LogicalNot node) {
     	node.expression().accept(this);
     	Type expressionType = getType((Command)node.expression());
-    	if(!(new BoolType()).equivalent(expressionType))
-    		put(node, new ErrorType("Cannot negate " + expressionType + "."));
+    	if(!BoolType.INSTANCE.equivalent(expressionType))
+    		put(node, new ErrorType("Cannot negate %s.", expressionType));
     	else
-    		put(node, new BoolType());
+    	{
+    		Object value = constants.get((Command)node.expression());
+    		if(value != null)
+    			constants.put(node, !(Boolean)value);
+    		put(node, BoolType.INSTANCE);
+    	}
     }
     
     @Override
@@ -277,7 +545,7 @@ public class TypeChecker implements CommandVisitor {
     	
     	Type expressionType = getType((Command)node.expression());
     	if(!(expressionType instanceof AddressType))
-    		put(node, new ErrorType("Cannot dereference " + expressionType)); // No period in provided test output.
+    		put(node, new ErrorType("Cannot dereference %s", expressionType)); // No period in provided test output.
     	else
     		put(node, ((AddressType)expressionType).base());
     }
@@ -290,13 +558,13 @@ public class TypeChecker implements CommandVisitor {
         Type baseType = getType((Command)node.base()),
         	amountType = getType((Command)node.amount());
         if(!(baseType instanceof AddressType))
-        	put(node, new ErrorType("Cannot index " + baseType + " with " + amountType + "."));
+        	put(node, new ErrorType("Cannot index %s with %s.", baseType, amountType));
         else if(!(((AddressType)baseType).base() instanceof ArrayType))
-        	put(node, new ErrorType("Cannot index " + baseType + " with " + amountType + "."));
+        	put(node, new ErrorType("Cannot index %s with %s.", baseType, amountType));
         else if(!(amountType instanceof IntType))
-        	put(node, new ErrorType("Can only index with IntType, not with " + amountType + "."));
+        	put(node, new ErrorType("Can only index with IntType, not with %s.", amountType));
         else
-        	put(node, new AddressType(((ArrayType)((AddressType)baseType).base()).elementType()));
+        	put(node, AddressType.of(((ArrayType)((AddressType)baseType).base()).elementType()));
     }
 
     @Override
@@ -313,18 +581,32 @@ public class TypeChecker implements CommandVisitor {
     		// Ignore this.
     	}
     	else if(!destType.equivalent(sourceType))
-    		reportError(node.lineNumber(), node.charPosition(), "Cannot assign " + sourceType + " to " + destType + ".");
+    		reportError(node.lineNumber(), node.charPosition(), "Cannot assign %s to %s.", sourceType, destType);
     }
 
     @Override
     public void visit(Call node) {
+    	symbols.put(node, node.function());
     	node.arguments().accept(this);
-    	TypeList argList = new TypeList();
-    	for(Expression arg : node.arguments())
-    		argList.append(getType((Command)arg));
     	FuncType calledFuncType = ((FuncType)node.function().getType());
-    	if(!argList.equivalent(calledFuncType.arguments()))
-    		put(node, new ErrorType("Cannot call " + calledFuncType + " using " + argList + "."));
+    	// The same test as TypeList.equivalent, without building the
+    	// list of argument types unless it goes into an error.
+    	TypeList paramTypes = calledFuncType.arguments();
+    	boolean matches = node.arguments().size() == paramTypes.size();
+    	int i = 0;
+    	for(Expression arg : node.arguments())
+    	{
+    		if(!matches)
+    			break;
+    		matches = getType((Command)arg).equivalent(paramTypes.get(i++));
+    	}
+    	if(!matches)
+    	{
+    		TypeList argList = TypeList.EMPTY;
+    		for(Expression arg : node.arguments())
+    			argList = argList.with(getType((Command)arg));
+    		put(node, new ErrorType("Cannot call %s using %s.", calledFuncType, argList));
+    	}
     	else
     		put(node, node.function().getType());
     }
@@ -335,8 +617,8 @@ public class TypeChecker implements CommandVisitor {
     	node.thenBlock().accept(this);
     	node.elseBlock().accept(this);
     	
-    	if(!(new BoolType()).equivalent(getType((Command)node.condition())))
-    		reportError(node.lineNumber(), node.charPosition(), "IfElseBranch requires bool condition not " + getType((Command)node.condition()) + ".");
+    	if(!BoolType.INSTANCE.equivalent(getType((Command)node.condition())))
+    		reportError(node.lineNumber(), node.charPosition(), "IfElseBranch requires bool condition not %s.", getType((Command)node.condition()));
     }
 
     @Override
@@ -344,8 +626,8 @@ public class TypeChecker implements CommandVisitor {
     	node.condition().accept(this);
     	node.body().accept(this);
     	
-    	if(!(new BoolType()).equivalent(getType((Command)node.condition())))
-    		reportError(node.lineNumber(), node.charPosition(), "WhileLoop requires bool condition not " + getType((Command)node.condition()) + ".");
+    	if(!BoolType.INSTANCE.equivalent(getType((Command)node.condition())))
+    		reportError(node.lineNumber(), node.charPosition(), "WhileLoop requires bool condition not %s.", getType((Command)node.condition()));
     }
 
     @Override
@@ -355,7 +637,7 @@ public class TypeChecker implements CommandVisitor {
         Type argType = getType((Command)node.argument()),
         	expectedRetType = ((FuncType)currentFunctionSymbol.getType()).returnType();
         if(!expectedRetType.equivalent(argType))
-        	reportError(node.lineNumber(), node.charPosition(), "Function " + currentFunctionSymbol.getName() + " returns " + expectedRetType + " not " + argType + ".");        	
+        	reportError(node.lineNumber(), node.charPosition(), "Function %s returns %s not %s.", currentFunctionSymbol.getName(), expectedRetType, argType);        	
     }
 
     @Override
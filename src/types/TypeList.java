@@ -1,21 +1,88 @@
 package types;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
 public class TypeList extends Type implements Iterable<Type> {
     
+    // Every list is reached from the empty list by adding its types one
+    // at a time, and each list keeps the lists one longer than itself, so
+    // that equal lists are the same instance. ErrorTypes are not canonical,
+    // so lists are not kept for them, lest every error message ever
+    // checked stay reachable from EMPTY.
+    public static final TypeList EMPTY = new TypeList(Collections.<Type>emptyList());
+    
     private List<Type> list;
+    // Guarded by this list's lock.
+    private HashMap<Type, TypeList> extensions;
+    private HashMap<Type, FuncType> functions;
+    
+    private TypeList(List<Type> list)
+    {
+        this.list = list;
+    }
+    
+    public static TypeList of(Type... types)
+    {
+        TypeList typeList = EMPTY;
+        for (Type type : types)
+            typeList = typeList.with(type);
+        return typeList;
+    }
+    
+    public static TypeList of(List<Type> types)
+    {
+        TypeList typeList = EMPTY;
+        for (Type type : types)
+            typeList = typeList.with(type);
+        return typeList;
+    }
+    
+    // The list of these types followed by the given one.
+    public synchronized TypeList with(Type type)
+    {
+        TypeList extended = extensions != null ? extensions.get(type) : null;
+        if (extended == null)
+        {
+            ArrayList<Type> types = new ArrayList<Type>(list.size() + 1);
+            types.addAll(list);
+            types.add(type);
+            extended = new TypeList(Collections.unmodifiableList(types));
+            if (type instanceof ErrorType)
+                return extended;
+            if (extensions == null)
+                extensions = new HashMap<Type, TypeList>();
+            extensions.put(type, extended);
+        }
+        return extended;
+    }
+    
+    synchronized FuncType functionReturning(Type returnType)
+    {
+        FuncType function = functions != null ? functions.get(returnType) : null;
+        if (function == null)
+        {
+            function = new FuncType(this, returnType);
+            if (returnType instanceof ErrorType)
+                return function;
+            if (functions == null)
+                functions = new HashMap<Type, FuncType>();
+            functions.put(returnType, function);
+        }
+        return function;
+    }
     
-    public TypeList()
+    public int size()
     {
-        list = new ArrayList<Type>();
+        return list.size();
     }
     
-    public void append(Type type)
+    public Type get(int index)
     {
-        list.add(type);
+        return list.get(index);
     }
     
     @Override
@@ -34,6 +101,11 @@ public class TypeList extends Type implements Iterable<Type> {
     @Override
     public boolean equivalent(Type that) 
     {
+        // Equal lists are the same instance. Different ones can still be
+        // equivalent when a function type stands for its return type, or
+        // through ErrorTypes with the same message.
+        if (that == this)
+            return true;
         if (!(that instanceof TypeList))
         	return false;
         
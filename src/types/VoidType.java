@@ -1,6 +1,12 @@
 package types;
 
 public class VoidType extends Type {
+    public static final VoidType INSTANCE = new VoidType();
+    
+    private VoidType()
+    {
+    }
+    
     @Override
     public String toString()
     {
@@ -10,7 +16,7 @@ public class VoidType extends Type {
     @Override
     public boolean equivalent(Type that)
     {
-        return that instanceof VoidType
+        return that == this
         	|| (that instanceof FuncType && equivalent(((FuncType)that).returnType()));
     }
     